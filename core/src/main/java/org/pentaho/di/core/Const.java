@@ -981,6 +981,251 @@ public class Const {
    */
   public static final String KETTLE_FILE_OUTPUT_MAX_STREAM_LIFE = "KETTLE_FILE_OUTPUT_MAX_STREAM_LIFE";
 
+  /**
+   * Set this variable to Y to read remote VFS files through a local read-ahead block cache. (default = N)
+   */
+  public static final String KETTLE_VFS_BLOCK_CACHE = "KETTLE_VFS_BLOCK_CACHE";
+
+  /**
+   * The comma separated list of VFS schemes read through the block cache.
+   */
+  public static final String KETTLE_VFS_BLOCK_CACHE_SCHEMES = "KETTLE_VFS_BLOCK_CACHE_SCHEMES";
+
+  /**
+   * The directory the VFS block cache keeps its blocks in.
+   */
+  public static final String KETTLE_VFS_BLOCK_CACHE_DIRECTORY = "KETTLE_VFS_BLOCK_CACHE_DIRECTORY";
+
+  /**
+   * The size in bytes of a block in the VFS block cache.
+   */
+  public static final String KETTLE_VFS_BLOCK_CACHE_BLOCK_SIZE = "KETTLE_VFS_BLOCK_CACHE_BLOCK_SIZE";
+
+  /**
+   * The number of blocks the VFS block cache fetches ahead of a reader.
+   */
+  public static final String KETTLE_VFS_BLOCK_CACHE_PREFETCH = "KETTLE_VFS_BLOCK_CACHE_PREFETCH";
+
+  /**
+   * The maximum number of bytes the VFS block cache keeps on disk.
+   */
+  public static final String KETTLE_VFS_BLOCK_CACHE_MAX_SIZE = "KETTLE_VFS_BLOCK_CACHE_MAX_SIZE";
+
+  /**
+   * The number of threads fetching blocks for the VFS block cache.
+   */
+  public static final String KETTLE_VFS_BLOCK_CACHE_THREADS = "KETTLE_VFS_BLOCK_CACHE_THREADS";
+
+  /**
+   * The number of folders listed at the same time when searching files with a wildcard (1 lists them one by one).
+   */
+  public static final String KETTLE_FILE_ENUMERATION_THREADS = "KETTLE_FILE_ENUMERATION_THREADS";
+
+  /**
+   * Set this variable to N to keep auto commit on when a query is opened on a database that only streams the rows of a
+   * query in a transaction (PostgreSQL). The complete result set is then read in memory.
+   */
+  public static final String KETTLE_STREAMING_CURSORS = "KETTLE_STREAMING_CURSORS";
+
+  /**
+   * Set this variable to N to keep the fetch size of queries fixed on databases that allow it to change while the rows
+   * are read.
+   */
+  public static final String KETTLE_ADAPTIVE_FETCH_SIZE = "KETTLE_ADAPTIVE_FETCH_SIZE";
+
+  /**
+   * The number of bytes the rows of one fetch may take in memory when the fetch size is adapted to the rows read.
+   */
+  public static final String KETTLE_FETCH_BUFFER_SIZE = "KETTLE_FETCH_BUFFER_SIZE";
+
+  /**
+   * The number of prepared statements the Dynamic SQL row and Execute row SQL script steps keep open per connection
+   * to execute the same SQL again without preparing it again. Only SQL executed with parameters is cached. The default
+   * 0 prepares every statement again.
+   */
+  public static final String KETTLE_STATEMENT_CACHE_SIZE = "KETTLE_STATEMENT_CACHE_SIZE";
+
+  /**
+   * The default number of prepared statements kept open per connection by the steps executing SQL from a field: none,
+   * the cache is opt-in.
+   */
+  public static final int STATEMENT_CACHE_SIZE = 0;
+
+  /**
+   * The maximum number of connections open at the same time to all databases, over all transformations and jobs
+   * running in this JVM. A connection waits for another one to close when the maximum is reached. 0 means no limit.
+   */
+  public static final String KETTLE_MAX_DB_CONNECTIONS = "KETTLE_MAX_DB_CONNECTIONS";
+
+  /**
+   * The maximum number of connections open at the same time per database connection name, over all transformations
+   * and jobs running in this JVM. 0 means no limit.
+   */
+  public static final String KETTLE_MAX_DB_CONNECTIONS_PER_DATABASE = "KETTLE_MAX_DB_CONNECTIONS_PER_DATABASE";
+
+  /**
+   * The maximum number of connections of specific database connections, overriding
+   * KETTLE_MAX_DB_CONNECTIONS_PER_DATABASE, as a comma separated list of name=maximum pairs.
+   */
+  public static final String KETTLE_DB_CONNECTION_LIMITS = "KETTLE_DB_CONNECTION_LIMITS";
+
+  /**
+   * The number of seconds to wait for a database connection when the maximum number of connections is reached before
+   * failing. 0 means to wait without a limit.
+   */
+  public static final String KETTLE_DB_CONNECTION_WAIT_TIMEOUT = "KETTLE_DB_CONNECTION_WAIT_TIMEOUT";
+
+  /**
+   * The default number of seconds to wait for a database connection when the maximum number of connections is reached.
+   */
+  public static final int DB_CONNECTION_WAIT_TIMEOUT = 300;
+
+  /**
+   * The maximum number of queries the database cache keeps the fields of, the least recently used ones are removed
+   * first. 0 means no limit.
+   */
+  public static final String KETTLE_DB_CACHE_SIZE = "KETTLE_DB_CACHE_SIZE";
+
+  /**
+   * The default maximum number of queries the database cache keeps the fields of.
+   */
+  public static final int DB_CACHE_SIZE = 10000;
+
+  /**
+   * The number of seconds the fields of a query are kept in the database cache before they are looked up again. 0
+   * means the fields are kept until the cache is cleared.
+   */
+  public static final String KETTLE_DB_CACHE_TTL = "KETTLE_DB_CACHE_TTL";
+
+  /**
+   * The class storing the watermarks of the incremental Table Input steps, empty to store them in a local file.
+   */
+  public static final String KETTLE_WATERMARK_STORE = "KETTLE_WATERMARK_STORE";
+
+  /**
+   * The file the watermarks of the incremental Table Input steps are stored in, by default watermarks.properties in
+   * the Kettle directory.
+   */
+  public static final String KETTLE_WATERMARK_FILE = "KETTLE_WATERMARK_FILE";
+
+  /**
+   * The number of rows sent in one batch between the steps of a clustered transformation on different slave servers.
+   * With compressed sockets each batch is compressed with Snappy. 0 or empty sends the rows one by one over a stream
+   * that is compressed with GZIP.
+   */
+  public static final String KETTLE_REMOTE_STEP_BATCH_SIZE = "KETTLE_REMOTE_STEP_BATCH_SIZE";
+
+  /**
+   * The maximum number of transformations a Carte server runs at the same time, the others wait in a queue. 0 or empty
+   * means no limit.
+   */
+  public static final String KETTLE_CARTE_MAX_EXECUTIONS = "KETTLE_CARTE_MAX_EXECUTIONS";
+
+  /**
+   * The maximum number of transformations waiting in the queue of a Carte server, more are refused. 0 or empty means
+   * no limit.
+   */
+  public static final String KETTLE_CARTE_MAX_QUEUED_EXECUTIONS = "KETTLE_CARTE_MAX_QUEUED_EXECUTIONS";
+
+  /**
+   * The memory in MB the transformations running at the same time on a Carte server may use together, based on the
+   * memory they declare with KETTLE_TRANS_MEMORY or else on an estimate. 0 or empty means no limit.
+   */
+  public static final String KETTLE_CARTE_EXECUTION_MEMORY = "KETTLE_CARTE_EXECUTION_MEMORY";
+
+  /**
+   * The number of seconds a transformation waits in the queue of a Carte server before it's refused. 0 means to wait
+   * without a limit.
+   */
+  public static final String KETTLE_CARTE_QUEUE_TIMEOUT = "KETTLE_CARTE_QUEUE_TIMEOUT";
+
+  /**
+   * The default number of seconds a transformation waits in the queue of a Carte server.
+   */
+  public static final int CARTE_QUEUE_TIMEOUT = 3600;
+
+  /**
+   * The priority of a transformation in the queue of a Carte server, higher priorities start first. The default is 0.
+   */
+  public static final String KETTLE_TRANS_PRIORITY = "KETTLE_TRANS_PRIORITY";
+
+  /**
+   * The tag of a transformation in the queue of a Carte server, by default the user that started it. Transformations
+   * with the same priority and a tag with fewer running transformations start first.
+   */
+  public static final String KETTLE_TRANS_QUEUE_TAG = "KETTLE_TRANS_QUEUE_TAG";
+
+  /**
+   * The memory in MB a transformation declares to need, used to admit it on a Carte server.
+   */
+  public static final String KETTLE_TRANS_MEMORY = "KETTLE_TRANS_MEMORY";
+
+  /**
+   * The memory in MB the rows buffered by the steps of a transformation may take. Steps that can spill to disk do so
+   * when the usage comes near it, the transformation fails when it goes over it. 0 or empty means no quota.
+   */
+  public static final String KETTLE_TRANS_MEMORY_QUOTA = "KETTLE_TRANS_MEMORY_QUOTA";
+
+  /**
+   * The maximum number of parsed transformations and jobs a Carte server keeps to execute them again without loading
+   * them. 0 disables the cache.
+   */
+  public static final String KETTLE_CARTE_META_CACHE_SIZE = "KETTLE_CARTE_META_CACHE_SIZE";
+
+  /**
+   * The default number of parsed transformations and jobs a Carte server keeps.
+   */
+  public static final int CARTE_META_CACHE_SIZE = 100;
+
+  /**
+   * The maximum number of prepared instances a Carte server keeps of a transformation executed in pooled mode.
+   */
+  public static final String KETTLE_CARTE_TRANS_POOL_SIZE = "KETTLE_CARTE_TRANS_POOL_SIZE";
+
+  /**
+   * The default number of prepared instances of a transformation executed in pooled mode.
+   */
+  public static final int CARTE_TRANS_POOL_SIZE = 4;
+
+  /**
+   * The number of seconds a request in pooled mode waits for a free instance of the transformation. 0 means to wait
+   * without a limit.
+   */
+  public static final String KETTLE_CARTE_TRANS_POOL_TIMEOUT = "KETTLE_CARTE_TRANS_POOL_TIMEOUT";
+
+  /**
+   * The default number of seconds a request in pooled mode waits for a free instance of the transformation.
+   */
+  public static final int CARTE_TRANS_POOL_TIMEOUT = 30;
+
+  /**
+   * The number of log lines of each transformation a Carte server keeps to stream to its clients.
+   */
+  public static final String KETTLE_CARTE_LOG_STREAM_LINES = "KETTLE_CARTE_LOG_STREAM_LINES";
+
+  /**
+   * The default number of log lines of each transformation a Carte server keeps to stream to its clients.
+   */
+  public static final int CARTE_LOG_STREAM_LINES = 5000;
+
+  /**
+   * Set this variable to Y to move row by row steps next to the clustered steps feeding them when the statistics of
+   * previous runs in the performance log table show that less data would cross the network.
+   */
+  public static final String KETTLE_CLUSTER_COST_BASED_PLACEMENT = "KETTLE_CLUSTER_COST_BASED_PLACEMENT";
+
+  /**
+   * Set this variable to Y to let job entries that are executed for every input row remember the rows they completed so
+   * that a re-run after a failure with the same parameters skips them.
+   */
+  public static final String KETTLE_JOB_CHECKPOINTS = "KETTLE_JOB_CHECKPOINTS";
+
+  /**
+   * The directory in which the job entry checkpoints are kept. The default is the checkpoints folder in the Kettle
+   * directory.
+   */
+  public static final String KETTLE_JOB_CHECKPOINT_DIRECTORY = "KETTLE_JOB_CHECKPOINT_DIRECTORY";
+
   /**
    * Set this variable to Y to disable standard Kettle logging to the console. (stdout)
    */
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -25,11 +25,19 @@ package org.pentaho.di.core;
 import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.pentaho.di.core.exception.KettleEOFException;
 import org.pentaho.di.core.exception.KettleFileException;
@@ -37,21 +45,46 @@ import org.pentaho.di.core.logging.LogChannel;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.EnvUtil;
 import org.pentaho.di.version.BuildVersion;
 
 /**
  * This class caches database queries so that the same query doesn't get called twice. Queries are often launched to the
- * databases to get information on tables etc.
+ * databases to get information on tables etc.<br>
+ * <br>
+ * The cache can be used by many transformations at once without locking. It holds at most KETTLE_DB_CACHE_SIZE
+ * entries, the least recently used ones are removed first, and entries older than KETTLE_DB_CACHE_TTL seconds are
+ * looked up again. Saving the cache only appends the new entries to the file unless entries were removed. The file
+ * keeps the time every entry was looked up, so that entries also expire across runs.
  *
  * @author Matt
  * @since 15-01-04
  *
  */
 public class DBCache {
-  private static DBCache dbCache;
+  private static volatile DBCache dbCache;
 
-  private Hashtable<DBCacheEntry, RowMetaInterface> cache;
-  private boolean usecache;
+  private final Map<DBCacheEntry, CachedFields> cache = new ConcurrentHashMap<DBCacheEntry, CachedFields>();
+  private volatile boolean usecache;
+
+  private final String filename;
+  private final int maxSize;
+  private final long timeToLive;
+
+  /**
+   * The entries added since the cache was last loaded or saved, to append to the file.
+   */
+  private final ConcurrentLinkedQueue<DBCacheEntry> added = new ConcurrentLinkedQueue<DBCacheEntry>();
+
+  /**
+   * True if entries were removed or replaced since the cache was last saved, the whole file has to be written again.
+   */
+  private volatile boolean rewrite;
+
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
 
   private LogChannelInterface log;
 
@@ -77,10 +110,15 @@ public class DBCache {
     }
 
     RowMetaInterface copy = fields.clone();
-    cache.put( entry, copy );
+    if ( cache.put( entry, new CachedFields( copy, System.currentTimeMillis(), clock.incrementAndGet() ) ) != null ) {
+      rewrite = true;
+    } else {
+      added.add( entry );
+    }
 
-    // System.out.println("Cache store: "+copy.toStringMeta());
-    // System.out.println("Cache store entry="+entry.sql );
+    if ( maxSize > 0 && cache.size() > maxSize ) {
+      evict();
+    }
   }
 
   /**
@@ -95,15 +133,22 @@ public class DBCache {
       return null;
     }
 
-    RowMetaInterface fields = cache.get( entry );
-    if ( fields != null ) {
-      fields = fields.clone(); // Copy it again!
-
-      // System.out.println("Cache hit!!, fields="+fields.toStringMeta() );
-      // System.out.println("Cache hit entry="+entry.sql );
+    CachedFields cached = cache.get( entry );
+    if ( cached != null && timeToLive > 0 && System.currentTimeMillis() - cached.created > timeToLive ) {
+      // Expired: look it up again
+      if ( cache.remove( entry, cached ) ) {
+        rewrite = true;
+      }
+      cached = null;
+    }
+    if ( cached == null ) {
+      misses.incrementAndGet();
+      return null;
     }
 
-    return fields;
+    hits.incrementAndGet();
+    cached.lastUsed = clock.incrementAndGet();
+    return cached.fields.clone(); // Copy it again!
   }
 
   public int size() {
@@ -118,26 +163,102 @@ public class DBCache {
    */
   public void clear( String dbname ) {
     if ( dbname == null ) {
-      cache = new Hashtable<DBCacheEntry, RowMetaInterface>();
+      cache.clear();
+      added.clear();
+      rewrite = true;
       setActive();
     } else {
-      Enumeration<DBCacheEntry> keys = cache.keys();
-      while ( keys.hasMoreElements() ) {
-        DBCacheEntry entry = keys.nextElement();
+      for ( DBCacheEntry entry : cache.keySet() ) {
         if ( entry.sameDB( dbname ) ) {
           // Same name: remove it!
-          cache.remove( entry );
+          remove( entry );
+        }
+      }
+    }
+  }
+
+  /**
+   * Clear out the entries of a database that may refer to a table, for example after the layout of the table changed.
+   *
+   * @param dbname
+   *          The name of the database
+   * @param tableName
+   *          The name of the table, with or without schema. If null all entries of the database are cleared.
+   */
+  public void clear( String dbname, String tableName ) {
+    if ( tableName == null ) {
+      clear( dbname );
+      return;
+    }
+    for ( DBCacheEntry entry : cache.keySet() ) {
+      if ( entry.sameDB( dbname ) && entry.refersToTable( tableName ) ) {
+        remove( entry );
+      }
+    }
+  }
+
+  private void remove( DBCacheEntry entry ) {
+    if ( cache.remove( entry ) != null ) {
+      rewrite = true;
+    }
+  }
+
+  /**
+   * Remove the least recently used entries, a tenth of the maximum size at once so this doesn't happen at every put.
+   */
+  private void evict() {
+    if ( !evictionLock.tryLock() ) {
+      return; // Another thread is doing it already
+    }
+    try {
+      int target = maxSize - Math.max( 1, maxSize / 10 );
+      if ( cache.size() <= maxSize ) {
+        return;
+      }
+      List<Map.Entry<DBCacheEntry, CachedFields>> entries =
+        new ArrayList<Map.Entry<DBCacheEntry, CachedFields>>( cache.entrySet() );
+      Collections.sort( entries, new Comparator<Map.Entry<DBCacheEntry, CachedFields>>() {
+        @Override
+        public int compare( Map.Entry<DBCacheEntry, CachedFields> o1, Map.Entry<DBCacheEntry, CachedFields> o2 ) {
+          return Long.compare( o1.getValue().lastUsed, o2.getValue().lastUsed );
         }
+      } );
+      for ( int i = 0; i < entries.size() && cache.size() > target; i++ ) {
+        remove( entries.get( i ).getKey() );
       }
+    } finally {
+      evictionLock.unlock();
     }
   }
 
+  /**
+   * @return the number of times the fields of a query were found in the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of times the fields of a query weren't found in the cache
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
   public String getFilename() {
-    return Const.getKettleDirectory()
-      + Const.FILE_SEPARATOR + "db.cache-" + BuildVersion.getInstance().getVersion();
+    return filename;
   }
 
   private DBCache() throws KettleFileException {
+    this( Const.getKettleDirectory() + Const.FILE_SEPARATOR + "db.cache2-" + BuildVersion.getInstance().getVersion(),
+      Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_DB_CACHE_SIZE ), Const.DB_CACHE_SIZE ),
+      Const.toLong( EnvUtil.getSystemProperty( Const.KETTLE_DB_CACHE_TTL ), 0L ) * 1000L );
+  }
+
+  DBCache( String filename, int maxSize, long timeToLive ) throws KettleFileException {
+    this.filename = filename;
+    this.maxSize = maxSize;
+    this.timeToLive = timeToLive;
     try {
       clear( null );
 
@@ -145,7 +266,6 @@ public class DBCache {
       //
       log = new LogChannel( "DBCache" );
 
-      String filename = getFilename();
       File file = new File( filename );
       if ( file.canRead() ) {
         log.logDetailed( "Loading database cache from file: [" + filename + "]" );
@@ -161,10 +281,12 @@ public class DBCache {
             while ( true ) {
               DBCacheEntry entry = new DBCacheEntry( dis );
               RowMetaInterface row = new RowMeta( dis );
-              cache.put( entry, row );
+              long created = dis.readLong();
+              // Entries appended later replace the earlier ones
+              cache.put( entry, new CachedFields( row, created, clock.incrementAndGet() ) );
               counter++;
             }
-          } catch ( KettleEOFException eof ) {
+          } catch ( KettleEOFException | EOFException eof ) {
             log.logDetailed( "We read " + counter + " cached rows from the database cache!" );
           }
         } catch ( Exception e ) {
@@ -174,6 +296,8 @@ public class DBCache {
             dis.close();
           }
         }
+        // The file holds exactly the cache, unless replaced entries were read
+        rewrite = counter != cache.size();
       } else {
         log.logDetailed( "The database cache doesn't exist yet." );
       }
@@ -182,41 +306,59 @@ public class DBCache {
     }
   }
 
-  public void saveCache() throws KettleFileException {
+  /**
+   * Save the cache to its file. If no entries were removed since the cache was loaded or last saved, only the new
+   * entries are appended to the file.
+   *
+   * @throws KettleFileException
+   */
+  public synchronized void saveCache() throws KettleFileException {
     try {
       // Serialization support for the DB cache
       //
-      String filename = getFilename();
       File file = new File( filename );
       if ( !file.exists() || file.canWrite() ) {
         FileOutputStream fos = null;
         DataOutputStream dos = null;
 
         try {
-          fos = new FileOutputStream( file );
+          boolean append = !rewrite && file.exists();
+          List<DBCacheEntry> entries = new ArrayList<DBCacheEntry>();
+          if ( append ) {
+            for ( DBCacheEntry entry = added.poll(); entry != null; entry = added.poll() ) {
+              entries.add( entry );
+            }
+            if ( entries.isEmpty() ) {
+              return; // Nothing changed
+            }
+          } else {
+            rewrite = false;
+            added.clear();
+            entries.addAll( cache.keySet() );
+          }
+
+          fos = new FileOutputStream( file, append );
           dos = new DataOutputStream( new BufferedOutputStream( fos, 10000 ) );
 
           int counter = 0;
-          boolean ok = true;
+          for ( DBCacheEntry entry : entries ) {
+            // Save the corresponding row as well.
+            CachedFields cached = cache.get( entry );
+            if ( cached == null ) {
+              continue; // Removed meanwhile
+            }
 
-          Enumeration<DBCacheEntry> keys = cache.keys();
-          while ( ok && keys.hasMoreElements() ) {
             // Save the database cache entry
-            DBCacheEntry entry = keys.nextElement();
             entry.write( dos );
-
-            // Save the corresponding row as well.
-            RowMetaInterface rowMeta = get( entry );
-            if ( rowMeta != null ) {
-              rowMeta.writeMeta( dos );
-              counter++;
-            } else {
-              throw new KettleFileException( "The database cache contains an empty row. We can't save this!" );
-            }
+            cached.fields.writeMeta( dos );
+            dos.writeLong( cached.created );
+            counter++;
           }
 
           log.logDetailed( "We wrote " + counter + " cached rows to the database cache!" );
         } catch ( Exception e ) {
+          // Write the whole file the next time
+          rewrite = true;
           throw new Exception( e );
         } finally {
           if ( dos != null ) {
@@ -238,15 +380,34 @@ public class DBCache {
    * @throws KettleFileException
    */
   public static final DBCache getInstance() {
-    if ( dbCache != null ) {
-      return dbCache;
+    DBCache instance = dbCache;
+    if ( instance != null ) {
+      return instance;
     }
-    try {
-      dbCache = new DBCache();
-    } catch ( KettleFileException kfe ) {
-      throw new RuntimeException( "Unable to create the database cache: " + kfe.getMessage() );
+    synchronized ( DBCache.class ) {
+      if ( dbCache == null ) {
+        try {
+          dbCache = new DBCache();
+        } catch ( KettleFileException kfe ) {
+          throw new RuntimeException( "Unable to create the database cache: " + kfe.getMessage() );
+        }
+      }
+      return dbCache;
     }
-    return dbCache;
   }
 
+  /**
+   * The fields of a query with the time they were looked up and the moment they were last used.
+   */
+  private static class CachedFields {
+    private final RowMetaInterface fields;
+    private final long created;
+    private volatile long lastUsed;
+
+    CachedFields( RowMetaInterface fields, long created, long lastUsed ) {
+      this.fields = fields;
+      this.created = created;
+      this.lastUsed = lastUsed;
+    }
+  }
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -69,6 +69,54 @@ public class DBCacheEntry {
     return false;
   }
 
+  /**
+   * See if the SQL of the entry may refer to a table, so the entry can be removed when the table changes.
+   *
+   * @param tableName
+   *          the name of the table, with or without schema and quotes
+   * @return true if the name of the table appears as a separate word in the SQL
+   */
+  public boolean refersToTable( String tableName ) {
+    if ( sql == null || tableName == null ) {
+      return false;
+    }
+    // The schema is left out, the SQL may refer to the table without it
+    String table = stripQuotes( tableName ).trim();
+    int dot = table.lastIndexOf( '.' );
+    if ( dot >= 0 ) {
+      table = table.substring( dot + 1 );
+    }
+    if ( table.isEmpty() ) {
+      return false;
+    }
+    String text = stripQuotes( sql );
+    int index = text.indexOf( table );
+    while ( index >= 0 ) {
+      int end = index + table.length();
+      if ( ( index == 0 || !isNamePart( text.charAt( index - 1 ) ) )
+        && ( end == text.length() || !isNamePart( text.charAt( end ) ) ) ) {
+        return true;
+      }
+      index = text.indexOf( table, index + 1 );
+    }
+    return false;
+  }
+
+  private static String stripQuotes( String name ) {
+    StringBuilder stripped = new StringBuilder( name.length() );
+    for ( int i = 0; i < name.length(); i++ ) {
+      char c = name.charAt( i );
+      if ( c != '"' && c != '`' && c != '[' && c != ']' ) {
+        stripped.append( Character.toLowerCase( c ) );
+      }
+    }
+    return stripped.toString();
+  }
+
+  private static boolean isNamePart( char c ) {
+    return Character.isLetterOrDigit( c ) || c == '_' || c == '$' || c == '#';
+  }
+
   @Override
   public int hashCode() {
     if ( ( 0 >= hashCode ) && ( null != dbname ) && ( null != sql ) ) {
@@ -3,7 +3,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -1734,6 +1734,77 @@ public abstract class BaseDatabaseMeta implements Cloneable, DatabaseInterfaceEx
     return "insert into " + schemaTable + "(" + keyField + ", " + versionField + ") values (0, 1)";
   }
 
+  /**
+   * Get a MERGE statement inserting a row or updating the changed values of the row with the same keys.
+   *
+   * @param schemaTable
+   *          the quoted schema-table name
+   * @param keyColumns
+   *          the quoted key columns
+   * @param columns
+   *          the quoted columns, their values are the parameters of the statement
+   * @param updateColumns
+   *          the quoted columns to update, possibly none
+   * @param sourceFrom
+   *          the FROM clause selecting the parameters as a single row, like " FROM dual", or an empty string
+   * @param conditionInMatch
+   *          true to put the condition on the changed values in the WHEN MATCHED clause, false to put it in a WHERE
+   *          clause of the update
+   * @return the MERGE statement
+   * @see DatabaseInterface#getSQLUpsert(String, String[], String[], String[])
+   */
+  protected String getSQLMerge( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns,
+    String sourceFrom, boolean conditionInMatch ) {
+    StringBuilder sql = new StringBuilder( "MERGE INTO " ).append( schemaTable ).append( " kettle_target" );
+    sql.append( " USING ( SELECT " );
+    for ( int i = 0; i < columns.length; i++ ) {
+      sql.append( i > 0 ? ", " : "" ).append( "? " ).append( columns[i] );
+    }
+    sql.append( sourceFrom ).append( " ) kettle_source ON ( " );
+    for ( int i = 0; i < keyColumns.length; i++ ) {
+      sql.append( i > 0 ? " AND " : "" ).append( "kettle_target." ).append( keyColumns[i] );
+      sql.append( " = kettle_source." ).append( keyColumns[i] );
+    }
+    sql.append( " )" );
+    if ( updateColumns.length > 0 ) {
+      StringBuilder changed = new StringBuilder();
+      for ( int i = 0; i < updateColumns.length; i++ ) {
+        changed.append( i > 0 ? " OR " : "" );
+        changed.append( getSQLValuesDiffer( "kettle_target." + updateColumns[i], "kettle_source." + updateColumns[i] ) );
+      }
+      sql.append( " WHEN MATCHED" );
+      if ( conditionInMatch ) {
+        sql.append( " AND ( " ).append( changed ).append( " )" );
+      }
+      sql.append( " THEN UPDATE SET " );
+      for ( int i = 0; i < updateColumns.length; i++ ) {
+        sql.append( i > 0 ? ", " : "" ).append( updateColumns[i] );
+        sql.append( " = kettle_source." ).append( updateColumns[i] );
+      }
+      if ( !conditionInMatch ) {
+        sql.append( " WHERE ( " ).append( changed ).append( " )" );
+      }
+    }
+    sql.append( " WHEN NOT MATCHED THEN INSERT ( " );
+    for ( int i = 0; i < columns.length; i++ ) {
+      sql.append( i > 0 ? ", " : "" ).append( columns[i] );
+    }
+    sql.append( " ) VALUES ( " );
+    for ( int i = 0; i < columns.length; i++ ) {
+      sql.append( i > 0 ? ", " : "" ).append( "kettle_source." ).append( columns[i] );
+    }
+    sql.append( " )" );
+    return sql.toString();
+  }
+
+  /**
+   * @return a condition that is true when two values differ, a null value being different from any other value
+   */
+  protected String getSQLValuesDiffer( String left, String right ) {
+    return "( " + left + " <> " + right + " OR ( " + left + " IS NULL AND " + right + " IS NOT NULL ) OR ( " + left
+      + " IS NOT NULL AND " + right + " IS NULL ) )";
+  }
+
   /**
    * @return true if this is a relational database you can explore. Return false for SAP, PALO, etc.
    */
@@ -0,0 +1,599 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.i18n.BaseMessages;
+
+/**
+ * Limits the number of database connections open at the same time in this JVM, in total and per connection name.<br>
+ * <br>
+ * A server running many transformations at once can otherwise open more connections than the database accepts. When
+ * a limit is reached, a new connection waits in a fair (first come, first served) queue until another connection is
+ * closed or the wait timeout expires. The limits are read from the KETTLE_MAX_DB_CONNECTIONS,
+ * KETTLE_MAX_DB_CONNECTIONS_PER_DATABASE and KETTLE_DB_CONNECTION_LIMITS variables, there are no limits by default.
+ * The number of active and waiting connections and the time spent waiting are kept per connection name.<br>
+ * <br>
+ * A transformation reserves the connections its steps open all at once before they are initialized, see
+ * {@link #reserve(String, Map)}. Steps initialize in parallel, so when every connection waits on its own,
+ * transformations holding a part of their connections can wait on each other until the timeout. A transformation
+ * needing more connections than a limit allows fails right away.
+ */
+public class ConnectionLimiter {
+
+  private static Class<?> PKG = Database.class; // for i18n purposes, needed by Translator2!!
+
+  private static final ConnectionLimiter instance = new ConnectionLimiter();
+
+  private final Map<String, Limit> databaseLimits = new ConcurrentHashMap<String, Limit>();
+  private Limit globalLimit;
+
+  private final ConcurrentMap<String, ConnectionStatistics> statistics =
+    new ConcurrentHashMap<String, ConnectionStatistics>();
+
+  private final Map<String, Reservation> reservations = new ConcurrentHashMap<String, Reservation>();
+
+  public static ConnectionLimiter getInstance() {
+    return instance;
+  }
+
+  /**
+   * Wait until a connection to the database can be opened within the configured limits.
+   *
+   * @param connectionName
+   *          the name of the database connection
+   * @return the permit to release once the connection is closed
+   * @throws KettleDatabaseException
+   *           if the wait timed out or was interrupted
+   */
+  public Permit acquire( String connectionName ) throws KettleDatabaseException {
+    return acquire( connectionName, getMaxConnections(), getMaxConnections( connectionName ), getWaitTimeout() );
+  }
+
+  /**
+   * Get a permit from the reservation of the transformation the connection is opened for or else wait until a
+   * connection to the database can be opened within the configured limits.
+   *
+   * @param connectionName
+   *          the name of the database connection
+   * @param parent
+   *          the object opening the connection, its parents are searched for a reservation
+   * @return the permit to release once the connection is closed
+   * @throws KettleDatabaseException
+   *           if the wait timed out or was interrupted
+   */
+  public Permit acquire( String connectionName, LoggingObjectInterface parent ) throws KettleDatabaseException {
+    Reservation reservation = findReservation( parent );
+    if ( reservation != null ) {
+      Permit permit = reservation.take( Const.NVL( connectionName, "" ) );
+      if ( permit != null ) {
+        return permit;
+      }
+    }
+    return acquire( connectionName );
+  }
+
+  /**
+   * Wait until a connection to the database can be opened within the given limits.
+   *
+   * @param connectionName
+   *          the name of the database connection
+   * @param maxConnections
+   *          the maximum number of connections to all databases, 0 for no limit
+   * @param maxDatabaseConnections
+   *          the maximum number of connections with the name, 0 for no limit
+   * @param timeoutMillis
+   *          the maximum time to wait, 0 to wait without a limit
+   * @return the permit to release once the connection is closed
+   * @throws KettleDatabaseException
+   *           if the wait timed out or was interrupted
+   */
+  public Permit acquire( String connectionName, int maxConnections, int maxDatabaseConnections, long timeoutMillis )
+    throws KettleDatabaseException {
+    String name = Const.NVL( connectionName, "" );
+    ConnectionStatistics connectionStatistics = getStatistics( name );
+    Semaphore databaseSemaphore = getDatabaseSemaphore( name, maxDatabaseConnections );
+    Semaphore globalSemaphore = getGlobalSemaphore( maxConnections );
+    long timeout = timeoutMillis > 0 ? timeoutMillis : Long.MAX_VALUE;
+
+    long start = System.currentTimeMillis();
+    boolean databaseAcquired = false;
+    boolean globalAcquired = false;
+    connectionStatistics.waiting.incrementAndGet();
+    try {
+      // Always the database first and then the global limit, so the waits can't block each other
+      databaseAcquired = databaseSemaphore == null || databaseSemaphore.tryAcquire( timeout, TimeUnit.MILLISECONDS );
+      if ( databaseAcquired ) {
+        long remaining = Math.max( 0L, timeout - ( System.currentTimeMillis() - start ) );
+        globalAcquired = globalSemaphore == null || globalSemaphore.tryAcquire( remaining, TimeUnit.MILLISECONDS );
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      release( databaseAcquired ? databaseSemaphore : null, null );
+      throw new KettleDatabaseException( BaseMessages.getString( PKG,
+        "ConnectionLimiter.Error.InterruptedWaitingForConnection", name ), e );
+    } finally {
+      connectionStatistics.waiting.decrementAndGet();
+    }
+
+    if ( !databaseAcquired || !globalAcquired ) {
+      release( databaseAcquired ? databaseSemaphore : null, null );
+      connectionStatistics.timeouts.incrementAndGet();
+      if ( !databaseAcquired ) {
+        throw new KettleDatabaseException( BaseMessages.getString( PKG,
+          "ConnectionLimiter.Error.DatabaseConnectionLimitReached", name, maxDatabaseConnections,
+          timeoutMillis / 1000 ) );
+      }
+      throw new KettleDatabaseException( BaseMessages.getString( PKG,
+        "ConnectionLimiter.Error.ConnectionLimitReached", name, maxConnections, timeoutMillis / 1000 ) );
+    }
+
+    connectionStatistics.acquired( System.currentTimeMillis() - start );
+    return new Permit( connectionStatistics, databaseSemaphore, globalSemaphore );
+  }
+
+  /**
+   * Reserve the connections a transformation opens, all at once, within the configured limits.
+   *
+   * @param owner
+   *          the log channel id of the transformation, the connections opened by its steps use the reservation
+   * @param connections
+   *          the number of connections per connection name
+   * @return the reservation to close once the transformation finished or null if no limit applies to the connections
+   * @throws KettleDatabaseException
+   *           if more connections are needed than a limit allows, if the wait timed out or was interrupted
+   */
+  public Reservation reserve( String owner, Map<String, Integer> connections ) throws KettleDatabaseException {
+    Map<String, Integer> maxDatabaseConnections = new HashMap<String, Integer>();
+    for ( String connectionName : connections.keySet() ) {
+      maxDatabaseConnections.put( Const.NVL( connectionName, "" ), getMaxConnections( connectionName ) );
+    }
+    return reserve( owner, connections, getMaxConnections(), maxDatabaseConnections, getWaitTimeout() );
+  }
+
+  /**
+   * Reserve the connections a transformation opens, all at once, within the given limits. The databases are always
+   * acquired in the order of their names and then the global limit, so reservations can't block each other.
+   *
+   * @param owner
+   *          the log channel id of the transformation, the connections opened by its steps use the reservation
+   * @param connections
+   *          the number of connections per connection name
+   * @param maxConnections
+   *          the maximum number of connections to all databases, 0 for no limit
+   * @param maxDatabaseConnections
+   *          the maximum number of connections per connection name, 0 or none for no limit
+   * @param timeoutMillis
+   *          the maximum time to wait, 0 to wait without a limit
+   * @return the reservation to close once the transformation finished or null if no limit applies to the connections
+   * @throws KettleDatabaseException
+   *           if more connections are needed than a limit allows, if the wait timed out or was interrupted
+   */
+  public Reservation reserve( String owner, Map<String, Integer> connections, int maxConnections,
+    Map<String, Integer> maxDatabaseConnections, long timeoutMillis ) throws KettleDatabaseException {
+    Map<String, Integer> needed = new TreeMap<String, Integer>();
+    int total = 0;
+    for ( Map.Entry<String, Integer> entry : connections.entrySet() ) {
+      if ( entry.getValue() != null && entry.getValue() > 0 ) {
+        needed.put( Const.NVL( entry.getKey(), "" ), entry.getValue() );
+        total += entry.getValue();
+      }
+    }
+
+    // Waiting for more connections than a limit allows would never succeed
+    //
+    Map<String, Semaphore> databaseSemaphores = new LinkedHashMap<String, Semaphore>();
+    for ( Map.Entry<String, Integer> entry : needed.entrySet() ) {
+      Integer limit = maxDatabaseConnections.get( entry.getKey() );
+      int maximum = limit == null ? 0 : limit;
+      if ( maximum > 0 && entry.getValue() > maximum ) {
+        throw new KettleDatabaseException( BaseMessages.getString( PKG,
+          "ConnectionLimiter.Error.TooManyDatabaseConnectionsNeeded", entry.getKey(), entry.getValue(), maximum ) );
+      }
+      databaseSemaphores.put( entry.getKey(), getDatabaseSemaphore( entry.getKey(), maximum ) );
+    }
+    if ( maxConnections > 0 && total > maxConnections ) {
+      throw new KettleDatabaseException( BaseMessages.getString( PKG,
+        "ConnectionLimiter.Error.TooManyConnectionsNeeded", total, maxConnections ) );
+    }
+    Semaphore globalSemaphore = getGlobalSemaphore( maxConnections );
+    boolean limited = globalSemaphore != null;
+    for ( Semaphore semaphore : databaseSemaphores.values() ) {
+      limited |= semaphore != null;
+    }
+    if ( !limited ) {
+      return null;
+    }
+
+    long timeout = timeoutMillis > 0 ? timeoutMillis : Long.MAX_VALUE;
+    long start = System.currentTimeMillis();
+    Map<Semaphore, Integer> acquired = new LinkedHashMap<Semaphore, Integer>();
+    String failedName = null;
+    try {
+      for ( Map.Entry<String, Semaphore> entry : databaseSemaphores.entrySet() ) {
+        Semaphore semaphore = entry.getValue();
+        int nr = needed.get( entry.getKey() );
+        long remaining = Math.max( 0L, timeout - ( System.currentTimeMillis() - start ) );
+        if ( semaphore != null ) {
+          if ( !semaphore.tryAcquire( nr, remaining, TimeUnit.MILLISECONDS ) ) {
+            failedName = entry.getKey();
+            break;
+          }
+          acquired.put( semaphore, nr );
+        }
+      }
+      if ( failedName == null && globalSemaphore != null ) {
+        long remaining = Math.max( 0L, timeout - ( System.currentTimeMillis() - start ) );
+        if ( globalSemaphore.tryAcquire( total, remaining, TimeUnit.MILLISECONDS ) ) {
+          acquired.put( globalSemaphore, total );
+        } else {
+          failedName = "";
+        }
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      releaseAll( acquired );
+      throw new KettleDatabaseException( BaseMessages.getString( PKG,
+        "ConnectionLimiter.Error.InterruptedWaitingForConnections", total ), e );
+    }
+
+    if ( failedName != null ) {
+      releaseAll( acquired );
+      if ( failedName.length() > 0 ) {
+        getStatistics( failedName ).timeouts.incrementAndGet();
+        throw new KettleDatabaseException( BaseMessages.getString( PKG,
+          "ConnectionLimiter.Error.DatabaseConnectionsNotAvailable", failedName, needed.get( failedName ),
+          timeoutMillis / 1000 ) );
+      }
+      throw new KettleDatabaseException( BaseMessages.getString( PKG,
+        "ConnectionLimiter.Error.ConnectionsNotAvailable", total, timeoutMillis / 1000 ) );
+    }
+
+    Reservation reservation = new Reservation( this, owner, needed, databaseSemaphores, globalSemaphore );
+    if ( owner != null ) {
+      reservations.put( owner, reservation );
+    }
+    return reservation;
+  }
+
+  /**
+   * @return a snapshot of the statistics of the connections, sorted by connection name
+   */
+  public Map<String, ConnectionStatistics> getStatistics() {
+    return new TreeMap<String, ConnectionStatistics>( statistics );
+  }
+
+  /**
+   * Forget the limits and statistics, connections open at the time still release their permits safely.
+   */
+  public synchronized void clear() {
+    databaseLimits.clear();
+    globalLimit = null;
+    statistics.clear();
+    reservations.clear();
+  }
+
+  public static int getMaxConnections() {
+    return Math.max( 0, Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_MAX_DB_CONNECTIONS ), 0 ) );
+  }
+
+  /**
+   * @return the maximum number of connections with the name from KETTLE_DB_CONNECTION_LIMITS or else
+   *         KETTLE_MAX_DB_CONNECTIONS_PER_DATABASE, 0 for no limit
+   */
+  public static int getMaxConnections( String connectionName ) {
+    String limits = EnvUtil.getSystemProperty( Const.KETTLE_DB_CONNECTION_LIMITS );
+    if ( !Utils.isEmpty( limits ) && connectionName != null ) {
+      for ( String limit : limits.split( "," ) ) {
+        int separator = limit.lastIndexOf( '=' );
+        if ( separator > 0 && limit.substring( 0, separator ).trim().equalsIgnoreCase( connectionName.trim() ) ) {
+          return Math.max( 0, Const.toInt( limit.substring( separator + 1 ).trim(), 0 ) );
+        }
+      }
+    }
+    return Math.max( 0, Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_MAX_DB_CONNECTIONS_PER_DATABASE ), 0 ) );
+  }
+
+  /**
+   * @return the maximum time to wait for a connection in milliseconds, 0 to wait without a limit
+   */
+  public static long getWaitTimeout() {
+    int seconds =
+      Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_DB_CONNECTION_WAIT_TIMEOUT ),
+        Const.DB_CONNECTION_WAIT_TIMEOUT );
+    return Math.max( 0, seconds ) * 1000L;
+  }
+
+  private ConnectionStatistics getStatistics( String name ) {
+    ConnectionStatistics connectionStatistics = statistics.get( name );
+    if ( connectionStatistics == null ) {
+      connectionStatistics = new ConnectionStatistics();
+      ConnectionStatistics existing = statistics.putIfAbsent( name, connectionStatistics );
+      if ( existing != null ) {
+        connectionStatistics = existing;
+      }
+    }
+    return connectionStatistics;
+  }
+
+  /**
+   * A changed limit gets a new semaphore, the permits of the previous one are still released to that one.
+   */
+  private synchronized Semaphore getDatabaseSemaphore( String name, int maximum ) {
+    if ( maximum <= 0 ) {
+      databaseLimits.remove( name );
+      return null;
+    }
+    Limit limit = databaseLimits.get( name );
+    if ( limit == null || limit.maximum != maximum ) {
+      limit = new Limit( maximum );
+      databaseLimits.put( name, limit );
+    }
+    return limit.semaphore;
+  }
+
+  private synchronized Semaphore getGlobalSemaphore( int maximum ) {
+    if ( maximum <= 0 ) {
+      globalLimit = null;
+      return null;
+    }
+    if ( globalLimit == null || globalLimit.maximum != maximum ) {
+      globalLimit = new Limit( maximum );
+    }
+    return globalLimit.semaphore;
+  }
+
+  private Reservation findReservation( LoggingObjectInterface object ) {
+    // The depth limit guards against a cycle in the parents
+    for ( int depth = 0; object != null && depth < 100 && !reservations.isEmpty(); depth++ ) {
+      String logChannelId = object.getLogChannelId();
+      Reservation reservation = logChannelId == null ? null : reservations.get( logChannelId );
+      if ( reservation != null ) {
+        return reservation;
+      }
+      object = object.getParent();
+    }
+    return null;
+  }
+
+  private static void releaseAll( Map<Semaphore, Integer> acquired ) {
+    for ( Map.Entry<Semaphore, Integer> entry : acquired.entrySet() ) {
+      entry.getKey().release( entry.getValue() );
+    }
+  }
+
+  private static void release( Semaphore databaseSemaphore, Semaphore globalSemaphore ) {
+    if ( globalSemaphore != null ) {
+      globalSemaphore.release();
+    }
+    if ( databaseSemaphore != null ) {
+      databaseSemaphore.release();
+    }
+  }
+
+  private static class Limit {
+    private final int maximum;
+    private final Semaphore semaphore;
+
+    Limit( int maximum ) {
+      this.maximum = maximum;
+      this.semaphore = new Semaphore( maximum, true );
+    }
+  }
+
+  /**
+   * The connections reserved for a transformation. A permit taken from the reservation goes back to it when it is
+   * released, the permits are only released to the limits when the reservation is closed.
+   */
+  public static class Reservation {
+    private final ConnectionLimiter limiter;
+    private final String owner;
+    private final Map<String, Integer> available;
+    private final Map<String, Semaphore> databaseSemaphores;
+    private final Semaphore globalSemaphore;
+    private boolean closed;
+
+    private Reservation( ConnectionLimiter limiter, String owner, Map<String, Integer> reserved,
+      Map<String, Semaphore> databaseSemaphores, Semaphore globalSemaphore ) {
+      this.limiter = limiter;
+      this.owner = owner;
+      this.available = new HashMap<String, Integer>( reserved );
+      this.databaseSemaphores = databaseSemaphores;
+      this.globalSemaphore = globalSemaphore;
+    }
+
+    /**
+     * @return the number of connections with the name that can still be opened with the reservation
+     */
+    public synchronized int getAvailable( String connectionName ) {
+      Integer nr = available.get( connectionName );
+      return nr == null ? 0 : nr;
+    }
+
+    private synchronized Permit take( String connectionName ) {
+      int nr = getAvailable( connectionName );
+      if ( closed || nr == 0 ) {
+        return null;
+      }
+      available.put( connectionName, nr - 1 );
+      ConnectionStatistics connectionStatistics = limiter.getStatistics( connectionName );
+      connectionStatistics.acquired( 0L );
+      return new Permit( connectionStatistics, this, connectionName );
+    }
+
+    private synchronized void giveBack( String connectionName ) {
+      if ( closed ) {
+        ConnectionLimiter.release( databaseSemaphores.get( connectionName ), globalSemaphore );
+      } else {
+        available.put( connectionName, getAvailable( connectionName ) + 1 );
+      }
+    }
+
+    /**
+     * Release the connections that are not open, the ones that are open are released when they are closed. Closing
+     * it again has no effect.
+     */
+    public synchronized void close() {
+      if ( closed ) {
+        return;
+      }
+      closed = true;
+      if ( owner != null ) {
+        limiter.reservations.remove( owner );
+      }
+      for ( Map.Entry<String, Integer> entry : available.entrySet() ) {
+        for ( int i = 0; i < entry.getValue(); i++ ) {
+          ConnectionLimiter.release( databaseSemaphores.get( entry.getKey() ), globalSemaphore );
+        }
+      }
+      available.clear();
+    }
+  }
+
+  /**
+   * The right to keep a connection open, to be released exactly once when the connection is closed.
+   */
+  public static class Permit {
+    private final ConnectionStatistics connectionStatistics;
+    private final Semaphore databaseSemaphore;
+    private final Semaphore globalSemaphore;
+    private final Reservation reservation;
+    private final String connectionName;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit( ConnectionStatistics connectionStatistics, Semaphore databaseSemaphore,
+      Semaphore globalSemaphore ) {
+      this.connectionStatistics = connectionStatistics;
+      this.databaseSemaphore = databaseSemaphore;
+      this.globalSemaphore = globalSemaphore;
+      this.reservation = null;
+      this.connectionName = null;
+    }
+
+    private Permit( ConnectionStatistics connectionStatistics, Reservation reservation, String connectionName ) {
+      this.connectionStatistics = connectionStatistics;
+      this.databaseSemaphore = null;
+      this.globalSemaphore = null;
+      this.reservation = reservation;
+      this.connectionName = connectionName;
+    }
+
+    /**
+     * Release the permit, releasing it again has no effect.
+     */
+    public void release() {
+      if ( released.compareAndSet( false, true ) ) {
+        connectionStatistics.active.decrementAndGet();
+        if ( reservation != null ) {
+          reservation.giveBack( connectionName );
+        } else {
+          ConnectionLimiter.release( databaseSemaphore, globalSemaphore );
+        }
+      }
+    }
+
+    public boolean isReleased() {
+      return released.get();
+    }
+  }
+
+  /**
+   * The usage of the connections with one name.
+   */
+  public static class ConnectionStatistics {
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    private void acquired( long waitTime ) {
+      active.incrementAndGet();
+      acquired.incrementAndGet();
+      totalWaitTime.addAndGet( waitTime );
+      long max = maxWaitTime.get();
+      while ( waitTime > max && !maxWaitTime.compareAndSet( max, waitTime ) ) {
+        max = maxWaitTime.get();
+      }
+    }
+
+    /**
+     * @return the number of connections open
+     */
+    public int getActive() {
+      return active.get();
+    }
+
+    /**
+     * @return the number of connections waiting to be opened
+     */
+    public int getWaiting() {
+      return waiting.get();
+    }
+
+    /**
+     * @return the number of connections opened since the start
+     */
+    public long getAcquired() {
+      return acquired.get();
+    }
+
+    /**
+     * @return the number of connections that failed because the wait timed out
+     */
+    public long getTimeouts() {
+      return timeouts.get();
+    }
+
+    /**
+     * @return the total time in milliseconds the opened connections waited
+     */
+    public long getTotalWaitTime() {
+      return totalWaitTime.get();
+    }
+
+    /**
+     * @return the longest time in milliseconds a connection waited
+     */
+    public long getMaxWaitTime() {
+      return maxWaitTime.get();
+    }
+  }
+}
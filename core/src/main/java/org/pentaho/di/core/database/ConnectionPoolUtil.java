@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -24,6 +24,7 @@ package org.pentaho.di.core.database;
 
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.dbcp.ConnectionFactory;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.database.util.DatabaseUtil;
@@ -34,8 +35,14 @@ import org.pentaho.di.i18n.BaseMessages;
 
 import javax.sql.DataSource;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -67,6 +74,11 @@ public class ConnectionPoolUtil {
 
   private static ConcurrentMap<String, BasicDataSource> dataSources = new ConcurrentHashMap<String, BasicDataSource>();
 
+  /**
+   * The name of the database connection of every data source, to report the pool usage per connection.
+   */
+  private static ConcurrentMap<String, String> dataSourceConnectionNames = new ConcurrentHashMap<String, String>();
+
   // PDI-12947
   private static final ReentrantLock lock = new ReentrantLock();
 
@@ -263,6 +275,66 @@ public class ConnectionPoolUtil {
 
   }
 
+  /**
+   * A pool whose connections count against the limits of the {@link ConnectionLimiter} for as long as they are open,
+   * the idle ones included.
+   */
+  static class LimitedDataSource extends BasicDataSource {
+    private final String connectionName;
+
+    LimitedDataSource( String connectionName ) {
+      this.connectionName = connectionName;
+    }
+
+    @Override
+    protected ConnectionFactory createConnectionFactory() throws SQLException {
+      final ConnectionFactory connectionFactory = super.createConnectionFactory();
+      return new ConnectionFactory() {
+        @Override
+        public Connection createConnection() throws SQLException {
+          ConnectionLimiter.Permit permit;
+          try {
+            permit = ConnectionLimiter.getInstance().acquire( connectionName );
+          } catch ( KettleDatabaseException e ) {
+            throw new SQLException( e.getMessage(), e );
+          }
+          try {
+            return releaseOnClose( connectionFactory.createConnection(), permit );
+          } catch ( SQLException | RuntimeException e ) {
+            permit.release();
+            throw e;
+          }
+        }
+      };
+    }
+  }
+
+  /**
+   * @return the connection, releasing the permit when the connection is closed by the pool
+   */
+  @VisibleForTesting
+  static Connection releaseOnClose( final Connection connection, final ConnectionLimiter.Permit permit ) {
+    if ( connection == null ) {
+      permit.release();
+      return null;
+    }
+    return (Connection) Proxy.newProxyInstance( ConnectionPoolUtil.class.getClassLoader(),
+      new Class<?>[] { Connection.class }, new InvocationHandler() {
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+          try {
+            return method.invoke( connection, args );
+          } catch ( InvocationTargetException e ) {
+            throw e.getCause();
+          } finally {
+            if ( "close".equals( method.getName() ) && method.getParameterTypes().length == 0 ) {
+              permit.release();
+            }
+          }
+        }
+      } );
+  }
+
   /**
    * This method verifies that it's possible to get connection fron a datasource
    *
@@ -297,18 +369,36 @@ public class ConnectionPoolUtil {
       log.logBasic( BaseMessages.getString( PKG, "Database.CreatingConnectionPool", databaseMeta.getName() ) );
     }
 
-    BasicDataSource ds = new BasicDataSource();
+    BasicDataSource ds = new LimitedDataSource( databaseMeta.getName() );
     configureDataSource( ds, databaseMeta, partitionId, initialSize, maximumSize );
     // check if datasource is valid
     testDataSource( ds );
     // register data source
-    dataSources.put( getDataSourceName( databaseMeta, partitionId ), ds );
+    String dataSourceName = getDataSourceName( databaseMeta, partitionId );
+    dataSources.put( dataSourceName, ds );
+    dataSourceConnectionNames.put( dataSourceName, Const.NVL( databaseMeta.getName(), "" ) );
 
     if ( log.isBasic() ) {
       log.logBasic( BaseMessages.getString( PKG, "Database.CreatedConnectionPool", databaseMeta.getName() ) );
     }
   }
 
+  /**
+   * @param connectionName
+   *          the name of the database connection
+   * @return the number of idle connections in the pools of the database connection
+   */
+  public static int getIdleConnections( String connectionName ) {
+    int idle = 0;
+    for ( Map.Entry<String, String> entry : dataSourceConnectionNames.entrySet() ) {
+      BasicDataSource ds = dataSources.get( entry.getKey() );
+      if ( ds != null && entry.getValue().equals( connectionName ) ) {
+        idle += ds.getNumIdle();
+      }
+    }
+    return idle;
+  }
+
   protected static String buildPoolName( DatabaseMeta dbMeta, String partitionId ) {
     return dbMeta.getName() + Const.NVL( dbMeta.getDatabaseName(), "" )
         + Const.NVL( dbMeta.getHostname(),  ""  ) + Const.NVL( dbMeta.getDatabasePortNumberString(),  ""  )
@@ -3,7 +3,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -54,6 +54,8 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import javax.sql.DataSource;
+
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
@@ -147,12 +149,39 @@ public class Database implements VariableSpace, LoggingObjectInterface {
 
   private RowMetaInterface rowMeta;
 
+  /**
+   * Adapts the fetch size of the result set opened with openQuery(), null if the fetch size is fixed.
+   */
+  private FetchSizeTuner fetchSizeTuner;
+  private ResultSet tunedResultSet;
+
+  /**
+   * True if auto commit was disabled to stream the rows of the open query through a cursor.
+   */
+  private boolean autoCommitDisabledForQuery;
+
+  /**
+   * The prepared statements kept open to execute the same SQL again, null if statements aren't cached.
+   */
+  private PreparedStatementCache statementCache;
+
+  /**
+   * The permit of the connection limiter to release when the connection is closed, null without an open connection.
+   */
+  private ConnectionLimiter.Permit connectionPermit;
+
   private int written;
 
+  /**
+   * The rows the last statement run by insertRow() changed, -1 if it was added to a batch.
+   */
+  private int lastUpdateCount = -1;
+
   private LogChannelInterface log;
   private LoggingObjectInterface parentLoggingObject;
   private static final String[] TABLE_TYPES_TO_GET = { "TABLE", "VIEW" };
   private static final String TABLES_META_DATA_TABLE_NAME = "TABLE_NAME";
+  private static final long DEFAULT_FETCH_BUFFER_SIZE = 16 * 1024 * 1024;
 
   /**
    * Number of times a connection was opened using this object. Only used in the context of a database connection map
@@ -301,6 +330,53 @@ public class Database implements VariableSpace, LoggingObjectInterface {
     rowlimit = rows;
   }
 
+  /**
+   * Keep the statements executed with parameters by execStatement() and openQuery() open to execute the same SQL again
+   * without preparing it again. SQL without parameters, like DDL or SQL with literal values, is never cached.
+   *
+   * @param size the maximum number of statements to keep open, 0 to stop caching statements
+   * @throws KettleDatabaseException if the statements that were cached can't be closed
+   */
+  public void setStatementCacheSize( int size ) throws KettleDatabaseException {
+    if ( statementCache != null && statementCache.getMaxSize() == size ) {
+      return;
+    }
+    clearStatementCache();
+    statementCache = size > 0 ? new PreparedStatementCache( size ) : null;
+  }
+
+  /**
+   * @return the cache of prepared statements with its hit and miss counts or null if statements aren't cached
+   */
+  public PreparedStatementCache getStatementCache() {
+    return statementCache;
+  }
+
+  private void clearStatementCache() throws KettleDatabaseException {
+    if ( statementCache != null ) {
+      try {
+        statementCache.clear();
+      } catch ( SQLException e ) {
+        throw new KettleDatabaseException( "Error closing the cached prepared statements", e );
+      }
+    }
+  }
+
+  /**
+   * @return the open statement from the cache or null if the statement of the SQL isn't cached or has no parameters
+   */
+  private PreparedStatement getCachedStatement( String sql, boolean hasParameters ) throws SQLException {
+    if ( statementCache == null || !hasParameters ) {
+      return null;
+    }
+    PreparedStatement statement = statementCache.get( sql );
+    if ( statement == null ) {
+      statement = connection.prepareStatement( sql );
+      statementCache.put( sql, statement );
+    }
+    return statement;
+  }
+
   /**
    * @return Returns the prepStatementInsert.
    */
@@ -417,6 +493,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       throw new KettleDatabaseException( "No valid database connection defined!" );
     }
 
+    boolean connectionOpened = false;
     try {
       DataSourceProviderInterface dsp = DataSourceProviderFactory.getDataSourceProviderInterface();
       if ( dsp == null ) {
@@ -428,7 +505,9 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       if ( databaseMeta.getAccessType() == DatabaseMeta.TYPE_ACCESS_JNDI ) {
         String jndiName = environmentSubstitute( databaseMeta.getDatabaseName() );
         try {
-          this.connection = dsp.getNamedDataSource( jndiName, DatasourceType.JNDI ).getConnection();
+          DataSource dataSource = dsp.getNamedDataSource( jndiName, DatasourceType.JNDI );
+          acquireConnectionPermit();
+          this.connection = dataSource.getConnection();
         } catch ( DataSourceNamingException e ) {
           log.logError( "Unable to find datasource by JNDI name: " + jndiName, e );
           throw e;
@@ -438,10 +517,13 @@ public class Database implements VariableSpace, LoggingObjectInterface {
           String name = databaseMeta.getName();
           try {
             try {
-              this.connection = dsp.getNamedDataSource( name, DatasourceType.POOLED ).getConnection();
+              DataSource dataSource = dsp.getNamedDataSource( name, DatasourceType.POOLED );
+              acquireConnectionPermit();
+              this.connection = dataSource.getConnection();
             } catch ( UnsupportedOperationException e ) {
               // DatabaseUtil doesn't support pooled DS,
-              // use legacy routine
+              // use legacy routine.
+              // The connections of this pool count against the connection limits themselves, the idle ones included
               this.connection = ConnectionPoolUtil.getConnection( log, databaseMeta, partitionId );
             }
             if ( getConnection().getAutoCommit() != isAutoCommit() ) {
@@ -453,9 +535,11 @@ public class Database implements VariableSpace, LoggingObjectInterface {
           }
         } else {
           // using non-jndi and non-pooled connection -- just a simple JDBC
+          acquireConnectionPermit();
           connectUsingClass( databaseMeta.getDriverClass(), partitionId );
         }
       }
+      connectionOpened = true;
 
       // See if we need to execute extra SQL statement...
       String sql = environmentSubstitute( databaseMeta.getConnectSQL() );
@@ -469,6 +553,9 @@ public class Database implements VariableSpace, LoggingObjectInterface {
         }
       }
     } catch ( Exception e ) {
+      if ( !connectionOpened ) {
+        releaseConnectionPermit();
+      }
       throw new KettleDatabaseException( "Error occurred while trying to connect to the database", e );
     }
   }
@@ -591,11 +678,14 @@ public class Database implements VariableSpace, LoggingObjectInterface {
    */
   public synchronized void disconnect() {
     if ( connection == null ) {
+      releaseConnectionPermit();
       return; // Nothing to do...
     }
     try {
       if ( connection.isClosed() ) {
-        return; // Nothing to do...
+        // Dropped by the server or the network: nothing to close, but the connection no longer counts
+        releaseConnectionPermit();
+        return;
       }
     } catch ( SQLException ex ) {
       // cannot do anything about this but log it
@@ -653,6 +743,21 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       }
       pstmt_seq = null;
     }
+    if ( statementCache != null ) {
+      try {
+        statementCache.clear();
+      } catch ( SQLException ex ) {
+        // cannot do anything about this but log it
+        log.logError( "Error closing cached statements:" + Const.CR + ex.getMessage() );
+        log.logError( Const.getStackTracker( ex ) );
+      }
+    }
+
+    // A query was left open: turn auto commit back on, committing what was done meanwhile
+    //
+    if ( autoCommitDisabledForQuery ) {
+      stopStreamingQuietly();
+    }
 
     // See if there are other steps using this connection in a connection
     // group.
@@ -690,6 +795,32 @@ public class Database implements VariableSpace, LoggingObjectInterface {
     }
   }
 
+  /**
+   * @param sql
+   *          a CREATE, ALTER or DROP TABLE statement
+   * @return the name of the table the statement changes or null if it can't be determined
+   */
+  static String getTableNameOfDDL( String sql ) {
+    String[] words = sql.trim().split( "\\s+" );
+    int index = 2; // after ... TABLE
+    if ( words.length > index + 1 && words[index].equalsIgnoreCase( "IF" ) ) {
+      // IF EXISTS or IF NOT EXISTS
+      index += words[index + 1].equalsIgnoreCase( "NOT" ) ? 3 : 2;
+    }
+    if ( words.length <= index ) {
+      return null;
+    }
+    String tableName = words[index];
+    int end = tableName.indexOf( '(' );
+    if ( end >= 0 ) {
+      tableName = tableName.substring( 0, end );
+    }
+    while ( tableName.endsWith( ";" ) ) {
+      tableName = tableName.substring( 0, tableName.length() - 1 );
+    }
+    return tableName.isEmpty() ? null : tableName;
+  }
+
   /**
    * Only for unique connections usage, typically you use disconnect() to disconnect() from the database.
    *
@@ -709,6 +840,31 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       }
     } catch ( SQLException e ) {
       throw new KettleDatabaseException( "Error disconnecting from database '" + toString() + "'", e );
+    } finally {
+      releaseConnectionPermit();
+    }
+  }
+
+  /**
+   * Used for junits in DatabaseUnitTest
+   */
+  void setConnectionPermit( ConnectionLimiter.Permit connectionPermit ) {
+    this.connectionPermit = connectionPermit;
+  }
+
+  /**
+   * Wait for room within the maximum number of connections to the database, unless a permit was given already.
+   */
+  private void acquireConnectionPermit() throws KettleDatabaseException {
+    if ( connectionPermit == null ) {
+      connectionPermit = ConnectionLimiter.getInstance().acquire( databaseMeta.getName(), parentLoggingObject );
+    }
+  }
+
+  private void releaseConnectionPermit() {
+    if ( connectionPermit != null ) {
+      connectionPermit.release();
+      connectionPermit = null;
     }
   }
 
@@ -1266,6 +1422,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
     String debug = "insertRow start";
     boolean rowsAreSafe = false;
     boolean isBatchUpdate = false;
+    lastUpdateCount = -1;
 
     try {
       // Unique connections and Batch inserts don't mix when you want to roll
@@ -1283,10 +1440,10 @@ public class Database implements VariableSpace, LoggingObjectInterface {
           ps.addBatch(); // Add the batch, but don't forget to run the batch
         } else {
           debug = "insertRow exec update";
-          ps.executeUpdate();
+          lastUpdateCount = ps.executeUpdate();
         }
       } else {
-        ps.executeUpdate();
+        lastUpdateCount = ps.executeUpdate();
       }
 
       written++;
@@ -1324,6 +1481,14 @@ public class Database implements VariableSpace, LoggingObjectInterface {
     }
   }
 
+  /**
+   * @return the number of rows the statement of the last insertRow() call changed, -1 if the statement was added to a
+   *         batch: the count is only known when the batch runs
+   */
+  public int getLastUpdateCount() {
+    return lastUpdateCount;
+  }
+
   /**
    * Clears batch of insert prepared statement
    *
@@ -1517,10 +1682,21 @@ public class Database implements VariableSpace, LoggingObjectInterface {
     // in a single-quoted string, it will be treated as a string instead of
     // comments.
     String sql = databaseMeta.getDatabaseInterface().createSqlScriptParser().removeComments( rawsql ).trim();
+    PreparedStatement cached = null;
     try {
       boolean resultSet;
       int count;
-      if ( params != null ) {
+      cached = getCachedStatement( databaseMeta.stripCR( sql ), params != null );
+      if ( cached != null ) {
+        if ( params != null ) {
+          setValues( params, data, cached ); // set the parameters!
+        }
+        resultSet = cached.execute();
+        count = cached.getUpdateCount();
+        if ( resultSet ) {
+          cached.getResultSet().close();
+        }
+      } else if ( params != null ) {
         PreparedStatement prep_stmt = connection.prepareStatement( databaseMeta.stripCR( sql ) );
         setValues( params, data, prep_stmt ); // set the parameters!
         resultSet = prep_stmt.execute();
@@ -1553,9 +1729,15 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       // See if a cache needs to be cleared...
       if ( upperSql.startsWith( "ALTER TABLE" )
         || upperSql.startsWith( "DROP TABLE" ) || upperSql.startsWith( "CREATE TABLE" ) ) {
-        DBCache.getInstance().clear( databaseMeta.getName() );
+        DBCache.getInstance().clear( databaseMeta.getName(), getTableNameOfDDL( sql ) );
+        // the cached statements may refer to the old table layout
+        clearStatementCache();
       }
     } catch ( SQLException ex ) {
+      if ( cached != null ) {
+        // don't execute a statement again that may have been broken by the error
+        statementCache.remove( databaseMeta.stripCR( sql ) );
+      }
       throw new KettleDatabaseException( "Couldn't execute SQL: " + sql + Const.CR, ex );
     } catch ( Exception e ) {
       throw new KettleDatabaseException( "Unexpected error executing SQL: " + Const.CR, e );
@@ -1648,6 +1830,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
                   log.logDebug( "Error closing query: " + Const.CR + sql );
                 }
               }
+              stopStreamingQuietly();
             }
           } else {
             // any kind of statement
@@ -1696,39 +1879,48 @@ public class Database implements VariableSpace, LoggingObjectInterface {
   public ResultSet openQuery( String sql, RowMetaInterface params, Object[] data, int fetch_mode,
                               boolean lazyConversion ) throws KettleDatabaseException {
     ResultSet res;
+    PreparedStatement cached = null;
 
     // Create a Statement
     try {
       log.snap( Metrics.METRIC_DATABASE_OPEN_QUERY_START, databaseMeta.getName() );
-      if ( params != null ) {
-        log.snap( Metrics.METRIC_DATABASE_PREPARE_SQL_START, databaseMeta.getName() );
-        pstmt =
-          connection.prepareStatement(
-            databaseMeta.stripCR( sql ), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
-        log.snap( Metrics.METRIC_DATABASE_PREPARE_SQL_STOP, databaseMeta.getName() );
-
-        log.snap( Metrics.METRIC_DATABASE_SQL_VALUES_START, databaseMeta.getName() );
-        setValues( params, data ); // set the dates etc!
-        log.snap( Metrics.METRIC_DATABASE_SQL_VALUES_STOP, databaseMeta.getName() );
-
-        if ( canWeSetFetchSize( pstmt ) ) {
-          int maxRows = pstmt.getMaxRows();
+      cached = getCachedStatement( databaseMeta.stripCR( sql ), params != null );
+      if ( params != null || cached != null ) {
+        PreparedStatement ps = cached;
+        if ( ps == null ) {
+          log.snap( Metrics.METRIC_DATABASE_PREPARE_SQL_START, databaseMeta.getName() );
+          pstmt =
+            connection.prepareStatement(
+              databaseMeta.stripCR( sql ), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY );
+          log.snap( Metrics.METRIC_DATABASE_PREPARE_SQL_STOP, databaseMeta.getName() );
+          ps = pstmt;
+        }
+
+        if ( params != null ) {
+          log.snap( Metrics.METRIC_DATABASE_SQL_VALUES_START, databaseMeta.getName() );
+          setValues( params, data, ps ); // set the dates etc!
+          log.snap( Metrics.METRIC_DATABASE_SQL_VALUES_STOP, databaseMeta.getName() );
+        }
+
+        if ( canWeSetFetchSize( ps ) ) {
+          int maxRows = ps.getMaxRows();
           int fs = Const.FETCH_SIZE <= maxRows ? maxRows : Const.FETCH_SIZE;
           if ( databaseMeta.isMySQLVariant() ) {
-            setMysqlFetchSize( pstmt, fs, maxRows );
+            setMysqlFetchSize( ps, fs, maxRows );
           } else {
-            pstmt.setFetchSize( fs );
+            ps.setFetchSize( fs );
           }
 
-          pstmt.setFetchDirection( fetch_mode );
+          ps.setFetchDirection( fetch_mode );
+          startStreaming( fs );
         }
 
         if ( rowlimit > 0 && databaseMeta.supportsSetMaxRows() ) {
-          pstmt.setMaxRows( rowlimit );
+          ps.setMaxRows( rowlimit );
         }
 
         log.snap( Metrics.METRIC_DATABASE_EXECUTE_SQL_START, databaseMeta.getName() );
-        res = pstmt.executeQuery();
+        res = ps.executeQuery();
         log.snap( Metrics.METRIC_DATABASE_EXECUTE_SQL_STOP, databaseMeta.getName() );
       } else {
         log.snap( Metrics.METRIC_DATABASE_CREATE_SQL_START, databaseMeta.getName() );
@@ -1743,6 +1935,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
             sel_stmt.setFetchSize( fs );
           }
           sel_stmt.setFetchDirection( fetch_mode );
+          startStreaming( fs );
         }
         if ( rowlimit > 0 && databaseMeta.supportsSetMaxRows() ) {
           sel_stmt.setMaxRows( rowlimit );
@@ -1759,9 +1952,18 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       // of Strings in result rows.
       //
       rowMeta = getRowInfo( res.getMetaData(), databaseMeta.isMySQLVariant(), lazyConversion );
+      if ( fetchSizeTuner != null ) {
+        tunedResultSet = res;
+      }
     } catch ( SQLException ex ) {
+      stopStreamingQuietly();
+      if ( cached != null ) {
+        // don't execute a statement again that may have been broken by the error
+        statementCache.remove( databaseMeta.stripCR( sql ) );
+      }
       throw new KettleDatabaseException( "An error occurred executing SQL: " + Const.CR + sql, ex );
     } catch ( Exception e ) {
+      stopStreamingQuietly();
       throw new KettleDatabaseException( "An error occurred executing SQL:" + Const.CR + sql, e );
     } finally {
       log.snap( Metrics.METRIC_DATABASE_OPEN_QUERY_STOP, databaseMeta.getName() );
@@ -1773,10 +1975,65 @@ public class Database implements VariableSpace, LoggingObjectInterface {
   private boolean canWeSetFetchSize( Statement statement ) throws SQLException {
     return databaseMeta.isFetchSizeSupported()
       && ( statement.getMaxRows() > 0
-      || databaseMeta.getDatabaseInterface() instanceof PostgreSQLDatabaseMeta
+      || databaseMeta.getDatabaseInterface().isFetchSizeRequiringTransaction()
       || ( databaseMeta.isMySQLVariant() && databaseMeta.isStreamingResults() ) );
   }
 
+  /**
+   * Prepare the connection to stream the rows of the query being opened the way the database does it: disable auto
+   * commit if the driver only uses a cursor in a transaction and adapt the fetch size if the driver allows it.
+   *
+   * @param fetchSize the fetch size the query is opened with
+   */
+  private void startStreaming( int fetchSize ) throws SQLException {
+    DatabaseInterface databaseInterface = databaseMeta.getDatabaseInterface();
+    if ( databaseInterface.isFetchSizeRequiringTransaction()
+      && !"N".equalsIgnoreCase( getVariable( Const.KETTLE_STREAMING_CURSORS ) ) && connection.getAutoCommit() ) {
+      connection.setAutoCommit( false );
+      autoCommitDisabledForQuery = true;
+      if ( log.isDetailed() ) {
+        log.logDetailed( "Auto commit off to stream the rows of the query with a fetch size of " + fetchSize );
+      }
+    }
+    if ( databaseInterface.supportsAdaptiveFetchSize() && fetchSize > 0
+      && !"N".equalsIgnoreCase( getVariable( Const.KETTLE_ADAPTIVE_FETCH_SIZE ) ) ) {
+      long bufferSize = Const.toLong( getVariable( Const.KETTLE_FETCH_BUFFER_SIZE ), DEFAULT_FETCH_BUFFER_SIZE );
+      fetchSizeTuner = new FetchSizeTuner( fetchSize, bufferSize );
+    }
+  }
+
+  /**
+   * Undo the changes of {@link #startStreaming(int)} once the query is closed.
+   */
+  private void stopStreaming() throws SQLException {
+    fetchSizeTuner = null;
+    tunedResultSet = null;
+    if ( autoCommitDisabledForQuery ) {
+      autoCommitDisabledForQuery = false;
+      connection.setAutoCommit( true );
+    }
+  }
+
+  private void stopStreamingQuietly() {
+    try {
+      stopStreaming();
+    } catch ( SQLException e ) {
+      if ( log.isDebug() ) {
+        log.logDebug( "Can't turn auto commit back on" + Const.CR + Const.getStackTracker( e ) );
+      }
+    }
+  }
+
+  private void adaptFetchSize( ResultSet rs, Object[] row, long start ) throws SQLException {
+    if ( fetchSizeTuner.rowRead( row, start, System.nanoTime() ) ) {
+      rs.setFetchSize( fetchSizeTuner.getFetchSize() );
+      if ( log.isDebug() ) {
+        log.logDebug( "Fetch size changed to " + fetchSizeTuner.getFetchSize() + " rows (about "
+          + fetchSizeTuner.getAverageRowWidth() + " bytes per row)" );
+      }
+    }
+  }
+
   public ResultSet openQuery( PreparedStatement ps, RowMetaInterface params, Object[] data )
     throws KettleDatabaseException {
     ResultSet res;
@@ -2371,6 +2628,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
         pstmt.close();
         pstmt = null;
       }
+      stopStreaming();
     } catch ( SQLException ex ) {
       throw new KettleDatabaseException( "Couldn't close query: resultset or prepared statements", ex );
     }
@@ -2530,12 +2788,17 @@ public class Database implements VariableSpace, LoggingObjectInterface {
       int nrcols = rowInfo.size();
       Object[] data = RowDataUtil.allocateRowData( nrcols );
 
+      boolean tuning = fetchSizeTuner != null && rs == tunedResultSet;
+      long rowStart = tuning ? System.nanoTime() : 0L;
       if ( rs.next() ) {
         for ( int i = 0; i < nrcols; i++ ) {
           ValueMetaInterface val = rowInfo.getValueMeta( i );
 
           data[ i ] = databaseMeta.getValueFromResultSet( rs, val, i );
         }
+        if ( tuning ) {
+          adaptFetchSize( rs, data, rowStart );
+        }
       } else {
         data = null;
       }
@@ -3141,6 +3404,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
         }
         sel_stmt = null;
       }
+      stopStreamingQuietly();
       return new RowMetaAndData( rowMeta, row );
     } else {
       throw new KettleDatabaseException( "error opening resultset for query: " + sql );
@@ -3195,7 +3459,7 @@ public class Database implements VariableSpace, LoggingObjectInterface {
           }
           sel_stmt = null;
         }
-
+        stopStreamingQuietly();
       }
 
       return new RowMetaAndData( tmpMeta, row );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -1186,4 +1186,43 @@ public interface DatabaseInterface extends Cloneable {
     return new SqlScriptParser( true );
   }
 
+  /**
+   * @return true if the JDBC driver only streams the rows of a query through a cursor, with the fetch size, when auto
+   *         commit is disabled (PostgreSQL and its variants). Otherwise it reads the complete result set in memory. The
+   *         default is false: the fetch size is applied as is.
+   */
+  default boolean isFetchSizeRequiringTransaction() {
+    return false;
+  }
+
+  /**
+   * @return true if the fetch size of an open result set can be changed while its rows are read, so the size of the
+   *         next fetches can be adapted to the width of the rows and the latency of the database. The default is false.
+   */
+  default boolean supportsAdaptiveFetchSize() {
+    return false;
+  }
+
+  /**
+   * Get the SQL of a statement that inserts a row or, if a row with the same key values exists, updates it. The existing
+   * row is only updated when one of the update columns has a different value, so that unchanged rows aren't written.
+   * The parameters of the statement are the values of the columns, in the given order.<br>
+   * <br>
+   * The database matches the rows on a primary key or unique constraint of the key columns, which needs to exist.
+   *
+   * @param schemaTable
+   *          the quoted schema-table name
+   * @param keyColumns
+   *          the quoted key columns, they are also part of the columns
+   * @param columns
+   *          the quoted columns to insert
+   * @param updateColumns
+   *          the quoted columns to update in an existing row, none of them a key column. Leave it empty to never update
+   *          an existing row.
+   * @return the SQL or null if the database can't insert or update a row in one statement (the default)
+   */
+  default String getSQLUpsert( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns ) {
+    return null;
+  }
+
 }
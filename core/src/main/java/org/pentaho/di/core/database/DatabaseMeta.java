@@ -3,7 +3,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -2911,6 +2911,15 @@ public class DatabaseMeta extends SharedObjectBase implements Cloneable, XMLInte
     return databaseInterface.getSQLInsertAutoIncUnknownDimensionRow( schemaTable, keyField, versionField );
   }
 
+  /**
+   * @return the SQL of a statement inserting a row or updating the changed values of the row with the same keys, or null
+   *         if the database has no such statement
+   * @see DatabaseInterface#getSQLUpsert(String, String[], String[], String[])
+   */
+  public String getSQLUpsert( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns ) {
+    return databaseInterface.getSQLUpsert( schemaTable, keyColumns, columns, updateColumns );
+  }
+
   /**
    * @return true if this is a relational database you can explore. Return false for SAP, PALO, etc.
    */
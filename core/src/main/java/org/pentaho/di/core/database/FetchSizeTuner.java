@@ -0,0 +1,149 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import java.math.BigDecimal;
+
+/**
+ * Adapts the fetch size of a result set to the rows read from it.<br>
+ * <br>
+ * The rows are read in windows of one fetch each. At the end of a window the fetch size is set so that one fetch takes
+ * about a fixed amount of memory, based on the width of the rows read so far. Within that limit, the fetch size is
+ * doubled as long as waiting for the database takes most of the time of a window, and halved again when it takes
+ * hardly any time.
+ */
+public class FetchSizeTuner {
+
+  public static final int MIN_FETCH_SIZE = 100;
+  public static final int MAX_FETCH_SIZE = 1000000;
+
+  /** The width of every n-th row is estimated */
+  private static final int SAMPLE_INTERVAL = 16;
+
+  private final long bufferSize;
+
+  private int fetchSize;
+
+  private long sampledBytes;
+  private long sampledRows;
+
+  private int windowRows;
+  private long windowStart;
+  private long windowWait;
+
+  /**
+   * @param fetchSize
+   *          the fetch size the result set was opened with
+   * @param bufferSize
+   *          the number of bytes the rows of one fetch may take in memory
+   */
+  public FetchSizeTuner( int fetchSize, long bufferSize ) {
+    this.fetchSize = Math.max( MIN_FETCH_SIZE, fetchSize );
+    this.bufferSize = bufferSize;
+    this.windowStart = -1L;
+  }
+
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  /**
+   * @return the average estimated width of the rows read so far in bytes, 0 if nothing was read yet
+   */
+  public long getAverageRowWidth() {
+    return sampledRows == 0 ? 0 : sampledBytes / sampledRows;
+  }
+
+  /**
+   * Register a row read from the result set.
+   *
+   * @param row
+   *          the row that was read
+   * @param start
+   *          the value of {@link System#nanoTime()} before moving to the row
+   * @param end
+   *          the value of {@link System#nanoTime()} after reading the row
+   * @return true if the fetch size changed and needs to be set on the result set
+   */
+  public boolean rowRead( Object[] row, long start, long end ) {
+    if ( windowStart < 0 ) {
+      windowStart = start;
+    }
+    windowWait += end - start;
+    if ( windowRows % SAMPLE_INTERVAL == 0 ) {
+      sampledBytes += estimateWidth( row );
+      sampledRows++;
+    }
+    windowRows++;
+    if ( windowRows < fetchSize ) {
+      return false;
+    }
+
+    long windowTime = Math.max( 1L, end - windowStart );
+    int newFetchSize = fetchSize;
+    if ( windowWait * 2 > windowTime ) {
+      // Mostly waiting for the database: fetch more at once
+      newFetchSize = fetchSize * 2;
+    } else if ( windowWait * 10 < windowTime ) {
+      // The rows are processed slower than they arrive, keep less of them in memory
+      newFetchSize = fetchSize / 2;
+    }
+    long rowWidth = Math.max( 1L, getAverageRowWidth() );
+    newFetchSize = (int) Math.min( newFetchSize, bufferSize / rowWidth );
+    newFetchSize = Math.max( MIN_FETCH_SIZE, Math.min( MAX_FETCH_SIZE, newFetchSize ) );
+
+    windowRows = 0;
+    windowStart = -1L;
+    windowWait = 0L;
+    if ( newFetchSize != fetchSize ) {
+      fetchSize = newFetchSize;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Estimate the memory a row takes, the row itself and the values in it.
+   */
+  static long estimateWidth( Object[] row ) {
+    if ( row == null ) {
+      return 0L;
+    }
+    long width = 16L + 8L * row.length;
+    for ( Object value : row ) {
+      if ( value == null ) {
+        continue;
+      }
+      if ( value instanceof String ) {
+        width += 40L + 2L * ( (String) value ).length();
+      } else if ( value instanceof byte[] ) {
+        width += 16L + ( (byte[]) value ).length;
+      } else if ( value instanceof BigDecimal ) {
+        width += 32L + ( (BigDecimal) value ).precision() / 2;
+      } else {
+        width += 24L;
+      }
+    }
+    return width;
+  }
+}
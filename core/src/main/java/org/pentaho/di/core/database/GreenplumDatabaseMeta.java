@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -46,4 +46,12 @@ public class GreenplumDatabaseMeta extends PostgreSQLDatabaseMeta implements Dat
   public boolean supportsErrorHandlingOnBatchUpdates() {
     return false;
   }
+
+  /**
+   * Greenplum is based on a PostgreSQL version without INSERT ... ON CONFLICT.
+   */
+  @Override
+  public String getSQLUpsert( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns ) {
+    return null;
+  }
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -26,4 +26,12 @@ public class InfiniDbDatabaseMeta extends MySQLDatabaseMeta implements DatabaseI
 
   // Only has a different ID to catch exceptions here and there.
 
+  /**
+   * InfiniDB has no unique keys to detect the existing rows.
+   */
+  @Override
+  public String getSQLUpsert( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns ) {
+    return null;
+  }
+
 }
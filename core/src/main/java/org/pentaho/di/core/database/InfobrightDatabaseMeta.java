@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -37,4 +37,12 @@ public class InfobrightDatabaseMeta extends MySQLDatabaseMeta implements Databas
     addExtraOption( getPluginId(), "characterEncoding", "UTF-8" );
   }
 
+  /**
+   * Infobright has no unique keys to detect the existing rows.
+   */
+  @Override
+  public String getSQLUpsert( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns ) {
+    return null;
+  }
+
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -540,4 +540,12 @@ public class MSSQLServerDatabaseMeta extends BaseDatabaseMeta implements Databas
     return 8000;
   }
 
+  /**
+   * A MERGE statement, it needs to end with a semicolon.
+   */
+  @Override
+  public String getSQLUpsert( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns ) {
+    return getSQLMerge( schemaTable, keyColumns, columns, updateColumns, "", true ) + ";";
+  }
+
 }
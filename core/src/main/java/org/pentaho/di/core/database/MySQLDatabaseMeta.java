@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -465,4 +465,30 @@ public class MySQLDatabaseMeta extends BaseDatabaseMeta implements DatabaseInter
     addExtraOption( getPluginId(), "defaultFetchSize", "500" );
     addExtraOption( getPluginId(), "useCursorFetch", "true" );
   }
+
+  /**
+   * INSERT ... ON DUPLICATE KEY UPDATE. MySQL doesn't write a row of which the updated values are all the same. Note
+   * that a row is considered to exist when any of the primary key or unique constraints of the table matches.
+   */
+  @Override
+  public String getSQLUpsert( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns ) {
+    StringBuilder sql = new StringBuilder( "INSERT INTO " ).append( schemaTable ).append( " ( " );
+    for ( int i = 0; i < columns.length; i++ ) {
+      sql.append( i > 0 ? ", " : "" ).append( columns[i] );
+    }
+    sql.append( " ) VALUES ( " );
+    for ( int i = 0; i < columns.length; i++ ) {
+      sql.append( i > 0 ? ", ?" : "?" );
+    }
+    sql.append( " ) ON DUPLICATE KEY UPDATE " );
+    if ( updateColumns.length == 0 ) {
+      // Setting a key to its own value leaves the row alone
+      return sql.append( keyColumns[0] ).append( " = " ).append( keyColumns[0] ).toString();
+    }
+    for ( int i = 0; i < updateColumns.length; i++ ) {
+      sql.append( i > 0 ? ", " : "" ).append( updateColumns[i] );
+      sql.append( " = VALUES(" ).append( updateColumns[i] ).append( ")" );
+    }
+    return sql.toString();
+  }
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -557,4 +557,52 @@ public class PostgreSQLDatabaseMeta extends BaseDatabaseMeta implements Database
   public boolean useSafePoints() {
     return true;
   }
+
+  /**
+   * The driver ignores the fetch size and reads all rows in memory unless auto commit is off.
+   */
+  @Override
+  public boolean isFetchSizeRequiringTransaction() {
+    return true;
+  }
+
+  /**
+   * The driver uses the fetch size of the result set for every next fetch of the cursor.
+   */
+  @Override
+  public boolean supportsAdaptiveFetchSize() {
+    return true;
+  }
+
+  /**
+   * INSERT ... ON CONFLICT, available since PostgreSQL 9.5.
+   */
+  @Override
+  public String getSQLUpsert( String schemaTable, String[] keyColumns, String[] columns, String[] updateColumns ) {
+    StringBuilder sql = new StringBuilder( "INSERT INTO " ).append( schemaTable ).append( " AS kettle_target ( " );
+    for ( int i = 0; i < columns.length; i++ ) {
+      sql.append( i > 0 ? ", " : "" ).append( columns[i] );
+    }
+    sql.append( " ) VALUES ( " );
+    for ( int i = 0; i < columns.length; i++ ) {
+      sql.append( i > 0 ? ", ?" : "?" );
+    }
+    sql.append( " ) ON CONFLICT ( " );
+    for ( int i = 0; i < keyColumns.length; i++ ) {
+      sql.append( i > 0 ? ", " : "" ).append( keyColumns[i] );
+    }
+    if ( updateColumns.length == 0 ) {
+      return sql.append( " ) DO NOTHING" ).toString();
+    }
+    sql.append( " ) DO UPDATE SET " );
+    for ( int i = 0; i < updateColumns.length; i++ ) {
+      sql.append( i > 0 ? ", " : "" ).append( updateColumns[i] ).append( " = EXCLUDED." ).append( updateColumns[i] );
+    }
+    sql.append( " WHERE " );
+    for ( int i = 0; i < updateColumns.length; i++ ) {
+      sql.append( i > 0 ? " OR " : "" ).append( "kettle_target." ).append( updateColumns[i] );
+      sql.append( " IS DISTINCT FROM EXCLUDED." ).append( updateColumns[i] );
+    }
+    return sql.toString();
+  }
 }
@@ -0,0 +1,165 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the prepared statements of a connection open to execute the same SQL again without preparing it again.<br>
+ * <br>
+ * The cache holds at most a fixed number of statements, the least recently used statement is closed to make room for
+ * a new one. The statements are owned by the cache: they are closed when they are evicted, removed or cleared, never
+ * by the code using them.
+ */
+public class PreparedStatementCache {
+
+  private final int maxSize;
+
+  private final Map<String, PreparedStatement> statements;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * @param maxSize
+   *          the maximum number of statements to keep open
+   */
+  public PreparedStatementCache( int maxSize ) {
+    this.maxSize = maxSize;
+    this.statements = new LinkedHashMap<String, PreparedStatement>( 16, 0.75f, true ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<String, PreparedStatement> eldest ) {
+        if ( size() > PreparedStatementCache.this.maxSize ) {
+          evictions++;
+          closeQuietly( eldest.getValue() );
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * @param sql
+   *          the SQL of the statement
+   * @return the open statement for the SQL or null if it isn't in the cache
+   */
+  public synchronized PreparedStatement get( String sql ) {
+    PreparedStatement statement = statements.get( sql );
+    if ( statement != null ) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return statement;
+  }
+
+  /**
+   * Add a statement to the cache, the least recently used statement is closed if the cache is full.
+   */
+  public synchronized void put( String sql, PreparedStatement statement ) {
+    PreparedStatement previous = statements.put( sql, statement );
+    if ( previous != null && previous != statement ) {
+      closeQuietly( previous );
+    }
+  }
+
+  /**
+   * Remove and close the statement of the SQL, for instance because it failed and may not be usable anymore.
+   */
+  public synchronized void remove( String sql ) {
+    PreparedStatement statement = statements.remove( sql );
+    if ( statement != null ) {
+      closeQuietly( statement );
+    }
+  }
+
+  /**
+   * Close all statements in the cache.
+   *
+   * @throws SQLException
+   *           the first error closing a statement, after all statements were closed
+   */
+  public synchronized void clear() throws SQLException {
+    List<PreparedStatement> toClose = new ArrayList<PreparedStatement>( statements.values() );
+    statements.clear();
+    SQLException error = null;
+    for ( PreparedStatement statement : toClose ) {
+      try {
+        statement.close();
+      } catch ( SQLException e ) {
+        if ( error == null ) {
+          error = e;
+        }
+      }
+    }
+    if ( error != null ) {
+      throw error;
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public synchronized int size() {
+    return statements.size();
+  }
+
+  /**
+   * @return the number of times a statement was found in the cache
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of times a statement wasn't found in the cache and had to be prepared
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return the number of statements closed to make room for another one
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  private static void closeQuietly( PreparedStatement statement ) {
+    try {
+      statement.close();
+    } catch ( SQLException e ) {
+      // The statement is discarded anyway
+    }
+  }
+}
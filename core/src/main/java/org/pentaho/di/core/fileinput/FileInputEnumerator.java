@@ -0,0 +1,454 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.fileinput;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.provider.sftp.SftpFileObject;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.fileinput.FileInputList.FileTypeFilter;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.util.ExecutorUtil;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.core.vfs.SftpFileObjectWithWindowsSupport;
+import org.pentaho.di.core.vfs.SftpFileSystemWindowsProvider;
+
+/**
+ * Enumerates the files of a list of file input entries (file or folder, wildcard, exclude wildcard, required, include
+ * sub folders and file type filter) incrementally: files are handed out as soon as the folder they live in has been
+ * listed, instead of after the complete tree has been searched.<br>
+ * <br>
+ * Folders are walked depth first. The files matching in a folder are returned sorted by name, before the files of its
+ * sub folders. The wildcards are compiled once per entry and the type of every child is looked up once, while listing
+ * the folder. When more than one thread is used, the next folders to visit are listed ahead in the background; the
+ * order in which files are returned doesn't depend on the number of threads.<br>
+ * <br>
+ * Missing or inaccessible required files and folders are collected in {@link #getNonExistantFiles()} and
+ * {@link #getNonAccessibleFiles()} when their entry is reached.
+ */
+public class FileInputEnumerator implements Iterator<FileObject>, Closeable {
+
+  public static final int DEFAULT_THREADS = 1;
+
+  private static final String YES = "Y";
+
+  private static LogChannelInterface log = new LogChannel( "FileInputEnumerator" );
+
+  private final VariableSpace space;
+  private final String[] realfile;
+  private final String[] realmask;
+  private final String[] realExcludeMask;
+  private final String[] fileRequired;
+  private final boolean[] includeSubdirs;
+  private final FileTypeFilter[] fileTypeFilters;
+
+  private int threads;
+  private long offset;
+  private long limit;
+
+  private final List<FileObject> nonExistantFiles = new ArrayList<FileObject>( 1 );
+  private final List<FileObject> nonAccessibleFiles = new ArrayList<FileObject>( 1 );
+
+  /** Matching files of the folder (or plain file) that was handled last, not yet returned */
+  private final Deque<FileObject> ready = new ArrayDeque<FileObject>();
+
+  /** The folders still to visit for the current entry, the next one first */
+  private final Deque<PendingFolder> pending = new ArrayDeque<PendingFolder>();
+
+  private int entryNr = -1;
+  private String onefile;
+  private Pattern mask;
+  private Pattern excludeMask;
+  private boolean onerequired;
+  private boolean subdirs;
+  private FileTypeFilter filter;
+  private FileObject directoryFileObject;
+  private boolean listingFolder;
+  private boolean entryFailed;
+  private long entryMatches;
+
+  private long nrSkipped;
+  private long nrReturned;
+  private FileObject nextFile;
+  private boolean done;
+
+  public FileInputEnumerator( VariableSpace space, String[] fileName, String[] fileMask, String[] excludeFileMask,
+    String[] fileRequired, boolean[] includeSubdirs, FileTypeFilter[] fileTypeFilters ) {
+    this.space = space;
+    // Replace possible environment variables...
+    this.realfile = space.environmentSubstitute( fileName );
+    this.realmask = space.environmentSubstitute( fileMask );
+    this.realExcludeMask = space.environmentSubstitute( excludeFileMask );
+    this.fileRequired = fileRequired;
+    this.includeSubdirs = includeSubdirs;
+    this.fileTypeFilters = fileTypeFilters;
+    this.threads = Const.toInt( space.getVariable( Const.KETTLE_FILE_ENUMERATION_THREADS ), DEFAULT_THREADS );
+  }
+
+  /**
+   * @param threads
+   *          the number of folders listed at the same time, 1 or less to list them one by one in the calling thread
+   */
+  public void setThreads( int threads ) {
+    this.threads = threads;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * @param offset
+   *          the number of matching files to skip before the first one is returned
+   */
+  public void setOffset( long offset ) {
+    this.offset = offset;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @param limit
+   *          the maximum number of files to return, 0 or less for no limit. Once it is reached no more folders are
+   *          listed.
+   */
+  public void setLimit( long limit ) {
+    this.limit = limit;
+  }
+
+  public long getLimit() {
+    return limit;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if ( nextFile == null && !done ) {
+      nextFile = advance();
+    }
+    return nextFile != null;
+  }
+
+  @Override
+  public FileObject next() {
+    if ( !hasNext() ) {
+      throw new NoSuchElementException();
+    }
+    FileObject file = nextFile;
+    nextFile = null;
+    return file;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stop the enumeration and cancel the folder listings that are still running.
+   */
+  @Override
+  public void close() {
+    done = true;
+    nextFile = null;
+    ready.clear();
+    cancelPending();
+  }
+
+  public List<FileObject> getNonExistantFiles() {
+    return nonExistantFiles;
+  }
+
+  public List<FileObject> getNonAccessibleFiles() {
+    return nonAccessibleFiles;
+  }
+
+  /**
+   * @return the number of files returned so far
+   */
+  public long getNrReturned() {
+    return nrReturned;
+  }
+
+  /**
+   * Called when all the files of an entry have been returned, before the next entry is looked at.
+   *
+   * @param entryNr
+   *          the index of the entry
+   * @param folder
+   *          true if the entry was a folder that has been searched
+   */
+  protected void entryFinished( int entryNr, boolean folder ) {
+  }
+
+  private FileObject advance() {
+    while ( true ) {
+      if ( limit > 0 && nrReturned >= limit ) {
+        close();
+        return null;
+      }
+      FileObject file = ready.poll();
+      if ( file != null ) {
+        if ( nrSkipped < offset ) {
+          nrSkipped++;
+          continue;
+        }
+        nrReturned++;
+        return file;
+      }
+      if ( !pending.isEmpty() ) {
+        listNextFolder();
+        continue;
+      }
+      if ( !nextEntry() ) {
+        done = true;
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Finish the current entry and start the next one.
+   *
+   * @return false if there are no more entries
+   */
+  private boolean nextEntry() {
+    if ( entryNr >= 0 ) {
+      if ( listingFolder && !entryFailed && entryMatches == 0 && onerequired ) {
+        nonAccessibleFiles.add( directoryFileObject );
+      }
+      entryFinished( entryNr, listingFolder && !entryFailed );
+    }
+
+    entryNr++;
+    if ( entryNr >= realfile.length ) {
+      return false;
+    }
+
+    onefile = realfile[ entryNr ];
+    onerequired = YES.equalsIgnoreCase( fileRequired[ entryNr ] );
+    subdirs = includeSubdirs[ entryNr ];
+    filter =
+      ( fileTypeFilters == null || fileTypeFilters[ entryNr ] == null )
+        ? FileTypeFilter.ONLY_FILES : fileTypeFilters[ entryNr ];
+    directoryFileObject = null;
+    listingFolder = false;
+    entryFailed = false;
+    entryMatches = 0;
+
+    if ( Utils.isEmpty( onefile ) ) {
+      return true;
+    }
+
+    String onemask = realmask[ entryNr ];
+    String excludeonemask = realExcludeMask[ entryNr ];
+    try {
+      if ( !Utils.isEmpty( onemask ) || !Utils.isEmpty( excludeonemask ) ) {
+        // If a wildcard is set we search for files
+        //
+        mask = Utils.isEmpty( onemask ) ? null : Pattern.compile( onemask );
+        excludeMask = Utils.isEmpty( excludeonemask ) ? null : Pattern.compile( excludeonemask );
+
+        directoryFileObject = KettleVFS.getFileObject( onefile, space );
+        if ( onerequired ) {
+          if ( !directoryFileObject.exists() ) {
+            // if we don't find folder..no need to continue
+            nonExistantFiles.add( directoryFileObject );
+            return true;
+          }
+          if ( !directoryFileObject.isReadable() ) {
+            nonAccessibleFiles.add( directoryFileObject );
+            return true;
+          }
+        }
+
+        if ( directoryFileObject.getType() == FileType.FOLDER ) {
+          listingFolder = true;
+          pending.push( new PendingFolder( directoryFileObject ) );
+          prefetch();
+        } else {
+          // An archive: keep the order of the files in the archive.
+          for ( FileObject child : directoryFileObject.getChildren() ) {
+            if ( matches( child.getName().getBaseName() ) ) {
+              ready.add( child );
+            }
+          }
+        }
+      } else {
+        // A normal file...
+        FileObject fileObject = KettleVFS.getFileObject( onefile, space );
+        if ( fileObject.exists() ) {
+          if ( fileObject.isReadable() ) {
+            ready.add( fileObject );
+          } else if ( onerequired ) {
+            nonAccessibleFiles.add( fileObject );
+          }
+        } else if ( onerequired ) {
+          nonExistantFiles.add( fileObject );
+        }
+      }
+    } catch ( Exception e ) {
+      entryFailed( e );
+    }
+    return true;
+  }
+
+  private void listNextFolder() {
+    PendingFolder folder = pending.pop();
+    try {
+      Listing listing = folder.getListing();
+
+      List<FileObject> subfolders = new ArrayList<FileObject>();
+      for ( int i = 0; i < listing.children.length; i++ ) {
+        FileObject child = listing.children[ i ];
+        FileType type = listing.types[ i ];
+        if ( type == null ) {
+          // Upon error don't process the file.
+          continue;
+        }
+        if ( subdirs && type.hasChildren() ) {
+          subfolders.add( child );
+        }
+        if ( filter.isFileTypeAllowed( type ) && matches( child.getName().getBaseName() ) ) {
+          if ( child instanceof SftpFileObject ) {
+            child = new SftpFileObjectWithWindowsSupport( (SftpFileObject) child,
+              SftpFileSystemWindowsProvider.getSftpFileSystemWindows( (SftpFileObject) child ) );
+          }
+          ready.add( child );
+          entryMatches++;
+        }
+      }
+      for ( int i = subfolders.size() - 1; i >= 0; i-- ) {
+        pending.push( new PendingFolder( subfolders.get( i ) ) );
+      }
+      prefetch();
+    } catch ( Exception e ) {
+      cancelPending();
+      entryFailed( e );
+    }
+  }
+
+  private boolean matches( String name ) {
+    return ( mask == null || mask.matcher( name ).matches() )
+      && ( excludeMask == null || !excludeMask.matcher( name ).matches() );
+  }
+
+  private void entryFailed( Exception e ) {
+    entryFailed = true;
+    if ( onerequired ) {
+      nonAccessibleFiles.add( new NonAccessibleFileObject( onefile ) );
+    }
+    log.logError( Const.getStackTracker( e ) );
+  }
+
+  /**
+   * Start listing the next folders to visit in the background.
+   */
+  private void prefetch() {
+    if ( threads <= 1 ) {
+      return;
+    }
+    ExecutorService executor = ExecutorUtil.getExecutor();
+    int nr = 0;
+    for ( PendingFolder folder : pending ) {
+      if ( nr++ >= threads ) {
+        break;
+      }
+      if ( folder.future == null ) {
+        folder.future = executor.submit( folder );
+      }
+    }
+  }
+
+  private void cancelPending() {
+    for ( PendingFolder folder : pending ) {
+      if ( folder.future != null ) {
+        folder.future.cancel( false );
+      }
+    }
+    pending.clear();
+  }
+
+  /**
+   * Lists a folder and looks up the type of its children.
+   */
+  static Listing list( FileObject folder ) throws FileSystemException {
+    FileObject[] children = folder.getChildren();
+    Arrays.sort( children, KettleVFS.getComparator() );
+    FileType[] types = new FileType[ children.length ];
+    for ( int i = 0; i < children.length; i++ ) {
+      try {
+        types[ i ] = children[ i ].getType();
+      } catch ( FileSystemException e ) {
+        types[ i ] = null;
+      }
+    }
+    return new Listing( children, types );
+  }
+
+  static class Listing {
+    final FileObject[] children;
+    final FileType[] types;
+
+    Listing( FileObject[] children, FileType[] types ) {
+      this.children = children;
+      this.types = types;
+    }
+  }
+
+  private static class PendingFolder implements Callable<Listing> {
+    private final FileObject folder;
+    private Future<Listing> future;
+
+    PendingFolder( FileObject folder ) {
+      this.folder = folder;
+    }
+
+    @Override
+    public Listing call() throws FileSystemException {
+      return list( folder );
+    }
+
+    Listing getListing() throws Exception {
+      return future == null ? list( folder ) : future.get();
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -29,21 +29,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
 
 import org.apache.commons.vfs2.AllFileSelector;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSelectInfo;
 import org.apache.commons.vfs2.FileType;
-import org.apache.commons.vfs2.provider.sftp.SftpFileObject;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.logging.LogChannel;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.vfs.KettleVFS;
-import org.pentaho.di.core.vfs.SftpFileObjectWithWindowsSupport;
-import org.pentaho.di.core.vfs.SftpFileSystemWindowsProvider;
 
 public class FileInputList {
   private List<FileObject> files = new ArrayList<FileObject>();
@@ -152,156 +148,31 @@ public class FileInputList {
   public static FileInputList createFileList( VariableSpace space, String[] fileName, String[] fileMask,
                                               String[] excludeFileMask, String[] fileRequired, boolean[] includeSubdirs,
                                               FileTypeFilter[] fileTypeFilters ) {
-    FileInputList fileInputList = new FileInputList();
-
-    // Replace possible environment variables...
-    final String[] realfile = space.environmentSubstitute( fileName );
-    final String[] realmask = space.environmentSubstitute( fileMask );
-    final String[] realExcludeMask = space.environmentSubstitute( excludeFileMask );
-
-    for ( int i = 0; i < realfile.length; i++ ) {
-      final String onefile = realfile[ i ];
-      final String onemask = realmask[ i ];
-      final String excludeonemask = realExcludeMask[ i ];
-      final boolean onerequired = YES.equalsIgnoreCase( fileRequired[ i ] );
-      final boolean subdirs = includeSubdirs[ i ];
-      final FileTypeFilter filter =
-        ( ( fileTypeFilters == null || fileTypeFilters[ i ] == null )
-          ? FileTypeFilter.ONLY_FILES : fileTypeFilters[ i ] );
+    final FileInputList fileInputList = new FileInputList();
 
-      if ( Utils.isEmpty( onefile ) ) {
-        continue;
-      }
-
-      //
-      // If a wildcard is set we search for files
-      //
-      if ( !Utils.isEmpty( onemask ) || !Utils.isEmpty( excludeonemask ) ) {
-        try {
-          FileObject directoryFileObject = KettleVFS.getFileObject( onefile, space );
-          boolean processFolder = true;
-          if ( onerequired ) {
-            if ( !directoryFileObject.exists() ) {
-              // if we don't find folder..no need to continue
-              fileInputList.addNonExistantFile( directoryFileObject );
-              processFolder = false;
-            } else {
-              if ( !directoryFileObject.isReadable() ) {
-                fileInputList.addNonAccessibleFile( directoryFileObject );
-                processFolder = false;
-              }
-            }
-          }
-
-          // Find all file names that match the wildcard in this directory
-          //
-          if ( processFolder ) {
-            if ( directoryFileObject != null && directoryFileObject.getType() == FileType.FOLDER ) { // it's a directory
-              FileObject[] fileObjects = directoryFileObject.findFiles( new AllFileSelector() {
-                @Override
-                public boolean traverseDescendents( FileSelectInfo info ) {
-                  return info.getDepth() == 0 || subdirs;
-                }
-
-                @Override
-                public boolean includeFile( FileSelectInfo info ) {
-                  // Never return the parent directory of a file list.
-                  if ( info.getDepth() == 0 ) {
-                    return false;
-                  }
-
-                  FileObject fileObject = info.getFile();
-                  try {
-                    if ( fileObject != null && filter.isFileTypeAllowed( fileObject.getType() ) ) {
-                      String name = info.getFile().getName().getBaseName();
-                      boolean matches = true;
-                      if ( !Utils.isEmpty( onemask ) ) {
-                        matches = Pattern.matches( onemask, name );
-                      }
-                      boolean excludematches = false;
-                      if ( !Utils.isEmpty( excludeonemask ) ) {
-                        excludematches = Pattern.matches( excludeonemask, name );
-                      }
-                      return ( matches && !excludematches );
-                    }
-                    return false;
-                  } catch ( IOException ex ) {
-                    // Upon error don't process the file.
-                    return false;
-                  }
-                }
-              } );
-              if ( fileObjects != null ) {
-                for ( int j = 0; j < fileObjects.length; j++ ) {
-                  FileObject fileObject = fileObjects[ j ];
-                  if ( fileObject instanceof SftpFileObject ) {
-                    fileObject = new SftpFileObjectWithWindowsSupport( (SftpFileObject) fileObject,
-                      SftpFileSystemWindowsProvider.getSftpFileSystemWindows( (SftpFileObject) fileObject ) );
-                  }
-                  if ( fileObject.exists() ) {
-                    fileInputList.addFile( fileObject );
-                  }
-                }
-              }
-              if ( Utils.isEmpty( fileObjects ) ) {
-                if ( onerequired ) {
-                  fileInputList.addNonAccessibleFile( directoryFileObject );
-                }
-              }
-
-              // Sort the list: quicksort, only for regular files
-              fileInputList.sortFiles();
-            } else {
-              FileObject[] children = directoryFileObject.getChildren();
-              for ( int j = 0; j < children.length; j++ ) {
-                // See if the wildcard (regexp) matches...
-                String name = children[ j ].getName().getBaseName();
-                boolean matches = true;
-                if ( !Utils.isEmpty( onemask ) ) {
-                  matches = Pattern.matches( onemask, name );
-                }
-                boolean excludematches = false;
-                if ( !Utils.isEmpty( excludeonemask ) ) {
-                  excludematches = Pattern.matches( excludeonemask, name );
-                }
-                if ( matches && !excludematches ) {
-                  fileInputList.addFile( children[ j ] );
-                }
-
-              }
-              // We don't sort here, keep the order of the files in the archive.
-            }
-          }
-        } catch ( Exception e ) {
-          if ( onerequired ) {
-            fileInputList.addNonAccessibleFile( new NonAccessibleFileObject( onefile ) );
-          }
-          log.logError( Const.getStackTracker( e ) );
-        }
-      } else { // A normal file...
-
-        try {
-          FileObject fileObject = KettleVFS.getFileObject( onefile, space );
-          if ( fileObject.exists() ) {
-            if ( fileObject.isReadable() ) {
-              fileInputList.addFile( fileObject );
-            } else {
-              if ( onerequired ) {
-                fileInputList.addNonAccessibleFile( fileObject );
-              }
-            }
-          } else {
-            if ( onerequired ) {
-              fileInputList.addNonExistantFile( fileObject );
-            }
-          }
-        } catch ( Exception e ) {
-          if ( onerequired ) {
-            fileInputList.addNonAccessibleFile( new NonAccessibleFileObject( onefile ) );
+    FileInputEnumerator enumerator =
+      new FileInputEnumerator( space, fileName, fileMask, excludeFileMask, fileRequired, includeSubdirs,
+        fileTypeFilters ) {
+        @Override
+        protected void entryFinished( int entryNr, boolean folder ) {
+          // Sort the list: quicksort, only for regular files
+          if ( folder ) {
+            fileInputList.sortFiles();
           }
-          log.logError( Const.getStackTracker( e ) );
         }
+      };
+    try {
+      while ( enumerator.hasNext() ) {
+        fileInputList.addFile( enumerator.next() );
       }
+    } finally {
+      enumerator.close();
+    }
+    for ( FileObject file : enumerator.getNonExistantFiles() ) {
+      fileInputList.addNonExistantFile( file );
+    }
+    for ( FileObject file : enumerator.getNonAccessibleFiles() ) {
+      fileInputList.addNonAccessibleFile( file );
     }
 
     return fileInputList;
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -268,6 +268,9 @@ public class KettleVFS {
   }
 
   public static InputStream getInputStream( FileObject fileObject ) throws FileSystemException {
+    if ( KettleVFSBlockCache.isCached( fileObject ) ) {
+      return KettleVFSBlockCache.getInstance().getInputStream( fileObject );
+    }
     FileContent content = fileObject.getContent();
     return content.getInputStream();
   }
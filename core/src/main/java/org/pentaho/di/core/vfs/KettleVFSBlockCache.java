@@ -0,0 +1,696 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.vfs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.vfs2.Capability;
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.RandomAccessContent;
+import org.apache.commons.vfs2.util.RandomAccessMode;
+import org.pentaho.di.core.Const;
+
+/**
+ * A read-ahead block cache for files that are read through slow (remote) VFS providers.<br>
+ * <br>
+ * A cached file is split in blocks of a fixed size. Blocks are kept as files in a local cache directory, up to a
+ * maximum total size after which the least recently used blocks are removed. Every process keeps its blocks in its own
+ * (locked) sub-directory of the cache directory, so that several processes can share it. While a block is consumed,
+ * the next blocks are fetched in the background. Providers that support random access reads fetch those blocks
+ * concurrently, for the others the blocks of a file are fetched one after the other, in order, from a single stream
+ * ahead of the consumer.<br>
+ * <br>
+ * A cached block is only reused as long as the size and the last modification time of the file don't change, so
+ * reading the same file twice in a job (for example to count the rows and to parse it) downloads it once.<br>
+ * <br>
+ * The cache is disabled by default, set {@link Const#KETTLE_VFS_BLOCK_CACHE} to Y to enable it.
+ */
+public class KettleVFSBlockCache {
+
+  public static final String BLOCK_FILE_SUFFIX = ".block";
+
+  private static final String PROCESS_DIRECTORY_PREFIX = "process-";
+  private static final String LOCK_FILE_NAME = "lock";
+
+  public static final String DEFAULT_SCHEMES = "sftp,ftp,ftps,http,https,webdav,gs,s3,s3n,s3a";
+  public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+  public static final int DEFAULT_PREFETCH_BLOCKS = 4;
+  public static final long DEFAULT_MAX_SIZE = 1024L * 1024L * 1024L;
+  public static final int DEFAULT_THREADS = 4;
+
+  private static KettleVFSBlockCache instance;
+
+  private final File directory;
+  private final FileChannel lockChannel;
+  private final int blockSize;
+  private final int prefetchBlocks;
+  private final long maxSize;
+  private final ExecutorService executor;
+
+  /** The sizes of the cached blocks in least recently used order */
+  private final LinkedHashMap<String, Integer> blocks = new LinkedHashMap<String, Integer>( 16, 0.75f, true );
+  private long cachedBytes;
+
+  /** The blocks that are being fetched right now */
+  private final Map<String, FutureTask<byte[]>> fetching = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong prefetches = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong bytesFetched = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  /**
+   * Create a block cache.
+   *
+   * @param directory
+   *          the directory to store the blocks in, shared with other processes. The blocks are kept in a new
+   *          sub-directory of it, the sub-directories left over by processes that are gone are removed
+   * @param blockSize
+   *          the size of a block in bytes
+   * @param prefetchBlocks
+   *          the number of blocks to fetch ahead of the reader
+   * @param maxSize
+   *          the maximum number of bytes to keep in the cache directory
+   * @param threads
+   *          the number of threads fetching blocks in the background
+   */
+  public KettleVFSBlockCache( File directory, int blockSize, int prefetchBlocks, long maxSize, int threads ) {
+    this.blockSize = blockSize > 0 ? blockSize : DEFAULT_BLOCK_SIZE;
+    this.prefetchBlocks = Math.max( 0, prefetchBlocks );
+    this.maxSize = maxSize;
+
+    directory.mkdirs();
+    removeLeftOvers( directory );
+
+    // Our own directory, locked for as long as this process runs
+    //
+    this.directory = new File( directory, PROCESS_DIRECTORY_PREFIX + UUID.randomUUID().toString() );
+    this.directory.mkdirs();
+    this.lockChannel = lock( new File( this.directory, LOCK_FILE_NAME ) );
+
+    final AtomicInteger threadNum = new AtomicInteger( 1 );
+    this.executor = Executors.newFixedThreadPool( Math.max( 1, threads ), new ThreadFactory() {
+      @Override
+      public Thread newThread( Runnable r ) {
+        Thread thread = Executors.defaultThreadFactory().newThread( r );
+        thread.setDaemon( true );
+        thread.setName( KettleVFSBlockCache.class.getSimpleName() + " thread " + threadNum.getAndIncrement() );
+        return thread;
+      }
+    } );
+  }
+
+  /**
+   * Removes the block directories of the processes that no longer hold the lock on them.
+   */
+  private static void removeLeftOvers( File directory ) {
+    File[] processDirectories = directory.listFiles();
+    if ( processDirectories == null ) {
+      return;
+    }
+    for ( File processDirectory : processDirectories ) {
+      if ( !processDirectory.isDirectory() || !processDirectory.getName().startsWith( PROCESS_DIRECTORY_PREFIX ) ) {
+        continue;
+      }
+      File lockFile = new File( processDirectory, LOCK_FILE_NAME );
+      FileChannel channel = lock( lockFile );
+      if ( channel == null && lockFile.exists() ) {
+        continue; // still in use
+      }
+      File[] files = processDirectory.listFiles();
+      if ( files != null ) {
+        for ( File file : files ) {
+          if ( file.getName().endsWith( BLOCK_FILE_SUFFIX ) ) {
+            file.delete();
+          }
+        }
+      }
+      closeQuietly( channel );
+      lockFile.delete();
+      processDirectory.delete();
+    }
+  }
+
+  /**
+   * @return the channel holding the lock on the file or null if another process (or cache) holds it
+   */
+  private static FileChannel lock( File lockFile ) {
+    FileChannel channel = null;
+    try {
+      channel = new RandomAccessFile( lockFile, "rw" ).getChannel();
+      if ( channel.tryLock() != null ) {
+        return channel;
+      }
+    } catch ( IOException | OverlappingFileLockException e ) {
+      // Locked by this process or not possible to lock at all
+    }
+    closeQuietly( channel );
+    return null;
+  }
+
+  private static void closeQuietly( FileChannel channel ) {
+    if ( channel != null ) {
+      try {
+        channel.close();
+      } catch ( IOException e ) {
+        // Ignore
+      }
+    }
+  }
+
+  /**
+   * @return the block cache configured with the KETTLE_VFS_BLOCK_CACHE_* system properties
+   */
+  public static synchronized KettleVFSBlockCache getInstance() {
+    if ( instance == null ) {
+      String directory = Const.NVL( System.getProperty( Const.KETTLE_VFS_BLOCK_CACHE_DIRECTORY ),
+        KettleVFS.TEMP_DIR + File.separator + "kettle-vfs-block-cache" );
+      instance = new KettleVFSBlockCache( new File( directory ),
+        Const.toInt( System.getProperty( Const.KETTLE_VFS_BLOCK_CACHE_BLOCK_SIZE ), DEFAULT_BLOCK_SIZE ),
+        Const.toInt( System.getProperty( Const.KETTLE_VFS_BLOCK_CACHE_PREFETCH ), DEFAULT_PREFETCH_BLOCKS ),
+        Const.toLong( System.getProperty( Const.KETTLE_VFS_BLOCK_CACHE_MAX_SIZE ), DEFAULT_MAX_SIZE ),
+        Const.toInt( System.getProperty( Const.KETTLE_VFS_BLOCK_CACHE_THREADS ), DEFAULT_THREADS ) );
+    }
+    return instance;
+  }
+
+  /**
+   * @return true if the block cache is enabled and the scheme of the file is one of the cached schemes
+   */
+  public static boolean isCached( FileObject fileObject ) {
+    if ( !"Y".equalsIgnoreCase( System.getProperty( Const.KETTLE_VFS_BLOCK_CACHE, "N" ) ) ) {
+      return false;
+    }
+    String scheme = fileObject.getName().getScheme();
+    String[] schemes =
+      Const.NVL( System.getProperty( Const.KETTLE_VFS_BLOCK_CACHE_SCHEMES ), DEFAULT_SCHEMES ).split( "," );
+    for ( String cachedScheme : schemes ) {
+      if ( cachedScheme.trim().equalsIgnoreCase( scheme ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Open a file through the cache. When the size or the modification time of the file can't be determined the content
+   * is not cached and a regular input stream is returned.
+   *
+   * @param fileObject
+   *          the file to read
+   * @return an input stream reading the blocks of the file
+   * @throws FileSystemException
+   */
+  public InputStream getInputStream( FileObject fileObject ) throws FileSystemException {
+    FileContent content = fileObject.getContent();
+    long size;
+    long lastModified;
+    try {
+      size = content.getSize();
+      lastModified = content.getLastModifiedTime();
+    } catch ( FileSystemException e ) {
+      return content.getInputStream();
+    }
+    if ( size <= 0 ) {
+      return content.getInputStream();
+    }
+    return new BlockInputStream( new BlockSource( fileObject, size, lastModified ) );
+  }
+
+  /**
+   * Remove all blocks from the cache.
+   */
+  public synchronized void clear() {
+    for ( String key : blocks.keySet() ) {
+      getBlockFile( key ).delete();
+    }
+    blocks.clear();
+    cachedBytes = 0;
+  }
+
+  /**
+   * @return the directory of this process in which the blocks are kept
+   */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return true if this cache holds the lock on its directory, so other processes leave its blocks alone
+   */
+  public boolean isDirectoryLocked() {
+    return lockChannel != null && lockChannel.isOpen();
+  }
+
+  /**
+   * @return the number of blocks read from the cache directory or from a prefetch
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of blocks the reader had to wait for
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of blocks fetched in the background
+   */
+  public long getPrefetches() {
+    return prefetches.get();
+  }
+
+  /**
+   * @return the number of blocks removed to keep the cache under its maximum size
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return the number of bytes fetched from the file systems
+   */
+  public long getBytesFetched() {
+    return bytesFetched.get();
+  }
+
+  /**
+   * @return the number of bytes handed to readers
+   */
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /**
+   * @return the number of bytes in the cache directory
+   */
+  public synchronized long getCachedBytes() {
+    return cachedBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "hits=" + hits.get() + ", misses=" + misses.get() + ", prefetches=" + prefetches.get() + ", evictions="
+      + evictions.get() + ", fetched=" + bytesFetched.get() + ", read=" + bytesRead.get() + ", cached="
+      + getCachedBytes();
+  }
+
+  private byte[] getBlock( final BlockSource source, final int blockNr ) throws IOException {
+    final String key = source.key + "_" + blockNr;
+
+    byte[] data = readCachedBlock( key );
+    if ( data != null ) {
+      hits.incrementAndGet();
+      return data;
+    }
+
+    FutureTask<byte[]> task = fetching.get( key );
+    if ( task != null ) {
+      // Fetched in the background, wait for it
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      task = newFetchTask( source, blockNr, key );
+      FutureTask<byte[]> running = fetching.putIfAbsent( key, task );
+      if ( running != null ) {
+        task = running;
+      } else {
+        task.run();
+      }
+    }
+
+    try {
+      return task.get();
+    } catch ( CancellationException | ExecutionException | InterruptedException e ) {
+      // The background fetch failed or was abandoned by the stream that started it, read the block ourselves
+      return source.read( blockNr );
+    }
+  }
+
+  private void prefetch( BlockSource source, int blockNr ) {
+    // A sequential source also fetches the block the reader needs now in its chain, so the stream is read in order
+    //
+    int first = source.randomAccess || prefetchBlocks == 0 ? 1 : 0;
+    for ( int i = first; i <= prefetchBlocks; i++ ) {
+      int nr = blockNr + i;
+      if ( nr >= source.nrBlocks ) {
+        return;
+      }
+      String key = source.key + "_" + nr;
+      if ( fetching.containsKey( key ) || isBlockCached( key ) ) {
+        continue;
+      }
+      FutureTask<byte[]> task = newFetchTask( source, nr, key );
+      if ( fetching.putIfAbsent( key, task ) == null ) {
+        if ( i > 0 ) {
+          prefetches.incrementAndGet();
+        }
+        source.pending.put( key, task );
+        source.submit( task );
+      }
+    }
+  }
+
+  private FutureTask<byte[]> newFetchTask( final BlockSource source, final int blockNr, final String key ) {
+    return new FutureTask<byte[]>( new Callable<byte[]>() {
+      @Override
+      public byte[] call() throws Exception {
+        try {
+          byte[] data = source.read( blockNr );
+          storeBlock( key, data );
+          return data;
+        } finally {
+          fetching.remove( key );
+          source.pending.remove( key );
+        }
+      }
+    } );
+  }
+
+  private synchronized boolean isBlockCached( String key ) {
+    return blocks.containsKey( key );
+  }
+
+  private byte[] readCachedBlock( String key ) throws IOException {
+    Integer length;
+    synchronized ( this ) {
+      length = blocks.get( key );
+    }
+    if ( length == null ) {
+      return null;
+    }
+    byte[] data = new byte[length];
+    try ( InputStream in = new FileInputStream( getBlockFile( key ) ) ) {
+      readFully( in, data );
+    } catch ( IOException e ) {
+      // Removed while we were reading it
+      synchronized ( this ) {
+        if ( blocks.remove( key ) != null ) {
+          cachedBytes -= data.length;
+        }
+      }
+      return null;
+    }
+    return data;
+  }
+
+  private void storeBlock( String key, byte[] data ) {
+    if ( data.length > maxSize ) {
+      return;
+    }
+    File file = getBlockFile( key );
+    try ( OutputStream out = new FileOutputStream( file ) ) {
+      out.write( data );
+    } catch ( IOException e ) {
+      // The cache directory is full or gone, just don't keep the block
+      file.delete();
+      return;
+    }
+    synchronized ( this ) {
+      if ( blocks.put( key, data.length ) == null ) {
+        cachedBytes += data.length;
+      }
+      Iterator<Map.Entry<String, Integer>> iterator = blocks.entrySet().iterator();
+      while ( cachedBytes > maxSize && iterator.hasNext() ) {
+        Map.Entry<String, Integer> eldest = iterator.next();
+        if ( eldest.getKey().equals( key ) ) {
+          continue;
+        }
+        cachedBytes -= eldest.getValue();
+        getBlockFile( eldest.getKey() ).delete();
+        iterator.remove();
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private File getBlockFile( String key ) {
+    return new File( directory, key + BLOCK_FILE_SUFFIX );
+  }
+
+  private static void readFully( InputStream in, byte[] data ) throws IOException {
+    int offset = 0;
+    while ( offset < data.length ) {
+      int n = in.read( data, offset, data.length - offset );
+      if ( n < 0 ) {
+        throw new EOFException();
+      }
+      offset += n;
+    }
+  }
+
+  private static String getKey( FileObject fileObject, long size, long lastModified ) {
+    String id = KettleVFS.getFriendlyURI( fileObject ) + "|" + size + "|" + lastModified;
+    try {
+      MessageDigest digest = MessageDigest.getInstance( "MD5" );
+      StringBuilder key = new StringBuilder();
+      for ( byte b : digest.digest( id.getBytes( StandardCharsets.UTF_8 ) ) ) {
+        key.append( String.format( "%02x", b ) );
+      }
+      return key.toString();
+    } catch ( NoSuchAlgorithmException e ) {
+      return Integer.toHexString( id.hashCode() );
+    }
+  }
+
+  /**
+   * Reads the blocks of one opened file. Random access content is opened per block so that blocks can be fetched
+   * concurrently, otherwise a single stream is read sequentially (and reopened when a block before its position is
+   * needed again). The background fetches of a sequential source run one after the other in block order.
+   */
+  private class BlockSource {
+    private final FileObject fileObject;
+    private final long size;
+    private final int nrBlocks;
+    private final String key;
+    private final boolean randomAccess;
+    private final Map<String, FutureTask<byte[]>> pending = new ConcurrentHashMap<String, FutureTask<byte[]>>();
+    private final Queue<FutureTask<byte[]>> chain = new ArrayDeque<FutureTask<byte[]>>();
+    private boolean chainRunning;
+
+    private InputStream stream;
+    private long position;
+    private volatile boolean closed;
+
+    BlockSource( FileObject fileObject, long size, long lastModified ) {
+      this.fileObject = fileObject;
+      this.size = size;
+      this.nrBlocks = (int) ( ( size + blockSize - 1 ) / blockSize );
+      this.key = getKey( fileObject, size, lastModified );
+      this.randomAccess = fileObject.getFileSystem().hasCapability( Capability.RANDOM_ACCESS_READ );
+    }
+
+    void submit( FutureTask<byte[]> task ) {
+      if ( randomAccess ) {
+        executor.execute( task );
+        return;
+      }
+      synchronized ( chain ) {
+        chain.add( task );
+        if ( chainRunning ) {
+          return;
+        }
+        chainRunning = true;
+      }
+      executor.execute( new Runnable() {
+        @Override
+        public void run() {
+          while ( true ) {
+            FutureTask<byte[]> next;
+            synchronized ( chain ) {
+              next = chain.poll();
+              if ( next == null ) {
+                chainRunning = false;
+                return;
+              }
+            }
+            next.run(); // does nothing when cancelled
+          }
+        }
+      } );
+    }
+
+    byte[] read( int blockNr ) throws IOException {
+      if ( closed ) {
+        throw new IOException( "Stream closed" );
+      }
+      long offset = (long) blockNr * blockSize;
+      byte[] data = new byte[(int) Math.min( blockSize, size - offset )];
+      if ( randomAccess ) {
+        RandomAccessContent content = fileObject.getContent().getRandomAccessContent( RandomAccessMode.READ );
+        try {
+          content.seek( offset );
+          content.readFully( data );
+        } finally {
+          content.close();
+        }
+      } else {
+        readSequential( offset, data );
+      }
+      bytesFetched.addAndGet( data.length );
+      return data;
+    }
+
+    private synchronized void readSequential( long offset, byte[] data ) throws IOException {
+      if ( stream == null || position > offset ) {
+        closeStream();
+        stream = fileObject.getContent().getInputStream();
+        position = 0;
+      }
+      while ( position < offset ) {
+        long skipped = stream.skip( offset - position );
+        if ( skipped <= 0 ) {
+          if ( stream.read() < 0 ) {
+            throw new EOFException();
+          }
+          skipped = 1;
+        }
+        position += skipped;
+      }
+      readFully( stream, data );
+      position += data.length;
+    }
+
+    private synchronized void closeStream() throws IOException {
+      if ( stream != null ) {
+        stream.close();
+        stream = null;
+      }
+    }
+
+    void close() throws IOException {
+      closed = true;
+      for ( Map.Entry<String, FutureTask<byte[]>> entry : pending.entrySet() ) {
+        // A task that never ran doesn't clean up after itself
+        if ( entry.getValue().cancel( false ) ) {
+          fetching.remove( entry.getKey(), entry.getValue() );
+        }
+      }
+      closeStream();
+    }
+  }
+
+  private class BlockInputStream extends InputStream {
+    private final BlockSource source;
+    private byte[] block;
+    private int blockNr = -1;
+    private int blockPosition;
+
+    BlockInputStream( BlockSource source ) {
+      this.source = source;
+    }
+
+    private boolean nextBlock() throws IOException {
+      if ( block != null && blockPosition < block.length ) {
+        return true;
+      }
+      if ( blockNr + 1 >= source.nrBlocks ) {
+        return false;
+      }
+      blockNr++;
+      prefetch( source, blockNr );
+      block = getBlock( source, blockNr );
+      blockPosition = 0;
+      bytesRead.addAndGet( block.length );
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if ( !nextBlock() ) {
+        return -1;
+      }
+      return block[blockPosition++] & 0xff;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+      if ( len == 0 ) {
+        return 0;
+      }
+      if ( !nextBlock() ) {
+        return -1;
+      }
+      int n = Math.min( len, block.length - blockPosition );
+      System.arraycopy( block, blockPosition, b, off, n );
+      blockPosition += n;
+      return n;
+    }
+
+    @Override
+    public long skip( long n ) throws IOException {
+      long skipped = 0;
+      while ( skipped < n && nextBlock() ) {
+        int step = (int) Math.min( n - skipped, block.length - blockPosition );
+        blockPosition += step;
+        skipped += step;
+      }
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return block == null ? 0 : block.length - blockPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+      source.close();
+    }
+  }
+}
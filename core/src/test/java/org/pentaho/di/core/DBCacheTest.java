@@ -0,0 +1,143 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class DBCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleClientEnvironment.init();
+  }
+
+  private static RowMetaInterface fields( String name ) {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( name ) );
+    return rowMeta;
+  }
+
+  private String filename() {
+    return new File( folder.getRoot(), "db.cache" ).getAbsolutePath();
+  }
+
+  @Test
+  public void testEvictsTheLeastRecentlyUsedEntries() throws Exception {
+    DBCache cache = new DBCache( filename(), 10, 0L );
+    for ( int i = 0; i < 10; i++ ) {
+      cache.put( new DBCacheEntry( "db", "SELECT " + i ), fields( "f" + i ) );
+    }
+    // Using the first query makes the second one the least recently used
+    assertNotNull( cache.get( new DBCacheEntry( "db", "SELECT 0" ) ) );
+    cache.put( new DBCacheEntry( "db", "SELECT 10" ), fields( "f10" ) );
+
+    assertEquals( 9, cache.size() );
+    assertNotNull( cache.get( new DBCacheEntry( "db", "SELECT 0" ) ) );
+    assertNull( cache.get( new DBCacheEntry( "db", "SELECT 1" ) ) );
+    assertNull( cache.get( new DBCacheEntry( "db", "SELECT 2" ) ) );
+    assertNotNull( cache.get( new DBCacheEntry( "db", "SELECT 10" ) ) );
+    assertEquals( 3, cache.getHits() );
+    assertEquals( 2, cache.getMisses() );
+  }
+
+  @Test
+  public void testExpiredEntriesAreLookedUpAgain() throws Exception {
+    DBCache cache = new DBCache( filename(), 0, 1L );
+    DBCacheEntry entry = new DBCacheEntry( "db", "SELECT * FROM orders" );
+    cache.put( entry, fields( "id" ) );
+    Thread.sleep( 10L );
+    assertNull( cache.get( entry ) );
+    assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testEntriesExpireAcrossRuns() throws Exception {
+    DBCache cache = new DBCache( filename(), 0, 0L );
+    DBCacheEntry entry = new DBCacheEntry( "db", "SELECT * FROM orders" );
+    cache.put( entry, fields( "id" ) );
+    cache.saveCache();
+    Thread.sleep( 50L );
+
+    // The entry keeps the time it was looked up, not the time the file was loaded
+    assertNull( new DBCache( filename(), 0, 20L ).get( entry ) );
+    assertNotNull( new DBCache( filename(), 0, 60000L ).get( entry ) );
+  }
+
+  @Test
+  public void testClearByTable() throws Exception {
+    DBCache cache = new DBCache( filename(), 0, 0L );
+    cache.put( new DBCacheEntry( "db", "SELECT * FROM sales.orders o" ), fields( "id" ) );
+    cache.put( new DBCacheEntry( "db", "SELECT * FROM order_lines" ), fields( "id" ) );
+    cache.put( new DBCacheEntry( "other", "SELECT * FROM orders" ), fields( "id" ) );
+
+    cache.clear( "db", "\"SALES\".\"ORDERS\"" );
+
+    assertEquals( 2, cache.size() );
+    assertNull( cache.get( new DBCacheEntry( "db", "SELECT * FROM sales.orders o" ) ) );
+    assertNotNull( cache.get( new DBCacheEntry( "db", "SELECT * FROM order_lines" ) ) );
+    assertNotNull( cache.get( new DBCacheEntry( "other", "SELECT * FROM orders" ) ) );
+  }
+
+  @Test
+  public void testSaveAppendsTheNewEntries() throws Exception {
+    DBCache cache = new DBCache( filename(), 0, 0L );
+    cache.put( new DBCacheEntry( "db", "SELECT a" ), fields( "a" ) );
+    cache.saveCache();
+    long length = new File( filename() ).length();
+
+    // Nothing changed: the file isn't written
+    cache.saveCache();
+    assertEquals( length, new File( filename() ).length() );
+
+    cache.put( new DBCacheEntry( "db", "SELECT b" ), fields( "b" ) );
+    cache.saveCache();
+    assertTrue( new File( filename() ).length() > length );
+
+    DBCache loaded = new DBCache( filename(), 0, 0L );
+    assertEquals( 2, loaded.size() );
+    assertEquals( "b", loaded.get( new DBCacheEntry( "db", "SELECT b" ) ).getValueMeta( 0 ).getName() );
+
+    // A removed entry makes the whole file written again
+    loaded.clear( "db", "a" );
+    loaded.saveCache();
+    DBCache reloaded = new DBCache( filename(), 0, 0L );
+    assertEquals( 1, reloaded.size() );
+    assertNotNull( reloaded.get( new DBCacheEntry( "db", "SELECT b" ) ) );
+  }
+}
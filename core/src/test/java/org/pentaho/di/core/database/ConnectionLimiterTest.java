@@ -0,0 +1,218 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+
+public class ConnectionLimiterTest {
+
+  private ConnectionLimiter limiter = new ConnectionLimiter();
+
+  @After
+  public void tearDown() {
+    System.clearProperty( Const.KETTLE_MAX_DB_CONNECTIONS_PER_DATABASE );
+    System.clearProperty( Const.KETTLE_DB_CONNECTION_LIMITS );
+  }
+
+  @Test
+  public void testNoLimits() throws Exception {
+    for ( int i = 0; i < 10; i++ ) {
+      limiter.acquire( "db", 0, 0, 100L );
+    }
+    ConnectionLimiter.ConnectionStatistics statistics = limiter.getStatistics().get( "db" );
+    assertEquals( 10, statistics.getActive() );
+    assertEquals( 10, statistics.getAcquired() );
+  }
+
+  @Test
+  public void testDatabaseLimitTimesOut() throws Exception {
+    ConnectionLimiter.Permit first = limiter.acquire( "db", 0, 1, 100L );
+    limiter.acquire( "other", 0, 1, 100L );
+    try {
+      limiter.acquire( "db", 0, 1, 50L );
+      fail( "The second connection to the database should time out" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    assertEquals( 1, limiter.getStatistics().get( "db" ).getTimeouts() );
+
+    // Releasing twice doesn't add a permit
+    first.release();
+    first.release();
+    limiter.acquire( "db", 0, 1, 50L );
+    assertEquals( 1, limiter.getStatistics().get( "db" ).getActive() );
+    try {
+      limiter.acquire( "db", 0, 1, 50L );
+      fail( "The database limit should still be 1" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testGlobalLimitTimesOutAndReleasesTheDatabasePermit() throws Exception {
+    limiter.acquire( "db", 1, 2, 100L );
+    try {
+      limiter.acquire( "other", 1, 1, 50L );
+      fail( "The global limit should be reached" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    // The permit of the failed attempt is given back
+    limiter.acquire( "other", 0, 1, 50L );
+  }
+
+  @Test
+  public void testWaitsForAConnectionToBeReleased() throws Exception {
+    final ConnectionLimiter.Permit first = limiter.acquire( "db", 0, 1, 1000L );
+    final CountDownLatch acquired = new CountDownLatch( 1 );
+    final AtomicReference<Exception> error = new AtomicReference<Exception>();
+    Thread waiting = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          limiter.acquire( "db", 0, 1, 10000L );
+          acquired.countDown();
+        } catch ( Exception e ) {
+          error.set( e );
+        }
+      }
+    } );
+    waiting.start();
+
+    assertEquals( false, acquired.await( 100, TimeUnit.MILLISECONDS ) );
+    assertEquals( 1, limiter.getStatistics().get( "db" ).getWaiting() );
+    first.release();
+    assertTrue( acquired.await( 5, TimeUnit.SECONDS ) );
+    waiting.join();
+
+    ConnectionLimiter.ConnectionStatistics statistics = limiter.getStatistics().get( "db" );
+    assertEquals( null, error.get() );
+    assertEquals( 0, statistics.getWaiting() );
+    assertEquals( 1, statistics.getActive() );
+    assertEquals( 2, statistics.getAcquired() );
+    assertTrue( statistics.getMaxWaitTime() >= 100L );
+  }
+
+  @Test
+  public void testTransformationNeedingMoreThanTheLimitFailsRightAway() throws Exception {
+    long start = System.currentTimeMillis();
+    try {
+      limiter.reserve( "trans", Collections.singletonMap( "db", 3 ), 0, Collections.singletonMap( "db", 2 ), 0L );
+      fail( "Waiting for 3 connections with a limit of 2 never ends" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    try {
+      limiter.reserve( "trans", connections( 2, 2 ), 3, new HashMap<String, Integer>(), 0L );
+      fail( "Waiting for 4 connections with a global limit of 3 never ends" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    assertTrue( System.currentTimeMillis() - start < 5000L );
+  }
+
+  @Test
+  public void testReservationsTakeAllConnectionsOrNone() throws Exception {
+    Map<String, Integer> limits = Collections.singletonMap( "db", 4 );
+    ConnectionLimiter.Reservation first = limiter.reserve( "first", Collections.singletonMap( "db", 3 ), 0, limits,
+      100L );
+    try {
+      limiter.reserve( "second", Collections.singletonMap( "db", 3 ), 0, limits, 50L );
+      fail( "Only one connection is left" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    // The failed reservation doesn't hold a part of the connections
+    limiter.acquire( "db", 0, 4, 50L ).release();
+
+    first.close();
+    assertTrue( limiter.reserve( "second", Collections.singletonMap( "db", 3 ), 0, limits, 50L ) != null );
+  }
+
+  @Test
+  public void testConnectionsOfTheTransformationUseTheReservation() throws Exception {
+    LoggingObjectInterface trans = mock( LoggingObjectInterface.class );
+    when( trans.getLogChannelId() ).thenReturn( "trans" );
+    LoggingObjectInterface step = mock( LoggingObjectInterface.class );
+    when( step.getLogChannelId() ).thenReturn( "step" );
+    when( step.getParent() ).thenReturn( trans );
+
+    ConnectionLimiter.Reservation reservation =
+      limiter.reserve( "trans", Collections.singletonMap( "db", 2 ), 2, new HashMap<String, Integer>(), 100L );
+    ConnectionLimiter.Permit first = limiter.acquire( "db", step );
+    ConnectionLimiter.Permit second = limiter.acquire( "db", step );
+    assertEquals( 0, reservation.getAvailable( "db" ) );
+    assertEquals( 2, limiter.getStatistics().get( "db" ).getActive() );
+
+    // A closed connection goes back to the reservation
+    first.release();
+    assertEquals( 1, reservation.getAvailable( "db" ) );
+    try {
+      limiter.acquire( "db", 2, 0, 50L );
+      fail( "The connections are reserved" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+
+    // Closing the reservation releases the unused connection, the open one when it is closed
+    reservation.close();
+    ConnectionLimiter.Permit other = limiter.acquire( "db", 2, 0, 50L );
+    second.release();
+    limiter.acquire( "db", 2, 0, 50L );
+    other.release();
+  }
+
+  private static Map<String, Integer> connections( int db, int other ) {
+    Map<String, Integer> connections = new HashMap<String, Integer>();
+    connections.put( "db", db );
+    connections.put( "other", other );
+    return connections;
+  }
+
+  @Test
+  public void testMaxConnectionsPerName() {
+    System.setProperty( Const.KETTLE_MAX_DB_CONNECTIONS_PER_DATABASE, "10" );
+    System.setProperty( Const.KETTLE_DB_CONNECTION_LIMITS, "warehouse = 20, crm=5" );
+    assertEquals( 20, ConnectionLimiter.getMaxConnections( "warehouse" ) );
+    assertEquals( 5, ConnectionLimiter.getMaxConnections( "CRM" ) );
+    assertEquals( 10, ConnectionLimiter.getMaxConnections( "staging" ) );
+  }
+}
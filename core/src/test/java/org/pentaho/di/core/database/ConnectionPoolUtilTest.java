@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -155,6 +155,21 @@ public class ConnectionPoolUtilTest implements Driver {
     verify( dataSource, never() ).setDriverClassLoader( any( ClassLoader.class ) );
   }
 
+  @Test
+  public void testPooledConnectionHoldsItsPermitUntilClosed() throws Exception {
+    Connection connection = mock( Connection.class );
+    ConnectionLimiter.Permit permit = new ConnectionLimiter().acquire( "db", 0, 1, 100L );
+    Connection limited = ConnectionPoolUtil.releaseOnClose( connection, permit );
+
+    limited.setAutoCommit( false );
+    verify( connection ).setAutoCommit( false );
+    assertFalse( permit.isReleased() );
+
+    limited.close();
+    verify( connection ).close();
+    assertTrue( permit.isReleased() );
+  }
+
   @Override
   public Connection connect( String url, Properties info ) throws SQLException {
     String password = info.getProperty( "password" );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -48,7 +48,9 @@ import javax.sql.DataSource;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.AdditionalAnswers;
 import org.mockito.Mockito;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.core.database.DataSourceProviderInterface.DatasourceType;
 import org.pentaho.di.core.exception.KettleDatabaseBatchException;
@@ -57,6 +59,7 @@ import org.pentaho.di.core.logging.LogLevel;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.logging.LoggingObjectType;
 import org.pentaho.di.core.logging.SimpleLoggingObject;
+import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaNumber;
@@ -68,6 +71,7 @@ public class DatabaseUnitTest {
   private static final SQLException SQL_EXCEPTION = new SQLException( SQL_MOCK_EXCEPTION_MESSAGE );
   private static final String EXISTING_TABLE_NAME = "TABLE";
   private static final String NOT_EXISTING_TABLE_NAME = "NOT_EXISTING_TABLE";
+  private static final String STREAMING_SQL = "SELECT * FROM DUMMY";
   private static final String SCHEMA_TO_CHECK = "schemaPattern";
   private static final String[] TABLE_TYPES_TO_GET = { "TABLE", "VIEW" };
   private ResultSet resultSetMock = mock( ResultSet.class );
@@ -423,6 +427,28 @@ public class DatabaseUnitTest {
     verify( ps ).executeUpdate();
   }
 
+  @Test
+  public void insertRowKeepsTheUpdateCountOutsideBatches() throws Exception {
+    DatabaseMeta dbMeta = mock( DatabaseMeta.class );
+    when( dbMeta.supportsBatchUpdates() ).thenReturn( true );
+
+    DatabaseMetaData dbMetaData = mock( DatabaseMetaData.class );
+    when( dbMetaData.supportsBatchUpdates() ).thenReturn( true );
+
+    Database db = new Database( mockLogger(), dbMeta );
+    db.setConnection( mockConnection( dbMetaData ) );
+    db.setCommit( 100 );
+
+    PreparedStatement ps = mock( PreparedStatement.class );
+    when( ps.executeUpdate() ).thenReturn( 0 );
+
+    db.insertRow( ps, false, false );
+    assertEquals( 0, db.getLastUpdateCount() );
+
+    db.insertRow( ps, true, false );
+    assertEquals( -1, db.getLastUpdateCount() );
+  }
+
   @Test
   public void testGetCreateSequenceStatement() throws Exception {
     DatabaseMeta dbMeta = mock( DatabaseMeta.class );
@@ -458,6 +484,51 @@ public class DatabaseUnitTest {
     verify( databaseInterface, times( 2 ) ).supportsAutoGeneratedKeys();
   }
 
+  /**
+   * A PostgreSQL database with the given connection in auto commit mode and a statement returning an empty result.
+   */
+  private static Database mockStreamingDatabase( Connection connection, Statement statement ) throws Exception {
+    DatabaseMeta dbMeta = mock( DatabaseMeta.class );
+    when( dbMeta.getDatabaseInterface() ).thenReturn( new PostgreSQLDatabaseMeta() );
+    when( dbMeta.isFetchSizeSupported() ).thenReturn( true );
+    when( dbMeta.stripCR( anyString() ) ).thenReturn( STREAMING_SQL );
+
+    when( connection.getAutoCommit() ).thenReturn( true );
+    when( connection.createStatement() ).thenReturn( statement );
+    ResultSet rs = mock( ResultSet.class );
+    when( statement.executeQuery( STREAMING_SQL ) ).thenReturn( rs );
+    when( rs.getMetaData() ).thenReturn( mock( ResultSetMetaData.class ) );
+
+    Database db = new Database( mockLogger(), dbMeta );
+    db.setConnection( connection );
+    return db;
+  }
+
+  @Test
+  public void testOpenQueryStreamsWithoutAutoCommitWhenTheDatabaseRequiresIt() throws Exception {
+    Connection connection = mockConnection( mock( DatabaseMetaData.class ) );
+    Statement statement = mock( Statement.class );
+    Database db = mockStreamingDatabase( connection, statement );
+    ResultSet result = db.openQuery( STREAMING_SQL );
+
+    verify( statement ).setFetchSize( Const.FETCH_SIZE );
+    verify( connection ).setAutoCommit( false );
+    verify( connection, never() ).setAutoCommit( true );
+
+    db.closeQuery( result );
+    verify( connection ).setAutoCommit( true );
+  }
+
+  @Test
+  public void testOpenQueryKeepsAutoCommitWhenStreamingCursorsAreDisabled() throws Exception {
+    Connection connection = mockConnection( mock( DatabaseMetaData.class ) );
+    Database db = mockStreamingDatabase( connection, mock( Statement.class ) );
+    db.setVariable( Const.KETTLE_STREAMING_CURSORS, "N" );
+    db.closeQuery( db.openQuery( STREAMING_SQL ) );
+
+    verify( connection, never() ).setAutoCommit( false );
+  }
+
   @Test
   public void testGetCreateTableStatement() throws Exception {
     ValueMetaInterface v = mock( ValueMetaInterface.class );
@@ -650,6 +721,36 @@ public class DatabaseUnitTest {
     return sb.toString();
   }
 
+  @Test
+  public void testOnlyStatementsWithParametersAreCached() throws Exception {
+    DatabaseMeta dbMeta = mock( DatabaseMeta.class );
+    DatabaseInterface databaseInterface = mock( DatabaseInterface.class );
+    when( databaseInterface.createSqlScriptParser() ).thenReturn( new SqlScriptParser( false ) );
+    when( dbMeta.getDatabaseInterface() ).thenReturn( databaseInterface );
+    when( dbMeta.stripCR( anyString() ) ).then( AdditionalAnswers.returnsFirstArg() );
+    Connection connection = mockConnection( mock( DatabaseMetaData.class ) );
+    PreparedStatement ps = mock( PreparedStatement.class );
+    when( connection.prepareStatement( anyString() ) ).thenReturn( ps );
+    Statement statement = mock( Statement.class );
+    when( connection.createStatement() ).thenReturn( statement );
+
+    Database db = new Database( mockLogger(), dbMeta );
+    db.setConnection( connection );
+    db.setStatementCacheSize( 2 );
+
+    db.execStatement( "SET search_path TO s" );
+    db.execStatement( "SET search_path TO s" );
+    verify( statement, times( 2 ) ).execute( "SET search_path TO s" );
+
+    RowMetaInterface params = new RowMeta();
+    params.addValueMeta( new ValueMetaNumber( "n" ) );
+    db.execStatement( "UPDATE t SET n = ?", params, new Object[] { 1.0 } );
+    db.execStatement( "UPDATE t SET n = ?", params, new Object[] { 2.0 } );
+    verify( connection, times( 1 ) ).prepareStatement( "UPDATE t SET n = ?" );
+    verify( ps, times( 2 ) ).execute();
+    assertEquals( 1, db.getStatementCache().getHits() );
+  }
+
   private static LoggingObjectInterface mockLogger() {
     LoggingObjectInterface logger = mock( LoggingObjectInterface.class );
     when( logger.getLogLevel() ).thenReturn( LogLevel.NOTHING );
@@ -789,4 +890,27 @@ public class DatabaseUnitTest {
     verify( connection, never() ).close();
   }
 
+  @Test
+  public void testDisconnectReleasesThePermitOfADroppedConnection() throws Exception {
+    ConnectionLimiter.Permit permit = new ConnectionLimiter().acquire( "db", 0, 1, 100L );
+    Connection connection = mockConnection( mock( DatabaseMetaData.class ) );
+    when( connection.isClosed() ).thenReturn( true );
+
+    Database db = new Database( mockLogger(), mock( DatabaseMeta.class ) );
+    db.setConnection( connection );
+    db.setConnectionPermit( permit );
+    db.disconnect();
+
+    assertTrue( permit.isReleased() );
+    verify( connection, never() ).close();
+  }
+
+  @Test
+  public void testGetTableNameOfDDL() {
+    assertEquals( "orders", Database.getTableNameOfDDL( "ALTER TABLE orders ADD amount INT" ) );
+    assertEquals( "sales.orders", Database.getTableNameOfDDL( "DROP TABLE IF EXISTS sales.orders;" ) );
+    assertEquals( "\"Orders\"", Database.getTableNameOfDDL( "CREATE TABLE IF NOT EXISTS \"Orders\"(id INT)" ) );
+    assertNull( Database.getTableNameOfDDL( "DROP TABLE" ) );
+  }
+
 }
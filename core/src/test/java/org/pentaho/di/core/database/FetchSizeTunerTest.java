@@ -0,0 +1,96 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FetchSizeTunerTest {
+
+  private long time;
+
+  /**
+   * Read a window of rows, waiting the given time for every row and spending the given time on it afterwards.
+   */
+  private boolean readWindow( FetchSizeTuner tuner, Object[] row, long wait, long processing ) {
+    boolean changed = false;
+    int rows = tuner.getFetchSize();
+    for ( int i = 0; i < rows; i++ ) {
+      long start = time;
+      time += wait;
+      changed |= tuner.rowRead( row, start, time );
+      time += processing;
+    }
+    return changed;
+  }
+
+  @Test
+  public void testGrowsWhileWaitingForTheDatabase() {
+    FetchSizeTuner tuner = new FetchSizeTuner( 1000, 1024L * 1024L * 1024L );
+    Object[] row = new Object[] { 1L, "abc" };
+    assertTrue( readWindow( tuner, row, 1000L, 10L ) );
+    assertEquals( 2000, tuner.getFetchSize() );
+    assertTrue( readWindow( tuner, row, 1000L, 10L ) );
+    assertEquals( 4000, tuner.getFetchSize() );
+  }
+
+  @Test
+  public void testShrinksWhenRowsAreProcessedSlowly() {
+    FetchSizeTuner tuner = new FetchSizeTuner( 1000, 1024L * 1024L * 1024L );
+    Object[] row = new Object[] { 1L, "abc" };
+    assertTrue( readWindow( tuner, row, 10L, 1000L ) );
+    assertEquals( 500, tuner.getFetchSize() );
+    readWindow( tuner, row, 10L, 1000L );
+    readWindow( tuner, row, 10L, 1000L );
+    readWindow( tuner, row, 10L, 1000L );
+    assertEquals( FetchSizeTuner.MIN_FETCH_SIZE, tuner.getFetchSize() );
+    assertFalse( readWindow( tuner, row, 10L, 1000L ) );
+  }
+
+  @Test
+  public void testStaysWithinTheBufferSize() {
+    StringBuilder wide = new StringBuilder();
+    for ( int i = 0; i < 1000; i++ ) {
+      wide.append( 'x' );
+    }
+    Object[] row = new Object[] { wide.toString(), new byte[ 1000 ] };
+    long width = FetchSizeTuner.estimateWidth( row );
+    assertTrue( width > 3000 );
+
+    FetchSizeTuner tuner = new FetchSizeTuner( 1000, width * 400 );
+    // even though we're waiting for the database, the rows of a fetch need to fit in the buffer
+    assertTrue( readWindow( tuner, row, 1000L, 10L ) );
+    assertEquals( 400, tuner.getFetchSize() );
+    assertEquals( width, tuner.getAverageRowWidth() );
+  }
+
+  @Test
+  public void testKeepsFetchSizeInBalance() {
+    FetchSizeTuner tuner = new FetchSizeTuner( 1000, 1024L * 1024L * 1024L );
+    assertFalse( readWindow( tuner, new Object[] { null, 1.0 }, 100L, 200L ) );
+    assertEquals( 1000, tuner.getFetchSize() );
+  }
+}
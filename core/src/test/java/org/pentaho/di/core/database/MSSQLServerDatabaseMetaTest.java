@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -273,4 +273,13 @@ public class MSSQLServerDatabaseMetaTest {
 
   }
 
+  @Test
+  public void testGetSQLUpsert() {
+    assertEquals( "MERGE INTO FOO kettle_target USING ( SELECT ? ID, ? A ) kettle_source "
+      + "ON ( kettle_target.ID = kettle_source.ID ) WHEN MATCHED AND ( ( kettle_target.A <> kettle_source.A "
+      + "OR ( kettle_target.A IS NULL AND kettle_source.A IS NOT NULL ) "
+      + "OR ( kettle_target.A IS NOT NULL AND kettle_source.A IS NULL ) ) ) THEN UPDATE SET A = kettle_source.A "
+      + "WHEN NOT MATCHED THEN INSERT ( ID, A ) VALUES ( kettle_source.ID, kettle_source.A );",
+      nativeMeta.getSQLUpsert( "FOO", new String[] { "ID" }, new String[] { "ID", "A" }, new String[] { "A" } ) );
+  }
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -223,4 +223,13 @@ public class MySQLDatabaseMetaTest {
     assertEquals( "insert into FOO(FOOKEY, FOOVERSION) values (1, 1)", nativeMeta.getSQLInsertAutoIncUnknownDimensionRow( "FOO", "FOOKEY", "FOOVERSION" ) );
   }
 
+  @Test
+  public void testGetSQLUpsert() {
+    assertEquals( "INSERT INTO FOO ( ID, A, B ) VALUES ( ?, ?, ? ) "
+      + "ON DUPLICATE KEY UPDATE A = VALUES(A), B = VALUES(B)",
+      nativeMeta.getSQLUpsert( "FOO", new String[] { "ID" }, new String[] { "ID", "A", "B" },
+        new String[] { "A", "B" } ) );
+    assertEquals( "INSERT INTO FOO ( ID, A ) VALUES ( ?, ? ) ON DUPLICATE KEY UPDATE ID = ID",
+      nativeMeta.getSQLUpsert( "FOO", new String[] { "ID" }, new String[] { "ID", "A" }, new String[0] ) );
+  }
 }
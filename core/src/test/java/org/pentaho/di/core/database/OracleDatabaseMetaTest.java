@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -314,4 +314,17 @@ public class OracleDatabaseMetaTest {
       nativeMeta.getAddColumnStatement( "FOO", new ValueMetaTimestamp( "FOO" ), "", false, "", false ) );
   }
 
+  @Test
+  public void testGetSQLUpsert() {
+    assertEquals( "MERGE INTO FOO kettle_target USING ( SELECT ? ID, ? A FROM dual ) kettle_source "
+      + "ON ( kettle_target.ID = kettle_source.ID ) WHEN MATCHED THEN UPDATE SET A = kettle_source.A "
+      + "WHERE ( ( kettle_target.A <> kettle_source.A OR ( kettle_target.A IS NULL AND kettle_source.A IS NOT NULL ) "
+      + "OR ( kettle_target.A IS NOT NULL AND kettle_source.A IS NULL ) ) ) "
+      + "WHEN NOT MATCHED THEN INSERT ( ID, A ) VALUES ( kettle_source.ID, kettle_source.A )",
+      nativeMeta.getSQLUpsert( "FOO", new String[] { "ID" }, new String[] { "ID", "A" }, new String[] { "A" } ) );
+    assertEquals( "MERGE INTO FOO kettle_target USING ( SELECT ? ID, ? A FROM dual ) kettle_source "
+      + "ON ( kettle_target.ID = kettle_source.ID ) "
+      + "WHEN NOT MATCHED THEN INSERT ( ID, A ) VALUES ( kettle_source.ID, kettle_source.A )",
+      nativeMeta.getSQLUpsert( "FOO", new String[] { "ID" }, new String[] { "ID", "A" }, new String[0] ) );
+  }
 }
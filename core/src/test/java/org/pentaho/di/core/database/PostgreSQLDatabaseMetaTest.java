@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -154,6 +154,8 @@ public class PostgreSQLDatabaseMetaTest {
     assertTrue( nativeMeta.requiresCastToVariousForIsNull() );
     assertFalse( nativeMeta.supportsGetBlob() );
     assertTrue( nativeMeta.useSafePoints() );
+    assertTrue( nativeMeta.isFetchSizeRequiringTransaction() );
+    assertTrue( nativeMeta.supportsAdaptiveFetchSize() );
   }
 
   @Test
@@ -258,4 +260,16 @@ public class PostgreSQLDatabaseMetaTest {
     assertNull( nativeMeta.getSQLUnlockTables(  new String[] { "FOO" } ) );
   }
 
+  @Test
+  public void testGetSQLUpsert() {
+    assertEquals( "INSERT INTO FOO AS kettle_target ( ID, A, B ) VALUES ( ?, ?, ? ) ON CONFLICT ( ID ) DO UPDATE SET "
+      + "A = EXCLUDED.A, B = EXCLUDED.B WHERE kettle_target.A IS DISTINCT FROM EXCLUDED.A "
+      + "OR kettle_target.B IS DISTINCT FROM EXCLUDED.B",
+      nativeMeta.getSQLUpsert( "FOO", new String[] { "ID" }, new String[] { "ID", "A", "B" },
+        new String[] { "A", "B" } ) );
+    assertEquals( "INSERT INTO FOO AS kettle_target ( ID, A ) VALUES ( ?, ? ) ON CONFLICT ( ID ) DO NOTHING",
+      nativeMeta.getSQLUpsert( "FOO", new String[] { "ID" }, new String[] { "ID", "A" }, new String[0] ) );
+    assertNull( new RedshiftDatabaseMeta().getSQLUpsert( "FOO", new String[] { "ID" }, new String[] { "ID", "A" },
+      new String[] { "A" } ) );
+  }
 }
@@ -0,0 +1,111 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+public class PreparedStatementCacheTest {
+
+  @Test
+  public void testCountsHitsAndMisses() {
+    PreparedStatementCache cache = new PreparedStatementCache( 2 );
+    PreparedStatement statement = mock( PreparedStatement.class );
+
+    assertNull( cache.get( "SELECT 1" ) );
+    cache.put( "SELECT 1", statement );
+    assertSame( statement, cache.get( "SELECT 1" ) );
+    assertSame( statement, cache.get( "SELECT 1" ) );
+
+    assertEquals( 2, cache.getHits() );
+    assertEquals( 1, cache.getMisses() );
+    assertEquals( 0, cache.getEvictions() );
+  }
+
+  @Test
+  public void testEvictsTheLeastRecentlyUsedStatement() throws Exception {
+    PreparedStatementCache cache = new PreparedStatementCache( 2 );
+    PreparedStatement first = mock( PreparedStatement.class );
+    PreparedStatement second = mock( PreparedStatement.class );
+    PreparedStatement third = mock( PreparedStatement.class );
+
+    cache.put( "first", first );
+    cache.put( "second", second );
+    // using the first statement makes the second one the least recently used
+    cache.get( "first" );
+    cache.put( "third", third );
+
+    assertEquals( 2, cache.size() );
+    assertEquals( 1, cache.getEvictions() );
+    verify( second ).close();
+    verify( first, never() ).close();
+    assertNull( cache.get( "second" ) );
+    assertSame( first, cache.get( "first" ) );
+  }
+
+  @Test
+  public void testRemoveAndReplaceCloseTheStatement() throws Exception {
+    PreparedStatementCache cache = new PreparedStatementCache( 2 );
+    PreparedStatement statement = mock( PreparedStatement.class );
+    PreparedStatement replacement = mock( PreparedStatement.class );
+
+    cache.put( "sql", statement );
+    cache.put( "sql", replacement );
+    verify( statement ).close();
+
+    cache.remove( "sql" );
+    verify( replacement ).close();
+    assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testClearClosesAllStatements() throws Exception {
+    PreparedStatementCache cache = new PreparedStatementCache( 2 );
+    PreparedStatement failing = mock( PreparedStatement.class );
+    PreparedStatement other = mock( PreparedStatement.class );
+    SQLException error = new SQLException( "close failed" );
+    doThrow( error ).when( failing ).close();
+
+    cache.put( "failing", failing );
+    cache.put( "other", other );
+    try {
+      cache.clear();
+      fail( "The error closing a statement should be thrown" );
+    } catch ( SQLException e ) {
+      assertSame( error, e );
+    }
+    verify( other ).close();
+    assertEquals( 0, cache.size() );
+  }
+}
@@ -0,0 +1,145 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.fileinput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.vfs2.FileObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.fileinput.FileInputList.FileTypeFilter;
+import org.pentaho.di.core.variables.Variables;
+
+public class FileInputEnumeratorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private String root;
+
+  @Before
+  public void setUp() throws Exception {
+    folder.newFile( "b.csv" );
+    folder.newFile( "a.csv" );
+    folder.newFile( "c.txt" );
+    folder.newFolder( "sub", "deeper" );
+    folder.newFile( "sub/d.csv" );
+    folder.newFile( "sub/deeper/e.csv" );
+    folder.newFolder( "sub2" );
+    folder.newFile( "sub2/f.csv" );
+    root = folder.getRoot().getAbsolutePath();
+  }
+
+  private FileInputEnumerator enumerator( String mask, String excludeMask, boolean subdirs, FileTypeFilter filter ) {
+    return new FileInputEnumerator( new Variables(), new String[] { root }, new String[] { mask },
+      new String[] { excludeMask }, new String[] { "N" }, new boolean[] { subdirs }, new FileTypeFilter[] { filter } );
+  }
+
+  private List<String> names( FileInputEnumerator enumerator ) {
+    List<String> names = new ArrayList<String>();
+    try {
+      while ( enumerator.hasNext() ) {
+        FileObject file = enumerator.next();
+        names.add( folder.getRoot().toURI().relativize( new File( file.getName().getPath() ).toURI() ).getPath() );
+      }
+    } finally {
+      enumerator.close();
+    }
+    return names;
+  }
+
+  @Test
+  public void testFolder() {
+    assertEquals( Arrays.asList( "a.csv", "b.csv" ),
+      names( enumerator( ".*\\.csv", null, false, FileTypeFilter.ONLY_FILES ) ) );
+    assertEquals( Arrays.asList( "a.csv", "b.csv", "c.txt" ),
+      names( enumerator( null, "sub.*", false, FileTypeFilter.FILES_AND_FOLDERS ) ) );
+  }
+
+  @Test
+  public void testSubFoldersDepthFirst() {
+    List<String> expected = Arrays.asList( "a.csv", "b.csv", "sub/d.csv", "sub/deeper/e.csv", "sub2/f.csv" );
+    assertEquals( expected, names( enumerator( ".*\\.csv", null, true, FileTypeFilter.ONLY_FILES ) ) );
+
+    // listing ahead in the background doesn't change the order
+    FileInputEnumerator enumerator = enumerator( ".*\\.csv", null, true, FileTypeFilter.ONLY_FILES );
+    enumerator.setThreads( 4 );
+    assertEquals( expected, names( enumerator ) );
+  }
+
+  @Test
+  public void testOnlyFolders() {
+    assertEquals( Arrays.asList( "sub/", "sub2/", "sub/deeper/" ),
+      names( enumerator( ".*", null, true, FileTypeFilter.ONLY_FOLDERS ) ) );
+  }
+
+  @Test
+  public void testOffsetAndLimit() {
+    FileInputEnumerator enumerator = enumerator( ".*\\.csv", null, true, FileTypeFilter.ONLY_FILES );
+    enumerator.setOffset( 1 );
+    enumerator.setLimit( 2 );
+    assertEquals( Arrays.asList( "b.csv", "sub/d.csv" ), names( enumerator ) );
+    assertEquals( 2, enumerator.getNrReturned() );
+  }
+
+  @Test
+  public void testRequiredFiles() {
+    String missing = new File( folder.getRoot(), "missing" ).getAbsolutePath();
+    FileInputEnumerator enumerator =
+      new FileInputEnumerator( new Variables(), new String[] { missing, root + "/c.txt", missing },
+        new String[] { ".*", null, null }, new String[] { null, null, null }, new String[] { "Y", "Y", "N" },
+        new boolean[] { false, false, false }, null );
+    assertEquals( Arrays.asList( "c.txt" ), names( enumerator ) );
+    assertEquals( 1, enumerator.getNonExistantFiles().size() );
+    assertTrue( enumerator.getNonAccessibleFiles().isEmpty() );
+  }
+
+  @Test
+  public void testRequiredFolderWithoutMatches() {
+    FileInputEnumerator enumerator =
+      new FileInputEnumerator( new Variables(), new String[] { root }, new String[] { ".*\\.xml" },
+        new String[] { null }, new String[] { "Y" }, new boolean[] { true }, null );
+    assertFalse( enumerator.hasNext() );
+    assertEquals( 1, enumerator.getNonAccessibleFiles().size() );
+  }
+
+  @Test
+  public void testCreateFileListIsSorted() {
+    FileInputList list =
+      FileInputList.createFileList( new Variables(), new String[] { root }, new String[] { ".*\\.csv" },
+        new String[] { null }, new String[] { "N" }, new boolean[] { true } );
+    assertEquals( 5, list.nrOfFiles() );
+    for ( int i = 1; i < list.nrOfFiles(); i++ ) {
+      assertTrue( list.getFileStrings()[ i - 1 ].compareTo( list.getFileStrings()[ i ] ) < 0 );
+    }
+  }
+}
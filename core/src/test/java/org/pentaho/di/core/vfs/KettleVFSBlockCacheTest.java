@@ -0,0 +1,189 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.core.vfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.vfs2.FileObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.Const;
+
+public class KettleVFSBlockCacheTest {
+
+  private static final int BLOCK_SIZE = 16;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File cacheDirectory;
+  private File dataFile;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDirectory = temporaryFolder.newFolder( "cache" );
+    dataFile = temporaryFolder.newFile( "data.txt" );
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty( Const.KETTLE_VFS_BLOCK_CACHE );
+    System.clearProperty( Const.KETTLE_VFS_BLOCK_CACHE_SCHEMES );
+  }
+
+  private byte[] writeData( int length, int seed ) throws IOException {
+    byte[] data = new byte[length];
+    for ( int i = 0; i < length; i++ ) {
+      data[i] = (byte) ( i * 31 + seed );
+    }
+    OutputStream out = new FileOutputStream( dataFile );
+    out.write( data );
+    out.close();
+    return data;
+  }
+
+  private byte[] readAll( KettleVFSBlockCache cache ) throws Exception {
+    FileObject fileObject = KettleVFS.getFileObject( dataFile.getAbsolutePath() );
+    InputStream in = cache.getInputStream( fileObject );
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[7];
+    int n;
+    while ( ( n = in.read( buffer ) ) >= 0 ) {
+      out.write( buffer, 0, n );
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testSecondReadComesFromCache() throws Exception {
+    KettleVFSBlockCache cache = new KettleVFSBlockCache( cacheDirectory, BLOCK_SIZE, 2, 1024, 2 );
+    byte[] data = writeData( 10 * BLOCK_SIZE + 5, 1 );
+
+    assertArrayEquals( data, readAll( cache ) );
+    assertEquals( 11, cache.getHits() + cache.getMisses() );
+    assertEquals( data.length, cache.getBytesFetched() );
+    assertEquals( data.length, cache.getCachedBytes() );
+
+    long misses = cache.getMisses();
+    assertArrayEquals( data, readAll( cache ) );
+    assertEquals( misses, cache.getMisses() );
+    assertEquals( data.length, cache.getBytesFetched() );
+    assertEquals( 2L * data.length, cache.getBytesRead() );
+  }
+
+  @Test
+  public void testLeastRecentlyUsedBlocksAreEvicted() throws Exception {
+    KettleVFSBlockCache cache = new KettleVFSBlockCache( cacheDirectory, BLOCK_SIZE, 1, 3 * BLOCK_SIZE, 1 );
+    byte[] data = writeData( 8 * BLOCK_SIZE, 2 );
+
+    assertArrayEquals( data, readAll( cache ) );
+    assertEquals( 5, cache.getEvictions() );
+    assertEquals( 3 * BLOCK_SIZE, cache.getCachedBytes() );
+    assertEquals( 3, countBlockFiles( cache.getDirectory() ) );
+  }
+
+  @Test
+  public void testChangedFileIsFetchedAgain() throws Exception {
+    KettleVFSBlockCache cache = new KettleVFSBlockCache( cacheDirectory, BLOCK_SIZE, 2, 1024, 2 );
+    writeData( 3 * BLOCK_SIZE, 3 );
+    readAll( cache );
+
+    byte[] data = writeData( 3 * BLOCK_SIZE + 1, 4 );
+    dataFile.setLastModified( dataFile.lastModified() + 2000 );
+    assertArrayEquals( data, readAll( cache ) );
+    assertEquals( 6 * BLOCK_SIZE + 1, cache.getBytesFetched() );
+  }
+
+  @Test
+  public void testSkip() throws Exception {
+    KettleVFSBlockCache cache = new KettleVFSBlockCache( cacheDirectory, BLOCK_SIZE, 0, 1024, 1 );
+    byte[] data = writeData( 4 * BLOCK_SIZE, 5 );
+
+    InputStream in = cache.getInputStream( KettleVFS.getFileObject( dataFile.getAbsolutePath() ) );
+    assertEquals( 2 * BLOCK_SIZE + 3, in.skip( 2 * BLOCK_SIZE + 3 ) );
+    assertEquals( data[2 * BLOCK_SIZE + 3] & 0xff, in.read() );
+    in.close();
+  }
+
+  private static int countBlockFiles( File directory ) {
+    int count = 0;
+    for ( File file : directory.listFiles() ) {
+      if ( file.getName().endsWith( KettleVFSBlockCache.BLOCK_FILE_SUFFIX ) ) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testLeftOverBlocksAreRemoved() throws Exception {
+    File processDirectory = new File( cacheDirectory, "process-gone" );
+    assertTrue( processDirectory.mkdirs() );
+    File leftOver = new File( processDirectory, "old" + KettleVFSBlockCache.BLOCK_FILE_SUFFIX );
+    assertTrue( leftOver.createNewFile() );
+    new KettleVFSBlockCache( cacheDirectory, BLOCK_SIZE, 0, 1024, 1 );
+    assertFalse( leftOver.exists() );
+    assertFalse( processDirectory.exists() );
+  }
+
+  @Test
+  public void testBlocksOfARunningCacheAreKept() throws Exception {
+    KettleVFSBlockCache cache = new KettleVFSBlockCache( cacheDirectory, BLOCK_SIZE, 0, 1024, 1 );
+    assertTrue( cache.isDirectoryLocked() );
+    byte[] data = writeData( 2 * BLOCK_SIZE, 6 );
+    readAll( cache );
+    assertEquals( 2, countBlockFiles( cache.getDirectory() ) );
+
+    KettleVFSBlockCache other = new KettleVFSBlockCache( cacheDirectory, BLOCK_SIZE, 0, 1024, 1 );
+    assertFalse( cache.getDirectory().equals( other.getDirectory() ) );
+    assertEquals( 2, countBlockFiles( cache.getDirectory() ) );
+    assertArrayEquals( data, readAll( cache ) );
+    assertEquals( data.length, cache.getBytesFetched() );
+  }
+
+  @Test
+  public void testIsCached() throws Exception {
+    FileObject fileObject = KettleVFS.getFileObject( dataFile.getAbsolutePath() );
+    assertFalse( KettleVFSBlockCache.isCached( fileObject ) );
+
+    System.setProperty( Const.KETTLE_VFS_BLOCK_CACHE, "Y" );
+    assertFalse( KettleVFSBlockCache.isCached( fileObject ) );
+
+    System.setProperty( Const.KETTLE_VFS_BLOCK_CACHE_SCHEMES, "sftp, file" );
+    assertTrue( KettleVFSBlockCache.isCached( fileObject ) );
+  }
+}
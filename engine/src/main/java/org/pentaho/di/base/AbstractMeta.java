@@ -1389,6 +1389,28 @@ public abstract class AbstractMeta implements ChangedFlagInterface, UndoInterfac
     variables = space;
   }
 
+  /**
+   * Give a clone of this object its own variables and channel log table, and make its databases use them. A clone made
+   * by realClone( false ) shares these with this object, changing the variables of the clone would change this object.
+   *
+   * @param copy
+   *          the clone of this object
+   */
+  protected void detachCopy( AbstractMeta copy ) {
+    Variables copyVariables = new Variables();
+    copyVariables.copyVariablesFrom( variables );
+    copyVariables.setParentVariableSpace( variables.getParentVariableSpace() );
+    copy.variables = copyVariables;
+
+    for ( DatabaseMeta databaseMeta : copy.databases ) {
+      databaseMeta.shareVariablesWith( copy );
+    }
+    if ( channelLogTable != null ) {
+      copy.channelLogTable = (ChannelLogTable) channelLogTable.clone();
+      copy.channelLogTable.setParentMeta( copy, copy );
+    }
+  }
+
   /*
    * (non-Javadoc)
    *
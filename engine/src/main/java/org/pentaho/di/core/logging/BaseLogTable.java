@@ -90,6 +90,20 @@ public abstract class BaseLogTable {
     }
   }
 
+  /**
+   * Resolve the settings of the log table with other variables and databases, for example the ones of a copy of the
+   * transformation or job it belongs to.
+   *
+   * @param space
+   *          the variables to resolve the connection, schema and table names with
+   * @param databasesInterface
+   *          the databases to find the connection in
+   */
+  public void setParentMeta( VariableSpace space, HasDatabasesInterface databasesInterface ) {
+    this.space = space;
+    this.databasesInterface = databasesInterface;
+  }
+
   public String toString() {
     if ( isDefined() ) {
       return getDatabaseMeta().getName() + "-" + getActualTableName();
@@ -0,0 +1,240 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.job;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.variables.VariableSpace;
+
+/**
+ * Keeps track of the input rows a job entry already processed successfully when it is executed for every input row.
+ * Every completed row is appended to a small file in the checkpoint directory right away so that a re-run of a job
+ * that failed half way can skip the rows (for example the files of a file list) that were already done. The file is
+ * removed once the job entry finished all its rows without errors.<br>
+ * <br>
+ * The first line of the file holds the key of the run: a digest of the parameters and variables the job entry runs
+ * with. A file of a run with other settings is ignored and overwritten, so those rows are processed again.
+ */
+public class JobEntryCheckpointStore {
+
+  private static final String EXTENSION = ".checkpoint";
+
+  private static final String RUN_PREFIX = "run=";
+
+  private final File file;
+
+  private final String runKey;
+
+  /** The rows completed in a previous run with the same key, read from the file */
+  private final Set<String> loaded;
+
+  /** The rows completed in the previous and in this run */
+  private final Set<String> completed;
+
+  /** True if the file holds the key of this run, false if it has to be (re)written from scratch */
+  private boolean ownFile;
+
+  public JobEntryCheckpointStore( File file, String runKey ) throws KettleException {
+    this.file = file;
+    this.runKey = Const.NVL( runKey, "" );
+    this.loaded = new HashSet<String>();
+    this.completed = new HashSet<String>();
+    if ( file.exists() ) {
+      try ( BufferedReader reader =
+        new BufferedReader( new InputStreamReader( new FileInputStream( file ), StandardCharsets.UTF_8 ) ) ) {
+        String line = reader.readLine();
+        ownFile = line != null && line.trim().equals( RUN_PREFIX + this.runKey );
+        while ( ownFile && ( line = reader.readLine() ) != null ) {
+          if ( !Utils.isEmpty( line ) ) {
+            loaded.add( line.trim() );
+          }
+        }
+      } catch ( IOException e ) {
+        throw new KettleException( "Unable to read checkpoint file [" + file + "]", e );
+      }
+      completed.addAll( loaded );
+    }
+  }
+
+  /**
+   * Opens the checkpoint store of a job entry if checkpoints are switched on with the KETTLE_JOB_CHECKPOINTS variable.
+   *
+   * @param space
+   *          the variables to look in, typically the job entry itself
+   * @param jobName
+   *          the name of the job
+   * @param entryName
+   *          the name of the job entry
+   * @param runKey
+   *          the key of the run, see {@link #getRunKey(Map)}
+   * @return the checkpoint store or null if checkpoints are not enabled
+   * @throws KettleException
+   *           in case the checkpoint file could not be read
+   */
+  public static JobEntryCheckpointStore open( VariableSpace space, String jobName, String entryName, String runKey )
+    throws KettleException {
+    if ( !isEnabled( space ) ) {
+      return null;
+    }
+    String directory = space.getVariable( Const.KETTLE_JOB_CHECKPOINT_DIRECTORY );
+    if ( Utils.isEmpty( directory ) ) {
+      directory = Const.getKettleDirectory() + Const.FILE_SEPARATOR + "checkpoints";
+    }
+    return new JobEntryCheckpointStore( new File( directory, getFilename( jobName, entryName ) ), runKey );
+  }
+
+  /**
+   * @return true if checkpoints are switched on with the KETTLE_JOB_CHECKPOINTS variable
+   */
+  public static boolean isEnabled( VariableSpace space ) {
+    return "Y".equalsIgnoreCase( space.getVariable( Const.KETTLE_JOB_CHECKPOINTS ) );
+  }
+
+  /**
+   * @return the name of the checkpoint file of a job entry, only containing characters that are safe in filenames. A
+   *         digest of the names keeps names like "a b" and "a_b" apart.
+   */
+  public static String getFilename( String jobName, String entryName ) {
+    String name = Const.NVL( jobName, "" ) + "_" + Const.NVL( entryName, "" );
+    String digest =
+      DigestUtils.md5Hex( ( Const.NVL( jobName, "" ) + '\0' + Const.NVL( entryName, "" ) )
+        .getBytes( StandardCharsets.UTF_8 ) );
+    return name.replaceAll( "[^A-Za-z0-9._-]", "_" ) + "_" + digest + EXTENSION;
+  }
+
+  /**
+   * Calculates the key of a run: a digest of the settings the job entry runs with, in any order.
+   *
+   * @param settings
+   *          the names and values of the parameters and variables of the run
+   * @return the key of the run
+   */
+  public static String getRunKey( Map<String, String> settings ) {
+    StringBuilder builder = new StringBuilder();
+    for ( Map.Entry<String, String> setting : new TreeMap<String, String>( settings ).entrySet() ) {
+      builder.append( setting.getKey() ).append( '=' ).append( Const.NVL( setting.getValue(), "" ) ).append( '\n' );
+    }
+    return DigestUtils.md5Hex( builder.toString().getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  /**
+   * Calculates the key of an input row: a digest of the names and the string representation of all its values.
+   *
+   * @param row
+   *          the input row
+   * @return the key of the row
+   * @throws KettleValueException
+   *           in case a value can't be converted to a string
+   */
+  public static String getRowKey( RowMetaAndData row ) throws KettleValueException {
+    StringBuilder builder = new StringBuilder();
+    RowMetaInterface rowMeta = row.getRowMeta();
+    for ( int i = 0; i < rowMeta.size(); i++ ) {
+      builder.append( rowMeta.getValueMeta( i ).getName() ).append( '=' );
+      builder.append( rowMeta.getString( row.getData(), i ) ).append( '\n' );
+    }
+    return DigestUtils.md5Hex( builder.toString().getBytes( StandardCharsets.UTF_8 ) );
+  }
+
+  /**
+   * @return true if the row with the given key was completed in a previous run with the same run key. The rows
+   *         completed in this run don't count, an input row that comes twice is processed twice.
+   */
+  public synchronized boolean isCompleted( String key ) {
+    return loaded.contains( key );
+  }
+
+  /**
+   * Records that the row with the given key was processed successfully. The key is written to disk before this method
+   * returns.
+   *
+   * @param key
+   *          the key of the row
+   * @throws KettleException
+   *           in case the checkpoint file could not be written
+   */
+  public synchronized void markCompleted( String key ) throws KettleException {
+    if ( !completed.add( key ) ) {
+      return;
+    }
+    File parent = file.getParentFile();
+    if ( parent != null && !parent.exists() && !parent.mkdirs() ) {
+      throw new KettleException( "Unable to create checkpoint directory [" + parent + "]" );
+    }
+    // The file of another run is replaced
+    try ( FileOutputStream outputStream = new FileOutputStream( file, ownFile ) ) {
+      Writer writer = new OutputStreamWriter( outputStream, StandardCharsets.UTF_8 );
+      if ( !ownFile ) {
+        writer.write( RUN_PREFIX + runKey + Const.CR );
+      }
+      writer.write( key + Const.CR );
+      writer.flush();
+      outputStream.getFD().sync();
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to write checkpoint file [" + file + "]", e );
+    }
+    ownFile = true;
+  }
+
+  /**
+   * Removes the checkpoint: the next run processes all the rows again.
+   */
+  public synchronized void clear() {
+    loaded.clear();
+    completed.clear();
+    ownFile = false;
+    if ( file.exists() ) {
+      file.delete();
+    }
+  }
+
+  /**
+   * @return the number of rows that were completed so far
+   */
+  public synchronized int getNrCompleted() {
+    return completed.size();
+  }
+
+  public File getFile() {
+    return file;
+  }
+}
@@ -436,6 +436,32 @@ public class JobMeta extends AbstractMeta
     }
   }
 
+  /**
+   * Copies the job to execute it while this job stays unchanged, for example because it is kept in a cache. Unlike
+   * realClone( false ) the copy gets its own variables and log tables, and its hops and job entries refer to the copy.
+   * The log tables of plugins are still shared.
+   *
+   * @return the copy of the job
+   */
+  public JobMeta copyForExecution() {
+    JobMeta jobMeta = (JobMeta) realClone( false );
+    detachCopy( jobMeta );
+
+    for ( JobEntryCopy jobEntry : jobMeta.jobcopies ) {
+      jobEntry.setParentJobMeta( jobMeta );
+    }
+    for ( JobHopMeta hop : jobMeta.jobhops ) {
+      hop.setFromEntry( jobMeta.findJobEntry( hop.getFromEntry().getName(), hop.getFromEntry().getNr(), true ) );
+      hop.setToEntry( jobMeta.findJobEntry( hop.getToEntry().getName(), hop.getToEntry().getNr(), true ) );
+    }
+
+    jobMeta.jobLogTable = (JobLogTable) jobLogTable.clone();
+    jobMeta.jobLogTable.setParentMeta( jobMeta, jobMeta );
+    jobMeta.jobEntryLogTable = (JobEntryLogTable) jobEntryLogTable.clone();
+    jobMeta.jobEntryLogTable.setParentMeta( jobMeta, jobMeta );
+    return jobMeta;
+  }
+
   /**
    * Gets the job log table.
    *
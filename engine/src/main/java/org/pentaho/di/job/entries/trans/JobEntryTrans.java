@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -25,6 +25,7 @@ package org.pentaho.di.job.entries.trans;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -57,6 +58,7 @@ import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.job.DelegationListener;
 import org.pentaho.di.job.Job;
+import org.pentaho.di.job.JobEntryCheckpointStore;
 import org.pentaho.di.job.JobMeta;
 import org.pentaho.di.job.entry.JobEntryBase;
 import org.pentaho.di.job.entry.JobEntryInterface;
@@ -730,6 +732,22 @@ public class JobEntryTrans extends JobEntryBase implements Cloneable, JobEntryIn
     boolean first = true;
     List<RowMetaAndData> rows = new ArrayList<RowMetaAndData>( result.getRows() );
 
+    // With KETTLE_JOB_CHECKPOINTS, skip the input rows that were completed in a previous (failed) run of the job
+    // with the same parameters
+    //
+    JobEntryCheckpointStore checkpoints = null;
+    if ( execPerRow && JobEntryCheckpointStore.isEnabled( this ) ) {
+      try {
+        String runKey = getCheckpointRunKey( transMeta, args );
+        checkpoints = JobEntryCheckpointStore.open( this, parentJob.getJobname(), getName(), runKey );
+      } catch ( KettleException e ) {
+        logError( Const.getStackTracker( e ) );
+        result.setNrErrors( 1 );
+        result.setResult( false );
+        return result;
+      }
+    }
+
     while ( ( first && !execPerRow )
       || ( execPerRow && rows != null && iteration < rows.size() && result.getNrErrors() == 0 )
       && !parentJob.isStopped() ) {
@@ -745,6 +763,22 @@ public class JobEntryTrans extends JobEntryBase implements Cloneable, JobEntryIn
         resultRow = null;
       }
 
+      String checkpointKey = null;
+      if ( checkpoints != null && resultRow != null ) {
+        try {
+          checkpointKey = JobEntryCheckpointStore.getRowKey( resultRow );
+        } catch ( KettleException e ) {
+          logError( Const.getStackTracker( e ) );
+          result.setNrErrors( 1 );
+          break;
+        }
+        if ( checkpoints.isCompleted( checkpointKey ) ) {
+          logBasic( BaseMessages.getString( PKG, "JobTrans.Log.SkippingCompletedRow", iteration + 1 ) );
+          iteration++;
+          continue;
+        }
+      }
+
       NamedParams namedParam = new NamedParamsDefault();
       if ( parameters != null ) {
         for ( int idx = 0; idx < parameters.length; idx++ ) {
@@ -1221,9 +1255,24 @@ public class JobEntryTrans extends JobEntryBase implements Cloneable, JobEntryIn
         logError( Const.getStackTracker( e ) );
         result.setNrErrors( 1 );
       }
+
+      if ( checkpointKey != null && result.getNrErrors() == 0 && !parentJob.isStopped() ) {
+        try {
+          checkpoints.markCompleted( checkpointKey );
+        } catch ( KettleException e ) {
+          logError( Const.getStackTracker( e ) );
+          result.setNrErrors( 1 );
+        }
+      }
       iteration++;
     }
 
+    // All rows are done: the next run of the job starts from scratch again.
+    //
+    if ( checkpoints != null && result.getNrErrors() == 0 && !parentJob.isStopped() ) {
+      checkpoints.clear();
+    }
+
     if ( setLogfile ) {
       if ( logChannelFileWriter != null ) {
         logChannelFileWriter.stopLogging();
@@ -1254,6 +1303,35 @@ public class JobEntryTrans extends JobEntryBase implements Cloneable, JobEntryIn
     return result;
   }
 
+  /**
+   * @return the key of the run for the checkpoints: the transformation, the parameters of the job and the
+   *         transformation, the parameter values of this job entry and the arguments
+   */
+  private String getCheckpointRunKey( TransMeta transMeta, String[] args ) {
+    Map<String, String> settings = new HashMap<String, String>();
+    settings.put( "transformation", Const.NVL( transMeta.getFilename(), transMeta.getName() ) );
+    for ( String name : parentJob.listParameters() ) {
+      settings.put( "job.parameter." + name, getVariable( name ) );
+    }
+    for ( String name : transMeta.listParameters() ) {
+      settings.put( "transformation.parameter." + name, getVariable( name ) );
+    }
+    if ( parameters != null ) {
+      for ( int idx = 0; idx < parameters.length; idx++ ) {
+        // The values taken from the input rows are part of the row keys
+        if ( !Utils.isEmpty( parameters[ idx ] ) && Utils.isEmpty( Const.trim( parameterFieldNames[ idx ] ) ) ) {
+          settings.put( "parameter." + parameters[ idx ], environmentSubstitute( parameterValues[ idx ] ) );
+        }
+      }
+    }
+    if ( args != null ) {
+      for ( int idx = 0; idx < args.length; idx++ ) {
+        settings.put( "argument." + idx, args[ idx ] );
+      }
+    }
+    return JobEntryCheckpointStore.getRunKey( settings );
+  }
+
   /**
    * @deprecated use {@link #getTransMeta(Repository, IMetaStore, VariableSpace)}
    * @param rep
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -61,6 +61,25 @@ public class ModPartitioner extends BasePartitioner {
   }
 
   public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    long value = getPartitionValue( rowMeta, row );
+
+    int targetLocation = (int) ( Math.abs( value ) % nrPartitions );
+
+    return targetLocation;
+  }
+
+  /**
+   * Gets the value to partition the row on: the value of an Integer partitioning field, the hash code otherwise.
+   *
+   * @param rowMeta
+   *          the row meta
+   * @param row
+   *          the row
+   * @return the value to partition on
+   * @throws KettleException
+   *           if the partitioning field is not in the row
+   */
+  protected long getPartitionValue( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
     init( rowMeta );
 
     if ( partitionColumnIndex < 0 ) {
@@ -89,13 +108,7 @@ public class ModPartitioner extends BasePartitioner {
         value = valueMeta.hashCode( valueData );
     }
 
-    /*
-     * value = rowMeta.getInteger(row, partitionColumnIndex);
-     */
-
-    int targetLocation = (int) ( Math.abs( value ) % nrPartitions );
-
-    return targetLocation;
+    return value;
   }
 
   public String getDescription() {
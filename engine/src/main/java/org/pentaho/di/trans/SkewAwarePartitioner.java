@@ -0,0 +1,241 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.Utils;
+
+/**
+ * A mod partitioner that moves work away from hot partitions at run time.<br>
+ * <br>
+ * The value of the partitioning field is hashed into a number of buckets per partition. The buckets start out
+ * assigned to the partitions like the mod partitioner does. The partitioner counts the rows of each bucket and every
+ * {@link #REBALANCE_ROWS} rows moves buckets from the busiest partitions to the idlest ones. A bucket that has more
+ * rows than a partition should get on its own, usually a single hot key, is split: its rows are sent to all the
+ * partitions in turn until it cools down.<br>
+ * <br>
+ * The rows of a key don't always go to the same partition, so this partitioner is only meant for steps that don't need
+ * all the rows of a key together, or that are followed by a step combining their partial results, e.g. a Memory Group
+ * By behind another Memory Group By.
+ */
+public class SkewAwarePartitioner extends ModPartitioner {
+
+  /**
+   * The number of buckets per partition, the unit of work that is moved.
+   */
+  public static final int BUCKETS_PER_PARTITION = 16;
+
+  /**
+   * The number of rows between two rebalancing rounds.
+   */
+  public static final int REBALANCE_ROWS = 10000;
+
+  /**
+   * How much busier than the average a partition may be before buckets are moved away from it.
+   */
+  public static final double TOLERANCE = 1.1;
+
+  /**
+   * The bucket of a split key in the partition table.
+   */
+  static final int SPLIT = -1;
+
+  private int rebalanceRows = REBALANCE_ROWS;
+
+  /**
+   * The partition of each bucket, or SPLIT. Replaced as a whole when rebalancing.
+   */
+  private volatile int[] partitionTable;
+
+  private AtomicLongArray bucketRows;
+
+  private final AtomicLong rows = new AtomicLong();
+
+  private final AtomicInteger nextSplitPartition = new AtomicInteger();
+
+  public SkewAwarePartitioner() {
+    super();
+  }
+
+  public Partitioner getInstance() {
+    Partitioner partitioner = new SkewAwarePartitioner();
+    partitioner.setId( getId() );
+    partitioner.setDescription( getDescription() );
+    return partitioner;
+  }
+
+  public int getPartition( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    long value = getPartitionValue( rowMeta, row );
+
+    int[] table = getPartitionTable();
+    int bucket = (int) Math.abs( value % table.length );
+    bucketRows.incrementAndGet( bucket );
+
+    int partition = table[bucket];
+    if ( partition == SPLIT ) {
+      partition = ( nextSplitPartition.getAndIncrement() & Integer.MAX_VALUE ) % nrPartitions;
+    }
+
+    if ( rows.incrementAndGet() % rebalanceRows == 0 ) {
+      rebalance();
+    }
+    return partition;
+  }
+
+  private int[] getPartitionTable() {
+    int[] table = partitionTable;
+    if ( table == null ) {
+      synchronized ( this ) {
+        table = partitionTable;
+        if ( table == null ) {
+          table = new int[nrPartitions * BUCKETS_PER_PARTITION];
+          for ( int bucket = 0; bucket < table.length; bucket++ ) {
+            table[bucket] = bucket % nrPartitions;
+          }
+          bucketRows = new AtomicLongArray( table.length );
+          partitionTable = table;
+        }
+      }
+    }
+    return table;
+  }
+
+  private synchronized void rebalance() {
+    long[] counts = new long[bucketRows.length()];
+    for ( int bucket = 0; bucket < counts.length; bucket++ ) {
+      counts[bucket] = bucketRows.getAndSet( bucket, 0L );
+    }
+    partitionTable = rebalance( partitionTable, counts, nrPartitions );
+  }
+
+  /**
+   * Calculates a new partition table from the rows each bucket got since the last round.
+   *
+   * @param table
+   *          the current partition of each bucket
+   * @param counts
+   *          the rows of each bucket
+   * @param nrPartitions
+   *          the number of partitions
+   * @return the new partition of each bucket
+   */
+  static int[] rebalance( int[] table, long[] counts, int nrPartitions ) {
+    long total = 0L;
+    for ( long count : counts ) {
+      total += count;
+    }
+    if ( total == 0L ) {
+      return table;
+    }
+    double fair = (double) total / nrPartitions;
+
+    // Split the buckets that are too big for one partition, the others get a partition again
+    //
+    int[] newTable = table.clone();
+    double[] load = new double[nrPartitions];
+    for ( int bucket = 0; bucket < newTable.length; bucket++ ) {
+      if ( counts[bucket] > fair ) {
+        newTable[bucket] = SPLIT;
+        for ( int partition = 0; partition < nrPartitions; partition++ ) {
+          load[partition] += (double) counts[bucket] / nrPartitions;
+        }
+      }
+    }
+    for ( int bucket = 0; bucket < newTable.length; bucket++ ) {
+      if ( counts[bucket] <= fair ) {
+        if ( newTable[bucket] == SPLIT ) {
+          newTable[bucket] = idlest( load );
+        }
+        load[newTable[bucket]] += counts[bucket];
+      }
+    }
+
+    // Move the biggest bucket that still helps from the busiest to the idlest partition
+    //
+    for ( int move = 0; move < newTable.length; move++ ) {
+      int busiest = busiest( load );
+      int idlest = idlest( load );
+      if ( load[busiest] <= fair * TOLERANCE ) {
+        break;
+      }
+      int moved = -1;
+      for ( int bucket = 0; bucket < newTable.length; bucket++ ) {
+        if ( newTable[bucket] == busiest && counts[bucket] > 0 && counts[bucket] < load[busiest] - load[idlest]
+          && ( moved < 0 || counts[bucket] > counts[moved] ) ) {
+          moved = bucket;
+        }
+      }
+      if ( moved < 0 ) {
+        break;
+      }
+      newTable[moved] = idlest;
+      load[busiest] -= counts[moved];
+      load[idlest] += counts[moved];
+    }
+    return newTable;
+  }
+
+  private static int busiest( double[] load ) {
+    int busiest = 0;
+    for ( int partition = 1; partition < load.length; partition++ ) {
+      if ( load[partition] > load[busiest] ) {
+        busiest = partition;
+      }
+    }
+    return busiest;
+  }
+
+  private static int idlest( double[] load ) {
+    int idlest = 0;
+    for ( int partition = 1; partition < load.length; partition++ ) {
+      if ( load[partition] < load[idlest] ) {
+        idlest = partition;
+      }
+    }
+    return idlest;
+  }
+
+  /**
+   * @return a copy of the current partition of each bucket, SPLIT for a split bucket
+   */
+  int[] getPartitionTableCopy() {
+    return getPartitionTable().clone();
+  }
+
+  void setRebalanceRows( int rebalanceRows ) {
+    this.rebalanceRows = Math.max( 1, rebalanceRows );
+  }
+
+  public String getDescription() {
+    String description = "Skew aware mod partitioner";
+    if ( !Utils.isEmpty( getFieldName() ) ) {
+      description += "(" + getFieldName() + ")";
+    }
+    return description;
+  }
+}
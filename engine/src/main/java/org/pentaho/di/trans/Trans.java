@@ -34,10 +34,12 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.Queue;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -70,6 +72,7 @@ import org.pentaho.di.core.ResultFile;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.SingleRowRowSet;
+import org.pentaho.di.core.database.ConnectionLimiter;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.database.DatabaseTransactionListener;
@@ -391,12 +394,18 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
   /** The step performance snapshot size limit. */
   private int stepPerformanceSnapshotSizeLimit;
 
+  /** The memory used by the rows the steps buffer, checked against KETTLE_TRANS_MEMORY_QUOTA. */
+  private TransMemoryQuota memoryQuota = new TransMemoryQuota( 0L );
+
   /** The servlet print writer. */
   private PrintWriter servletPrintWriter;
 
   /** The trans finished blocking queue. */
   private ArrayBlockingQueue<Object> transFinishedBlockingQueue;
 
+  /** The database connections reserved for the steps, null if no connection limit applies */
+  private ConnectionLimiter.Reservation connectionReservation;
+
   /** The name of the executing server */
   private String executingServer;
 
@@ -664,6 +673,9 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
     activateParameters();
     transMeta.activateParameters();
 
+    long memoryQuotaMB = Const.toLong( getVariable( Const.KETTLE_TRANS_MEMORY_QUOTA ), 0L );
+    memoryQuota = new TransMemoryQuota( memoryQuotaMB * 1024 * 1024 );
+
     if ( transMeta.getName() == null ) {
       if ( transMeta.getFilename() != null ) {
         log.logBasic( BaseMessages.getString( PKG, "Trans.Log.DispacthingStartedForFilename", transMeta
@@ -1052,6 +1064,10 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
       }
     }
 
+    // Reserve the database connections of all steps at once: the steps connect in parallel while they initialize
+    //
+    reserveDatabaseConnections();
+
     setPreparing( false );
     setInitializing( true );
 
@@ -1481,6 +1497,8 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
    *           if any errors occur during notification
    */
   protected void fireTransFinishedListeners() throws KettleException {
+    releaseDatabaseConnections();
+
     // PDI-5229 sync added
     synchronized ( transListeners ) {
       if ( transListeners.size() == 0 ) {
@@ -1506,6 +1524,51 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
     }
   }
 
+  /**
+   * Reserve the connections the steps open with the connection limiter. Connections that are not declared by the steps
+   * or that come from a connection pool are not reserved, they wait for a connection on their own.
+   *
+   * @throws KettleException
+   *           if the steps need more connections than a limit allows or the connections can't be reserved in time
+   */
+  private void reserveDatabaseConnections() throws KettleException {
+    if ( transMeta.getTransformationType() != TransMeta.TransformationType.Normal ) {
+      // Not finished by this transformation, the reservation wouldn't be closed
+      return;
+    }
+    Map<String, Integer> connections = new HashMap<>();
+    for ( StepMetaDataCombi combi : steps ) {
+      DatabaseMeta[] usedConnections = combi.meta.getUsedDatabaseConnections();
+      if ( usedConnections == null ) {
+        continue;
+      }
+      Set<String> names = new HashSet<>();
+      for ( DatabaseMeta databaseMeta : usedConnections ) {
+        if ( databaseMeta != null && !databaseMeta.isUsingConnectionPool() ) {
+          names.add( databaseMeta.getName() );
+        }
+      }
+      for ( String name : names ) {
+        Integer nr = connections.get( name );
+        // With unique connections the step copies share one connection per database
+        connections.put( name, nr == null || transMeta.isUsingUniqueConnections() ? 1 : nr + 1 );
+      }
+    }
+    if ( !connections.isEmpty() ) {
+      connectionReservation = ConnectionLimiter.getInstance().reserve( getLogChannelId(), connections );
+    }
+  }
+
+  /**
+   * Release the reserved connections the steps don't use anymore.
+   */
+  private synchronized void releaseDatabaseConnections() {
+    if ( connectionReservation != null ) {
+      connectionReservation.close();
+      connectionReservation = null;
+    }
+  }
+
   /**
    * Fires the start-event listeners (if any are registered).
    *
@@ -3109,6 +3172,15 @@ public class Trans implements VariableSpace, NamedParams, HasLogChannelInterface
     return rowsets;
   }
 
+  /**
+   * Gets the memory accounting of the rows buffered by the steps of the transformation.
+   *
+   * @return the memory quota, without a limit if the transformation wasn't prepared for execution
+   */
+  public TransMemoryQuota getMemoryQuota() {
+    return memoryQuota;
+  }
+
   /**
    * Gets a list of steps in the transformation.
    *
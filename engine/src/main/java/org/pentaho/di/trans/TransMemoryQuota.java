@@ -0,0 +1,175 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the estimated memory used by the rows that the steps of one transformation buffer: sorted rows, groups, lookup
+ * data, unique keys and so on. With a quota (KETTLE_TRANS_MEMORY_QUOTA) steps that can spill to disk do so when the
+ * usage comes near the quota, the others fail the transformation when it goes over it. This way one transformation on
+ * a shared Carte server can't run the whole JVM out of memory.<br>
+ * The sizes are estimates based on the values in the rows, not measurements of the heap.
+ */
+public class TransMemoryQuota {
+
+  /**
+   * Steps that can spill to disk do so when the usage goes over this fraction of the quota.
+   */
+  public static final double SPILL_THRESHOLD = 0.8;
+
+  /**
+   * Past the spill threshold, a step only spills when its own rows take at least this fraction of the memory left to
+   * it. Writing a small buffer to disk frees next to nothing.
+   */
+  public static final double STEP_SPILL_SHARE = 0.25;
+
+  private static final long OBJECT_OVERHEAD = 16L;
+
+  private static final long REFERENCE_SIZE = 8L;
+
+  private final long quota;
+
+  private final AtomicLong usage = new AtomicLong();
+
+  private final AtomicLong peakUsage = new AtomicLong();
+
+  /**
+   * @param quota
+   *          the quota in bytes, 0 or less means no quota: the usage is only kept
+   */
+  public TransMemoryQuota( long quota ) {
+    this.quota = quota;
+  }
+
+  /**
+   * Adds to the memory usage of the transformation.
+   *
+   * @param bytes
+   *          the number of bytes, negative to release memory
+   * @return the memory usage after the addition
+   */
+  public long add( long bytes ) {
+    long current = usage.addAndGet( bytes );
+    long peak = peakUsage.get();
+    while ( current > peak && !peakUsage.compareAndSet( peak, current ) ) {
+      peak = peakUsage.get();
+    }
+    return current;
+  }
+
+  /**
+   * @return true if there is a quota and the memory usage is over it
+   */
+  public boolean isExceeded() {
+    return quota > 0 && usage.get() > quota;
+  }
+
+  /**
+   * @return true if there is a quota and the memory usage is over the spill threshold of it
+   */
+  public boolean isSpillThresholdReached() {
+    return quota > 0 && usage.get() > quota * SPILL_THRESHOLD;
+  }
+
+  /**
+   * @param stepUsage
+   *          the memory in bytes the rows of the step take, part of the usage
+   * @return true if the spill threshold is reached and the rows of the step take a real share of the memory left to
+   *         it: the quota minus what the other steps hold
+   */
+  public boolean isSpillNeeded( long stepUsage ) {
+    if ( !isSpillThresholdReached() || stepUsage <= 0 ) {
+      return false;
+    }
+    long headroom = quota - ( usage.get() - stepUsage );
+    return headroom <= 0 || stepUsage >= headroom * STEP_SPILL_SHARE;
+  }
+
+  /**
+   * @return the quota in bytes, 0 or less if there is none
+   */
+  public long getQuota() {
+    return quota;
+  }
+
+  /**
+   * @return the estimated memory in bytes the steps hold on to right now
+   */
+  public long getUsage() {
+    return usage.get();
+  }
+
+  /**
+   * @return the highest memory usage in bytes so far
+   */
+  public long getPeakUsage() {
+    return peakUsage.get();
+  }
+
+  /**
+   * Estimates the memory a row takes on the heap.
+   *
+   * @param row
+   *          the row
+   * @return the estimated size in bytes
+   */
+  public static long getRowSize( Object[] row ) {
+    if ( row == null ) {
+      return 0L;
+    }
+    long size = OBJECT_OVERHEAD + REFERENCE_SIZE * row.length;
+    for ( Object value : row ) {
+      size += getValueSize( value );
+    }
+    return size;
+  }
+
+  /**
+   * Estimates the memory a single value of a row takes on the heap.
+   *
+   * @param value
+   *          the value
+   * @return the estimated size in bytes
+   */
+  public static long getValueSize( Object value ) {
+    if ( value == null ) {
+      return 0L;
+    }
+    if ( value instanceof String ) {
+      return 2 * OBJECT_OVERHEAD + 8 + 2L * ( (String) value ).length();
+    }
+    if ( value instanceof byte[] ) {
+      return OBJECT_OVERHEAD + ( (byte[]) value ).length;
+    }
+    if ( value instanceof BigDecimal ) {
+      return 4 * OBJECT_OVERHEAD + ( (BigDecimal) value ).precision() / 2;
+    }
+    if ( value instanceof Date ) {
+      return OBJECT_OVERHEAD + 8;
+    }
+    return OBJECT_OVERHEAD;
+  }
+}
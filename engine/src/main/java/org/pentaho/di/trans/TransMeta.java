@@ -57,10 +57,12 @@ import org.pentaho.di.core.extension.ExtensionPointHandler;
 import org.pentaho.di.core.extension.KettleExtensionPoint;
 import org.pentaho.di.core.gui.OverwritePrompter;
 import org.pentaho.di.core.gui.Point;
+import org.pentaho.di.core.logging.BaseLogTable;
 import org.pentaho.di.core.logging.ChannelLogTable;
 import org.pentaho.di.core.logging.LogChannel;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.core.logging.LogStatus;
+import org.pentaho.di.core.logging.LogTableField;
 import org.pentaho.di.core.logging.LogTableInterface;
 import org.pentaho.di.core.logging.LoggingObjectInterface;
 import org.pentaho.di.core.logging.LoggingObjectType;
@@ -630,6 +632,41 @@ public class TransMeta extends AbstractMeta
     }
   }
 
+  /**
+   * Copies the transformation to execute it while this transformation stays unchanged, for example because it is kept
+   * in a cache. Unlike realClone( false ) the copy gets its own variables, log tables and caches, and its hops and log
+   * table fields refer to the copied steps. The step metadata is cloned, not parsed again.
+   *
+   * @return the copy of the transformation
+   */
+  public TransMeta copyForExecution() {
+    TransMeta transMeta = (TransMeta) realClone( false );
+    detachCopy( transMeta );
+
+    transMeta.stepsFieldsCache = new HashMap<>();
+    transMeta.loopCache = new HashMap<>();
+    transMeta.previousStepCache = new HashMap<>();
+
+    for ( TransHopMeta hop : transMeta.hops ) {
+      hop.setFromStep( transMeta.findStep( hop.getFromStep().getName() ) );
+      hop.setToStep( transMeta.findStep( hop.getToStep().getName() ) );
+    }
+
+    transMeta.transLogTable = (TransLogTable) transLogTable.clone();
+    transMeta.performanceLogTable = (PerformanceLogTable) performanceLogTable.clone();
+    transMeta.stepLogTable = (StepLogTable) stepLogTable.clone();
+    transMeta.metricsLogTable = (MetricsLogTable) metricsLogTable.clone();
+    for ( LogTableInterface logTable : transMeta.getLogTables() ) {
+      ( (BaseLogTable) logTable ).setParentMeta( transMeta, transMeta );
+      for ( LogTableField field : logTable.getFields() ) {
+        if ( field.getSubject() instanceof StepMeta ) {
+          field.setSubject( transMeta.findStep( ( (StepMeta) field.getSubject() ).getName() ) );
+        }
+      }
+    }
+    return transMeta;
+  }
+
   /**
    * Clears the transformation's meta-data, including the lists of databases, steps, hops, notes, dependencies,
    * partition schemas, slave servers, and cluster schemas. Logging information and timeouts are reset to defaults, and
@@ -0,0 +1,437 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.cluster;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.pentaho.di.cluster.ClusterSchema;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogTableField;
+import org.pentaho.di.core.logging.PerformanceLogTable;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.performance.StepPerformanceSnapShot;
+import org.pentaho.di.trans.step.StepIOMetaInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.errorhandling.StreamInterface;
+
+/**
+ * Decides where to run the steps of a clustered transformation from the statistics of previous runs, before it is
+ * split by the {@link TransSplitter}.<br>
+ * <br>
+ * The transformation says which steps run clustered on the slaves, all the others run on the master. The rows on a hop
+ * between a clustered and an unclustered step cross the network. The planner looks at the unclustered row by row steps
+ * that only read from clustered steps of the same cluster schema, like a Filter Rows or Select Values behind a
+ * clustered input. Running such a step on the slaves gives the same rows, so the planner clusters it when the rows it
+ * writes take less bytes than the rows it reads: the network then carries the smaller stream. This is repeated as long
+ * as steps move, so a chain of row by row steps moves together.<br>
+ * <br>
+ * The number of rows of a step comes from the statistics, the width of a row is estimated from the layout of the
+ * fields. Steps without statistics are not moved. The plan explains every decision.
+ */
+public class TransSplitPlanner {
+
+  /**
+   * The steps that handle one row at a time without state, so running them on the slaves gives the same rows.
+   */
+  public static final Set<String> ROW_BY_ROW_STEPS = Collections.unmodifiableSet( new HashSet<String>( Arrays.asList(
+    "Calculator", "Constant", "Dummy", "FieldSplitter", "FilterRows", "IfNull", "JavaFilter", "NullIf",
+    "NumberRange", "ReplaceString", "SelectValues", "SetValueConstant", "SetValueField", "SplitFieldToRows3",
+    "StringCut", "StringOperations", "ValueMapper" ) ) );
+
+  /**
+   * The estimated width in bytes of a field of unknown length.
+   */
+  public static final int DEFAULT_FIELD_WIDTH = 32;
+
+  private final TransMeta transMeta;
+
+  private final Map<String, StepStatistics> statistics;
+
+  /**
+   * @param transMeta
+   *          the transformation to plan, the clustering of its steps is changed when the plan is applied
+   * @param statistics
+   *          the statistics of the steps by step name
+   */
+  public TransSplitPlanner( TransMeta transMeta, Map<String, StepStatistics> statistics ) {
+    this.transMeta = transMeta;
+    this.statistics = statistics;
+  }
+
+  /**
+   * Plans where the steps run and clusters the steps that are better off on the slaves.
+   *
+   * @return the plan with the moved steps and the explanation
+   * @throws KettleException
+   *           if the fields of a step can't be determined
+   */
+  public Plan apply() throws KettleException {
+    Plan plan = new Plan();
+    plan.bytesBefore = getCrossingBytes();
+    plan.report.append( "Estimated bytes between master and slaves: " ).append( plan.bytesBefore ).append( Const.CR );
+
+    Set<String> explained = new HashSet<String>();
+    boolean moved = true;
+    while ( moved ) {
+      moved = false;
+      for ( StepMeta stepMeta : transMeta.getSteps() ) {
+        ClusterSchema clusterSchema = getCommonClusterSchema( stepMeta );
+        if ( stepMeta.isClustered() || clusterSchema == null ) {
+          continue;
+        }
+        String reason = getReasonToStay( stepMeta );
+        if ( reason == null ) {
+          long before = getCrossingBytes( stepMeta );
+          long after;
+          // Try the step on the slaves, it's back on the master afterwards even if the estimate fails
+          //
+          stepMeta.setClusterSchema( clusterSchema );
+          try {
+            after = getCrossingBytes( stepMeta );
+          } finally {
+            stepMeta.setClusterSchema( null );
+          }
+          if ( after < before ) {
+            stepMeta.setClusterSchema( clusterSchema );
+            plan.movedSteps.add( stepMeta.getName() );
+            plan.report.append( "Run step [" ).append( stepMeta.getName() ).append( "] clustered on [" ).append(
+              clusterSchema.getName() ).append( "]: " ).append( before ).append(
+              " bytes cross the network on the master, " ).append( after ).append( " clustered" ).append( Const.CR );
+            moved = true;
+            continue;
+          }
+          reason = "it would send " + after + " instead of " + before + " bytes over the network";
+        }
+        if ( explained.add( stepMeta.getName() + reason ) ) {
+          plan.report.append( "Keep step [" ).append( stepMeta.getName() ).append( "] on the master: " ).append(
+            reason ).append( Const.CR );
+        }
+      }
+    }
+
+    plan.bytesAfter = getCrossingBytes();
+    plan.report.append( "Estimated bytes between master and slaves after the plan: " ).append( plan.bytesAfter )
+      .append( Const.CR );
+    return plan;
+  }
+
+  /**
+   * @return the cluster schema of all the previous steps, or null if they don't share one
+   */
+  private ClusterSchema getCommonClusterSchema( StepMeta stepMeta ) {
+    List<StepMeta> previousSteps = transMeta.findPreviousSteps( stepMeta );
+    if ( previousSteps.isEmpty() ) {
+      return null;
+    }
+    ClusterSchema clusterSchema = null;
+    for ( StepMeta previousStep : previousSteps ) {
+      if ( !previousStep.isClustered() ) {
+        return null;
+      }
+      if ( clusterSchema == null ) {
+        clusterSchema = previousStep.getClusterSchema();
+      } else if ( !clusterSchema.getName().equals( previousStep.getClusterSchema().getName() ) ) {
+        return null;
+      }
+    }
+    return clusterSchema;
+  }
+
+  /**
+   * @return why the step can't run clustered, null if it can
+   */
+  private String getReasonToStay( StepMeta stepMeta ) {
+    if ( !ROW_BY_ROW_STEPS.contains( stepMeta.getStepID() ) ) {
+      return "it is not a row by row step";
+    }
+    if ( stepMeta.isPartitioned() || stepMeta.isDoingErrorHandling() ) {
+      return "it is partitioned or handles errors";
+    }
+    StepIOMetaInterface ioMeta = stepMeta.getStepMetaInterface().getStepIOMeta();
+    for ( StreamInterface stream : ioMeta.getInfoStreams() ) {
+      if ( stream.getStepMeta() != null ) {
+        return "it reads info from another step";
+      }
+    }
+    for ( StreamInterface stream : ioMeta.getTargetStreams() ) {
+      if ( stream.getStepMeta() != null ) {
+        return "it sends rows to specific target steps";
+      }
+    }
+    if ( statistics.get( stepMeta.getName() ) == null ) {
+      return "there are no statistics for it";
+    }
+    return null;
+  }
+
+  /**
+   * @return the estimated bytes on all the hops between master and slaves
+   */
+  long getCrossingBytes() throws KettleException {
+    long bytes = 0L;
+    for ( StepMeta stepMeta : transMeta.getSteps() ) {
+      bytes += getOutputCrossingBytes( stepMeta );
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the estimated bytes on the hops from and to the step that cross between master and slaves
+   */
+  private long getCrossingBytes( StepMeta stepMeta ) throws KettleException {
+    long bytes = getOutputCrossingBytes( stepMeta );
+    for ( StepMeta previousStep : transMeta.findPreviousSteps( stepMeta ) ) {
+      if ( previousStep.isClustered() != stepMeta.isClustered() ) {
+        bytes += getHopBytes( previousStep );
+      }
+    }
+    return bytes;
+  }
+
+  private long getOutputCrossingBytes( StepMeta stepMeta ) throws KettleException {
+    long bytes = 0L;
+    for ( StepMeta nextStep : transMeta.findNextSteps( stepMeta ) ) {
+      if ( nextStep.isClustered() != stepMeta.isClustered() ) {
+        bytes += getHopBytes( stepMeta );
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the estimated bytes on one of the hops leaving the step, the rows it wrote spread over its next steps
+   */
+  private long getHopBytes( StepMeta stepMeta ) throws KettleException {
+    StepStatistics stepStatistics = statistics.get( stepMeta.getName() );
+    if ( stepStatistics == null ) {
+      return 0L;
+    }
+    int nrNextSteps = Math.max( 1, transMeta.findNextSteps( stepMeta ).size() );
+    return stepStatistics.getLinesWritten() / nrNextSteps * getRowWidth( transMeta.getStepFields( stepMeta ) );
+  }
+
+  /**
+   * Estimates the bytes a row takes on the network.
+   *
+   * @param rowMeta
+   *          the layout of the row
+   * @return the estimated width in bytes
+   */
+  static long getRowWidth( RowMetaInterface rowMeta ) {
+    long width = 0L;
+    for ( ValueMetaInterface valueMeta : rowMeta.getValueMetaList() ) {
+      switch ( valueMeta.getType() ) {
+        case ValueMetaInterface.TYPE_INTEGER:
+        case ValueMetaInterface.TYPE_NUMBER:
+        case ValueMetaInterface.TYPE_DATE:
+        case ValueMetaInterface.TYPE_TIMESTAMP:
+          width += 8;
+          break;
+        case ValueMetaInterface.TYPE_BOOLEAN:
+          width += 1;
+          break;
+        case ValueMetaInterface.TYPE_BIGNUMBER:
+          width += 16;
+          break;
+        default:
+          width += valueMeta.getLength() > 0 ? valueMeta.getLength() : DEFAULT_FIELD_WIDTH;
+          break;
+      }
+    }
+    return Math.max( 1L, width );
+  }
+
+  /**
+   * Sums up the rows of the steps in the snapshots of a transformation that ran in this JVM.
+   *
+   * @param snapShots
+   *          the snapshots of the steps, see Trans.getStepPerformanceSnapShots()
+   * @return the statistics by step name
+   */
+  public static Map<String, StepStatistics> getStatistics( Map<String, List<StepPerformanceSnapShot>> snapShots ) {
+    Map<String, StepStatistics> statistics = new HashMap<String, StepStatistics>();
+    for ( List<StepPerformanceSnapShot> stepSnapShots : snapShots.values() ) {
+      for ( StepPerformanceSnapShot snapShot : stepSnapShots ) {
+        add( statistics, snapShot.getStepName(), snapShot.getLinesRead(), snapShot.getLinesWritten() );
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * Reads the rows of the steps in the last run of the transformation, or of its master and slaves when it ran
+   * clustered, from the performance log table.
+   *
+   * @param transMeta
+   *          the transformation with the performance log table
+   * @return the statistics by step name, empty if there is no performance log table
+   * @throws KettleException
+   *           if the table can't be read
+   */
+  public static Map<String, StepStatistics> getStatistics( TransMeta transMeta ) throws KettleException {
+    Map<String, StepStatistics> statistics = new HashMap<String, StepStatistics>();
+    PerformanceLogTable logTable = transMeta.getPerformanceLogTable();
+    if ( logTable == null || !logTable.isDefined() ) {
+      return statistics;
+    }
+    DatabaseMeta databaseMeta = logTable.getDatabaseMeta();
+    String transName = databaseMeta.quoteField( getFieldName( logTable, PerformanceLogTable.ID.TRANSNAME ) );
+    String batchId = databaseMeta.quoteField( getFieldName( logTable, PerformanceLogTable.ID.ID_BATCH ) );
+    String stepName = databaseMeta.quoteField( getFieldName( logTable, PerformanceLogTable.ID.STEPNAME ) );
+    String linesRead = databaseMeta.quoteField( getFieldName( logTable, PerformanceLogTable.ID.LINES_READ ) );
+    String linesWritten = databaseMeta.quoteField( getFieldName( logTable, PerformanceLogTable.ID.LINES_WRITTEN ) );
+
+    String sql =
+      "SELECT " + transName + ", " + batchId + ", " + stepName + ", SUM(" + linesRead + "), SUM(" + linesWritten
+        + ") FROM " + logTable.getQuotedSchemaTableCombination() + " WHERE " + transName + " = ? OR " + transName
+        + " LIKE ? GROUP BY " + transName + ", " + batchId + ", " + stepName;
+    RowMetaInterface parameters = new RowMeta();
+    parameters.addValueMeta( new ValueMetaString( "name" ) );
+    parameters.addValueMeta( new ValueMetaString( "clustered" ) );
+
+    List<Object[]> rows;
+    RowMetaInterface rowMeta;
+    Database db = new Database( transMeta, databaseMeta );
+    try {
+      db.shareVariablesWith( transMeta );
+      db.connect();
+      rows =
+        db.getRows( sql, parameters, new Object[] { transMeta.getName(), transMeta.getName() + " (%" },
+          ResultSet.FETCH_FORWARD, false, 0, null );
+      rowMeta = db.getReturnRowMeta();
+    } finally {
+      db.disconnect();
+    }
+
+    // Only the last batch of every transformation, the master and slaves each have their own
+    //
+    Map<String, Long> lastBatches = new HashMap<String, Long>();
+    for ( Object[] row : rows ) {
+      Long batch = rowMeta.getInteger( row, 1 );
+      Long last = lastBatches.get( rowMeta.getString( row, 0 ) );
+      if ( batch != null && ( last == null || batch > last ) ) {
+        lastBatches.put( rowMeta.getString( row, 0 ), batch );
+      }
+    }
+    for ( Object[] row : rows ) {
+      Long batch = rowMeta.getInteger( row, 1 );
+      if ( batch != null && batch.equals( lastBatches.get( rowMeta.getString( row, 0 ) ) ) ) {
+        add( statistics, rowMeta.getString( row, 2 ), toLong( rowMeta.getInteger( row, 3 ) ), toLong( rowMeta
+          .getInteger( row, 4 ) ) );
+      }
+    }
+    return statistics;
+  }
+
+  private static long toLong( Long value ) {
+    return value == null ? 0L : value;
+  }
+
+  private static String getFieldName( PerformanceLogTable logTable, PerformanceLogTable.ID id )
+    throws KettleException {
+    LogTableField field = logTable.findField( id.toString() );
+    if ( field == null || !field.isEnabled() ) {
+      throw new KettleException( "The field " + id + " of the performance log table is not enabled" );
+    }
+    return field.getFieldName();
+  }
+
+  private static void add( Map<String, StepStatistics> statistics, String stepName, long linesRead,
+    long linesWritten ) {
+    StepStatistics stepStatistics = statistics.get( stepName );
+    if ( stepStatistics == null ) {
+      statistics.put( stepName, new StepStatistics( linesRead, linesWritten ) );
+    } else {
+      statistics.put( stepName, new StepStatistics( stepStatistics.getLinesRead() + linesRead, stepStatistics
+        .getLinesWritten() + linesWritten ) );
+    }
+  }
+
+  /**
+   * The rows a step read and wrote in a previous run, over all its copies.
+   */
+  public static class StepStatistics {
+    private final long linesRead;
+    private final long linesWritten;
+
+    public StepStatistics( long linesRead, long linesWritten ) {
+      this.linesRead = linesRead;
+      this.linesWritten = linesWritten;
+    }
+
+    public long getLinesRead() {
+      return linesRead;
+    }
+
+    public long getLinesWritten() {
+      return linesWritten;
+    }
+  }
+
+  /**
+   * The steps moved to the slaves and why.
+   */
+  public static class Plan {
+    private final List<String> movedSteps = new ArrayList<String>();
+    private final StringBuilder report = new StringBuilder();
+    private long bytesBefore;
+    private long bytesAfter;
+
+    /**
+     * @return the names of the steps that now run clustered
+     */
+    public List<String> getMovedSteps() {
+      return movedSteps;
+    }
+
+    /**
+     * @return the explanation of the plan, one decision per line
+     */
+    public String getReport() {
+      return report.toString();
+    }
+
+    public long getBytesBefore() {
+      return bytesBefore;
+    }
+
+    public long getBytesAfter() {
+      return bytesAfter;
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -89,6 +89,7 @@ public class TransSplitter {
     new SlaveStepCopyPartitionDistribution();
   private int socketsBufferSize;
   private boolean compressingSocketStreams;
+  private int remoteStepBatchSize;
 
   private Map<String, Integer> portCache;
 
@@ -96,6 +97,8 @@ public class TransSplitter {
 
   private String clusteredRunId;
 
+  private boolean placementPlanned;
+
   public TransSplitter() {
     clear();
   }
@@ -195,6 +198,8 @@ public class TransSplitter {
           Const.toInt(
             originalTransformation.environmentSubstitute( clusterSchema.getSocketsBufferSize() ), 50000 );
         compressingSocketStreams = clusterSchema.isSocketsCompressed();
+        remoteStepBatchSize =
+          Math.max( 0, Const.toInt( originalTransformation.getVariable( Const.KETTLE_REMOTE_STEP_BATCH_SIZE ), 0 ) );
 
         // Validate the number of slaves. We need at least one to have a valid cluster
         //
@@ -451,8 +456,40 @@ public class TransSplitter {
     throw new KettleException( "No master server could be found in the original transformation" );
   }
 
+  /**
+   * Moves steps to the slaves when the statistics show that less data would cross the network, see
+   * {@link TransSplitPlanner}. Call this before the transformation is split.
+   *
+   * @param statistics
+   *          the statistics of the steps by step name
+   * @return the plan with the moved steps and the explanation
+   * @throws KettleException
+   *           if the fields of a step can't be determined
+   */
+  public TransSplitPlanner.Plan planPlacement( Map<String, TransSplitPlanner.StepStatistics> statistics )
+    throws KettleException {
+    placementPlanned = true;
+    return new TransSplitPlanner( originalTransformation, statistics ).apply();
+  }
+
   public void splitOriginalTransformation() throws KettleException {
     clear();
+    // With KETTLE_CLUSTER_COST_BASED_PLACEMENT, first move steps using the statistics in the performance log table
+    //
+    if ( !placementPlanned
+      && "Y".equalsIgnoreCase( originalTransformation.getVariable( Const.KETTLE_CLUSTER_COST_BASED_PLACEMENT ) ) ) {
+      try {
+        Map<String, TransSplitPlanner.StepStatistics> statistics =
+          TransSplitPlanner.getStatistics( originalTransformation );
+        if ( !statistics.isEmpty() ) {
+          originalTransformation.getLogChannel().logBasic( planPlacement( statistics ).getReport() );
+        }
+      } catch ( KettleException e ) {
+        originalTransformation.getLogChannel().logError(
+          "Unable to plan the placement of the steps, the clustering is left as it is", e );
+      }
+      placementPlanned = true;
+    }
     // Mixing clusters is not supported at the moment
     // Perform some basic checks on the cluster configuration.
     //
@@ -604,6 +641,7 @@ public class TransSplitter {
                         socketsBufferSize, compressingSocketStreams, originalTransformation
                           .getStepFields( previousStep ) );
                     remoteMasterStep.setEncryptingStreams( encrypt );
+                    remoteMasterStep.setBatchSize( remoteStepBatchSize );
                     remoteMasterStep.setKey( transformationKey );
                     masterStep.getRemoteInputSteps().add( remoteMasterStep );
 
@@ -615,6 +653,7 @@ public class TransSplitter {
                         socketsBufferSize, compressingSocketStreams, originalTransformation
                           .getStepFields( previousStep ) );
                     remoteSlaveStep.setEncryptingStreams( encrypt );
+                    remoteSlaveStep.setBatchSize( remoteStepBatchSize );
                     remoteSlaveStep.setKey( transformationKey );
                     slaveStep.getRemoteOutputSteps().add( remoteSlaveStep );
 
@@ -750,6 +789,7 @@ public class TransSplitter {
                           .getName(), socketsBufferSize, compressingSocketStreams, originalTransformation
                           .getStepFields( previousStep ) );
                     remoteMasterStep.setEncryptingStreams( encrypt );
+                    remoteMasterStep.setBatchSize( remoteStepBatchSize );
                     remoteMasterStep.setKey( transformationKey );
                     sourceStep.getRemoteOutputSteps().add( remoteMasterStep );
 
@@ -761,6 +801,7 @@ public class TransSplitter {
                           .getName(), socketsBufferSize, compressingSocketStreams, originalTransformation
                           .getStepFields( previousStep ) );
                     remoteSlaveStep.setEncryptingStreams( encrypt );
+                    remoteSlaveStep.setBatchSize( remoteStepBatchSize );
                     remoteSlaveStep.setKey( transformationKey );
                     targetStep.getRemoteInputSteps().add( remoteSlaveStep );
 
@@ -964,6 +1005,7 @@ public class TransSplitter {
                                     .getName(), socketsBufferSize, compressingSocketStreams,
                                   originalTransformation.getStepFields( previousStep ) );
                               remoteOutputStep.setEncryptingStreams( encrypt );
+                              remoteOutputStep.setBatchSize( remoteStepBatchSize );
                               remoteOutputStep.setKey( transformationKey );
                               sourceStep.getRemoteOutputSteps().add( remoteOutputStep );
 
@@ -982,6 +1024,7 @@ public class TransSplitter {
                                     .getName(), socketsBufferSize, compressingSocketStreams,
                                   originalTransformation.getStepFields( previousStep ) );
                               remoteInputStep.setEncryptingStreams( encrypt );
+                              remoteInputStep.setBatchSize( remoteStepBatchSize );
                               remoteInputStep.setKey( transformationKey );
                               targetStep.getRemoteInputSteps().add( remoteInputStep );
                             }
@@ -40,6 +40,7 @@ import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -80,6 +81,7 @@ import org.pentaho.di.repository.RepositoryDirectory;
 import org.pentaho.di.trans.BasePartitioner;
 import org.pentaho.di.trans.SlaveStepCopyPartitionDistribution;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMemoryQuota;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.cluster.TransSplitter;
 import org.pentaho.di.trans.step.BaseStepData.StepExecutionStatus;
@@ -270,6 +272,16 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
   private AtomicBoolean paused;
 
+  /**
+   * the time in nanoseconds spent waiting for room in full output row sets
+   */
+  private final AtomicLong outputBlockedTime = new AtomicLong();
+
+  /**
+   * the estimated number of bytes taken by the rows this step buffers in memory
+   */
+  private final AtomicLong memoryUsage = new AtomicLong();
+
   private boolean init;
 
   /**
@@ -805,6 +817,7 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
    */
   @Override
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    releaseMemoryUsage();
     sdi.setStatus( StepExecutionStatus.STATUS_DISPOSED );
   }
 
@@ -1585,11 +1598,88 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
       toBeSent = metaFromRs;
     }
 
+    long blockedSince = 0L;
     while ( !rs.putRow( toBeSent, row ) ) {
+      if ( blockedSince == 0L ) {
+        blockedSince = System.nanoTime();
+      }
       if ( isStopped() && !safeStopped.get() ) {
-        return;
+        break;
       }
     }
+    addOutputBlockedTime( blockedSince );
+  }
+
+  private void addOutputBlockedTime( long blockedSince ) {
+    if ( blockedSince != 0L ) {
+      outputBlockedTime.addAndGet( System.nanoTime() - blockedSince );
+    }
+  }
+
+  /**
+   * Gets the time this step waited for room in its output row sets, because the next steps didn't read the rows fast
+   * enough. The first attempt to put a row is not counted, so this is the time spent after it.
+   *
+   * @return the blocked time in milliseconds
+   */
+  public long getOutputBlockedTime() {
+    return TimeUnit.NANOSECONDS.toMillis( outputBlockedTime.get() );
+  }
+
+  /**
+   * Steps that keep rows in memory (sorting, grouping, lookups, ...) report the estimated size of those rows here, see
+   * {@link TransMemoryQuota#getRowSize(Object[])}. The size is added to the memory usage of the transformation.
+   *
+   * @param bytes
+   *          the number of bytes to add, negative when rows are released
+   * @return false if the transformation now uses more than its memory quota (KETTLE_TRANS_MEMORY_QUOTA)
+   */
+  protected boolean addMemoryUsage( long bytes ) {
+    memoryUsage.addAndGet( bytes );
+    TransMemoryQuota memoryQuota = trans == null ? null : trans.getMemoryQuota();
+    if ( memoryQuota == null ) {
+      return true;
+    }
+    memoryQuota.add( bytes );
+    return !memoryQuota.isExceeded();
+  }
+
+  /**
+   * Releases all the memory this step reported with {@link #addMemoryUsage(long)}, for example after clearing its
+   * buffers or writing them to disk.
+   */
+  protected void releaseMemoryUsage() {
+    addMemoryUsage( -memoryUsage.getAndSet( 0L ) );
+  }
+
+  /**
+   * @return true if a step that can write its buffered rows to disk should do so because the transformation comes near
+   *         its memory quota and the rows of this step take a real share of it, see
+   *         {@link TransMemoryQuota#isSpillNeeded(long)}
+   */
+  protected boolean isMemorySpillNeeded() {
+    TransMemoryQuota memoryQuota = trans == null ? null : trans.getMemoryQuota();
+    return memoryQuota != null && memoryQuota.isSpillNeeded( getMemoryUsage() );
+  }
+
+  /**
+   * Stops the transformation with an error because it went over its memory quota. Call this when
+   * {@link #addMemoryUsage(long)} returned false and the step can't spill to disk, then return false from processRow().
+   */
+  protected void stopOnMemoryQuota() {
+    TransMemoryQuota memoryQuota = trans.getMemoryQuota();
+    logError( BaseMessages.getString( PKG, "BaseStep.Log.MemoryQuotaExceeded", memoryQuota.getUsage() / 1024 / 1024,
+      memoryQuota.getQuota() / 1024 / 1024 ) );
+    setErrors( 1 );
+    stopAll();
+    setOutputDone();
+  }
+
+  /**
+   * @return the estimated number of bytes taken by the rows this step holds in memory
+   */
+  public long getMemoryUsage() {
+    return memoryUsage.get();
   }
 
   /**
@@ -1641,11 +1731,16 @@ public class BaseStep implements VariableSpace, StepInterface, LoggingObjectInte
 
     // Don't distribute or anything, only go to this rowset!
     //
+    long blockedSince = 0L;
     while ( !rowSet.putRow( rowMeta, row ) ) {
+      if ( blockedSince == 0L ) {
+        blockedSince = System.nanoTime();
+      }
       if ( isStopped() ) {
         break;
       }
     }
+    addOutputBlockedTime( blockedSince );
     incrementLinesWritten();
   }
 
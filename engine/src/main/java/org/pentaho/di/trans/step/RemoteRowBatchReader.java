@@ -0,0 +1,112 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.pentaho.di.core.exception.KettleEOFException;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Reads the rows of a remote step hop written in batches by a {@link RemoteRowBatchWriter}.
+ */
+public class RemoteRowBatchReader {
+
+  private final DataInputStream inputStream;
+  private final RowMetaInterface rowMeta;
+
+  private byte[] raw = new byte[0];
+  private byte[] compressed = new byte[0];
+  private DataInputStream batchStream;
+  private int remaining;
+  private boolean finished;
+
+  /**
+   * @param inputStream
+   *          the stream to read the frames from
+   * @param rowMeta
+   *          the layout of the rows, read from the stream before
+   */
+  public RemoteRowBatchReader( DataInputStream inputStream, RowMetaInterface rowMeta ) {
+    this.inputStream = inputStream;
+    this.rowMeta = rowMeta;
+  }
+
+  /**
+   * @return the next row or null after the last row
+   * @throws KettleEOFException
+   *           if the stream ended before the end of the rows was received
+   * @throws KettleFileException
+   *           if a frame can't be read
+   */
+  public Object[] getRow() throws KettleFileException {
+    if ( remaining == 0 && !readBatch() ) {
+      return null;
+    }
+    remaining--;
+    return rowMeta.readData( batchStream );
+  }
+
+  private boolean readBatch() throws KettleFileException {
+    if ( finished ) {
+      return false;
+    }
+    try {
+      int rows = inputStream.readInt();
+      if ( rows == 0 ) {
+        finished = true;
+        return false;
+      }
+      int rawLength = inputStream.readInt();
+      int compressedLength = inputStream.readInt();
+      if ( rows < 0 || rawLength < 0 ) {
+        throw new KettleFileException( "Invalid batch of " + rows + " rows and " + rawLength + " bytes received" );
+      }
+      if ( raw.length < rawLength ) {
+        raw = new byte[rawLength];
+      }
+      if ( compressedLength < 0 ) {
+        inputStream.readFully( raw, 0, rawLength );
+      } else {
+        if ( compressed.length < compressedLength ) {
+          compressed = new byte[compressedLength];
+        }
+        inputStream.readFully( compressed, 0, compressedLength );
+        Snappy.uncompress( compressed, 0, compressedLength, raw, 0 );
+      }
+      batchStream = new DataInputStream( new ByteArrayInputStream( raw, 0, rawLength ) );
+      remaining = rows;
+      return true;
+    } catch ( EOFException e ) {
+      throw new KettleEOFException( e );
+    } catch ( IOException e ) {
+      throw new KettleFileException( "Unable to read a batch of rows from the remote step", e );
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -58,9 +58,10 @@ import org.pentaho.di.www.SocketRepository;
 import org.w3c.dom.Node;
 
 /**
- * Defines and handles communication to and from remote steps.
- *
- * TODO: add compression as a parameter/option TODO add buffer size as a parameter
+ * Defines and handles communication to and from remote steps.<br>
+ * <br>
+ * The rows are sent one by one over a stream that is optionally compressed with GZIP, or in batches when a batch size
+ * is set: see {@link RemoteRowBatchWriter}.
  *
  * @author Matt
  *
@@ -104,6 +105,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
   private int bufferSize;
   private boolean compressingStreams;
+  private int batchSize;
 
   private boolean encryptingStreams;
   private byte[] key;
@@ -180,6 +182,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     xml.append( XMLHandler.addTagValue( "port", port, false ) );
     xml.append( XMLHandler.addTagValue( "buffer_size", bufferSize, false ) );
     xml.append( XMLHandler.addTagValue( "compressed_streams", compressingStreams, false ) );
+    xml.append( XMLHandler.addTagValue( "batch_size", batchSize, false ) );
 
     xml.append( XMLHandler.addTagValue( "source_step_name", sourceStep, false ) );
     xml.append( XMLHandler.addTagValue( "source_step_copy", sourceStepCopyNr, false ) );
@@ -213,6 +216,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     port = XMLHandler.getTagValue( node, "port" );
     bufferSize = Integer.parseInt( XMLHandler.getTagValue( node, "buffer_size" ) );
     compressingStreams = "Y".equalsIgnoreCase( XMLHandler.getTagValue( node, "compressed_streams" ) );
+    batchSize = Const.toInt( XMLHandler.getTagValue( node, "batch_size" ), 0 );
 
     sourceStep = XMLHandler.getTagValue( node, "source_step_name" );
     sourceStepCopyNr = Integer.parseInt( XMLHandler.getTagValue( node, "source_step_copy" ) );
@@ -356,7 +360,8 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
           // Create the output stream...
           OutputStream socketOut = socket.getOutputStream();
 
-          if ( compressingStreams ) {
+          // Batches are compressed one by one
+          if ( compressingStreams && batchSize <= 0 ) {
             gzipOutputStream = new GZIPOutputStream( socketOut, 50000 );
             bufferedOutputStream = new BufferedOutputStream( gzipOutputStream, bufferSize );
           } else {
@@ -393,8 +398,13 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
           // get a row of data...
           Object[] rowData = baseStep.getRowFrom( rowSet );
+          RemoteRowBatchWriter batchWriter = null;
           if ( rowData != null ) {
             rowSet.getRowMeta().writeMeta( outputStream );
+            if ( batchSize > 0 ) {
+              batchWriter =
+                new RemoteRowBatchWriter( outputStream, rowSet.getRowMeta(), batchSize, compressingStreams );
+            }
           }
 
           // Send that row to the remote step
@@ -406,7 +416,11 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
             // Write the row to the remote step via the output stream....
             //
-            rowSet.getRowMeta().writeData( outputStream, rowData );
+            if ( batchWriter != null ) {
+              batchWriter.putRow( rowData );
+            } else {
+              rowSet.getRowMeta().writeData( outputStream, rowData );
+            }
             baseStep.incrementLinesOutput();
 
             if ( baseStep.log.isDebug() ) {
@@ -415,7 +429,10 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
             rowData = baseStep.getRowFrom( rowSet );
           }
 
-          if ( compressingStreams ) {
+          if ( batchWriter != null ) {
+            batchWriter.finish();
+          }
+          if ( gzipOutputStream != null ) {
             outputStream.flush();
             gzipOutputStream.finish();
           } else {
@@ -583,7 +600,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
         connected = true;
 
         InputStream socketStream = socket.getInputStream();
-        if ( compressingStreams ) {
+        if ( compressingStreams && batchSize <= 0 ) {
           gzipInputStream = new GZIPInputStream( socketStream );
           bufferedInputStream = new BufferedInputStream( gzipInputStream, bufferSize );
         } else {
@@ -688,7 +705,9 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
           // And a first row of data...
           //
-          Object[] rowData = getRowOfData( rowMeta );
+          RemoteRowBatchReader batchReader =
+            batchSize > 0 ? new RemoteRowBatchReader( inputStream, rowMeta ) : null;
+          Object[] rowData = batchReader != null ? batchReader.getRow() : getRowOfData( rowMeta );
 
           // Now get the data itself, row by row...
           //
@@ -702,7 +721,7 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
 
             baseStep.putRowTo( rowMeta, rowData, rowSet );
             baseStep.decrementLinesWritten();
-            rowData = getRowOfData( rowMeta );
+            rowData = batchReader != null ? batchReader.getRow() : getRowOfData( rowMeta );
           }
         } catch ( KettleEOFException e ) {
           // Nothing, we're simply done reading...
@@ -891,6 +910,21 @@ public class RemoteStep implements Cloneable, XMLInterface, Comparable<RemoteSte
     this.compressingStreams = compressingStreams;
   }
 
+  /**
+   * @return the maximum number of rows sent in one batch, 0 to send the rows one by one
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @param batchSize
+   *          the maximum number of rows sent in one batch, 0 to send the rows one by one
+   */
+  public void setBatchSize( int batchSize ) {
+    this.batchSize = batchSize;
+  }
+
   /**
    * @return the remoteHostname
    */
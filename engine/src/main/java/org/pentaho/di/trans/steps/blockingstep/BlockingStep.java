@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -42,6 +42,7 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMemoryQuota;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -56,6 +57,11 @@ public class BlockingStep extends BaseStep implements StepInterface {
 
   private static Class<?> PKG = BlockingStepMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * the minimum number of rows written to a temporary file when the transformation comes near its memory quota
+   */
+  private static final int MIN_SPILL_SIZE = 1000;
+
   private BlockingStepMeta meta;
   private BlockingStepData data;
   private Object[] lastRow;
@@ -68,11 +74,13 @@ public class BlockingStep extends BaseStep implements StepInterface {
   private boolean addBuffer( RowMetaInterface rowMeta, Object[] r ) {
     if ( r != null ) {
       data.buffer.add( r ); // Save row
+      addMemoryUsage( TransMemoryQuota.getRowSize( r ) );
     }
 
     // Time to write to disk: buffer in core is full!
     if ( data.buffer.size() == meta.getCacheSize() // Buffer is full: dump to disk
       || ( data.files.size() > 0 && r == null && data.buffer.size() > 0 ) // No more records: join from disk
+      || ( r != null && data.buffer.size() >= MIN_SPILL_SIZE && isMemorySpillNeeded() ) // Near the memory quota
     ) {
       // Then write them to disk...
       DataOutputStream dos;
@@ -113,6 +121,7 @@ public class BlockingStep extends BaseStep implements StepInterface {
       }
 
       data.buffer.clear();
+      releaseMemoryUsage();
     }
 
     return true;
@@ -301,6 +310,7 @@ public class BlockingStep extends BaseStep implements StepInterface {
 
           r = getBuffer();
         }
+        releaseMemoryUsage();
 
         setOutputDone(); // signal receiver we're finished.
         return false;
@@ -0,0 +1,373 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.cubeinput;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.trans.steps.cubeoutput.ColumnarCubeWriter;
+
+/**
+ * Reads a columnar cube file written by {@link ColumnarCubeWriter}.<br>
+ * <br>
+ * Only the projected columns (and the columns used in the condition) are decompressed. Before a row group is decoded
+ * its column statistics are checked against the condition: a row group that can't contain a matching row is skipped
+ * without decompressing anything. The remaining rows are filtered with the condition itself.
+ */
+public class ColumnarCubeReader {
+
+  private final DataInputStream in;
+  private final String compression;
+
+  /** The metadata of all the columns in the file */
+  private final RowMetaInterface fileRowMeta;
+
+  /** Same as fileRowMeta but without descending sort flags, used for comparisons */
+  private final RowMetaInterface compareMeta;
+
+  /** The metadata of the rows returned */
+  private final RowMetaInterface rowMeta;
+
+  /** The file column index for each returned column */
+  private final int[] projection;
+
+  /** Per file column: does it need to be decoded? */
+  private final boolean[] decode;
+
+  private final Condition condition;
+
+  private Object[][] columns;
+  private int rowsInGroup;
+  private int rowNr;
+  private boolean finished;
+
+  private long rowGroupsRead;
+  private long rowGroupsSkipped;
+
+  /**
+   * Open a columnar cube and read the header.
+   *
+   * @param inputStream
+   *          the stream positioned at the start of the file, closed by {@link #close()}
+   * @param fieldNames
+   *          the fields to return, in that order, or null/empty for all fields
+   * @param condition
+   *          the condition the returned rows need to match, null or empty for all rows
+   * @throws KettleFileException
+   *           in case the file can't be read or a field doesn't exist
+   */
+  public ColumnarCubeReader( InputStream inputStream, String[] fieldNames, Condition condition )
+    throws KettleFileException {
+    this.in = new DataInputStream( inputStream );
+    try {
+      byte[] magic = new byte[ColumnarCubeWriter.MAGIC.length];
+      in.readFully( magic );
+      if ( !Arrays.equals( magic, ColumnarCubeWriter.MAGIC ) ) {
+        throw new KettleFileException( "Not a columnar cube file" );
+      }
+      int version = in.readInt();
+      if ( version > ColumnarCubeWriter.VERSION ) {
+        throw new KettleFileException( "Unsupported columnar cube file version " + version );
+      }
+      compression = in.readUTF();
+      fileRowMeta = new RowMeta( in );
+    } catch ( KettleFileException e ) {
+      throw e;
+    } catch ( IOException e ) {
+      throw new KettleFileException( e );
+    }
+    compareMeta = ColumnarCubeWriter.getCompareMeta( fileRowMeta );
+
+    if ( fieldNames == null || fieldNames.length == 0 ) {
+      rowMeta = fileRowMeta.clone();
+      projection = new int[fileRowMeta.size()];
+      for ( int i = 0; i < projection.length; i++ ) {
+        projection[i] = i;
+      }
+    } else {
+      rowMeta = new RowMeta();
+      projection = new int[fieldNames.length];
+      for ( int i = 0; i < fieldNames.length; i++ ) {
+        projection[i] = fileRowMeta.indexOfValue( fieldNames[i] );
+        if ( projection[i] < 0 ) {
+          throw new KettleFileException( "Field [" + fieldNames[i] + "] can't be found in the columnar cube file" );
+        }
+        rowMeta.addValueMeta( fileRowMeta.getValueMeta( projection[i] ).clone() );
+      }
+    }
+
+    this.condition = condition == null || condition.isEmpty() ? null : (Condition) condition.clone();
+    decode = new boolean[fileRowMeta.size()];
+    for ( int index : projection ) {
+      decode[index] = true;
+    }
+    if ( this.condition != null ) {
+      for ( String fieldName : this.condition.getUsedFields() ) {
+        int index = fileRowMeta.indexOfValue( fieldName );
+        if ( index >= 0 ) {
+          decode[index] = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * @param inputStream
+   *          a stream supporting mark/reset, positioned at the start of the file
+   * @return true if the stream contains a columnar cube, false if it's a (gzipped) row based cube
+   * @throws IOException
+   */
+  public static boolean isColumnarCube( BufferedInputStream inputStream ) throws IOException {
+    byte[] magic = new byte[ColumnarCubeWriter.MAGIC.length];
+    inputStream.mark( magic.length );
+    try {
+      int read = 0;
+      while ( read < magic.length ) {
+        int n = inputStream.read( magic, read, magic.length - read );
+        if ( n < 0 ) {
+          return false;
+        }
+        read += n;
+      }
+      return Arrays.equals( magic, ColumnarCubeWriter.MAGIC );
+    } finally {
+      inputStream.reset();
+    }
+  }
+
+  /**
+   * @return the metadata of the rows returned by {@link #readRow()}
+   */
+  public RowMetaInterface getRowMeta() {
+    return rowMeta;
+  }
+
+  /**
+   * @return the metadata of all the fields in the file
+   */
+  public RowMetaInterface getFileRowMeta() {
+    return fileRowMeta;
+  }
+
+  /**
+   * @return the next (projected) row matching the condition or null when there are no more rows
+   * @throws KettleFileException
+   */
+  public Object[] readRow() throws KettleFileException {
+    while ( true ) {
+      while ( rowNr >= rowsInGroup ) {
+        if ( finished || !readRowGroup() ) {
+          return null;
+        }
+      }
+      int r = rowNr++;
+      if ( condition != null ) {
+        Object[] fileRow = new Object[fileRowMeta.size()];
+        for ( int i = 0; i < fileRow.length; i++ ) {
+          if ( decode[i] ) {
+            fileRow[i] = columns[i][r];
+          }
+        }
+        if ( !condition.evaluate( compareMeta, fileRow ) ) {
+          continue;
+        }
+      }
+      Object[] row = new Object[projection.length];
+      for ( int i = 0; i < projection.length; i++ ) {
+        row[i] = columns[projection[i]][r];
+      }
+      return row;
+    }
+  }
+
+  public long getRowGroupsRead() {
+    return rowGroupsRead;
+  }
+
+  public long getRowGroupsSkipped() {
+    return rowGroupsSkipped;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private boolean readRowGroup() throws KettleFileException {
+    try {
+      int nrRows = in.readInt();
+      if ( nrRows <= 0 ) {
+        finished = true;
+        return false;
+      }
+      int nrColumns = fileRowMeta.size();
+      long[] nullCounts = new long[nrColumns];
+      Object[] minimums = new Object[nrColumns];
+      Object[] maximums = new Object[nrColumns];
+      for ( int i = 0; i < nrColumns; i++ ) {
+        nullCounts[i] = in.readLong();
+        if ( in.readBoolean() ) {
+          minimums[i] = fileRowMeta.getValueMeta( i ).readData( in );
+          maximums[i] = fileRowMeta.getValueMeta( i ).readData( in );
+        }
+      }
+
+      boolean skip = condition != null && !canMatch( condition, nrRows, nullCounts, minimums, maximums );
+      columns = new Object[nrColumns][];
+      for ( int i = 0; i < nrColumns; i++ ) {
+        int length = in.readInt();
+        if ( skip || !decode[i] ) {
+          skipFully( length );
+          continue;
+        }
+        byte[] chunk = new byte[length];
+        in.readFully( chunk );
+        DataInputStream column =
+          new DataInputStream( ColumnarCubeWriter.getDecompressedInputStream(
+            new ByteArrayInputStream( chunk ), compression ) );
+        ValueMetaInterface valueMeta = fileRowMeta.getValueMeta( i );
+        columns[i] = new Object[nrRows];
+        for ( int r = 0; r < nrRows; r++ ) {
+          columns[i][r] = valueMeta.readData( column );
+        }
+      }
+
+      rowNr = 0;
+      if ( skip ) {
+        rowGroupsSkipped++;
+        rowsInGroup = 0;
+      } else {
+        rowGroupsRead++;
+        rowsInGroup = nrRows;
+      }
+      return true;
+    } catch ( KettleFileException e ) {
+      throw e;
+    } catch ( EOFException e ) {
+      throw new KettleFileException( "Unexpected end of columnar cube file", e );
+    } catch ( Exception e ) {
+      throw new KettleFileException( e );
+    }
+  }
+
+  private void skipFully( long length ) throws IOException {
+    long remaining = length;
+    while ( remaining > 0 ) {
+      long skipped = in.skip( remaining );
+      if ( skipped <= 0 ) {
+        if ( in.read() < 0 ) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      remaining -= skipped;
+    }
+  }
+
+  /**
+   * Decide from the row group statistics if any row of the group could match the condition. Only atomic comparisons
+   * of a field with a constant and plain AND/OR combinations of them are considered, anything else could match.
+   */
+  boolean canMatch( Condition cond, int nrRows, long[] nullCounts, Object[] minimums, Object[] maximums ) {
+    if ( cond.isEmpty() || cond.isNegated() ) {
+      return true;
+    }
+    if ( cond.isComposite() ) {
+      List<Condition> children = cond.getChildren();
+      int operator = children.size() > 1 ? children.get( 1 ).getOperator() : Condition.OPERATOR_AND;
+      if ( operator != Condition.OPERATOR_AND && operator != Condition.OPERATOR_OR ) {
+        return true;
+      }
+      for ( int i = 2; i < children.size(); i++ ) {
+        if ( children.get( i ).getOperator() != operator ) {
+          return true;
+        }
+      }
+      for ( Condition child : children ) {
+        boolean match = canMatch( child, nrRows, nullCounts, minimums, maximums );
+        if ( operator == Condition.OPERATOR_AND && !match ) {
+          return false;
+        }
+        if ( operator == Condition.OPERATOR_OR && match ) {
+          return true;
+        }
+      }
+      return operator == Condition.OPERATOR_AND;
+    }
+
+    int index = fileRowMeta.indexOfValue( cond.getLeftValuename() );
+    if ( index < 0 || !Utils.isEmpty( cond.getRightValuename() ) ) {
+      return true;
+    }
+    switch ( cond.getFunction() ) {
+      case Condition.FUNC_NULL:
+        return nullCounts[index] > 0;
+      case Condition.FUNC_NOT_NULL:
+        return nullCounts[index] < nrRows;
+      default:
+        break;
+    }
+
+    ValueMetaAndData exact = cond.getRightExact();
+    if ( minimums[index] == null || exact == null || exact.getValueMeta() == null || exact.getValueData() == null ) {
+      return true;
+    }
+    ValueMetaInterface valueMeta = compareMeta.getValueMeta( index );
+    try {
+      int compareMin = valueMeta.compare( minimums[index], exact.getValueMeta(), exact.getValueData() );
+      int compareMax = valueMeta.compare( maximums[index], exact.getValueMeta(), exact.getValueData() );
+      switch ( cond.getFunction() ) {
+        case Condition.FUNC_EQUAL:
+          return compareMin <= 0 && compareMax >= 0;
+        case Condition.FUNC_NOT_EQUAL:
+          return nullCounts[index] > 0 || compareMin != 0 || compareMax != 0;
+        case Condition.FUNC_SMALLER:
+          return compareMin < 0;
+        case Condition.FUNC_SMALLER_EQUAL:
+          return compareMin <= 0;
+        case Condition.FUNC_LARGER:
+          return compareMax > 0;
+        case Condition.FUNC_LARGER_EQUAL:
+          return compareMax >= 0;
+        default:
+          return true;
+      }
+    } catch ( KettleException e ) {
+      // Can't compare with the statistics: read the row group
+      return true;
+    }
+  }
+}
@@ -22,11 +22,13 @@
 
 package org.pentaho.di.trans.steps.cubeinput;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.util.zip.GZIPInputStream;
 
+import org.pentaho.di.core.Condition;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.ResultFile;
 import org.pentaho.di.core.exception.KettleEOFException;
@@ -66,7 +68,11 @@ public class CubeInput extends BaseStep implements StepInterface {
 
 
     try {
-      Object[] r = data.meta.readData( data.dis );
+      Object[] r = readRow();
+      if ( r == null ) {
+        setOutputDone();
+        return false;
+      }
       putRow( data.meta, r ); // fill the rowset(s). (sleeps if full)
       incrementLinesInput();
 
@@ -90,6 +96,29 @@ public class CubeInput extends BaseStep implements StepInterface {
     return true;
   }
 
+  /**
+   * @return the next row that matches the condition, projected on the selected fields, or null when done
+   */
+  private Object[] readRow() throws KettleException, SocketTimeoutException {
+    if ( data.reader != null ) {
+      return data.reader.readRow();
+    }
+    while ( true ) {
+      Object[] cubeRow = data.cubeMeta.readData( data.dis );
+      if ( data.condition != null && !data.condition.evaluate( data.cubeMeta, cubeRow ) ) {
+        continue;
+      }
+      if ( data.projection == null ) {
+        return cubeRow;
+      }
+      Object[] r = new Object[data.projection.length];
+      for ( int i = 0; i < data.projection.length; i++ ) {
+        r[i] = cubeRow[data.projection[i]];
+      }
+      return r;
+    }
+  }
+
   public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (CubeInputMeta) smi;
     data = (CubeInputData) sdi;
@@ -108,12 +137,27 @@ public class CubeInput extends BaseStep implements StepInterface {
           addResultFile( resultFile );
         }
 
-        data.fis = KettleVFS.getInputStream( filename, this );
-        data.zip = new GZIPInputStream( data.fis );
-        data.dis = new DataInputStream( data.zip );
+        data.fis = new BufferedInputStream( KettleVFS.getInputStream( filename, this ) );
+        Condition condition = meta.getCondition();
+        data.condition = condition == null || condition.isEmpty() ? null : (Condition) condition.clone();
 
         try {
-          data.meta = new RowMeta( data.dis );
+          if ( ColumnarCubeReader.isColumnarCube( (BufferedInputStream) data.fis ) ) {
+            data.reader = new ColumnarCubeReader( data.fis, meta.getFieldName(), data.condition );
+            data.meta = data.reader.getRowMeta();
+            return true;
+          }
+
+          data.zip = new GZIPInputStream( data.fis );
+          data.dis = new DataInputStream( data.zip );
+          data.cubeMeta = new RowMeta( data.dis );
+          data.meta = meta.getProjectedRowMeta( data.cubeMeta );
+          if ( data.meta != data.cubeMeta ) {
+            data.projection = new int[data.meta.size()];
+            for ( int i = 0; i < data.projection.length; i++ ) {
+              data.projection[i] = data.cubeMeta.indexOfValue( data.meta.getValueMeta( i ).getName() );
+            }
+          }
           return true;
         } catch ( KettleFileException kfe ) {
           logError( BaseMessages.getString( PKG, "CubeInput.Log.UnableToReadMetadata" ), kfe );
@@ -131,6 +175,14 @@ public class CubeInput extends BaseStep implements StepInterface {
     data = (CubeInputData) sdi;
 
     try {
+      if ( data.reader != null ) {
+        if ( log.isDetailed() ) {
+          logDetailed( BaseMessages.getString( PKG, "CubeInput.Log.RowGroupsRead", String.valueOf( data.reader
+            .getRowGroupsRead() ), String.valueOf( data.reader.getRowGroupsSkipped() ) ) );
+        }
+        data.reader.close();
+        data.reader = null;
+      }
       if ( data.dis != null ) {
         data.dis.close();
         data.dis = null;
@@ -26,6 +26,7 @@ import java.io.DataInputStream;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 
+import org.pentaho.di.core.Condition;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -41,6 +42,18 @@ public class CubeInputData extends BaseStepData implements StepDataInterface {
 
   public RowMetaInterface meta;
 
+  /** Set when the file is a columnar cube */
+  public ColumnarCubeReader reader;
+
+  /** For a row based cube: the index in the cube row of every output field, null to output the cube rows as is */
+  public int[] projection;
+
+  /** For a row based cube: the metadata of the rows stored in the cube */
+  public RowMetaInterface cubeMeta;
+
+  /** Only rows matching this condition are read, null for all rows */
+  public Condition condition;
+
   public CubeInputData() {
     super();
   }
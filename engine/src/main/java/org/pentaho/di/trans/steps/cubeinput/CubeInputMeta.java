@@ -22,6 +22,7 @@
 
 package org.pentaho.di.trans.steps.cubeinput;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,6 +33,7 @@ import java.util.zip.GZIPInputStream;
 import org.apache.commons.vfs2.FileObject;
 import org.pentaho.di.core.CheckResult;
 import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.Condition;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
@@ -40,6 +42,7 @@ import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.core.xml.XMLHandler;
@@ -69,6 +72,12 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
   private String rowLimit;
   private boolean addfilenameresult;
 
+  /** The fields to read from a columnar cube, all fields when empty */
+  private String[] fieldName;
+
+  /** Only rows matching this condition are read; with a columnar cube it is also used to skip row groups */
+  private Condition condition;
+
   public CubeInputMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -131,8 +140,44 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
     this.addfilenameresult = addfilenameresult;
   }
 
+  /**
+   * @return the fields to read, all fields when empty
+   */
+  public String[] getFieldName() {
+    return fieldName;
+  }
+
+  /**
+   * @param fieldName
+   *          the fields to read, all fields when empty
+   */
+  public void setFieldName( String[] fieldName ) {
+    this.fieldName = fieldName;
+  }
+
+  /**
+   * @return the condition the rows need to match
+   */
+  public Condition getCondition() {
+    return condition;
+  }
+
+  /**
+   * @param condition
+   *          the condition the rows need to match
+   */
+  public void setCondition( Condition condition ) {
+    this.condition = condition;
+  }
+
+  public void allocate( int nrFields ) {
+    fieldName = new String[nrFields];
+  }
+
   public Object clone() {
     CubeInputMeta retval = (CubeInputMeta) super.clone();
+    retval.fieldName = fieldName == null ? null : fieldName.clone();
+    retval.condition = condition == null ? null : (Condition) condition.clone();
     return retval;
   }
 
@@ -142,6 +187,18 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
       rowLimit = XMLHandler.getTagValue( stepnode, "limit" );
       addfilenameresult = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "addfilenameresult" ) );
 
+      Node fields = XMLHandler.getSubNode( stepnode, "fields" );
+      int nrFields = XMLHandler.countNodes( fields, "field" );
+      allocate( nrFields );
+      for ( int i = 0; i < nrFields; i++ ) {
+        Node fnode = XMLHandler.getSubNodeByNr( fields, "field", i );
+        fieldName[i] = XMLHandler.getTagValue( fnode, "name" );
+      }
+
+      Node compare = XMLHandler.getSubNode( stepnode, "compare" );
+      Node condnode = XMLHandler.getSubNode( compare, "condition" );
+      condition = condnode != null ? new Condition( condnode ) : new Condition();
+
     } catch ( Exception e ) {
       throw new KettleXMLException(
         BaseMessages.getString( PKG, "CubeInputMeta.Exception.UnableToLoadStepInfo" ), e );
@@ -152,18 +209,27 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
     filename = "file";
     rowLimit = "0";
     addfilenameresult = false;
+    allocate( 0 );
+    condition = new Condition();
   }
 
   public void getFields( RowMetaInterface r, String name, RowMetaInterface[] info, StepMeta nextStep,
     VariableSpace space, Repository repository, IMetaStore metaStore ) throws KettleStepException {
+    BufferedInputStream bis = null;
     GZIPInputStream fis = null;
     DataInputStream dis = null;
     try {
       InputStream is = KettleVFS.getInputStream( space.environmentSubstitute( filename ), space );
-      fis = new GZIPInputStream( is );
-      dis = new DataInputStream( fis );
-
-      RowMetaInterface add = new RowMeta( dis );
+      bis = new BufferedInputStream( is );
+
+      RowMetaInterface add;
+      if ( ColumnarCubeReader.isColumnarCube( bis ) ) {
+        add = new ColumnarCubeReader( bis, fieldName, null ).getRowMeta();
+      } else {
+        fis = new GZIPInputStream( bis );
+        dis = new DataInputStream( fis );
+        add = getProjectedRowMeta( new RowMeta( dis ) );
+      }
       for ( int i = 0; i < add.size(); i++ ) {
         add.getValueMeta( i ).setOrigin( name );
       }
@@ -182,6 +248,9 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
         if ( dis != null ) {
           dis.close();
         }
+        if ( bis != null ) {
+          bis.close();
+        }
       } catch ( IOException ioe ) {
         throw new KettleStepException( BaseMessages.getString(
           PKG, "CubeInputMeta.Exception.UnableToCloseCubeFile" ), ioe );
@@ -189,7 +258,7 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
     }
   }
 
-  public String getXML() {
+  public String getXML() throws KettleException {
     StringBuilder retval = new StringBuilder( 300 );
 
     retval.append( "    <file>" ).append( Const.CR );
@@ -198,9 +267,47 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "    " ).append( XMLHandler.addTagValue( "limit", rowLimit ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "addfilenameresult", addfilenameresult ) );
 
+    retval.append( "    <fields>" ).append( Const.CR );
+    for ( int i = 0; fieldName != null && i < fieldName.length; i++ ) {
+      retval.append( "      <field>" ).append( Const.CR );
+      retval.append( "        " ).append( XMLHandler.addTagValue( "name", fieldName[i] ) );
+      retval.append( "      </field>" ).append( Const.CR );
+    }
+    retval.append( "    </fields>" ).append( Const.CR );
+
+    retval.append( "    <compare>" ).append( Const.CR );
+    if ( condition != null ) {
+      retval.append( condition.getXML() );
+    }
+    retval.append( "    </compare>" ).append( Const.CR );
+
     return retval.toString();
   }
 
+  /**
+   * Keep only the selected fields of a row based cube, in the selected order.
+   *
+   * @param cubeRowMeta
+   *          the metadata stored in the cube
+   * @return the metadata of the rows this step outputs
+   * @throws KettleStepException
+   *           when a selected field doesn't exist in the cube
+   */
+  public RowMetaInterface getProjectedRowMeta( RowMetaInterface cubeRowMeta ) throws KettleStepException {
+    if ( fieldName == null || fieldName.length == 0 ) {
+      return cubeRowMeta;
+    }
+    RowMetaInterface projected = new RowMeta();
+    for ( String name : fieldName ) {
+      ValueMetaInterface valueMeta = cubeRowMeta.searchValueMeta( name );
+      if ( valueMeta == null ) {
+        throw new KettleStepException( BaseMessages.getString( PKG, "CubeInputMeta.Exception.FieldNotFound", name ) );
+      }
+      projected.addValueMeta( valueMeta );
+    }
+    return projected;
+  }
+
   public void readRep( Repository rep, IMetaStore metaStore, ObjectId id_step, List<DatabaseMeta> databases ) throws KettleException {
     try {
       filename = rep.getStepAttributeString( id_step, "file_name" );
@@ -212,6 +319,16 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
       }
       addfilenameresult = rep.getStepAttributeBoolean( id_step, "addfilenameresult" );
 
+      int nrFields = rep.countNrStepAttributes( id_step, "field_name" );
+      allocate( nrFields );
+      for ( int i = 0; i < nrFields; i++ ) {
+        fieldName[i] = rep.getStepAttributeString( id_step, i, "field_name" );
+      }
+      condition = rep.loadConditionFromStepAttribute( id_step, "id_condition" );
+      if ( condition == null ) {
+        condition = new Condition();
+      }
+
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
         PKG, "CubeInputMeta.Exception.UnexpectedErrorWhileReadingStepInfo" ), e );
@@ -224,6 +341,13 @@ public class CubeInputMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "limit", rowLimit );
       rep.saveStepAttribute( id_transformation, id_step, "addfilenameresult", addfilenameresult );
 
+      for ( int i = 0; fieldName != null && i < fieldName.length; i++ ) {
+        rep.saveStepAttribute( id_transformation, id_step, i, "field_name", fieldName[i] );
+      }
+      if ( condition != null ) {
+        rep.saveConditionStepAttribute( id_transformation, id_step, "id_condition", condition );
+      }
+
     } catch ( KettleException e ) {
       throw new KettleException( BaseMessages.getString( PKG, "CubeInputMeta.Exception.UnableToSaveStepInfo" )
         + id_step, e );
@@ -0,0 +1,268 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.cubeoutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Writes rows to a columnar cube file.<br>
+ * <br>
+ * Rows are buffered in row groups. Within a row group every column is serialized on its own (with
+ * {@link ValueMetaInterface#writeData(DataOutputStream, Object)}) and compressed separately, so that a reader can
+ * decode only the columns it needs. For every column of every row group the minimum, maximum and number of nulls are
+ * stored in front of the data, which allows a reader to skip row groups that can't match a condition.<br>
+ * <br>
+ * Layout:
+ *
+ * <pre>
+ * header    : magic, version, compression, row metadata
+ * row group : number of rows (&gt; 0), statistics per column, (length, compressed data) per column
+ * trailer   : 0
+ * </pre>
+ */
+public class ColumnarCubeWriter {
+
+  public static final byte[] MAGIC = new byte[] { 'K', 'C', 'U', 'B', 'E', 'C', 'O', 'L' };
+
+  public static final int VERSION = 1;
+
+  public static final String COMPRESSION_NONE = "none";
+  public static final String COMPRESSION_DEFLATE = "deflate";
+  public static final String COMPRESSION_GZIP = "gzip";
+
+  public static final String[] COMPRESSION_CODES = new String[] {
+    COMPRESSION_DEFLATE, COMPRESSION_GZIP, COMPRESSION_NONE, };
+
+  public static final int DEFAULT_ROW_GROUP_SIZE = 100000;
+
+  private final DataOutputStream out;
+  private final RowMetaInterface rowMeta;
+
+  /** Copy of the row metadata used to compare values in natural (ascending) order */
+  private final RowMetaInterface compareMeta;
+
+  private final int rowGroupSize;
+  private final String compression;
+
+  private ByteArrayOutputStream[] columnBuffers;
+  private DataOutputStream[] columnStreams;
+  private Object[] minimums;
+  private Object[] maximums;
+  private long[] nullCounts;
+  private int rowsInGroup;
+
+  private long rowGroupsWritten;
+
+  /**
+   * Create a writer and write the file header.
+   *
+   * @param outputStream
+   *          the stream to write to, closed by {@link #close()}
+   * @param rowMeta
+   *          the metadata of the rows to write
+   * @param rowGroupSize
+   *          the number of rows per row group
+   * @param compression
+   *          one of {@link #COMPRESSION_CODES}
+   * @throws KettleFileException
+   */
+  public ColumnarCubeWriter( OutputStream outputStream, RowMetaInterface rowMeta, int rowGroupSize,
+    String compression ) throws KettleFileException {
+    this.out = new DataOutputStream( outputStream );
+    this.rowMeta = rowMeta;
+    this.compareMeta = getCompareMeta( rowMeta );
+    this.rowGroupSize = rowGroupSize > 0 ? rowGroupSize : DEFAULT_ROW_GROUP_SIZE;
+    this.compression = Const.indexOfString( compression, COMPRESSION_CODES ) < 0 ? COMPRESSION_DEFLATE : compression;
+
+    try {
+      out.write( MAGIC );
+      out.writeInt( VERSION );
+      out.writeUTF( this.compression );
+      rowMeta.writeMeta( out );
+    } catch ( IOException e ) {
+      throw new KettleFileException( e );
+    }
+    startRowGroup();
+  }
+
+  /**
+   * Add a row to the current row group, writing out the group when it is full.
+   *
+   * @param row
+   *          the row data
+   * @throws KettleFileException
+   */
+  public void writeRow( Object[] row ) throws KettleFileException {
+    for ( int i = 0; i < columnStreams.length; i++ ) {
+      ValueMetaInterface valueMeta = compareMeta.getValueMeta( i );
+      Object value = row[i];
+      rowMeta.getValueMeta( i ).writeData( columnStreams[i], value );
+      try {
+        if ( valueMeta.isNull( value ) ) {
+          nullCounts[i]++;
+        } else if ( hasStatistics( valueMeta ) ) {
+          if ( minimums[i] == null || valueMeta.compare( value, minimums[i] ) < 0 ) {
+            minimums[i] = valueMeta.cloneValueData( value );
+          }
+          if ( maximums[i] == null || valueMeta.compare( value, maximums[i] ) > 0 ) {
+            maximums[i] = valueMeta.cloneValueData( value );
+          }
+        }
+      } catch ( KettleException e ) {
+        throw new KettleFileException( e );
+      }
+    }
+    rowsInGroup++;
+    if ( rowsInGroup >= rowGroupSize ) {
+      flushRowGroup();
+    }
+  }
+
+  /**
+   * Write the last row group and the trailer, then close the stream.
+   *
+   * @throws KettleFileException
+   */
+  public void close() throws KettleFileException {
+    try {
+      flushRowGroup();
+      out.writeInt( 0 );
+      out.close();
+    } catch ( IOException e ) {
+      throw new KettleFileException( e );
+    }
+  }
+
+  /**
+   * @return the number of row groups written so far
+   */
+  public long getRowGroupsWritten() {
+    return rowGroupsWritten;
+  }
+
+  private void flushRowGroup() throws KettleFileException {
+    if ( rowsInGroup == 0 ) {
+      return;
+    }
+    try {
+      out.writeInt( rowsInGroup );
+      for ( int i = 0; i < columnStreams.length; i++ ) {
+        out.writeLong( nullCounts[i] );
+        boolean statistics = minimums[i] != null;
+        out.writeBoolean( statistics );
+        if ( statistics ) {
+          rowMeta.getValueMeta( i ).writeData( out, minimums[i] );
+          rowMeta.getValueMeta( i ).writeData( out, maximums[i] );
+        }
+      }
+      for ( int i = 0; i < columnStreams.length; i++ ) {
+        columnStreams[i].close();
+        out.writeInt( columnBuffers[i].size() );
+        columnBuffers[i].writeTo( out );
+      }
+    } catch ( IOException e ) {
+      throw new KettleFileException( e );
+    }
+    rowGroupsWritten++;
+    startRowGroup();
+  }
+
+  private void startRowGroup() throws KettleFileException {
+    int nrColumns = rowMeta.size();
+    columnBuffers = new ByteArrayOutputStream[nrColumns];
+    columnStreams = new DataOutputStream[nrColumns];
+    minimums = new Object[nrColumns];
+    maximums = new Object[nrColumns];
+    nullCounts = new long[nrColumns];
+    rowsInGroup = 0;
+    try {
+      for ( int i = 0; i < nrColumns; i++ ) {
+        columnBuffers[i] = new ByteArrayOutputStream();
+        columnStreams[i] = new DataOutputStream( getCompressedOutputStream( columnBuffers[i], compression ) );
+      }
+    } catch ( IOException e ) {
+      throw new KettleFileException( e );
+    }
+  }
+
+  /**
+   * Only values with a natural order get statistics.
+   */
+  public static boolean hasStatistics( ValueMetaInterface valueMeta ) {
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_BINARY:
+      case ValueMetaInterface.TYPE_SERIALIZABLE:
+      case ValueMetaInterface.TYPE_NONE:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * @return a copy of the row metadata without descending sort flags, to compare values in natural order
+   */
+  public static RowMetaInterface getCompareMeta( RowMetaInterface rowMeta ) {
+    RowMetaInterface compareMeta = rowMeta.clone();
+    for ( ValueMetaInterface valueMeta : compareMeta.getValueMetaList() ) {
+      valueMeta.setSortedDescending( false );
+    }
+    return compareMeta;
+  }
+
+  public static OutputStream getCompressedOutputStream( OutputStream outputStream, String compression )
+    throws IOException {
+    if ( COMPRESSION_GZIP.equals( compression ) ) {
+      return new GZIPOutputStream( outputStream );
+    }
+    if ( COMPRESSION_DEFLATE.equals( compression ) ) {
+      return new DeflaterOutputStream( outputStream );
+    }
+    return outputStream;
+  }
+
+  public static InputStream getDecompressedInputStream( InputStream inputStream, String compression )
+    throws IOException {
+    if ( COMPRESSION_GZIP.equals( compression ) ) {
+      return new GZIPInputStream( inputStream );
+    }
+    if ( COMPRESSION_DEFLATE.equals( compression ) ) {
+      return new InflaterInputStream( inputStream );
+    }
+    return inputStream;
+  }
+}
@@ -22,10 +22,12 @@
 
 package org.pentaho.di.trans.steps.cubeoutput;
 
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.zip.GZIPOutputStream;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.ResultFile;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
@@ -132,6 +134,12 @@ public class CubeOutput extends BaseStep implements StepInterface {
 
   private synchronized boolean writeHeaderToFile() {
     try {
+      if ( meta.isColumnar() ) {
+        int rowGroupSize =
+          Const.toInt( environmentSubstitute( meta.getRowGroupSize() ), ColumnarCubeWriter.DEFAULT_ROW_GROUP_SIZE );
+        data.writer = new ColumnarCubeWriter( data.fos, data.outputMeta, rowGroupSize, meta.getCompression() );
+        return true;
+      }
       data.outputMeta.writeMeta( data.dos );
     } catch ( Exception e ) {
       logError( BaseMessages.getString( PKG, "CubeOutput.Log.ErrorWritingLine" ) + e.toString() );
@@ -144,7 +152,11 @@ public class CubeOutput extends BaseStep implements StepInterface {
   private synchronized boolean writeRowToFile( Object[] r ) {
     try {
       // Write data to the cube file...
-      data.outputMeta.writeData( data.dos, r );
+      if ( data.writer != null ) {
+        data.writer.writeRow( r );
+      } else {
+        data.outputMeta.writeData( data.dos, r );
+      }
     } catch ( Exception e ) {
       logError( BaseMessages.getString( PKG, "CubeOutput.Log.ErrorWritingLine" ) + e.toString() );
       return false;
@@ -190,6 +202,11 @@ public class CubeOutput extends BaseStep implements StepInterface {
       }
 
       data.fos = KettleVFS.getOutputStream( filename, getTransMeta(), false );
+      if ( meta.isColumnar() ) {
+        // the columnar writer compresses every column itself
+        data.fos = new BufferedOutputStream( data.fos );
+        return;
+      }
       data.zip = new GZIPOutputStream( data.fos );
       data.dos = new DataOutputStream( data.zip );
     } catch ( Exception e ) {
@@ -200,6 +217,15 @@ public class CubeOutput extends BaseStep implements StepInterface {
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     if ( data.oneFileOpened ) {
       try {
+        if ( data.writer != null ) {
+          data.writer.close();
+          if ( log.isDetailed() ) {
+            logDetailed( BaseMessages.getString( PKG, "CubeOutput.Log.RowGroupsWritten", String.valueOf( data.writer
+              .getRowGroupsWritten() ) ) );
+          }
+          data.writer = null;
+          data.fos = null;
+        }
         if ( data.dos != null ) {
           data.dos.close();
           data.dos = null;
@@ -212,7 +238,7 @@ public class CubeOutput extends BaseStep implements StepInterface {
           data.fos.close();
           data.fos = null;
         }
-      } catch ( IOException e ) {
+      } catch ( IOException | KettleException e ) {
         logError( BaseMessages.getString( PKG, "CubeOutput.Log.ErrorClosingFile" ) + meta.getFilename() );
         setErrors( 1 );
         stopAll();
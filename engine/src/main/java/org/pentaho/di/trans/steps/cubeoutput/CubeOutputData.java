@@ -41,6 +41,9 @@ public class CubeOutputData extends BaseStepData implements StepDataInterface {
   public RowMetaInterface outputMeta;
   public boolean oneFileOpened;
 
+  /** Set when a columnar cube is written */
+  public ColumnarCubeWriter writer;
+
   public CubeOutputData() {
     super();
     oneFileOpened = false;
@@ -65,6 +65,15 @@ public class CubeOutputMeta extends BaseStepMeta implements StepMetaInterface {
   /** Flag : Do not open new file when transformation start */
   private boolean doNotOpenNewFileInit;
 
+  /** Flag : write a columnar cube (row groups, columns compressed separately, statistics) */
+  private boolean columnar;
+
+  /** The number of rows per row group in a columnar cube */
+  private String rowGroupSize;
+
+  /** The compression of the columns in a columnar cube */
+  private String compression;
+
   public CubeOutputMeta() {
     super(); // allocate BaseStepMeta
   }
@@ -118,6 +127,51 @@ public class CubeOutputMeta extends BaseStepMeta implements StepMetaInterface {
     this.doNotOpenNewFileInit = doNotOpenNewFileInit;
   }
 
+  /**
+   * @return true if a columnar cube is written
+   */
+  public boolean isColumnar() {
+    return columnar;
+  }
+
+  /**
+   * @param columnar
+   *          true to write a columnar cube
+   */
+  public void setColumnar( boolean columnar ) {
+    this.columnar = columnar;
+  }
+
+  /**
+   * @return the number of rows per row group in a columnar cube
+   */
+  public String getRowGroupSize() {
+    return rowGroupSize;
+  }
+
+  /**
+   * @param rowGroupSize
+   *          the number of rows per row group in a columnar cube
+   */
+  public void setRowGroupSize( String rowGroupSize ) {
+    this.rowGroupSize = rowGroupSize;
+  }
+
+  /**
+   * @return the compression of the columns in a columnar cube, one of {@link ColumnarCubeWriter#COMPRESSION_CODES}
+   */
+  public String getCompression() {
+    return compression;
+  }
+
+  /**
+   * @param compression
+   *          the compression of the columns in a columnar cube, one of {@link ColumnarCubeWriter#COMPRESSION_CODES}
+   */
+  public void setCompression( String compression ) {
+    this.compression = compression;
+  }
+
   public Object clone() {
     CubeOutputMeta retval = (CubeOutputMeta) super.clone();
 
@@ -131,6 +185,9 @@ public class CubeOutputMeta extends BaseStepMeta implements StepMetaInterface {
         "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "file", "add_to_result_filenames" ) );
       doNotOpenNewFileInit =
         "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "file", "do_not_open_newfile_init" ) );
+      columnar = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "columnar" ) );
+      rowGroupSize = XMLHandler.getTagValue( stepnode, "row_group_size" );
+      compression = XMLHandler.getTagValue( stepnode, "compression" );
 
     } catch ( Exception e ) {
       throw new KettleXMLException(
@@ -142,6 +199,9 @@ public class CubeOutputMeta extends BaseStepMeta implements StepMetaInterface {
     filename = "file.cube";
     addToResultFilenames = false;
     doNotOpenNewFileInit = false;
+    columnar = false;
+    rowGroupSize = String.valueOf( ColumnarCubeWriter.DEFAULT_ROW_GROUP_SIZE );
+    compression = ColumnarCubeWriter.COMPRESSION_DEFLATE;
   }
 
   public String getXML() {
@@ -153,6 +213,9 @@ public class CubeOutputMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "      " ).append( XMLHandler.addTagValue( "do_not_open_newfile_init", doNotOpenNewFileInit ) );
 
     retval.append( "    </file>" ).append( Const.CR );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "columnar", columnar ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "row_group_size", rowGroupSize ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "compression", compression ) );
 
     return retval.toString();
   }
@@ -162,6 +225,9 @@ public class CubeOutputMeta extends BaseStepMeta implements StepMetaInterface {
       filename = rep.getStepAttributeString( id_step, "file_name" );
       addToResultFilenames = rep.getStepAttributeBoolean( id_step, "add_to_result_filenames" );
       doNotOpenNewFileInit = rep.getStepAttributeBoolean( id_step, "do_not_open_newfile_init" );
+      columnar = rep.getStepAttributeBoolean( id_step, "columnar" );
+      rowGroupSize = rep.getStepAttributeString( id_step, "row_group_size" );
+      compression = rep.getStepAttributeString( id_step, "compression" );
 
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString(
@@ -174,6 +240,9 @@ public class CubeOutputMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "file_name", filename );
       rep.saveStepAttribute( id_transformation, id_step, "add_to_result_filenames", addToResultFilenames );
       rep.saveStepAttribute( id_transformation, id_step, "do_not_open_newfile_init", doNotOpenNewFileInit );
+      rep.saveStepAttribute( id_transformation, id_step, "columnar", columnar );
+      rep.saveStepAttribute( id_transformation, id_step, "row_group_size", rowGroupSize );
+      rep.saveStepAttribute( id_transformation, id_step, "compression", compression );
 
     } catch ( Exception e ) {
       throw new KettleException( BaseMessages.getString( PKG, "CubeOutputMeta.Exception.UnableToSaveStepInfo" )
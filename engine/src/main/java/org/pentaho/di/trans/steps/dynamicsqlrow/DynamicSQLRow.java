@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -27,6 +27,7 @@ import java.sql.ResultSet;
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.PreparedStatementCache;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -318,6 +319,10 @@ public class DynamicSQLRow extends BaseStep implements StepInterface {
 
         data.db.setQueryLimit( meta.getRowLimit() );
 
+        // Reuse the statements of the SQL executed again
+        data.db.setStatementCacheSize(
+          Const.toInt( getVariable( Const.KETTLE_STATEMENT_CACHE_SIZE ), Const.STATEMENT_CACHE_SIZE ) );
+
         return true;
       } catch ( KettleException e ) {
         logError( BaseMessages.getString( PKG, "DynamicSQLRow.Log.DatabaseError" ) + e.getMessage() );
@@ -335,6 +340,11 @@ public class DynamicSQLRow extends BaseStep implements StepInterface {
     data = (DynamicSQLRowData) sdi;
 
     if ( data.db != null ) {
+      PreparedStatementCache statementCache = data.db.getStatementCache();
+      if ( statementCache != null && log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "DynamicSQLRow.Log.StatementCache", statementCache.getHits(),
+          statementCache.getMisses(), statementCache.getEvictions() ) );
+      }
       data.db.disconnect();
     }
 
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -27,6 +27,7 @@ import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.Result;
 import org.pentaho.di.core.RowMetaAndData;
 import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.PreparedStatementCache;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowDataUtil;
@@ -202,6 +203,11 @@ public class ExecSQLRow extends BaseStep implements StepInterface {
     }
 
     if ( data.db != null ) {
+      PreparedStatementCache statementCache = data.db.getStatementCache();
+      if ( statementCache != null && log.isDetailed() ) {
+        logDetailed( BaseMessages.getString( PKG, "ExecSQLRow.Log.StatementCache", statementCache.getHits(),
+          statementCache.getMisses(), statementCache.getEvictions() ) );
+      }
       try {
         if ( !data.db.isAutoCommit() ) {
           if ( getErrors() == 0 ) {
@@ -263,6 +269,10 @@ public class ExecSQLRow extends BaseStep implements StepInterface {
         if ( meta.getCommitSize() >= 1 ) {
           data.db.setCommit( meta.getCommitSize() );
         }
+
+        // Reuse the statements of the SQL executed again
+        data.db.setStatementCacheSize(
+          Const.toInt( getVariable( Const.KETTLE_STATEMENT_CACHE_SIZE ), Const.STATEMENT_CACHE_SIZE ) );
         return true;
       } catch ( KettleException e ) {
         logError( BaseMessages.getString( PKG, "ExecSQLRow.Log.ErrorOccurred" ) + e.getMessage() );
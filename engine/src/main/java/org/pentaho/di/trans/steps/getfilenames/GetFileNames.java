@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -78,12 +78,12 @@ public class GetFileNames extends BaseStep implements StepInterface {
 
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     if ( !meta.isFileField() ) {
-      if ( data.filenr >= data.filessize ) {
+      if ( !hasMoreFiles() ) {
         setOutputDone();
         return false;
       }
     } else {
-      if ( data.filenr >= data.filessize ) {
+      if ( !hasMoreFiles() ) {
         // Grab one row from previous step ...
         data.readrow = getRow();
       }
@@ -156,7 +156,7 @@ public class GetFileNames extends BaseStep implements StepInterface {
       int outputIndex = 0;
       Object[] extraData = new Object[data.nrStepFields];
       if ( meta.isFileField() ) {
-        if ( data.filenr >= data.filessize ) {
+        if ( !hasMoreFiles() ) {
           // Get value of dynamic filename field ...
           String filename = getInputRowMeta().getString( data.readrow, data.indexOfFilenameField );
           String wildcard = "";
@@ -173,19 +173,30 @@ public class GetFileNames extends BaseStep implements StepInterface {
           String[] excludefilesmask = { excludewildcard };
           String[] filesrequired = { "N" };
           boolean[] includesubfolders = { meta.isDynamicIncludeSubFolders() };
-          // Get files list
-          data.files =
-            meta.getDynamicFileList(
-              this, filesname, filesmask, excludefilesmask, filesrequired, includesubfolders );
-          data.filessize = data.files.nrOfFiles();
-          data.filenr = 0;
+          if ( meta.isStreamFiles() ) {
+            // Enumerate the files while the rows are written
+            closeEnumerator();
+            data.enumerator =
+              meta.getDynamicFileEnumerator(
+                this, filesname, filesmask, excludefilesmask, filesrequired, includesubfolders );
+            if ( meta.getRowLimit() > 0 ) {
+              data.enumerator.setLimit( meta.getRowLimit() - data.rownr + 1 );
+            }
+          } else {
+            // Get files list
+            data.files =
+              meta.getDynamicFileList(
+                this, filesname, filesmask, excludefilesmask, filesrequired, includesubfolders );
+            data.filessize = data.files.nrOfFiles();
+            data.filenr = 0;
+          }
         }
 
         // Clone current input row
         outputRow = data.readrow.clone();
       }
-      if ( data.filessize > 0 ) {
-        data.file = data.files.getFile( data.filenr );
+      if ( data.enumerator != null ? hasMoreFiles() : data.filessize > 0 ) {
+        data.file = data.enumerator != null ? data.enumerator.next() : data.files.getFile( data.filenr );
 
         if ( meta.isAddResultFile() ) {
           // Add this to the result file names...
@@ -206,7 +217,8 @@ public class GetFileNames extends BaseStep implements StepInterface {
           extraData[outputIndex++] = KettleVFS.getFilename( data.file.getParent() );
 
           // type
-          extraData[outputIndex++] = data.file.getType().toString();
+          FileType type = data.file.getType();
+          extraData[outputIndex++] = type.toString();
 
           // exists
           extraData[outputIndex++] = Boolean.valueOf( data.file.exists() );
@@ -225,7 +237,7 @@ public class GetFileNames extends BaseStep implements StepInterface {
 
           // size
           Long size = null;
-          if ( data.file.getType().equals( FileType.FILE ) ) {
+          if ( type.equals( FileType.FILE ) ) {
             size = new Long( data.file.getContent().getSize() );
           }
 
@@ -276,12 +288,33 @@ public class GetFileNames extends BaseStep implements StepInterface {
     return true;
   }
 
+  /**
+   * @return true if there is another file in the list of files or in the enumeration
+   */
+  private boolean hasMoreFiles() throws KettleException {
+    if ( data.enumerator == null ) {
+      return data.filenr < data.filessize;
+    }
+    boolean hasNext = data.enumerator.hasNext();
+    if ( !meta.isFileField() && ( !hasNext || !meta.isdoNotFailIfNoFile() ) ) {
+      // Required files are checked as soon as they are reached,
+      // or at the end when we don't fail if no file was found at all.
+      handleMissingFiles( hasNext ? 1 : data.enumerator.getNrReturned(), data.enumerator.getNonExistantFiles(),
+        data.enumerator.getNonAccessibleFiles() );
+    }
+    return hasNext;
+  }
+
   private void handleMissingFiles() throws KettleException {
-    if ( meta.isdoNotFailIfNoFile() && data.files.nrOfFiles() == 0 ) {
+    handleMissingFiles( data.files.nrOfFiles(), data.files.getNonExistantFiles(), data.files.getNonAccessibleFiles() );
+  }
+
+  private void handleMissingFiles( long nrFiles, List<FileObject> nonExistantFiles,
+    List<FileObject> nonAccessibleFiles ) throws KettleException {
+    if ( meta.isdoNotFailIfNoFile() && nrFiles == 0 ) {
       logBasic( BaseMessages.getString( PKG, "GetFileNames.Log.NoFile" ) );
       return;
     }
-    List<FileObject> nonExistantFiles = data.files.getNonExistantFiles();
 
     if ( nonExistantFiles.size() != 0 ) {
       String message = FileInputList.getRequiredFilesDescription( nonExistantFiles );
@@ -289,7 +322,6 @@ public class GetFileNames extends BaseStep implements StepInterface {
       throw new KettleException( "Following required files are missing: " + message );
     }
 
-    List<FileObject> nonAccessibleFiles = data.files.getNonAccessibleFiles();
     if ( nonAccessibleFiles.size() != 0 ) {
       String message = FileInputList.getRequiredFilesDescription( nonAccessibleFiles );
       logBasic( "WARNING: Not accessible " + message );
@@ -318,9 +350,17 @@ public class GetFileNames extends BaseStep implements StepInterface {
         data.nrStepFields = data.outputRowMeta.size();
 
         if ( !meta.isFileField() ) {
-          data.files = meta.getFileList( this );
-          data.filessize = data.files.nrOfFiles();
-          handleMissingFiles();
+          if ( meta.isStreamFiles() ) {
+            // Files are enumerated while the rows are written
+            data.enumerator = meta.getFileEnumerator( this );
+            if ( meta.getRowLimit() > 0 ) {
+              data.enumerator.setLimit( meta.getRowLimit() );
+            }
+          } else {
+            data.files = meta.getFileList( this );
+            data.filessize = data.files.nrOfFiles();
+            handleMissingFiles();
+          }
         } else {
           data.filessize = 0;
         }
@@ -353,7 +393,15 @@ public class GetFileNames extends BaseStep implements StepInterface {
       }
 
     }
+    closeEnumerator();
     super.dispose( smi, sdi );
   }
 
+  private void closeEnumerator() {
+    if ( data.enumerator != null ) {
+      data.enumerator.close();
+      data.enumerator = null;
+    }
+  }
+
 }
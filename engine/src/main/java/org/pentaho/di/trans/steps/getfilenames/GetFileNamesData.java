@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.zip.ZipInputStream;
 
 import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.fileinput.FileInputEnumerator;
 import org.pentaho.di.core.fileinput.FileInputList;
 import org.pentaho.di.core.playlist.FilePlayList;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -68,6 +69,9 @@ public class GetFileNamesData extends BaseStepData implements StepDataInterface
 
   public FileInputList files;
 
+  /** The files being enumerated while rows are written, null when the complete file list is read first */
+  public FileInputEnumerator enumerator;
+
   public boolean isLastFile;
 
   public String filename;
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -35,6 +35,7 @@ import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.fileinput.FileInputEnumerator;
 import org.pentaho.di.core.fileinput.FileInputList;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -119,10 +120,28 @@ public class GetFileNamesMeta extends BaseStepMeta implements StepMetaInterface
   /** Flag : do not fail if no file */
   private boolean doNotFailIfNoFile;
 
+  /** Flag : write the rows while the files are searched instead of after the complete, sorted list is known */
+  private boolean streamFiles;
+
   public GetFileNamesMeta() {
     super(); // allocate BaseStepMeta
   }
 
+  /**
+   * @return true if the rows are written while the files are searched
+   */
+  public boolean isStreamFiles() {
+    return streamFiles;
+  }
+
+  /**
+   * @param streamFiles
+   *          true to write the rows while the files are searched
+   */
+  public void setStreamFiles( boolean streamFiles ) {
+    this.streamFiles = streamFiles;
+  }
+
   /**
    * @return the doNotFailIfNoFile flag
    */
@@ -418,6 +437,7 @@ public class GetFileNamesMeta extends BaseStepMeta implements StepMetaInterface
   public void setDefault() {
     int nrfiles = 0;
     doNotFailIfNoFile = false;
+    streamFiles = false;
     fileTypeFilter = FileInputList.FileTypeFilter.FILES_AND_FOLDERS;
     isaddresult = true;
     filefield = false;
@@ -544,6 +564,7 @@ public class GetFileNamesMeta extends BaseStepMeta implements StepMetaInterface
     retval.append( "    " ).append(
       XMLHandler.addTagValue( "dynamic_include_subfolders", dynamicIncludeSubFolders ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "limit", rowLimit ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "stream_files", streamFiles ) );
 
     retval.append( "    <file>" ).append( Const.CR );
 
@@ -578,6 +599,7 @@ public class GetFileNamesMeta extends BaseStepMeta implements StepMetaInterface
 
       // Is there a limit on the number of rows we process?
       rowLimit = Const.toLong( XMLHandler.getTagValue( stepnode, "limit" ), 0L );
+      streamFiles = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "stream_files" ) );
 
       Node filenode = XMLHandler.getSubNode( stepnode, "file" );
       int nrfiles = XMLHandler.countNodes( filenode, "name" );
@@ -618,6 +640,7 @@ public class GetFileNamesMeta extends BaseStepMeta implements StepMetaInterface
       filefield = rep.getStepAttributeBoolean( id_step, "filefield" );
       rowNumberField = rep.getStepAttributeString( id_step, "rownum_field" );
       rowLimit = rep.getStepAttributeInteger( id_step, "limit" );
+      streamFiles = rep.getStepAttributeBoolean( id_step, "stream_files" );
 
       allocate( nrfiles );
 
@@ -654,6 +677,7 @@ public class GetFileNamesMeta extends BaseStepMeta implements StepMetaInterface
 
       rep.saveStepAttribute( id_transformation, id_step, "rownum_field", rowNumberField );
       rep.saveStepAttribute( id_transformation, id_step, "limit", rowLimit );
+      rep.saveStepAttribute( id_transformation, id_step, "stream_files", streamFiles );
 
       for ( int i = 0; i < fileName.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "file_name", fileName[i] );
@@ -707,6 +731,19 @@ public class GetFileNamesMeta extends BaseStepMeta implements StepMetaInterface
       buildFileTypeFiltersArray( filename ) );
   }
 
+  public FileInputEnumerator getFileEnumerator( VariableSpace space ) {
+    return new FileInputEnumerator(
+      space, fileName, fileMask, excludeFileMask, fileRequired, includeSubFolderBoolean(),
+      buildFileTypeFiltersArray( fileName ) );
+  }
+
+  public FileInputEnumerator getDynamicFileEnumerator( VariableSpace space, String[] filename, String[] filemask,
+    String[] excludefilemask, String[] filerequired, boolean[] includesubfolders ) {
+    return new FileInputEnumerator(
+      space, filename, filemask, excludefilemask, filerequired, includesubfolders,
+      buildFileTypeFiltersArray( filename ) );
+  }
+
   @Override
   public void check( List<CheckResultInterface> remarks, TransMeta transMeta, StepMeta stepMeta,
     RowMetaInterface prev, String[] input, String[] output, RowMetaInterface info, VariableSpace space,
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -174,6 +174,22 @@ public class InsertUpdate extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Insert the row or update the existing row with a single statement, the database compares the values.
+   */
+  protected void upsertValues( RowMetaInterface rowMeta, Object[] row ) throws KettleException {
+    Object[] upsertRow = new Object[data.valuenrs.length];
+    for ( int i = 0; i < data.valuenrs.length; i++ ) {
+      upsertRow[i] = row[data.valuenrs[i]];
+    }
+    if ( log.isRowLevel() ) {
+      logRowlevel( BaseMessages.getString( PKG, "InsertUpdate.Log.UpsertRow" ) + rowMeta.getString( row ) );
+    }
+    data.db.setValues( data.insertRowMeta, upsertRow, data.prepStatementUpsert );
+    data.db.insertRow( data.prepStatementUpsert, data.batchUpsert, true );
+    incrementLinesOutput();
+  }
+
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (InsertUpdateMeta) smi;
     data = (InsertUpdateData) sdi;
@@ -261,8 +277,6 @@ public class InsertUpdate extends BaseStep implements StepInterface {
         }
       }
 
-      setLookup( getInputRowMeta() );
-
       data.insertRowMeta = new RowMeta();
 
       // Insert the update fields: just names. Type doesn't matter!
@@ -280,23 +294,29 @@ public class InsertUpdate extends BaseStep implements StepInterface {
             + insValue.getName() ); // TODO i18n
         }
       }
-      data.db.prepareInsert(
-        data.insertRowMeta, environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta
-          .getTableName() ) );
 
-      if ( !meta.isUpdateBypassed() ) {
-        List<String> updateColumns = new ArrayList<String>();
-        for ( int i = 0; i < meta.getUpdate().length; i++ ) {
-          if ( meta.getUpdate()[i].booleanValue() ) {
-            updateColumns.add( meta.getUpdateLookup()[i] );
-          }
+      if ( meta.isBatchUpsert() ) {
+        prepareUpsert();
+      }
+      if ( data.prepStatementUpsert == null ) {
+        setLookup( getInputRowMeta() );
+
+        data.db.prepareInsert(
+          data.insertRowMeta, environmentSubstitute( meta.getSchemaName() ), environmentSubstitute( meta
+            .getTableName() ) );
+
+        if ( !meta.isUpdateBypassed() ) {
+          prepareUpdate( getInputRowMeta() );
         }
-        prepareUpdate( getInputRowMeta() );
       }
     }
 
     try {
-      lookupValues( getInputRowMeta(), r ); // add new values to the row in rowset[0].
+      if ( data.prepStatementUpsert != null ) {
+        upsertValues( getInputRowMeta(), r );
+      } else {
+        lookupValues( getInputRowMeta(), r ); // add new values to the row in rowset[0].
+      }
       putRow( data.outputRowMeta, r ); // Nothing changed to the input, return the same row, pass a "cloned" metadata
                                        // row.
 
@@ -464,6 +484,60 @@ public class InsertUpdate extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Prepare the statement of the database inserting a row or updating the changed values of the existing row. This is
+   * only possible when the keys are compared with "=" and are inserted from the same fields. Otherwise, or if the
+   * database has no such statement, the statement isn't prepared and every row is looked up.
+   */
+  public void prepareUpsert() throws KettleDatabaseException {
+    DatabaseMeta databaseMeta = meta.getDatabaseMeta();
+
+    String[] keyColumns = new String[meta.getKeyLookup().length];
+    boolean[] isKey = new boolean[meta.getUpdateLookup().length];
+    for ( int i = 0; i < meta.getKeyLookup().length; i++ ) {
+      int column = -1;
+      for ( int j = 0; j < meta.getUpdateLookup().length && column < 0; j++ ) {
+        if ( meta.getKeyLookup()[i].equalsIgnoreCase( meta.getUpdateLookup()[j] )
+          && meta.getUpdateStream()[j].equals( meta.getKeyStream()[i] ) ) {
+          column = j;
+        }
+      }
+      if ( !"=".equals( meta.getKeyCondition()[i] ) || column < 0 ) {
+        logBasic( BaseMessages.getString( PKG, "InsertUpdate.Log.UpsertNotPossibleForKey", meta.getKeyLookup()[i] ) );
+        return;
+      }
+      keyColumns[i] = databaseMeta.quoteField( meta.getKeyLookup()[i] );
+      isKey[column] = true;
+    }
+
+    String[] columns = new String[meta.getUpdateLookup().length];
+    List<String> updateColumns = new ArrayList<String>();
+    for ( int i = 0; i < meta.getUpdateLookup().length; i++ ) {
+      columns[i] = databaseMeta.quoteField( meta.getUpdateLookup()[i] );
+      if ( !meta.isUpdateBypassed() && meta.getUpdate()[i].booleanValue() && !isKey[i] ) {
+        updateColumns.add( columns[i] );
+      }
+    }
+
+    String sql =
+      databaseMeta.getSQLUpsert( data.schemaTable, keyColumns, columns, updateColumns.toArray( new String[0] ) );
+    if ( keyColumns.length == 0 || sql == null ) {
+      logBasic( BaseMessages.getString( PKG, "InsertUpdate.Log.UpsertNotSupported" ) );
+      return;
+    }
+
+    try {
+      if ( log.isDetailed() ) {
+        logDetailed( "Setting upsert preparedStatement to [" + sql + "]" );
+      }
+      data.prepStatementUpsert = data.db.getConnection().prepareStatement( databaseMeta.stripCR( sql ) );
+    } catch ( SQLException ex ) {
+      throw new KettleDatabaseException( "Unable to prepare statement for SQL statement [" + sql + "]", ex );
+    }
+    // The rows sent to the error handling need to be known, so the statement is run for every row in that case
+    data.batchUpsert = data.db.getUseBatchInsert( true ) && !getStepMeta().isDoingErrorHandling();
+  }
+
   public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
     meta = (InsertUpdateMeta) smi;
     data = (InsertUpdateData) sdi;
@@ -502,11 +576,16 @@ public class InsertUpdate extends BaseStep implements StepInterface {
       try {
         if ( !data.db.isAutoCommit() ) {
           if ( getErrors() == 0 ) {
+            if ( data.prepStatementUpsert != null ) {
+              // run the rows left in the batch
+              data.db.emptyAndCommit( data.prepStatementUpsert, data.batchUpsert );
+            }
             data.db.commit();
           } else {
             data.db.rollback();
           }
         }
+        data.db.closePreparedStatement( data.prepStatementUpsert );
         data.db.closeUpdate();
         data.db.closeInsert();
       } catch ( KettleDatabaseException e ) {
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -48,6 +48,8 @@ public class InsertUpdateData extends BaseStepData implements StepDataInterface
 
   public PreparedStatement prepStatementLookup;
   public PreparedStatement prepStatementUpdate;
+  public PreparedStatement prepStatementUpsert; // inserts or updates a row, replacing the lookup
+  public boolean batchUpsert;
 
   public RowMetaInterface updateParameterRowMeta;
   public RowMetaInterface lookupParameterRowMeta;
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -44,6 +44,7 @@ import org.pentaho.di.core.row.value.ValueMetaNumber;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMemoryQuota;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -61,6 +62,21 @@ import org.pentaho.di.trans.steps.memgroupby.MemoryGroupByData.HashEntry;
 public class MemoryGroupBy extends BaseStep implements StepInterface {
   private static Class<?> PKG = MemoryGroupByMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * the estimated bytes of a map entry with its group key and aggregate, besides the values
+   */
+  private static final long GROUP_OVERHEAD = 128L;
+
+  /**
+   * the estimated bytes per aggregated field: the aggregate value, counter and mean
+   */
+  private static final long AGGREGATE_SIZE = 40L;
+
+  /**
+   * the estimated bytes per element in a list of values or a set of distinct values
+   */
+  private static final long ELEMENT_OVERHEAD = 40L;
+
   private MemoryGroupByMeta meta;
 
   private MemoryGroupByData data;
@@ -185,7 +201,12 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       data.newBatch = false;
     }
 
-    addToAggregate( r );
+    // The groups are kept in memory: stop when they take more than the memory quota of the transformation
+    //
+    if ( !addMemoryUsage( addToAggregate( r ) ) ) {
+      stopOnMemoryQuota();
+      return false;
+    }
 
     if ( checkFeedback( getLinesRead() ) ) {
       if ( log.isBasic() ) {
@@ -240,9 +261,11 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
    * Used for junits in MemoryGroupByAggregationNullsTest
    *
    * @param r
+   * @return the estimated number of bytes added to the memory held by the groups
    * @throws KettleException
    */
-  @SuppressWarnings( "unchecked" ) void addToAggregate( Object[] r ) throws KettleException {
+  @SuppressWarnings( "unchecked" ) long addToAggregate( Object[] r ) throws KettleException {
+    long memoryUsage = 0L;
 
     Object[] groupData = new Object[data.groupMeta.size()];
     for ( int i = 0; i < data.groupnrs.length; i++ ) {
@@ -260,6 +283,8 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
       // Store it in the map!
       //
       data.map.put( entry, aggregate );
+      memoryUsage +=
+        TransMemoryQuota.getRowSize( groupData ) + GROUP_OVERHEAD + AGGREGATE_SIZE * data.subjectnrs.length;
     }
 
     for ( int i = 0; i < data.subjectnrs.length; i++ ) {
@@ -282,6 +307,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
         case MemoryGroupByMeta.TYPE_GROUP_PERCENTILE:
           if ( !subjMeta.isNull( subj ) ) {
             ( (List<Double>) aggregate.agg[i] ).add( subjMeta.getNumber( subj ) );
+            memoryUsage += ELEMENT_OVERHEAD;
           }
           break;
         case MemoryGroupByMeta.TYPE_GROUP_STANDARD_DEVIATION:
@@ -319,6 +345,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
             }
             if ( !aggregate.distinctObjs[i].contains( obj ) ) {
               aggregate.distinctObjs[i].add( obj );
+              memoryUsage += TransMemoryQuota.getValueSize( obj ) + ELEMENT_OVERHEAD;
             }
           }
           aggregate.counts[i] = aggregate.distinctObjs[i].size();
@@ -369,10 +396,12 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
         case MemoryGroupByMeta.TYPE_GROUP_CONCAT_COMMA:
           if ( !( subj == null ) ) {
             StringBuilder sb = (StringBuilder) value;
-            if ( sb.length() > 0 ) {
+            int length = sb.length();
+            if ( length > 0 ) {
               sb.append( ", " );
             }
             sb.append( subjMeta.getString( subj ) );
+            memoryUsage += 2L * ( sb.length() - length );
           }
           break;
         case MemoryGroupByMeta.TYPE_GROUP_CONCAT_STRING:
@@ -382,16 +411,19 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
               separator = environmentSubstitute( meta.getValueField()[i] );
             }
             StringBuilder sb = (StringBuilder) value;
-            if ( sb.length() > 0 ) {
+            int length = sb.length();
+            if ( length > 0 ) {
               sb.append( separator );
             }
             sb.append( subjMeta.getString( subj ) );
+            memoryUsage += 2L * ( sb.length() - length );
           }
           break;
         default:
           break;
       }
     }
+    return memoryUsage;
   }
 
   /**
@@ -585,6 +617,7 @@ public class MemoryGroupBy extends BaseStep implements StepInterface {
     // Clear the complete cache...
     //
     data.map.clear();
+    releaseMemoryUsage();
 
     data.newBatch = true;
   }
@@ -0,0 +1,344 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.UUID;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Writes rows in the binary format of the PostgreSQL COPY command.<br>
+ * <br>
+ * Unlike the text formats, the binary format needs the exact type of every column: an integer is written as 2, 4 or 8
+ * bytes depending on the column. The values are converted straight from their Kettle type, without formatting them
+ * as a string first. Dates and timestamps without time zone are written in the local time zone, like the text
+ * format does.
+ */
+public class PGBinaryCopyWriter {
+
+  private static final byte[] SIGNATURE = new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n',
+    0 };
+
+  private static final LocalDateTime PG_EPOCH = LocalDateTime.of( 2000, 1, 1, 0, 0 );
+  private static final long PG_EPOCH_DAY = PG_EPOCH.toLocalDate().toEpochDay();
+
+  private static final short NUMERIC_POS = 0x0000;
+  private static final short NUMERIC_NEG = 0x4000;
+
+  private static final int BOOL = 0;
+  private static final int INT2 = 1;
+  private static final int INT4 = 2;
+  private static final int INT8 = 3;
+  private static final int FLOAT4 = 4;
+  private static final int FLOAT8 = 5;
+  private static final int NUMERIC = 6;
+  private static final int DATE = 7;
+  private static final int TIMESTAMP = 8;
+  private static final int TIMESTAMPTZ = 9;
+  private static final int TEXT = 10;
+  private static final int BYTEA = 11;
+  private static final int UUID_TYPE = 12;
+
+  private final DataOutputStream out;
+  private final String[] columnNames;
+  private final int[] columnTypes;
+  private final ZoneId zone;
+
+  /**
+   * @param out
+   *          the stream of the COPY command
+   * @param columnNames
+   *          the names of the columns, for the error messages
+   * @param columnTypeNames
+   *          the PostgreSQL type names of the columns, like int4 or timestamptz
+   * @throws KettleException
+   *           if one of the column types can't be written in the binary format
+   */
+  public PGBinaryCopyWriter( OutputStream out, String[] columnNames, String[] columnTypeNames ) throws KettleException {
+    this( out, columnNames, columnTypeNames, ZoneId.systemDefault() );
+  }
+
+  PGBinaryCopyWriter( OutputStream out, String[] columnNames, String[] columnTypeNames, ZoneId zone )
+    throws KettleException {
+    this.out = new DataOutputStream( out );
+    this.columnNames = columnNames;
+    this.zone = zone;
+    columnTypes = new int[columnTypeNames.length];
+    for ( int i = 0; i < columnTypeNames.length; i++ ) {
+      columnTypes[i] = getColumnType( columnNames[i], columnTypeNames[i] );
+    }
+  }
+
+  private static int getColumnType( String columnName, String typeName ) throws KettleException {
+    String type = typeName == null ? "" : typeName.toLowerCase();
+    if ( type.startsWith( "\"" ) && type.endsWith( "\"" ) && type.length() > 1 ) {
+      type = type.substring( 1, type.length() - 1 );
+    }
+    switch ( type ) {
+      case "bool":
+        return BOOL;
+      case "int2":
+      case "smallserial":
+        return INT2;
+      case "int4":
+      case "serial":
+        return INT4;
+      case "int8":
+      case "bigserial":
+        return INT8;
+      case "float4":
+        return FLOAT4;
+      case "float8":
+        return FLOAT8;
+      case "numeric":
+        return NUMERIC;
+      case "date":
+        return DATE;
+      case "timestamp":
+        return TIMESTAMP;
+      case "timestamptz":
+        return TIMESTAMPTZ;
+      case "text":
+      case "varchar":
+      case "bpchar":
+      case "char":
+      case "name":
+      case "json":
+        return TEXT;
+      case "bytea":
+        return BYTEA;
+      case "uuid":
+        return UUID_TYPE;
+      default:
+        throw new KettleException( "Column " + columnName + " of type " + typeName
+          + " can't be loaded in the binary format, use the CSV format instead" );
+    }
+  }
+
+  /**
+   * Write the header of the binary format, before the first row.
+   */
+  public void writeHeader() throws KettleException {
+    try {
+      out.write( SIGNATURE );
+      out.writeInt( 0 ); // flags: no OIDs
+      out.writeInt( 0 ); // no header extension
+    } catch ( IOException e ) {
+      throw new KettleException( "Error writing the header of the binary COPY data", e );
+    }
+  }
+
+  /**
+   * Write a row.
+   *
+   * @param rowMeta
+   *          the layout of the row
+   * @param row
+   *          the row
+   * @param indexes
+   *          the indexes of the values in the row to write, one for every column
+   */
+  public void writeRow( RowMetaInterface rowMeta, Object[] row, int[] indexes ) throws KettleException {
+    try {
+      out.writeShort( indexes.length );
+      for ( int i = 0; i < indexes.length; i++ ) {
+        ValueMetaInterface valueMeta = rowMeta.getValueMeta( indexes[i] );
+        Object valueData = row[indexes[i]];
+        if ( valueMeta.isNull( valueData ) ) {
+          out.writeInt( -1 );
+        } else {
+          writeValue( i, valueMeta, valueData );
+        }
+      }
+    } catch ( IOException e ) {
+      throw new KettleException( "Error writing a row to the binary COPY data", e );
+    }
+  }
+
+  /**
+   * Write the trailer of the binary format after the last row and flush the stream.
+   */
+  public void writeTrailer() throws KettleException {
+    try {
+      out.writeShort( -1 );
+      out.flush();
+    } catch ( IOException e ) {
+      throw new KettleException( "Error writing the end of the binary COPY data", e );
+    }
+  }
+
+  private void writeValue( int column, ValueMetaInterface valueMeta, Object valueData ) throws KettleException,
+    IOException {
+    switch ( columnTypes[column] ) {
+      case BOOL:
+        out.writeInt( 1 );
+        out.writeByte( valueMeta.getBoolean( valueData ) ? 1 : 0 );
+        break;
+      case INT2:
+        long smallint = valueMeta.getInteger( valueData );
+        if ( smallint < Short.MIN_VALUE || smallint > Short.MAX_VALUE ) {
+          throw outOfRange( column, smallint );
+        }
+        out.writeInt( 2 );
+        out.writeShort( (int) smallint );
+        break;
+      case INT4:
+        long integer = valueMeta.getInteger( valueData );
+        if ( integer < Integer.MIN_VALUE || integer > Integer.MAX_VALUE ) {
+          throw outOfRange( column, integer );
+        }
+        out.writeInt( 4 );
+        out.writeInt( (int) integer );
+        break;
+      case INT8:
+        out.writeInt( 8 );
+        out.writeLong( valueMeta.getInteger( valueData ) );
+        break;
+      case FLOAT4:
+        out.writeInt( 4 );
+        out.writeFloat( valueMeta.getNumber( valueData ).floatValue() );
+        break;
+      case FLOAT8:
+        out.writeInt( 8 );
+        out.writeDouble( valueMeta.getNumber( valueData ) );
+        break;
+      case NUMERIC:
+        writeNumeric( valueMeta.getBigNumber( valueData ) );
+        break;
+      case DATE:
+        out.writeInt( 4 );
+        out.writeInt( toDays( toLocalDateTime( valueMeta.getDate( valueData ) ).toLocalDate() ) );
+        break;
+      case TIMESTAMP:
+        out.writeInt( 8 );
+        out.writeLong( ChronoUnit.MICROS.between( PG_EPOCH, toLocalDateTime( valueMeta.getDate( valueData ) ) ) );
+        break;
+      case TIMESTAMPTZ:
+        // Timestamp.toInstant() keeps the nanoseconds
+        LocalDateTime utc = LocalDateTime.ofInstant( valueMeta.getDate( valueData ).toInstant(), ZoneOffset.UTC );
+        out.writeInt( 8 );
+        out.writeLong( ChronoUnit.MICROS.between( PG_EPOCH, utc ) );
+        break;
+      case TEXT:
+        writeBytes( valueMeta.getString( valueData ).getBytes( StandardCharsets.UTF_8 ) );
+        break;
+      case BYTEA:
+        writeBytes( valueMeta.getBinary( valueData ) );
+        break;
+      case UUID_TYPE:
+        UUID uuid = UUID.fromString( valueMeta.getString( valueData ) );
+        out.writeInt( 16 );
+        out.writeLong( uuid.getMostSignificantBits() );
+        out.writeLong( uuid.getLeastSignificantBits() );
+        break;
+      default:
+        throw new KettleException( "Unexpected column type " + columnTypes[column] );
+    }
+  }
+
+  private LocalDateTime toLocalDateTime( Date date ) {
+    return LocalDateTime.ofInstant( date.toInstant(), zone );
+  }
+
+  private void writeBytes( byte[] bytes ) throws IOException {
+    out.writeInt( bytes.length );
+    out.write( bytes );
+  }
+
+  /**
+   * A numeric is sent as a sign, a display scale and its digits in base 10000, the first one at position "weight".
+   */
+  private void writeNumeric( BigDecimal number ) throws IOException {
+    int scale = Math.max( 0, number.scale() );
+    String plain = number.abs().toPlainString();
+    int point = plain.indexOf( '.' );
+    String integerPart = point < 0 ? plain : plain.substring( 0, point );
+    String fractionPart = point < 0 ? "" : plain.substring( point + 1 );
+
+    // Pad both parts to groups of 4 digits
+    StringBuilder digits = new StringBuilder();
+    for ( int i = 0; i < ( 4 - integerPart.length() % 4 ) % 4; i++ ) {
+      digits.append( '0' );
+    }
+    digits.append( integerPart );
+    int weight = digits.length() / 4 - 1;
+    digits.append( fractionPart );
+    while ( digits.length() % 4 != 0 ) {
+      digits.append( '0' );
+    }
+
+    // Leading and trailing zero groups are left out
+    int first = 0;
+    int last = digits.length() / 4;
+    while ( first < last && isZeroGroup( digits, first ) ) {
+      first++;
+      weight--;
+    }
+    while ( last > first && isZeroGroup( digits, last - 1 ) ) {
+      last--;
+    }
+    int nrDigits = last - first;
+
+    out.writeInt( 8 + 2 * nrDigits );
+    out.writeShort( nrDigits );
+    out.writeShort( nrDigits == 0 ? 0 : weight );
+    out.writeShort( number.signum() < 0 ? NUMERIC_NEG : NUMERIC_POS );
+    out.writeShort( scale );
+    for ( int group = first; group < last; group++ ) {
+      out.writeShort( Integer.parseInt( digits.substring( group * 4, group * 4 + 4 ) ) );
+    }
+  }
+
+  private static boolean isZeroGroup( CharSequence digits, int group ) {
+    for ( int i = group * 4; i < group * 4 + 4; i++ ) {
+      if ( digits.charAt( i ) != '0' ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private KettleException outOfRange( int column, long value ) {
+    return new KettleException( "Value " + value + " is out of range for column " + columnNames[column] );
+  }
+
+  /**
+   * @return the days since 2000-01-01
+   */
+  private static int toDays( LocalDate date ) {
+    return (int) ( date.toEpochDay() - PG_EPOCH_DAY );
+  }
+}
@@ -33,6 +33,7 @@ package org.pentaho.di.trans.steps.pgbulkloader;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.util.Arrays;
 
 import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
@@ -128,9 +129,13 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
     contents.append( " FROM STDIN" ); // FIFO file
 
     // The "FORMAT" clause
-    contents.append( " WITH CSV DELIMITER AS '" ).append( environmentSubstitute( meta.getDelimiter() ) )
-        .append( "' QUOTE AS '" ).append(
-      environmentSubstitute( meta.getEnclosure() ) ).append( "'" );
+    if ( meta.isBinaryFormat() ) {
+      contents.append( " WITH BINARY" );
+    } else {
+      contents.append( " WITH CSV DELIMITER AS '" ).append( environmentSubstitute( meta.getDelimiter() ) )
+          .append( "' QUOTE AS '" ).append(
+        environmentSubstitute( meta.getEnclosure() ) ).append( "'" );
+    }
     contents.append( ";" ).append( Const.CR );
 
     return contents.toString();
@@ -144,8 +149,23 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
 
       processTruncate();
 
+      String[] columnTypes = null;
+      if ( meta.isBinaryFormat() ) {
+        columnTypes = getColumnTypes();
+      }
+
       logBasic( "Launching command: " + copyCmd );
-      pgCopyOut = new PGCopyOutputStream( (PGConnection) data.db.getConnection(), copyCmd );
+      int bufferSize = Const.toInt( environmentSubstitute( meta.getBufferSize() ), -1 );
+      if ( bufferSize > 0 ) {
+        pgCopyOut = new PGCopyOutputStream( (PGConnection) data.db.getConnection(), copyCmd, bufferSize );
+      } else {
+        pgCopyOut = new PGCopyOutputStream( (PGConnection) data.db.getConnection(), copyCmd );
+      }
+
+      if ( columnTypes != null ) {
+        data.binaryWriter = new PGBinaryCopyWriter( pgCopyOut, meta.getFieldTable(), columnTypes );
+        data.binaryWriter.writeHeader();
+      }
 
     } catch ( Exception ex ) {
       throw new KettleException( "Error while preparing the COPY " + copyCmd, ex );
@@ -175,6 +195,36 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Look up the PostgreSQL types of the columns to load, the binary format depends on them.
+   */
+  String[] getColumnTypes() throws Exception {
+    DatabaseMeta dm = meta.getDatabaseMeta();
+    String tableName =
+      dm.getQuotedSchemaTableCombination( environmentSubstitute( meta.getSchemaName() ),
+        environmentSubstitute( meta.getTableName() ) );
+    String[] tableFields = meta.getFieldTable();
+
+    StringBuilder sql = new StringBuilder( "SELECT " );
+    for ( int i = 0; i < tableFields.length; i++ ) {
+      if ( i != 0 ) {
+        sql.append( ", " );
+      }
+      sql.append( dm.quoteField( tableFields[i] ) );
+    }
+    sql.append( " FROM " ).append( tableName ).append( " WHERE 1 = 0" );
+
+    RowMetaInterface columns = data.db.getQueryFieldsFromPreparedStatement( sql.toString() );
+    String[] columnTypes = new String[tableFields.length];
+    for ( int i = 0; i < columnTypes.length; i++ ) {
+      columnTypes[i] = columns.getValueMeta( i ).getOriginalColumnTypeName();
+    }
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "PGBulkLoader.Log.BinaryColumns", Arrays.toString( columnTypes ) ) );
+    }
+    return columnTypes;
+  }
+
   void processTruncate() throws Exception {
     Connection connection = data.db.getConnection();
 
@@ -212,7 +262,10 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
 
         // Close the output stream...
         // will be null if no records (empty stream)
-        if ( data != null ) {
+        if ( pgCopyOut != null ) {
+          if ( data.binaryWriter != null ) {
+            data.binaryWriter.writeTrailer();
+          }
           pgCopyOut.flush();
           pgCopyOut.endCopy();
 
@@ -240,7 +293,11 @@ public class PGBulkLoader extends BaseStep implements StepInterface {
         //
       }
 
-      writeRowToPostgres( getInputRowMeta(), r );
+      if ( data.binaryWriter != null ) {
+        data.binaryWriter.writeRow( getInputRowMeta(), r, data.keynrs );
+      } else {
+        writeRowToPostgres( getInputRowMeta(), r );
+      }
 
       putRow( getInputRowMeta(), r );
       incrementLinesOutput();
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -59,6 +59,8 @@ public class PGBulkLoaderData extends BaseStepData implements StepDataInterface
 
   public int[] dateFormatChoices;
 
+  public PGBinaryCopyWriter binaryWriter;
+
   public ValueMetaInterface dateMeta;
   public ValueMetaInterface dateTimeMeta;
 
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -101,6 +101,12 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
   /** Stop On Error */
   private boolean stopOnError;
 
+  /** The format of the data sent to the COPY command: CSV or BINARY */
+  private String copyFormat;
+
+  /** The size of the buffer of the COPY stream in bytes, empty for the default of the driver */
+  private String bufferSize;
+
   /*
    * Do not translate following values!!! They are will end up in the job export.
    */
@@ -118,6 +124,12 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
   public static final int NR_DATE_MASK_DATE = 1;
   public static final int NR_DATE_MASK_DATETIME = 2;
 
+  /*
+   * Do not translate following values!!! They are will end up in the job export.
+   */
+  public static final String FORMAT_CSV = "CSV";
+  public static final String FORMAT_BINARY = "BINARY";
+
   public PGBulkLoaderMeta() {
     super();
   }
@@ -225,6 +237,8 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
       loadAction = XMLHandler.getTagValue( stepnode, "load_action" );
       dbNameOverride = XMLHandler.getTagValue( stepnode, "dbname_override" );
       stopOnError = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "stop_on_error" ) );
+      copyFormat = XMLHandler.getTagValue( stepnode, "copy_format" );
+      bufferSize = XMLHandler.getTagValue( stepnode, "buffer_size" );
 
       int nrvalues = XMLHandler.countNodes( stepnode, "mapping" );
       allocate( nrvalues );
@@ -265,6 +279,8 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
     delimiter = ";";
     enclosure = "\"";
     stopOnError = false;
+    copyFormat = FORMAT_CSV;
+    bufferSize = "";
     int nrvalues = 0;
     allocate( nrvalues );
   }
@@ -282,6 +298,8 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
     retval.append( "    " ).append( XMLHandler.addTagValue( "enclosure", enclosure ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "delimiter", delimiter ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "stop_on_error", stopOnError ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "copy_format", copyFormat ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "buffer_size", bufferSize ) );
 
     for ( int i = 0; i < fieldTable.length; i++ ) {
       retval.append( "      <mapping>" ).append( Const.CR );
@@ -305,6 +323,8 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
       dbNameOverride = rep.getStepAttributeString( id_step, "dbname_override" );
       enclosure = rep.getStepAttributeString( id_step, "enclosure" );
       delimiter = rep.getStepAttributeString( id_step, "delimiter" );
+      copyFormat = rep.getStepAttributeString( id_step, "copy_format" );
+      bufferSize = rep.getStepAttributeString( id_step, "buffer_size" );
 
       int nrvalues = rep.countNrStepAttributes( id_step, "stream_name" );
 
@@ -334,6 +354,8 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
       rep.saveStepAttribute( id_transformation, id_step, "enclosure", enclosure );
       rep.saveStepAttribute( id_transformation, id_step, "delimiter", delimiter );
       rep.saveStepAttribute( id_transformation, id_step, "stop_on_error", stopOnError );
+      rep.saveStepAttribute( id_transformation, id_step, "copy_format", copyFormat );
+      rep.saveStepAttribute( id_transformation, id_step, "buffer_size", bufferSize );
 
       for ( int i = 0; i < fieldTable.length; i++ ) {
         rep.saveStepAttribute( id_transformation, id_step, i, "stream_name", fieldTable[i] );
@@ -661,6 +683,35 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
     this.enclosure = enclosure;
   }
 
+  /**
+   * @return the format of the data sent to the COPY command, {@link #FORMAT_CSV} or {@link #FORMAT_BINARY}
+   */
+  public String getCopyFormat() {
+    return copyFormat;
+  }
+
+  public void setCopyFormat( String copyFormat ) {
+    this.copyFormat = copyFormat;
+  }
+
+  /**
+   * @return true if the rows are sent in the binary format of the COPY command
+   */
+  public boolean isBinaryFormat() {
+    return FORMAT_BINARY.equalsIgnoreCase( copyFormat );
+  }
+
+  /**
+   * @return the size of the buffer of the COPY stream in bytes, empty for the default of the driver
+   */
+  public String getBufferSize() {
+    return bufferSize;
+  }
+
+  public void setBufferSize( String bufferSize ) {
+    this.bufferSize = bufferSize;
+  }
+
   @Override
   public String getMissingDatabaseConnectionInformationMessage() {
     // TODO Auto-generated method stub
@@ -712,6 +763,10 @@ public class PGBulkLoaderMeta extends BaseStepMeta implements StepMetaInjectionI
           delimiter = (String) entry.getValue();
         } else if ( entry.getKey().equals( "STOPONERROR" ) ) {
           stopOnError = (Boolean) entry.getValue();
+        } else if ( entry.getKey().equals( "COPYFORMAT" ) ) {
+          copyFormat = (String) entry.getValue();
+        } else if ( entry.getKey().equals( "BUFFERSIZE" ) ) {
+          bufferSize = (String) entry.getValue();
         } else {
           throw new RuntimeException( "Unhandled metadata injection of attribute: "
             + attr.toString() + " - " + attr.getDescription() );
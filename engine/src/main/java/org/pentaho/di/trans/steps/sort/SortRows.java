@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -48,6 +48,7 @@ import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMemoryQuota;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -86,6 +87,7 @@ public class SortRows extends BaseStep implements StepInterface {
 
     // Save row
     data.buffer.add( r );
+    addMemoryUsage( TransMemoryQuota.getRowSize( r ) );
 
     // Check the free memory every 1000 rows...
     //
@@ -110,6 +112,8 @@ public class SortRows extends BaseStep implements StepInterface {
     doSort |=
         data.freeMemoryPctLimit > 0 && data.freeMemoryPct < data.freeMemoryPctLimit
             && data.buffer.size() >= data.minSortSize;
+    // The transformation comes near its memory quota (KETTLE_TRANS_MEMORY_QUOTA) and this buffer takes a real share
+    doSort |= isMemorySpillNeeded() && data.buffer.size() >= data.minSortSize;
     if ( log.isDebug() ) {
       this.logDebug( BaseMessages.getString( PKG, "SortRows.Debug.StartDumpToDisk", data.freeMemoryPct, data.buffer
           .size() ) );
@@ -205,6 +209,7 @@ public class SortRows extends BaseStep implements StepInterface {
 
       // Clear the list
       data.buffer.clear();
+      releaseMemoryUsage();
 
       // Close temp-file
       dos.close(); // close data stream
@@ -593,6 +598,7 @@ public class SortRows extends BaseStep implements StepInterface {
 
     // Clean out the sort buffer
     data.buffer.clear();
+    releaseMemoryUsage();
     data.getBufferIndex = 0;
     data.rowbuffer.clear();
 
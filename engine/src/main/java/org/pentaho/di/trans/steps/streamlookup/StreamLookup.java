@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -40,6 +40,7 @@ import org.pentaho.di.core.row.value.ValueMetaFactory;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMemoryQuota;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -59,6 +60,11 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 public class StreamLookup extends BaseStep implements StepInterface {
   private static Class<?> PKG = StreamLookupMeta.class; // for i18n purposes, needed by Translator2!!
 
+  /**
+   * the estimated bytes of a lookup entry besides the key and value data
+   */
+  private static final long ENTRY_OVERHEAD = 64L;
+
   private StreamLookupMeta meta;
   private StreamLookupData data;
 
@@ -213,7 +219,22 @@ public class StreamLookup extends BaseStep implements StepInterface {
         valueData[i] = rowData[valueNrs[i]];
       }
 
-      addToCache( data.cacheKeyMeta, keyData, data.cacheValueMeta, valueData );
+      Object[] replacedValueData = addToCache( data.cacheKeyMeta, keyData, data.cacheValueMeta, valueData );
+
+      // The lookup data is kept in memory: stop when it takes more than the memory quota of the transformation.
+      // A duplicate key only replaces the value of an entry that is counted already.
+      //
+      long entrySize;
+      if ( replacedValueData == null ) {
+        entrySize =
+          TransMemoryQuota.getRowSize( keyData ) + TransMemoryQuota.getRowSize( valueData ) + ENTRY_OVERHEAD;
+      } else {
+        entrySize = TransMemoryQuota.getRowSize( valueData ) - TransMemoryQuota.getRowSize( replacedValueData );
+      }
+      if ( !addMemoryUsage( entrySize ) ) {
+        stopOnMemoryQuota();
+        return false;
+      }
 
       rowData = getRowFrom( rowSet );
     }
@@ -292,7 +313,10 @@ public class StreamLookup extends BaseStep implements StepInterface {
     return RowDataUtil.addRowData( row, rowMeta.size(), add );
   }
 
-  private void addToCache( RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta,
+  /**
+   * @return the value data of the same key that was replaced or null if the key is new
+   */
+  private Object[] addToCache( RowMetaInterface keyMeta, Object[] keyData, RowMetaInterface valueMeta,
     Object[] valueData ) throws KettleValueException {
     if ( meta.isMemoryPreservationActive() ) {
       if ( meta.isUsingSortedList() ) {
@@ -301,8 +325,9 @@ public class StreamLookup extends BaseStep implements StepInterface {
         if ( idx < 0 ) {
           int index = -idx - 1; // this is the insertion point
           data.list.add( index, keyValue ); // insert to keep sorted.
+          return null;
         } else {
-          data.list.set( idx, keyValue ); // Overwrite to simulate Hashtable behaviour
+          return data.list.set( idx, keyValue ).getValue(); // Overwrite to simulate Hashtable behaviour
         }
       } else {
         if ( meta.isUsingIntegerPair() ) {
@@ -319,19 +344,23 @@ public class StreamLookup extends BaseStep implements StepInterface {
 
           Long key = keyMeta.getInteger( keyData, 0 );
           Long value = valueMeta.getInteger( valueData, 0 );
+          Long replaced = data.longIndex.get( key );
           data.longIndex.put( key, value );
+          return replaced == null ? null : new Object[] { replaced, };
         } else {
           if ( data.hashIndex == null ) {
             data.hashIndex = new ByteArrayHashIndex( keyMeta );
           }
-          data.hashIndex
-            .put( RowMeta.extractData( keyMeta, keyData ), RowMeta.extractData( valueMeta, valueData ) );
+          byte[] key = RowMeta.extractData( keyMeta, keyData );
+          byte[] replaced = data.hashIndex.get( key );
+          data.hashIndex.put( key, RowMeta.extractData( valueMeta, valueData ) );
+          return replaced == null ? null : RowMeta.getRow( valueMeta, replaced );
         }
       }
     } else {
       // We can't just put Object[] in the map The compare function is not in it.
       // We need to wrap in and use that. Let's use RowMetaAndData for this one.
-      data.look.put( new RowMetaAndData( keyMeta, keyData ), valueData );
+      return data.look.put( new RowMetaAndData( keyMeta, keyData ), valueData );
     }
   }
 
@@ -0,0 +1,115 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * Stores the watermarks in a local properties file, by default watermarks.properties in the Kettle directory.<br>
+ * <br>
+ * Every change locks the file, also against other processes, and writes a new file that replaces the old one at once,
+ * so a failure never leaves a partly written file behind.
+ */
+public class FileWatermarkStore implements WatermarkStore {
+
+  private static final Object LOCK = new Object();
+
+  private final File file;
+
+  public FileWatermarkStore() {
+    this( Const.getKettleDirectory() + Const.FILE_SEPARATOR + "watermarks.properties" );
+  }
+
+  /**
+   * @param filename
+   *          the name of the properties file to store the watermarks in
+   */
+  public FileWatermarkStore( String filename ) {
+    this.file = new File( filename );
+  }
+
+  public String getFilename() {
+    return file.getPath();
+  }
+
+  @Override
+  public String getWatermark( String name ) throws KettleException {
+    synchronized ( LOCK ) {
+      return load().getProperty( name );
+    }
+  }
+
+  @Override
+  public boolean replaceWatermark( String name, String expected, String watermark ) throws KettleException {
+    synchronized ( LOCK ) {
+      File parent = file.getAbsoluteFile().getParentFile();
+      if ( parent != null && !parent.exists() && !parent.mkdirs() ) {
+        throw new KettleException( "Unable to create the directory of watermark file " + file );
+      }
+      try ( RandomAccessFile lockFile = new RandomAccessFile( file.getPath() + ".lock", "rw" );
+            FileLock lock = lockFile.getChannel().lock() ) {
+        Properties watermarks = load();
+        String current = watermarks.getProperty( name );
+        if ( current == null ? expected != null : !current.equals( expected ) ) {
+          return false;
+        }
+        watermarks.setProperty( name, watermark );
+
+        File temp = new File( file.getPath() + ".tmp" );
+        try ( OutputStream out = new FileOutputStream( temp ) ) {
+          watermarks.store( out, "Watermarks of the incremental Table Input steps" );
+        }
+        Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE );
+        return true;
+      } catch ( IOException e ) {
+        throw new KettleException( "Unable to store watermark " + name + " in file " + file, e );
+      }
+    }
+  }
+
+  private Properties load() throws KettleException {
+    Properties watermarks = new Properties();
+    if ( file.exists() ) {
+      try ( InputStream in = new FileInputStream( file ) ) {
+        watermarks.load( in );
+      } catch ( IOException e ) {
+        throw new KettleException( "Unable to read watermark file " + file, e );
+      }
+    }
+    return watermarks;
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -38,6 +38,7 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransAdapter;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStep;
 import org.pentaho.di.trans.step.StepDataInterface;
@@ -180,6 +181,7 @@ public class TableInput extends BaseStep implements StepInterface {
           }
 
           if ( data.thisrow != null ) {
+            trackWatermark( data.thisrow );
             putRow( data.rowMeta, data.thisrow ); // fill the rowset(s). (wait for empty)
             data.thisrow = data.nextrow;
 
@@ -199,6 +201,7 @@ public class TableInput extends BaseStep implements StepInterface {
         return false; // end of data or error.
       }
     } else {
+      trackWatermark( data.thisrow );
       putRow( data.rowMeta, data.thisrow ); // fill the rowset(s). (wait for empty)
       data.thisrow = data.nextrow;
 
@@ -218,8 +221,9 @@ public class TableInput extends BaseStep implements StepInterface {
     }
   }
 
-  private boolean doQuery( RowMetaInterface parametersMeta, Object[] parameters ) throws KettleDatabaseException {
+  private boolean doQuery( RowMetaInterface parametersMeta, Object[] parameters ) throws KettleException {
     boolean success = true;
+    data.queryRows = 0;
 
     // Open the query with the optional parameters received from the source steps.
     String sql = null;
@@ -229,6 +233,67 @@ public class TableInput extends BaseStep implements StepInterface {
       sql = meta.getSQL();
     }
 
+    // Only read the rows above the watermark of the last successful run
+    //
+    if ( data.previousWatermark != null ) {
+      sql =
+        TableInputWatermark.getDeltaQuery( sql, meta.getDatabaseMeta().quoteField(
+          environmentSubstitute( meta.getIncrementalField() ) ) );
+      RowMetaInterface allParametersMeta = parametersMeta.clone();
+      allParametersMeta.addValueMeta( data.previousWatermark.getValueMeta().clone() );
+      parameters = RowDataUtil.addValueData( parameters, parametersMeta.size(), data.previousWatermark.getValue() );
+      parametersMeta = allParametersMeta;
+    }
+
+    // Only read the ranges of the split field of this step copy
+    //
+    if ( data.rangeSplitter != null ) {
+      String[] boundaries;
+      String splitBoundaries = environmentSubstitute( meta.getSplitBoundaries() );
+      if ( !Utils.isEmpty( splitBoundaries ) ) {
+        boundaries = Const.splitString( splitBoundaries, ';' );
+        for ( int i = 0; i < boundaries.length; i++ ) {
+          boundaries[i] = Const.trim( boundaries[i] );
+        }
+        sql = data.rangeSplitter.getRangeQuery( sql, boundaries );
+      } else {
+        String boundaryQuery = data.rangeSplitter.getBoundaryQuery( sql );
+        if ( log.isDetailed() ) {
+          logDetailed( "Range boundary query : " + boundaryQuery );
+        }
+        RowMetaAndData minMax;
+        if ( parametersMeta.isEmpty() ) {
+          minMax = data.db.getOneRow( boundaryQuery );
+        } else {
+          minMax = data.db.getOneRow( boundaryQuery, parametersMeta, parameters );
+        }
+        Object[] values = new Object[0];
+        ValueMetaInterface splitValueMeta = null;
+        if ( minMax != null && minMax.getData() != null ) {
+          splitValueMeta = minMax.getRowMeta().getValueMeta( 0 );
+          values =
+            TableInputRangeSplitter.computeBoundaries( splitValueMeta, minMax.getData()[0], minMax.getData()[1],
+              getUniqueStepCountAcrossSlaves() );
+        }
+        boundaries = new String[values.length];
+        for ( int i = 0; i < values.length; i++ ) {
+          boundaries[i] = splitValueMeta.getString( values[i] );
+        }
+        sql = data.rangeSplitter.getRangeQuery( sql, values.length );
+        if ( values.length > 0 ) {
+          RowMetaAndData rangeParameters = data.rangeSplitter.getRangeParameters( splitValueMeta, values );
+          RowMetaInterface allParametersMeta = parametersMeta.clone();
+          allParametersMeta.addRowMeta( rangeParameters.getRowMeta() );
+          parameters = RowDataUtil.addRowData( parameters, parametersMeta.size(), rangeParameters.getData() );
+          parametersMeta = allParametersMeta;
+        }
+      }
+      if ( log.isBasic() ) {
+        logBasic( BaseMessages.getString( PKG, "TableInput.Log.ReadingRanges", getUniqueStepNrAcrossSlaves() + 1,
+          getUniqueStepCountAcrossSlaves(), data.rangeSplitter.getRangeCondition( boundaries ) ) );
+      }
+    }
+
     if ( log.isDetailed() ) {
       logDetailed( "SQL query : " + sql );
     }
@@ -255,6 +320,15 @@ public class TableInput extends BaseStep implements StepInterface {
         }
       }
 
+      if ( data.watermarkStore != null ) {
+        String incrementalField = environmentSubstitute( meta.getIncrementalField() );
+        data.watermarkIndex = data.rowMeta == null ? -1 : data.rowMeta.indexOfValue( incrementalField );
+        if ( data.watermarkIndex < 0 ) {
+          throw new KettleException( BaseMessages.getString( PKG, "TableInput.Exception.IncrementalFieldNotFound",
+            incrementalField ) );
+        }
+      }
+
       // Get the first row...
       data.thisrow = data.db.getRow( data.rs );
       if ( data.thisrow != null ) {
@@ -268,6 +342,72 @@ public class TableInput extends BaseStep implements StepInterface {
     return success;
   }
 
+  /**
+   * Keep the highest value of the incremental field that is passed on.
+   */
+  private void trackWatermark( Object[] row ) throws KettleException {
+    if ( data.watermarkIndex < 0 ) {
+      return;
+    }
+    // Without an ORDER BY on the incremental field the limit can cut off rows below the highest value read
+    //
+    data.queryRows++;
+    if ( data.queryLimit > 0 && data.queryRows >= data.queryLimit ) {
+      data.watermarkIncomplete = true;
+    }
+    ValueMetaInterface valueMeta = data.rowMeta.getValueMeta( data.watermarkIndex );
+    Object value = row[data.watermarkIndex];
+    if ( !valueMeta.isNull( value ) && ( data.watermark == null
+      || valueMeta.compare( value, data.watermark.getValueMeta(), data.watermark.getValue() ) > 0 ) ) {
+      data.watermark = TableInputWatermark.fromRow( valueMeta, value );
+    }
+  }
+
+  /**
+   * Store the highest value read as the new watermark once the transformation finished without errors. Every copy of
+   * the step stores its own value, the highest one is kept. Nothing is stored when the row limit may have kept rows
+   * from being read.
+   */
+  private void commitWatermark( Trans trans ) throws KettleException {
+    if ( data.watermark == null || trans.getErrors() > 0 || trans.isStopped() ) {
+      return;
+    }
+    if ( data.watermarkIncomplete ) {
+      logBasic( BaseMessages.getString( PKG, "TableInput.Log.WatermarkNotStoredRowLimit", data.watermarkName,
+        data.queryLimit ) );
+      return;
+    }
+    String encoded = data.watermark.encode();
+    for ( int attempt = 0; attempt < 10; attempt++ ) {
+      String current = data.watermarkStore.getWatermark( data.watermarkName );
+      if ( current != null && !data.watermark.isAfter( TableInputWatermark.parse( current ) ) ) {
+        return; // Another copy stored a higher watermark
+      }
+      if ( data.watermarkStore.replaceWatermark( data.watermarkName, current, encoded ) ) {
+        if ( log.isBasic() ) {
+          logBasic( BaseMessages.getString( PKG, "TableInput.Log.WatermarkStored", data.watermarkName, encoded ) );
+        }
+        return;
+      }
+    }
+    throw new KettleException( BaseMessages.getString( PKG, "TableInput.Exception.UnableToStoreWatermark",
+      data.watermarkName ) );
+  }
+
+  private WatermarkStore createWatermarkStore() throws KettleException {
+    String storeClass = getVariable( Const.KETTLE_WATERMARK_STORE );
+    if ( Utils.isEmpty( storeClass ) ) {
+      String filename = getVariable( Const.KETTLE_WATERMARK_FILE );
+      return Utils.isEmpty( filename ) ? new FileWatermarkStore() : new FileWatermarkStore( filename );
+    }
+    try {
+      return (WatermarkStore) Class.forName( storeClass ).newInstance();
+    } catch ( Exception e ) {
+      throw new KettleException( BaseMessages.getString( PKG, "TableInput.Exception.UnableToCreateWatermarkStore",
+        storeClass ), e );
+    }
+  }
+
   public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
     if ( log.isBasic() ) {
       logBasic( "Finished reading query, closing connection." );
@@ -331,7 +471,8 @@ public class TableInput extends BaseStep implements StepInterface {
       data.db = new Database( this, meta.getDatabaseMeta() );
       data.db.shareVariablesWith( this );
 
-      data.db.setQueryLimit( Const.toInt( environmentSubstitute( meta.getRowLimit() ), 0 ) );
+      data.queryLimit = Const.toInt( environmentSubstitute( meta.getRowLimit() ), 0 );
+      data.db.setQueryLimit( data.queryLimit );
 
       try {
         if ( getTransMeta().isUsingUniqueConnections() ) {
@@ -345,6 +486,43 @@ public class TableInput extends BaseStep implements StepInterface {
         if ( meta.getDatabaseMeta().isRequiringTransactionsOnQueries() ) {
           data.db.setCommit( 100 ); // needed for PGSQL it seems...
         }
+
+        // Split the rows over the step copies?
+        //
+        String splitField = environmentSubstitute( meta.getSplitField() );
+        if ( !Utils.isEmpty( splitField ) && getUniqueStepCountAcrossSlaves() > 1 ) {
+          data.rangeSplitter =
+            new TableInputRangeSplitter( meta.getDatabaseMeta().quoteField( splitField ),
+              getUniqueStepNrAcrossSlaves(), getUniqueStepCountAcrossSlaves() );
+        }
+
+        // Only read the new rows since the last successful run?
+        //
+        String incrementalField = environmentSubstitute( meta.getIncrementalField() );
+        if ( !Utils.isEmpty( incrementalField ) ) {
+          data.watermarkStore = createWatermarkStore();
+          data.watermarkName = environmentSubstitute( meta.getWatermarkName() );
+          if ( Utils.isEmpty( data.watermarkName ) ) {
+            data.watermarkName = getTransMeta().getName() + "." + getStepname();
+          }
+          data.storedWatermark = data.watermarkStore.getWatermark( data.watermarkName );
+          if ( data.storedWatermark != null ) {
+            data.previousWatermark = TableInputWatermark.parse( data.storedWatermark );
+            if ( log.isBasic() ) {
+              logBasic( BaseMessages.getString( PKG, "TableInput.Log.ReadingAboveWatermark", incrementalField,
+                data.storedWatermark, data.watermarkName ) );
+            }
+          } else if ( log.isBasic() ) {
+            logBasic( BaseMessages.getString( PKG, "TableInput.Log.NoWatermark", data.watermarkName ) );
+          }
+          getTrans().addTransListener( new TransAdapter() {
+            @Override
+            public void transFinished( Trans trans ) throws KettleException {
+              commitWatermark( trans );
+            }
+          } );
+        }
+
         if ( log.isDetailed() ) {
           logDetailed( "Connected to database..." );
         }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -46,6 +46,28 @@ public class TableInputData extends BaseStepData implements StepDataInterface {
   public boolean isCanceled;
   public StreamInterface infoStream;
 
+  /** Restricts the query to the ranges of the split field of this copy, null to read all rows */
+  public TableInputRangeSplitter rangeSplitter;
+
+  /** Stores the watermark of the incremental field, null to read all rows */
+  public WatermarkStore watermarkStore;
+  public String watermarkName;
+
+  /** The watermark of the last successful run as stored, null if there is none */
+  public String storedWatermark;
+  public TableInputWatermark previousWatermark;
+
+  /** The index of the incremental field in the rows and the highest value read */
+  public int watermarkIndex = -1;
+  public TableInputWatermark watermark;
+
+  /** The row limit of the queries and the number of rows passed on for the current query */
+  public int queryLimit;
+  public long queryRows;
+
+  /** True if a query returned as many rows as the limit: unread rows can be below the highest value read */
+  public boolean watermarkIncomplete;
+
   public TableInputData() {
     super();
 
@@ -93,6 +93,22 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
   @Injection( name = "LAZY_CONVERSION" )
   private boolean lazyConversionActive;
 
+  /** The field to split the rows over the step copies by, empty to read all rows in every copy */
+  @Injection( name = "SPLIT_FIELD" )
+  private String splitField;
+
+  /** The values between the ranges of the split field separated by semicolons, empty to spread them evenly */
+  @Injection( name = "SPLIT_BOUNDARIES" )
+  private String splitBoundaries;
+
+  /** The field to only read the rows with a value above the watermark by, empty to read all rows */
+  @Injection( name = "INCREMENTAL_FIELD" )
+  private String incrementalField;
+
+  /** The name of the watermark, empty for the name of the transformation and step */
+  @Injection( name = "WATERMARK_NAME" )
+  private String watermarkName;
+
   public TableInputMeta() {
     super();
   }
@@ -162,6 +178,68 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
     this.sql = sql;
   }
 
+  /**
+   * @return the field to split the rows over the step copies by, empty to read all rows in every copy
+   */
+  public String getSplitField() {
+    return splitField;
+  }
+
+  /**
+   * @param splitField
+   *          the field to split the rows over the step copies by
+   */
+  public void setSplitField( String splitField ) {
+    this.splitField = splitField;
+  }
+
+  /**
+   * @return the SQL values between the ranges of the split field separated by semicolons, empty to spread the ranges
+   *         evenly between the minimum and maximum value
+   */
+  public String getSplitBoundaries() {
+    return splitBoundaries;
+  }
+
+  /**
+   * @param splitBoundaries
+   *          the SQL values between the ranges of the split field separated by semicolons
+   */
+  public void setSplitBoundaries( String splitBoundaries ) {
+    this.splitBoundaries = splitBoundaries;
+  }
+
+  /**
+   * @return the field to only read the rows with a value above the watermark by: the highest value read by the last
+   *         successful run. Empty to read all rows.
+   */
+  public String getIncrementalField() {
+    return incrementalField;
+  }
+
+  /**
+   * @param incrementalField
+   *          the field to only read the rows with a value above the watermark by
+   */
+  public void setIncrementalField( String incrementalField ) {
+    this.incrementalField = incrementalField;
+  }
+
+  /**
+   * @return the name the watermark is stored under, empty for the name of the transformation and step
+   */
+  public String getWatermarkName() {
+    return watermarkName;
+  }
+
+  /**
+   * @param watermarkName
+   *          the name the watermark is stored under
+   */
+  public void setWatermarkName( String watermarkName ) {
+    this.watermarkName = watermarkName;
+  }
+
   public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
     readData( stepnode, databases );
   }
@@ -185,6 +263,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       executeEachInputRow = "Y".equals( XMLHandler.getTagValue( stepnode, "execute_each_row" ) );
       variableReplacementActive = "Y".equals( XMLHandler.getTagValue( stepnode, "variables_active" ) );
       lazyConversionActive = "Y".equals( XMLHandler.getTagValue( stepnode, "lazy_conversion_active" ) );
+      splitField = XMLHandler.getTagValue( stepnode, "split_field" );
+      splitBoundaries = XMLHandler.getTagValue( stepnode, "split_boundaries" );
+      incrementalField = XMLHandler.getTagValue( stepnode, "incremental_field" );
+      watermarkName = XMLHandler.getTagValue( stepnode, "watermark_name" );
     } catch ( Exception e ) {
       throw new KettleXMLException( "Unable to load step info from XML", e );
     }
@@ -295,6 +377,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "    " + XMLHandler.addTagValue( "execute_each_row", executeEachInputRow ) );
     retval.append( "    " + XMLHandler.addTagValue( "variables_active", variableReplacementActive ) );
     retval.append( "    " + XMLHandler.addTagValue( "lazy_conversion_active", lazyConversionActive ) );
+    retval.append( "    " + XMLHandler.addTagValue( "split_field", splitField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "split_boundaries", splitBoundaries ) );
+    retval.append( "    " + XMLHandler.addTagValue( "incremental_field", incrementalField ) );
+    retval.append( "    " + XMLHandler.addTagValue( "watermark_name", watermarkName ) );
 
     return retval.toString();
   }
@@ -317,6 +403,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       executeEachInputRow = rep.getStepAttributeBoolean( id_step, "execute_each_row" );
       variableReplacementActive = rep.getStepAttributeBoolean( id_step, "variables_active" );
       lazyConversionActive = rep.getStepAttributeBoolean( id_step, "lazy_conversion_active" );
+      splitField = rep.getStepAttributeString( id_step, "split_field" );
+      splitBoundaries = rep.getStepAttributeString( id_step, "split_boundaries" );
+      incrementalField = rep.getStepAttributeString( id_step, "incremental_field" );
+      watermarkName = rep.getStepAttributeString( id_step, "watermark_name" );
     } catch ( Exception e ) {
       throw new KettleException( "Unexpected error reading step information from the repository", e );
     }
@@ -332,6 +422,10 @@ public class TableInputMeta extends BaseStepMeta implements StepMetaInterface {
       rep.saveStepAttribute( id_transformation, id_step, "execute_each_row", executeEachInputRow );
       rep.saveStepAttribute( id_transformation, id_step, "variables_active", variableReplacementActive );
       rep.saveStepAttribute( id_transformation, id_step, "lazy_conversion_active", lazyConversionActive );
+      rep.saveStepAttribute( id_transformation, id_step, "split_field", splitField );
+      rep.saveStepAttribute( id_transformation, id_step, "split_boundaries", splitBoundaries );
+      rep.saveStepAttribute( id_transformation, id_step, "incremental_field", incrementalField );
+      rep.saveStepAttribute( id_transformation, id_step, "watermark_name", watermarkName );
 
       // Also, save the step-database relationship!
       if ( databaseMeta != null ) {
@@ -0,0 +1,239 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+/**
+ * Splits the rows of a query over the copies of a Table Input step by the ranges of a field.<br>
+ * <br>
+ * The range boundaries are either given or spread evenly between the minimum and maximum value of the field. The query
+ * is wrapped in a sub-query restricted to the ranges of one copy: range r is read by copy r modulo the number of
+ * copies. The ranges don't overlap and leave no gaps, the first one also contains the rows without a value.
+ */
+public class TableInputRangeSplitter {
+
+  private static final String ALIAS = "kettle_range";
+
+  private final String field;
+  private final int copyNr;
+  private final int nrCopies;
+
+  /**
+   * @param field
+   *          the (quoted) field of the query to split the rows by
+   * @param copyNr
+   *          the number of the step copy, 0-based
+   * @param nrCopies
+   *          the number of step copies
+   */
+  public TableInputRangeSplitter( String field, int copyNr, int nrCopies ) {
+    this.field = field;
+    this.copyNr = copyNr;
+    this.nrCopies = nrCopies;
+  }
+
+  /**
+   * @return the query returning the minimum and maximum value of the field in the rows of the query
+   */
+  public String getBoundaryQuery( String sql ) {
+    return "SELECT MIN(" + field + "), MAX(" + field + ") FROM (" + Const.CR + stripSql( sql ) + Const.CR + ") "
+      + ALIAS;
+  }
+
+  /**
+   * Spread the boundaries of a number of ranges evenly between a minimum and maximum.
+   *
+   * @param valueMeta
+   *          the type of the field, a number or date
+   * @param min
+   *          the minimum value or null if the query has no rows
+   * @param max
+   *          the maximum value or null if the query has no rows
+   * @param nrRanges
+   *          the number of ranges
+   * @return the values between the ranges (of the type of the field) or an empty array for just one range
+   * @throws KettleException
+   *           if the field isn't a number or a date
+   */
+  public static Object[] computeBoundaries( ValueMetaInterface valueMeta, Object min, Object max, int nrRanges )
+    throws KettleException {
+    if ( min == null || max == null || nrRanges < 2 ) {
+      return new Object[0];
+    }
+    Object[] boundaries = new Object[nrRanges - 1];
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        BigInteger low = BigInteger.valueOf( valueMeta.getInteger( min ) );
+        BigInteger width = BigInteger.valueOf( valueMeta.getInteger( max ) ).subtract( low );
+        for ( int i = 1; i < nrRanges; i++ ) {
+          boundaries[i - 1] =
+            width.multiply( BigInteger.valueOf( i ) ).divide( BigInteger.valueOf( nrRanges ) ).add( low ).longValue();
+        }
+        break;
+      case ValueMetaInterface.TYPE_NUMBER:
+        double lowNumber = valueMeta.getNumber( min );
+        double widthNumber = valueMeta.getNumber( max ) - lowNumber;
+        for ( int i = 1; i < nrRanges; i++ ) {
+          boundaries[i - 1] = lowNumber + widthNumber * i / nrRanges;
+        }
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        BigDecimal lowBig = valueMeta.getBigNumber( min );
+        BigDecimal widthBig = valueMeta.getBigNumber( max ).subtract( lowBig );
+        for ( int i = 1; i < nrRanges; i++ ) {
+          boundaries[i - 1] =
+            widthBig.multiply( BigDecimal.valueOf( i ) ).divide( BigDecimal.valueOf( nrRanges ),
+              BigDecimal.ROUND_HALF_UP ).add( lowBig );
+        }
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        long lowTime = valueMeta.getDate( min ).getTime();
+        long widthTime = valueMeta.getDate( max ).getTime() - lowTime;
+        for ( int i = 1; i < nrRanges; i++ ) {
+          long time = lowTime + (long) ( (double) widthTime * i / nrRanges );
+          boundaries[i - 1] =
+            valueMeta.getType() == ValueMetaInterface.TYPE_TIMESTAMP ? new Timestamp( time ) : new Date( time );
+        }
+        break;
+      default:
+        throw new KettleException( "Unable to compute the ranges of field " + valueMeta.getName() + " of type "
+          + valueMeta.getTypeDesc() + ", specify the range boundaries instead" );
+    }
+    return boundaries;
+  }
+
+  /**
+   * @param sql
+   *          the query to split
+   * @param boundaries
+   *          the SQL expressions of the values between the ranges
+   * @return the query reading the ranges of this copy
+   */
+  public String getRangeQuery( String sql, String[] boundaries ) {
+    return "SELECT * FROM (" + Const.CR + stripSql( sql ) + Const.CR + ") " + ALIAS + " WHERE "
+      + getRangeCondition( boundaries );
+  }
+
+  /**
+   * @param sql
+   *          the query to split
+   * @param nrBoundaries
+   *          the number of values between the ranges, passed as parameters
+   * @return the query reading the ranges of this copy, with the parameters of {@link #getRangeParameters(
+   *         ValueMetaInterface, Object[])} after the parameters of the query
+   */
+  public String getRangeQuery( String sql, int nrBoundaries ) {
+    String[] boundaries = new String[nrBoundaries];
+    for ( int i = 0; i < nrBoundaries; i++ ) {
+      boundaries[i] = "?";
+    }
+    return getRangeQuery( sql, boundaries );
+  }
+
+  /**
+   * @return the values of the parameters of the range query for the ranges of this copy
+   */
+  public RowMetaAndData getRangeParameters( ValueMetaInterface valueMeta, Object[] boundaries ) {
+    RowMetaInterface rowMeta = new RowMeta();
+    Object[] data = new Object[boundaries.length * 2];
+    int nrRanges = boundaries.length + 1;
+    for ( int range = copyNr; range < nrRanges; range += nrCopies ) {
+      if ( range > 0 ) {
+        data[rowMeta.size()] = boundaries[range - 1];
+        rowMeta.addValueMeta( parameterMeta( valueMeta, rowMeta.size() ) );
+      }
+      if ( range < nrRanges - 1 ) {
+        data[rowMeta.size()] = boundaries[range];
+        rowMeta.addValueMeta( parameterMeta( valueMeta, rowMeta.size() ) );
+      }
+    }
+    Object[] parameters = new Object[rowMeta.size()];
+    System.arraycopy( data, 0, parameters, 0, parameters.length );
+    return new RowMetaAndData( rowMeta, parameters );
+  }
+
+  /**
+   * @return the condition selecting the ranges of this copy
+   */
+  String getRangeCondition( String[] boundaries ) {
+    int nrRanges = boundaries.length + 1;
+    StringBuilder condition = new StringBuilder();
+    for ( int range = copyNr; range < nrRanges; range += nrCopies ) {
+      if ( condition.length() > 0 ) {
+        condition.append( " OR " );
+      }
+      condition.append( "( " );
+      if ( range > 0 ) {
+        condition.append( field ).append( " >= " ).append( boundaries[range - 1] );
+        if ( range < nrRanges - 1 ) {
+          condition.append( " AND " );
+        }
+      }
+      if ( range < nrRanges - 1 ) {
+        condition.append( field ).append( " < " ).append( boundaries[range] );
+      }
+      if ( range == 0 ) {
+        condition.append( nrRanges > 1 ? " OR " : "" ).append( field ).append( " IS NULL" );
+        if ( nrRanges == 1 ) {
+          // Just one range: all rows
+          condition.append( " OR " ).append( field ).append( " IS NOT NULL" );
+        }
+      }
+      condition.append( " )" );
+    }
+    if ( condition.length() == 0 ) {
+      // More copies than ranges
+      condition.append( "1 = 0" );
+    }
+    return condition.toString();
+  }
+
+  private static ValueMetaInterface parameterMeta( ValueMetaInterface valueMeta, int index ) {
+    ValueMetaInterface parameterMeta = valueMeta.clone();
+    parameterMeta.setName( "range_" + index );
+    return parameterMeta;
+  }
+
+  /**
+   * Remove what can't be part of a sub-query: a trailing semicolon.
+   */
+  private static String stripSql( String sql ) {
+    String stripped = Const.rtrim( sql );
+    while ( stripped.endsWith( ";" ) ) {
+      stripped = Const.rtrim( stripped.substring( 0, stripped.length() - 1 ) );
+    }
+    return stripped;
+  }
+}
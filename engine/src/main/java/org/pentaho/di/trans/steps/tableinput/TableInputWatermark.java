@@ -0,0 +1,215 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaBinary;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.row.value.ValueMetaTimestamp;
+
+/**
+ * The highest value of the incremental field of a Table Input step: a timestamp, a sequence number or a row version.
+ * <br>
+ * <br>
+ * A watermark is stored as its type and value, for example <code>Integer:1234</code>, so it can be passed as a
+ * parameter of the query before the type of the field is known. Dates are stored as milliseconds and timestamps as
+ * seconds and nanoseconds since the epoch, independent of the time zone, binary values (row versions) as
+ * hexadecimal digits.
+ */
+public class TableInputWatermark {
+
+  private static final String ALIAS = "kettle_delta";
+
+  private final ValueMetaInterface valueMeta;
+  private final Object value;
+
+  /**
+   * @param valueMeta
+   *          the type of the value
+   * @param value
+   *          the value, in the normal storage type
+   */
+  public TableInputWatermark( ValueMetaInterface valueMeta, Object value ) {
+    this.valueMeta = valueMeta;
+    this.value = value;
+  }
+
+  /**
+   * Take the watermark from a value of a row, which may be lazily converted.
+   */
+  public static TableInputWatermark fromRow( ValueMetaInterface valueMeta, Object value ) throws KettleException {
+    ValueMetaInterface watermarkMeta;
+    Object watermarkValue;
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        watermarkMeta = new ValueMetaInteger( valueMeta.getName() );
+        watermarkValue = valueMeta.getInteger( value );
+        break;
+      case ValueMetaInterface.TYPE_NUMBER:
+        watermarkMeta = new ValueMetaNumber( valueMeta.getName() );
+        watermarkValue = valueMeta.getNumber( value );
+        break;
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        watermarkMeta = new ValueMetaBigNumber( valueMeta.getName() );
+        watermarkValue = valueMeta.getBigNumber( value );
+        break;
+      case ValueMetaInterface.TYPE_STRING:
+        watermarkMeta = new ValueMetaString( valueMeta.getName() );
+        watermarkValue = valueMeta.getString( value );
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+        watermarkMeta = new ValueMetaDate( valueMeta.getName() );
+        watermarkValue = valueMeta.getDate( value );
+        break;
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        watermarkMeta = new ValueMetaTimestamp( valueMeta.getName() );
+        watermarkValue = valueMeta.getDate( value );
+        break;
+      case ValueMetaInterface.TYPE_BINARY:
+        watermarkMeta = new ValueMetaBinary( valueMeta.getName() );
+        watermarkValue = valueMeta.getBinary( value );
+        break;
+      default:
+        throw new KettleException( "Field " + valueMeta.getName() + " of type " + valueMeta.getTypeDesc()
+          + " can't be used to read the new rows incrementally" );
+    }
+    return new TableInputWatermark( watermarkMeta, watermarkValue );
+  }
+
+  /**
+   * @param watermark
+   *          a watermark as stored
+   * @return the watermark
+   * @throws KettleException
+   *           if the watermark can't be parsed
+   */
+  public static TableInputWatermark parse( String watermark ) throws KettleException {
+    int separator = watermark.indexOf( ':' );
+    if ( separator < 0 ) {
+      throw new KettleException( "Invalid watermark: " + watermark );
+    }
+    String type = watermark.substring( 0, separator );
+    String text = watermark.substring( separator + 1 );
+    try {
+      switch ( type ) {
+        case "Integer":
+          return new TableInputWatermark( new ValueMetaInteger( "watermark" ), Long.valueOf( text ) );
+        case "Number":
+          return new TableInputWatermark( new ValueMetaNumber( "watermark" ), Double.valueOf( text ) );
+        case "BigNumber":
+          return new TableInputWatermark( new ValueMetaBigNumber( "watermark" ), new BigDecimal( text ) );
+        case "String":
+          return new TableInputWatermark( new ValueMetaString( "watermark" ), text );
+        case "Date":
+          return new TableInputWatermark( new ValueMetaDate( "watermark" ), new Date( Long.parseLong( text ) ) );
+        case "Timestamp":
+          int point = text.indexOf( '.' );
+          Timestamp timestamp = new Timestamp( Long.parseLong( text.substring( 0, point ) ) * 1000L );
+          timestamp.setNanos( Integer.parseInt( text.substring( point + 1 ) ) );
+          return new TableInputWatermark( new ValueMetaTimestamp( "watermark" ), timestamp );
+        case "Binary":
+          byte[] bytes = new byte[text.length() / 2];
+          for ( int i = 0; i < bytes.length; i++ ) {
+            bytes[i] = (byte) Integer.parseInt( text.substring( 2 * i, 2 * i + 2 ), 16 );
+          }
+          return new TableInputWatermark( new ValueMetaBinary( "watermark" ), bytes );
+        default:
+          throw new KettleException( "Invalid watermark type: " + watermark );
+      }
+    } catch ( RuntimeException e ) {
+      throw new KettleException( "Invalid watermark: " + watermark, e );
+    }
+  }
+
+  /**
+   * @return the watermark as stored
+   */
+  public String encode() {
+    StringBuilder text = new StringBuilder( valueMeta.getTypeDesc() ).append( ':' );
+    switch ( valueMeta.getType() ) {
+      case ValueMetaInterface.TYPE_BIGNUMBER:
+        text.append( ( (BigDecimal) value ).toPlainString() );
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+        text.append( ( (Date) value ).getTime() );
+        break;
+      case ValueMetaInterface.TYPE_TIMESTAMP:
+        Date date = (Date) value;
+        int nanos =
+          date instanceof Timestamp ? ( (Timestamp) date ).getNanos() : (int) Math.floorMod( date.getTime(), 1000L )
+            * 1000000;
+        text.append( String.format( "%d.%09d", Math.floorDiv( date.getTime(), 1000L ), nanos ) );
+        break;
+      case ValueMetaInterface.TYPE_BINARY:
+        for ( byte b : (byte[]) value ) {
+          text.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        break;
+      default:
+        text.append( value );
+        break;
+    }
+    return text.toString();
+  }
+
+  /**
+   * @return true if this watermark is higher than the other one
+   */
+  public boolean isAfter( TableInputWatermark other ) throws KettleException {
+    return other == null || valueMeta.compare( value, other.valueMeta, other.value ) > 0;
+  }
+
+  /**
+   * @param sql
+   *          the query
+   * @param field
+   *          the (quoted) incremental field of the query
+   * @return the query returning the rows with a value of the field higher than the watermark, passed as the last
+   *         parameter
+   */
+  public static String getDeltaQuery( String sql, String field ) {
+    String stripped = Const.rtrim( sql );
+    while ( stripped.endsWith( ";" ) ) {
+      stripped = Const.rtrim( stripped.substring( 0, stripped.length() - 1 ) );
+    }
+    return "SELECT * FROM (" + Const.CR + stripped + Const.CR + ") " + ALIAS + " WHERE " + field + " > ?";
+  }
+
+  public ValueMetaInterface getValueMeta() {
+    return valueMeta;
+  }
+
+  public Object getValue() {
+    return value;
+  }
+}
@@ -0,0 +1,56 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import org.pentaho.di.core.exception.KettleException;
+
+/**
+ * Keeps the watermarks of the incremental Table Input steps: the highest value of the incremental field read by the
+ * last successful run, stored under the name of the watermark. The values are strings encoded by
+ * {@link TableInputWatermark}.<br>
+ * <br>
+ * Implementations need a public constructor without arguments and are selected with the KETTLE_WATERMARK_STORE
+ * variable. They must be safe to use from several step copies and transformations at once.
+ */
+public interface WatermarkStore {
+
+  /**
+   * @param name
+   *          the name of the watermark
+   * @return the stored watermark or null if there is none yet
+   */
+  String getWatermark( String name ) throws KettleException;
+
+  /**
+   * Store a watermark if it wasn't changed since it was read, atomically.
+   *
+   * @param name
+   *          the name of the watermark
+   * @param expected
+   *          the watermark that was read, null if there was none
+   * @param watermark
+   *          the new watermark
+   * @return true if the watermark was stored, false if it was changed meanwhile
+   */
+  boolean replaceWatermark( String name, String expected, String watermark ) throws KettleException;
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -30,6 +30,7 @@ import org.pentaho.di.core.exception.KettleDatabaseBatchException;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
 import org.pentaho.di.core.row.RowMetaInterface;
@@ -47,6 +48,7 @@ import org.pentaho.di.trans.step.StepMetaInterface;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -84,10 +86,22 @@ public class TableOutput extends BaseStep implements StepInterface {
       first = false;
       if ( meta.truncateTable() ) {
         truncateTable();
+        if ( data.parallelWriter != null ) {
+          // The other connections would wait for the lock of the truncate
+          data.db.commit( true );
+        }
       }
       data.outputRowMeta = getInputRowMeta().clone();
       meta.getFields( data.outputRowMeta, getStepname(), null, null, this, repository, metaStore );
 
+      if ( data.routingField != null ) {
+        data.indexOfRoutingField = getInputRowMeta().indexOfValue( data.routingField );
+        if ( data.indexOfRoutingField < 0 ) {
+          throw new KettleStepException( BaseMessages.getString(
+            PKG, "TableOutput.Exception.FieldRequired", data.routingField ) );
+        }
+      }
+
       if ( !meta.specifyFields() ) {
         // Just take the input row
         data.insertRowMeta = getInputRowMeta().clone();
@@ -239,6 +253,16 @@ public class TableOutput extends BaseStep implements StepInterface {
       throw new KettleStepException( "The tablename is not defined (empty)" );
     }
 
+    if ( data.parallelWriter != null ) {
+      writeToConnections( tableName, insertRowData, r );
+      return null;
+    }
+    if ( data.batchWriter != null ) {
+      // The row is written when its batch is committed
+      processFinishedBatches( data.batchWriter.addRow( tableName, data.insertRowMeta, insertRowData, r ) );
+      return null;
+    }
+
     insertStatement = data.preparedStatements.get( tableName );
     if ( insertStatement == null ) {
       String sql =
@@ -337,16 +361,7 @@ public class TableOutput extends BaseStep implements StepInterface {
       } else {
         data.db.clearBatch( insertStatement );
         data.db.rollback();
-        StringBuilder msg = new StringBuilder( "Error batch inserting rows into table [" + tableName + "]." );
-        msg.append( Const.CR );
-        msg.append( "Errors encountered (first 10):" ).append( Const.CR );
-        for ( int x = 0; x < be.getExceptionsList().size() && x < 10; x++ ) {
-          Exception exception = be.getExceptionsList().get( x );
-          if ( exception.getMessage() != null ) {
-            msg.append( exception.getMessage() ).append( Const.CR );
-          }
-        }
-        throw new KettleException( msg.toString(), be );
+        throw new KettleException( getBatchErrorMessage( tableName, be ), be );
       }
     } catch ( KettleDatabaseException dbe ) {
       if ( getStepMeta().isDoingErrorHandling() ) {
@@ -366,18 +381,7 @@ public class TableOutput extends BaseStep implements StepInterface {
         errorMessage = dbe.toString();
       } else {
         if ( meta.ignoreErrors() ) {
-          if ( data.warnings < 20 ) {
-            if ( log.isBasic() ) {
-              logBasic( "WARNING: Couldn't insert row into table: "
-                + rowMeta.getString( r ) + Const.CR + dbe.getMessage() );
-            }
-          } else if ( data.warnings == 20 ) {
-            if ( log.isBasic() ) {
-              logBasic( "FINAL WARNING (no more then 20 displayed): Couldn't insert row into table: "
-                + rowMeta.getString( r ) + Const.CR + dbe.getMessage() );
-            }
-          }
-          data.warnings++;
+          logIgnoredError( rowMeta, r, dbe );
         } else {
           setErrors( getErrors() + 1 );
           data.db.rollback();
@@ -432,14 +436,149 @@ public class TableOutput extends BaseStep implements StepInterface {
     return log.isRowLevel();
   }
 
+  /**
+   * Log an insert error that is ignored, at most 20 of them are logged.
+   */
+  private void logIgnoredError( RowMetaInterface rowMeta, Object[] r, KettleDatabaseException dbe )
+    throws KettleValueException {
+    if ( data.warnings < 20 ) {
+      if ( log.isBasic() ) {
+        logBasic( "WARNING: Couldn't insert row into table: "
+          + rowMeta.getString( r ) + Const.CR + dbe.getMessage() );
+      }
+    } else if ( data.warnings == 20 ) {
+      if ( log.isBasic() ) {
+        logBasic( "FINAL WARNING (no more then 20 displayed): Couldn't insert row into table: "
+          + rowMeta.getString( r ) + Const.CR + dbe.getMessage() );
+      }
+    }
+    data.warnings++;
+  }
+
+  /**
+   * Hand a row over to the parallel writer, on the connection given by the routing field or else on the connection of
+   * the current batch.
+   */
+  private void writeToConnections( String tableName, Object[] insertRowData, Object[] r ) throws KettleException {
+    int connectionNr = -1;
+    if ( data.indexOfRoutingField >= 0 ) {
+      ValueMetaInterface routingValue = getInputRowMeta().getValueMeta( data.indexOfRoutingField );
+      int hashCode = routingValue.hashCode( r[data.indexOfRoutingField] );
+      connectionNr = Math.abs( hashCode % data.parallelWriter.getNrConnections() );
+    }
+    List<TableOutputParallelWriter.Batch> finished =
+      data.parallelWriter.addRow( connectionNr, tableName, data.insertRowMeta, insertRowData, r );
+    processFinishedParallelBatches( finished );
+  }
+
+  /**
+   * Write the rows of the batches executed by the parallel writer to the next steps or to the error handling.
+   */
+  private void processFinishedParallelBatches( List<TableOutputParallelWriter.Batch> batches )
+    throws KettleException {
+    for ( TableOutputParallelWriter.Batch batch : batches ) {
+      if ( batch.isSkipped() ) {
+        // Rolled back after the failure of an other batch, which is reported
+        continue;
+      }
+      processFailedRows( batch.getFailedRows(), batch.getFailedRowExceptions() );
+      if ( batch.isSuccessful() ) {
+        for ( Object[] row : batch.getRows() ) {
+          putRow( data.outputRowMeta, row );
+          incrementLinesOutput();
+        }
+        continue;
+      }
+      KettleDatabaseBatchException be = batch.getBatchException();
+      if ( be == null ) {
+        throw new KettleException( "Error inserting rows into table [" + batch.getTableName() + "] on connection #"
+          + ( batch.getConnectionNr() + 1 ), batch.getException() );
+      }
+      if ( getStepMeta().isDoingErrorHandling() ) {
+        processBatchException( be.toString(), be.getUpdateCounts(), be.getExceptionsList(), batch.getRows() );
+      } else {
+        throw new KettleException( getBatchErrorMessage( batch.getTableName(), be ), be );
+      }
+    }
+  }
+
+  /**
+   * Write the rows of the batches executed by the batch writer to the next steps or to the error handling.
+   */
+  private void processFinishedBatches( List<TableOutputBatchWriter.Batch> batches ) throws KettleException {
+    for ( TableOutputBatchWriter.Batch batch : batches ) {
+      if ( batch.isSkipped() ) {
+        // Rolled back after the failure of an earlier batch, which is reported
+        continue;
+      }
+      processFailedRows( batch.getFailedRows(), batch.getFailedRowExceptions() );
+      if ( batch.isSuccessful() ) {
+        for ( Object[] row : batch.getRows() ) {
+          putRow( data.outputRowMeta, row );
+          incrementLinesOutput();
+        }
+        continue;
+      }
+      KettleDatabaseBatchException be = batch.getBatchException();
+      if ( be == null ) {
+        throw new KettleException( "Error inserting rows into table [" + batch.getTableName() + "]", batch
+          .getException() );
+      }
+      if ( getStepMeta().isDoingErrorHandling() ) {
+        processBatchException( be.toString(), be.getUpdateCounts(), be.getExceptionsList(), batch.getRows() );
+      } else {
+        throw new KettleException( getBatchErrorMessage( batch.getTableName(), be ), be );
+      }
+    }
+  }
+
+  /**
+   * Write the rows the writer couldn't bind to the error handling or, when errors are ignored, to the next steps.
+   */
+  private void processFailedRows( List<Object[]> rows, List<KettleDatabaseException> exceptions )
+    throws KettleException {
+    for ( int i = 0; i < rows.size(); i++ ) {
+      Object[] row = rows.get( i );
+      KettleDatabaseException dbe = exceptions.get( i );
+      if ( getStepMeta().isDoingErrorHandling() ) {
+        if ( isRowLevel() ) {
+          logRowlevel( "Written row to error handling : " + getInputRowMeta().getString( row ) );
+        }
+        putError( getInputRowMeta(), row, 1L, dbe.toString(), null, "TOP001" );
+      } else {
+        logIgnoredError( getInputRowMeta(), row, dbe );
+        putRow( data.outputRowMeta, row );
+        incrementLinesOutput();
+      }
+    }
+  }
+
+  private String getBatchErrorMessage( String tableName, KettleDatabaseBatchException be ) {
+    StringBuilder msg = new StringBuilder( "Error batch inserting rows into table [" + tableName + "]." );
+    msg.append( Const.CR );
+    msg.append( "Errors encountered (first 10):" ).append( Const.CR );
+    for ( int x = 0; x < be.getExceptionsList().size() && x < 10; x++ ) {
+      Exception exception = be.getExceptionsList().get( x );
+      if ( exception.getMessage() != null ) {
+        msg.append( exception.getMessage() ).append( Const.CR );
+      }
+    }
+    return msg.toString();
+  }
+
   private void processBatchException( String errorMessage, int[] updateCounts, List<Exception> exceptionsList ) throws KettleException {
+    processBatchException( errorMessage, updateCounts, exceptionsList, data.batchBuffer );
+  }
+
+  private void processBatchException( String errorMessage, int[] updateCounts, List<Exception> exceptionsList,
+    List<Object[]> batchBuffer ) throws KettleException {
     // There was an error with the commit
     // We should put all the failing rows out there...
     //
     if ( updateCounts != null ) {
       int errNr = 0;
       for ( int i = 0; i < updateCounts.length; i++ ) {
-        Object[] row = data.batchBuffer.get( i );
+        Object[] row = batchBuffer.get( i );
         if ( updateCounts[i] > 0 ) {
           // send the error foward
           putRow( data.outputRowMeta, row );
@@ -458,14 +597,14 @@ public class TableOutput extends BaseStep implements StepInterface {
       // If we don't have update counts, it probably means the DB doesn't support it.
       // In this case we don't have a choice but to consider all inserted rows to be error rows.
       //
-      for ( int i = 0; i < data.batchBuffer.size(); i++ ) {
-        Object[] row = data.batchBuffer.get( i );
+      for ( int i = 0; i < batchBuffer.size(); i++ ) {
+        Object[] row = batchBuffer.get( i );
         putError( data.outputRowMeta, row, 1L, errorMessage, null, "TOP0003" );
       }
     }
 
     // Clear the buffer afterwards...
-    data.batchBuffer.clear();
+    batchBuffer.clear();
   }
 
   public boolean init( StepMetaInterface smi, StepDataInterface sdi ) {
@@ -544,6 +683,28 @@ public class TableOutput extends BaseStep implements StepInterface {
           data.tableName = environmentSubstitute( meta.getTableName() );
         }
 
+        // Write the batches over several connections at the same time?
+        //
+        int pendingBatches = Const.toInt( environmentSubstitute( meta.getPendingBatches() ), 0 );
+        int parallelConnections = Const.toInt( environmentSubstitute( meta.getParallelConnections() ), 1 );
+        if ( parallelConnections > 1 && getTransMeta().isUsingUniqueConnections() ) {
+          // The other connections can't take part in the single transaction of the transformation
+          throw new KettleException( BaseMessages.getString(
+            PKG, "TableOutput.Exception.ParallelConnectionsWithUniqueConnections", parallelConnections ) );
+        }
+        if ( parallelConnections > 1 && data.batchMode && data.db.getUseBatchInsert( data.batchMode ) ) {
+          initParallelWriter( parallelConnections, pendingBatches );
+        } else if ( pendingBatches > 0 && data.batchMode && data.db.getUseBatchInsert( data.batchMode ) ) {
+          // Execute the batches in the background while the next ones are filled
+          data.batchWriter =
+            new TableOutputBatchWriter( data.db, environmentSubstitute( meta.getSchemaName() ), data.commitSize,
+              pendingBatches, getStepMeta().isDoingErrorHandling(), getStepMeta().isDoingErrorHandling()
+                || meta.ignoreErrors(), getStepname() + " batch writer" );
+          if ( log.isBasic() ) {
+            logBasic( BaseMessages.getString( PKG, "TableOutput.Log.PendingBatches", pendingBatches ) );
+          }
+        }
+
         return true;
       } catch ( KettleException e ) {
         logError( "An error occurred intialising this step: " + e.getMessage() );
@@ -554,6 +715,33 @@ public class TableOutput extends BaseStep implements StepInterface {
     return false;
   }
 
+  private void initParallelWriter( int parallelConnections, int pendingBatches ) throws KettleException {
+    List<Database> databases = new ArrayList<Database>();
+    databases.add( data.db );
+    for ( int i = 1; i < parallelConnections; i++ ) {
+      Database db = new Database( this, meta.getDatabaseMeta() );
+      db.shareVariablesWith( this );
+      data.parallelDatabases.add( db );
+      db.connect( getPartitionID() );
+      db.setCommit( data.commitSize );
+      databases.add( db );
+    }
+
+    String routingField = environmentSubstitute( meta.getRoutingField() );
+    if ( !Utils.isEmpty( routingField ) ) {
+      data.routingField = routingField;
+    }
+
+    data.parallelWriter =
+      new TableOutputParallelWriter( databases, environmentSubstitute( meta.getSchemaName() ), data.commitSize,
+        pendingBatches, getStepMeta().isDoingErrorHandling(), getStepMeta().isDoingErrorHandling()
+          || meta.ignoreErrors(), getStepname() + " writer" );
+    if ( log.isBasic() ) {
+      logBasic( BaseMessages.getString( PKG, "TableOutput.Log.ParallelConnections", parallelConnections, Const.NVL(
+        data.routingField, "" ) ) );
+    }
+  }
+
   void truncateTable() throws KettleDatabaseException {
     if ( !meta.isPartitioningEnabled() && !meta.isTableNameInField() ) {
       // Only the first one truncates in a non-partitioned step copy
@@ -573,6 +761,16 @@ public class TableOutput extends BaseStep implements StepInterface {
 
     if ( data.db != null ) {
       try {
+        if ( data.parallelWriter != null && getErrors() == 0 ) {
+          // Execute the batches still being filled and commit all connections together
+          processFinishedParallelBatches( data.parallelWriter.flush() );
+          data.parallelWriter.commit();
+          logParallelWriterStatistics();
+        }
+        if ( data.batchWriter != null ) {
+          // Execute the batches still being filled and wait for all of them
+          processFinishedBatches( data.batchWriter.flush() );
+        }
         for ( String schemaTable : data.preparedStatements.keySet() ) {
           // Get a commit counter per prepared statement to keep track of separate tables, etc.
           //
@@ -616,6 +814,16 @@ public class TableOutput extends BaseStep implements StepInterface {
       } finally {
         setOutputDone();
 
+        if ( data.batchWriter != null ) {
+          data.batchWriter.close();
+        }
+        if ( data.parallelWriter != null ) {
+          data.parallelWriter.close();
+          if ( getErrors() > 0 ) {
+            data.parallelWriter.rollback();
+          }
+        }
+
         if ( getErrors() > 0 ) {
           try {
             data.db.rollback();
@@ -624,12 +832,28 @@ public class TableOutput extends BaseStep implements StepInterface {
           }
         }
 
+        for ( Database db : data.parallelDatabases ) {
+          db.disconnect();
+        }
         data.db.disconnect();
       }
       super.dispose( smi, sdi );
     }
   }
 
+  private void logParallelWriterStatistics() {
+    if ( !log.isBasic() ) {
+      return;
+    }
+    for ( int i = 0; i < data.parallelWriter.getNrConnections(); i++ ) {
+      long rows = data.parallelWriter.getRowsWritten( i );
+      long time = data.parallelWriter.getExecutionTime( i );
+      long rowsPerSecond = time > 0 ? rows * 1000L / time : rows;
+      logBasic( BaseMessages.getString( PKG, "TableOutput.Log.ConnectionStatistics", i + 1, rows,
+        data.parallelWriter.getBatchesWritten( i ), time, rowsPerSecond ) );
+    }
+  }
+
   /**
    * Allows subclasses of TableOuput to get hold of the step meta
    *
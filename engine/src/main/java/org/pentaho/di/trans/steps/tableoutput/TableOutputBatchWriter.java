@@ -0,0 +1,418 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.trans.steps.tableoutput;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseBatchException;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Executes the insert batches of a Table Output step on a separate thread, so that the step can collect the rows of the
+ * next batch while the database works on the previous one.<br>
+ * <br>
+ * The step thread only collects the rows in batches per table. The writer thread does everything on the database
+ * connection: it prepares the statements, binds the rows, executes the batches and commits them, since neither a JDBC
+ * connection nor a {@link Database} may be used by two threads at the same time. The step doesn't use the connection
+ * until the writer is flushed. A batch is handed over once it holds as many rows as the commit size and is committed
+ * on its own, in the order in which they were handed over, so the commit boundaries are the same as when the step
+ * executes them itself. At most a fixed number of batches is pending: handing over another one waits for the oldest to
+ * finish. Finished batches are returned to the step thread, which writes their rows to the next steps or to the error
+ * handling.<br>
+ * <br>
+ * Once a batch fails and the error isn't handled by the step, the transaction is rolled back and the batches still
+ * pending are skipped.
+ */
+public class TableOutputBatchWriter {
+
+  /**
+   * A batch of rows for one table.
+   */
+  public static class Batch {
+    private final String tableName;
+    private final RowMetaInterface insertRowMeta;
+    private final List<Object[]> insertRows = new ArrayList<Object[]>();
+    private final List<Object[]> outputRows = new ArrayList<Object[]>();
+    private final List<Object[]> failedRows = new ArrayList<Object[]>();
+    private final List<KettleDatabaseException> failedRowExceptions = new ArrayList<KettleDatabaseException>();
+
+    private KettleDatabaseBatchException batchException;
+    private KettleDatabaseException exception;
+    private boolean skipped;
+
+    Batch( String tableName, RowMetaInterface insertRowMeta ) {
+      this.tableName = tableName;
+      this.insertRowMeta = insertRowMeta;
+    }
+
+    public String getTableName() {
+      return tableName;
+    }
+
+    /**
+     * @return the output rows of the rows in the batch, in the order they were added
+     */
+    public List<Object[]> getRows() {
+      return outputRows;
+    }
+
+    /**
+     * @return the output rows of the rows that couldn't be bound to the statement, for example because a value can't
+     *         be converted. They are not part of the batch.
+     */
+    public List<Object[]> getFailedRows() {
+      return failedRows;
+    }
+
+    /**
+     * @return the errors of the failed rows, in the same order
+     */
+    public List<KettleDatabaseException> getFailedRowExceptions() {
+      return failedRowExceptions;
+    }
+
+    /**
+     * @return the error reported by the database for the batch or null if the batch was executed
+     */
+    public KettleDatabaseBatchException getBatchException() {
+      return batchException;
+    }
+
+    /**
+     * @return an unexpected error binding, executing or committing the batch or null
+     */
+    public KettleDatabaseException getException() {
+      return exception;
+    }
+
+    /**
+     * @return true if the batch wasn't executed because an earlier batch failed
+     */
+    public boolean isSkipped() {
+      return skipped;
+    }
+
+    public boolean isSuccessful() {
+      return batchException == null && exception == null && !skipped;
+    }
+  }
+
+  private final Database db;
+  private final String schemaName;
+  private final int batchSize;
+  private final int maxPending;
+  private final boolean commitOnBatchError;
+  private final boolean continueOnRowError;
+  private final ExecutorService executor;
+
+  private final Deque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+  private final Map<String, Batch> filling = new LinkedHashMap<String, Batch>();
+
+  /** Only used by the writer thread */
+  private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+  private volatile boolean failed;
+
+  /**
+   * @param db
+   *          the connected database to execute the batches on, not to be used by the step until the writer is flushed
+   * @param schemaName
+   *          the schema of the tables
+   * @param batchSize
+   *          the number of rows in a batch, the commit size
+   * @param maxPending
+   *          the maximum number of batches handed over and not finished yet
+   * @param commitOnBatchError
+   *          true to commit the rows the database accepted when a batch fails (the step does error handling), false
+   *          to roll back and stop executing batches
+   * @param continueOnRowError
+   *          true to leave a row that can't be bound out of its batch and report it (the step does error handling or
+   *          ignores errors), false to fail the batch
+   * @param threadName
+   *          the name of the thread executing the batches
+   */
+  public TableOutputBatchWriter( Database db, String schemaName, int batchSize, int maxPending,
+    boolean commitOnBatchError, boolean continueOnRowError, final String threadName ) {
+    this.db = db;
+    this.schemaName = schemaName;
+    this.batchSize = Math.max( 1, batchSize );
+    this.maxPending = Math.max( 1, maxPending );
+    this.commitOnBatchError = commitOnBatchError;
+    this.continueOnRowError = continueOnRowError;
+    this.executor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+      @Override
+      public Thread newThread( Runnable r ) {
+        Thread thread = Executors.defaultThreadFactory().newThread( r );
+        thread.setDaemon( true );
+        thread.setName( threadName );
+        return thread;
+      }
+    } );
+  }
+
+  public int getMaxPending() {
+    return maxPending;
+  }
+
+  /**
+   * @return the number of batches handed over and not returned yet
+   */
+  public int getNrPending() {
+    return pending.size();
+  }
+
+  /**
+   * Add a row to the batch of its table, handing the batch over when it is full.
+   *
+   * @param tableName
+   *          the table to insert into
+   * @param insertRowMeta
+   *          the metadata of the row to insert
+   * @param insertRow
+   *          the row to insert
+   * @param outputRow
+   *          the row to pass on once the row was inserted
+   * @return the batches that finished in the meantime, oldest first. When too many batches are pending this waits
+   *         for the oldest ones to finish.
+   * @throws KettleException
+   *           in case the writer was interrupted
+   */
+  public List<Batch> addRow( String tableName, RowMetaInterface insertRowMeta, Object[] insertRow,
+    Object[] outputRow ) throws KettleException {
+    Batch batch = filling.get( tableName );
+    if ( batch == null ) {
+      batch = new Batch( tableName, insertRowMeta );
+      filling.put( tableName, batch );
+    }
+    batch.insertRows.add( insertRow );
+    batch.outputRows.add( outputRow );
+
+    List<Batch> finished = new ArrayList<Batch>();
+    if ( batch.insertRows.size() >= batchSize ) {
+      filling.remove( tableName );
+      submit( batch );
+    }
+    while ( pending.size() > maxPending || ( !pending.isEmpty() && pending.peek().isDone() ) ) {
+      finished.add( waitForOldest() );
+    }
+    return finished;
+  }
+
+  /**
+   * Hand over the batches that are not full yet and wait for all batches to finish. The connection can be used by the
+   * step again afterwards.
+   *
+   * @return the finished batches, oldest first
+   * @throws KettleException
+   *           in case the writer was interrupted
+   */
+  public List<Batch> flush() throws KettleException {
+    for ( Batch batch : filling.values() ) {
+      submit( batch );
+    }
+    filling.clear();
+    List<Batch> finished = new ArrayList<Batch>();
+    while ( !pending.isEmpty() ) {
+      finished.add( waitForOldest() );
+    }
+    return finished;
+  }
+
+  /**
+   * Stop the writer thread and close the statements. Batches still pending are skipped, this waits for the batch being
+   * executed.
+   */
+  public void close() {
+    failed = true;
+    for ( Future<Batch> future : pending ) {
+      try {
+        future.get();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch ( ExecutionException e ) {
+        // Ignore, we are closing down
+      }
+    }
+    pending.clear();
+    filling.clear();
+    // Close the statements on the thread that uses them
+    try {
+      executor.submit( new Runnable() {
+        @Override
+        public void run() {
+          closeStatements( statements );
+        }
+      } ).get();
+    } catch ( Exception e ) {
+      // Ignore, we are closing down
+    }
+    executor.shutdown();
+  }
+
+  private void submit( final Batch batch ) {
+    pending.add( executor.submit( new Callable<Batch>() {
+      @Override
+      public Batch call() {
+        execute( batch );
+        return batch;
+      }
+    } ) );
+  }
+
+  private Batch waitForOldest() throws KettleException {
+    Future<Batch> future = pending.poll();
+    try {
+      return future.get();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( "Interrupted while waiting for a batch insert to finish", e );
+    } catch ( ExecutionException e ) {
+      throw new KettleException( "Unexpected error executing a batch insert", e.getCause() );
+    }
+  }
+
+  /**
+   * Runs on the writer thread.
+   */
+  void execute( Batch batch ) {
+    if ( failed ) {
+      batch.skipped = true;
+      return;
+    }
+    PreparedStatement statement = null;
+    try {
+      statement = getStatement( db, statements, schemaName, batch.tableName, batch.insertRowMeta );
+      bindRows( db, statement, batch.insertRowMeta, batch.insertRows, batch.outputRows, batch.failedRows,
+        batch.failedRowExceptions, continueOnRowError );
+      if ( !batch.outputRows.isEmpty() ) {
+        statement.executeBatch();
+        db.commit();
+        statement.clearBatch();
+      }
+      return;
+    } catch ( SQLException ex ) {
+      batch.batchException = Database.createKettleDatabaseBatchException( "Error updating batch", ex );
+    } catch ( KettleDatabaseException ex ) {
+      batch.exception = ex;
+    } catch ( Exception ex ) {
+      batch.exception = new KettleDatabaseException( "Unexpected error inserting row", ex );
+    }
+
+    try {
+      if ( statement != null ) {
+        db.clearBatch( statement );
+      }
+      if ( commitOnBatchError && batch.batchException != null ) {
+        db.commit( true );
+      } else {
+        failed = true;
+        db.rollback();
+      }
+    } catch ( KettleDatabaseException e ) {
+      failed = true;
+      if ( batch.exception == null ) {
+        batch.exception = e;
+      }
+    }
+  }
+
+  /**
+   * Get the insert statement of a table, preparing it the first time. Only to be called by the thread using the
+   * connection.
+   */
+  static PreparedStatement getStatement( Database db, Map<String, PreparedStatement> statements, String schemaName,
+    String tableName, RowMetaInterface insertRowMeta ) throws KettleDatabaseException {
+    PreparedStatement statement = statements.get( tableName );
+    if ( statement == null ) {
+      String sql = db.getInsertStatement( schemaName, tableName, insertRowMeta );
+      statement = db.prepareSQL( sql );
+      statements.put( tableName, statement );
+    }
+    return statement;
+  }
+
+  /**
+   * Bind the rows to the statement and add them to its batch. Only to be called by the thread using the connection.
+   *
+   * @param outputRows
+   *          the output rows of the rows, the ones of the rows that can't be bound are moved to the failed rows
+   * @param continueOnRowError
+   *          true to move a row that can't be bound to the failed rows, false to throw the error
+   * @throws KettleDatabaseException
+   *           in case a row can't be bound and continueOnRowError is false
+   * @throws SQLException
+   *           in case a row can't be added to the batch
+   */
+  static void bindRows( Database db, PreparedStatement statement, RowMetaInterface insertRowMeta,
+    List<Object[]> insertRows, List<Object[]> outputRows, List<Object[]> failedRows,
+    List<KettleDatabaseException> failedRowExceptions, boolean continueOnRowError ) throws KettleDatabaseException,
+    SQLException {
+    List<Object[]> boundRows = new ArrayList<Object[]>( outputRows.size() );
+    for ( int i = 0; i < insertRows.size(); i++ ) {
+      try {
+        db.setValues( insertRowMeta, insertRows.get( i ), statement );
+      } catch ( KettleDatabaseException e ) {
+        if ( !continueOnRowError ) {
+          throw e;
+        }
+        failedRows.add( outputRows.get( i ) );
+        failedRowExceptions.add( e );
+        continue;
+      }
+      statement.addBatch();
+      boundRows.add( outputRows.get( i ) );
+    }
+    if ( !failedRows.isEmpty() ) {
+      outputRows.clear();
+      outputRows.addAll( boundRows );
+    }
+  }
+
+  static void closeStatements( Map<String, PreparedStatement> statements ) {
+    for ( PreparedStatement statement : statements.values() ) {
+      try {
+        statement.close();
+      } catch ( SQLException e ) {
+        // Ignore close errors
+      }
+    }
+    statements.clear();
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -78,6 +78,19 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
 
   public int commitSize;
 
+  /** Executes the batches in the background, null if the step executes them itself */
+  public TableOutputBatchWriter batchWriter;
+
+  /** Writes the batches over several connections, null if only one connection is used */
+  public TableOutputParallelWriter parallelWriter;
+
+  /** The connections opened for the parallel writer next to {@link #db} */
+  public List<Database> parallelDatabases;
+
+  /** The field to route the rows to a connection with, null to use the connections in turn */
+  public String routingField;
+  public int indexOfRoutingField;
+
   public TableOutputData() {
     super();
 
@@ -92,6 +105,8 @@ public class TableOutputData extends BaseStepData implements StepDataInterface {
 
     batchBuffer = new ArrayList<Object[]>();
     commitCounterMap = new HashMap<String, Integer>();
+    parallelDatabases = new ArrayList<Database>();
+    indexOfRoutingField = -1;
 
     releaseSavepoint = true;
   }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -79,6 +79,15 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
   private boolean ignoreErrors;
   private boolean useBatchUpdate;
 
+  /** The number of batches executed in the background while the next one is filled, 0 to execute them in the step */
+  private String pendingBatches;
+
+  /** The number of connections to write the batches over at the same time, 1 to use one connection */
+  private String parallelConnections;
+
+  /** The field to route the rows to a connection with, empty to use the connections in turn */
+  private String routingField;
+
   private boolean partitioningEnabled;
   private String partitioningField;
   private boolean partitioningDaily;
@@ -402,6 +411,52 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     return useBatchUpdate;
   }
 
+  /**
+   * @return the number of batches executed in the background while the next one is filled, 0 (or empty) to execute
+   *         the batches in the step thread
+   */
+  public String getPendingBatches() {
+    return pendingBatches;
+  }
+
+  /**
+   * @param pendingBatches
+   *          the number of batches executed in the background while the next one is filled
+   */
+  public void setPendingBatches( String pendingBatches ) {
+    this.pendingBatches = pendingBatches;
+  }
+
+  /**
+   * @return the number of connections to write the batches over at the same time, 1 (or empty) to use one connection
+   */
+  public String getParallelConnections() {
+    return parallelConnections;
+  }
+
+  /**
+   * @param parallelConnections
+   *          the number of connections to write the batches over at the same time
+   */
+  public void setParallelConnections( String parallelConnections ) {
+    this.parallelConnections = parallelConnections;
+  }
+
+  /**
+   * @return the field to route the rows to a connection with, empty to use the connections in turn
+   */
+  public String getRoutingField() {
+    return routingField;
+  }
+
+  /**
+   * @param routingField
+   *          the field to route the rows to a connection with, rows with the same value use the same connection
+   */
+  public void setRoutingField( String routingField ) {
+    this.routingField = routingField;
+  }
+
   private void readData( Node stepnode, List<? extends SharedObjectInterface> databases ) throws KettleXMLException {
     try {
       String con = XMLHandler.getTagValue( stepnode, "connection" );
@@ -412,6 +467,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       truncateTable = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "truncate" ) );
       ignoreErrors = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "ignore_errors" ) );
       useBatchUpdate = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "use_batch" ) );
+      pendingBatches = XMLHandler.getTagValue( stepnode, "pending_batches" );
+      parallelConnections = XMLHandler.getTagValue( stepnode, "parallel_connections" );
+      routingField = XMLHandler.getTagValue( stepnode, "routing_field" );
 
       // If not present it will be false to be compatible with pre-v3.2
       specifyFields = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "specify_fields" ) );
@@ -448,6 +506,8 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     databaseMeta = null;
     tableName = "";
     commitSize = "1000";
+    pendingBatches = "0";
+    parallelConnections = "1";
 
     partitioningEnabled = false;
     partitioningMonthly = true;
@@ -470,6 +530,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
     retval.append( "    " + XMLHandler.addTagValue( "truncate", truncateTable ) );
     retval.append( "    " + XMLHandler.addTagValue( "ignore_errors", ignoreErrors ) );
     retval.append( "    " + XMLHandler.addTagValue( "use_batch", useBatchUpdate ) );
+    retval.append( "    " + XMLHandler.addTagValue( "pending_batches", pendingBatches ) );
+    retval.append( "    " + XMLHandler.addTagValue( "parallel_connections", parallelConnections ) );
+    retval.append( "    " + XMLHandler.addTagValue( "routing_field", routingField ) );
     retval.append( "    " + XMLHandler.addTagValue( "specify_fields", specifyFields ) );
 
     retval.append( "    " + XMLHandler.addTagValue( "partitioning_enabled", partitioningEnabled ) );
@@ -506,6 +569,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       truncateTable = rep.getStepAttributeBoolean( id_step, "truncate" );
       ignoreErrors = rep.getStepAttributeBoolean( id_step, "ignore_errors" );
       useBatchUpdate = rep.getStepAttributeBoolean( id_step, "use_batch" );
+      pendingBatches = rep.getStepAttributeString( id_step, "pending_batches" );
+      parallelConnections = rep.getStepAttributeString( id_step, "parallel_connections" );
+      routingField = rep.getStepAttributeString( id_step, "routing_field" );
       specifyFields = rep.getStepAttributeBoolean( id_step, "specify_fields" );
 
       partitioningEnabled = rep.getStepAttributeBoolean( id_step, "partitioning_enabled" );
@@ -544,6 +610,9 @@ public class TableOutputMeta extends BaseStepMeta implements StepMetaInterface,
       rep.saveStepAttribute( id_transformation, id_step, "truncate", truncateTable );
       rep.saveStepAttribute( id_transformation, id_step, "ignore_errors", ignoreErrors );
       rep.saveStepAttribute( id_transformation, id_step, "use_batch", useBatchUpdate );
+      rep.saveStepAttribute( id_transformation, id_step, "pending_batches", pendingBatches );
+      rep.saveStepAttribute( id_transformation, id_step, "parallel_connections", parallelConnections );
+      rep.saveStepAttribute( id_transformation, id_step, "routing_field", routingField );
       rep.saveStepAttribute( id_transformation, id_step, "specify_fields", specifyFields );
 
       rep.saveStepAttribute( id_transformation, id_step, "partitioning_enabled", partitioningEnabled );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -48,6 +48,9 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
       SPECIFY_DATABASE_FIELDS( ValueMetaInterface.TYPE_STRING, "Specify database fields? (Y/N)" ),
       IGNORE_INSERT_ERRORS( ValueMetaInterface.TYPE_STRING, "Ignore insert errors? (Y/N)" ),
       USE_BATCH_UPDATE( ValueMetaInterface.TYPE_STRING, "Use batch update for inserts? (Y/N)" ),
+      PENDING_BATCHES( ValueMetaInterface.TYPE_STRING, "Number of batches executed in the background" ),
+      PARALLEL_CONNECTIONS( ValueMetaInterface.TYPE_STRING, "Number of connections to write over" ),
+      ROUTING_FIELD( ValueMetaInterface.TYPE_STRING, "Field to route the rows to a connection with" ),
 
       PARTITION_OVER_TABLES( ValueMetaInterface.TYPE_STRING, "Partition data over tables? (Y/N)" ),
       PARTITIONING_FIELD( ValueMetaInterface.TYPE_STRING, "Partitioning field" ),
@@ -106,7 +109,8 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
     Entry[] topEntries =
       new Entry[] {
         Entry.TARGET_SCHEMA, Entry.TARGET_TABLE, Entry.COMMIT_SIZE, Entry.TRUNCATE_TABLE,
-        Entry.SPECIFY_DATABASE_FIELDS, Entry.IGNORE_INSERT_ERRORS, Entry.USE_BATCH_UPDATE,
+        Entry.SPECIFY_DATABASE_FIELDS, Entry.IGNORE_INSERT_ERRORS, Entry.USE_BATCH_UPDATE, Entry.PENDING_BATCHES,
+        Entry.PARALLEL_CONNECTIONS, Entry.ROUTING_FIELD,
         Entry.PARTITION_OVER_TABLES, Entry.PARTITIONING_FIELD, Entry.PARTITION_DATA_PER,
         Entry.TABLE_NAME_DEFINED_IN_FIELD, Entry.TABLE_NAME_FIELD, Entry.STORE_TABLE_NAME,
         Entry.RETURN_AUTO_GENERATED_KEY, Entry.AUTO_GENERATED_KEY_FIELD, };
@@ -203,6 +207,15 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
         case USE_BATCH_UPDATE:
           meta.setUseBatchUpdate( "Y".equalsIgnoreCase( lookValue ) );
           break;
+        case PENDING_BATCHES:
+          meta.setPendingBatches( lookValue );
+          break;
+        case PARALLEL_CONNECTIONS:
+          meta.setParallelConnections( lookValue );
+          break;
+        case ROUTING_FIELD:
+          meta.setRoutingField( lookValue );
+          break;
         case PARTITION_OVER_TABLES:
           meta.setPartitioningEnabled( "Y".equalsIgnoreCase( lookValue ) );
           break;
@@ -251,6 +264,9 @@ public class TableOutputMetaInjection implements StepMetaInjectionInterface {
     list.add( StepInjectionUtil.getEntry( Entry.SPECIFY_DATABASE_FIELDS, meta.specifyFields() ) );
     list.add( StepInjectionUtil.getEntry( Entry.IGNORE_INSERT_ERRORS, meta.ignoreErrors() ) );
     list.add( StepInjectionUtil.getEntry( Entry.USE_BATCH_UPDATE, meta.useBatchUpdate() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.PENDING_BATCHES, meta.getPendingBatches() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.PARALLEL_CONNECTIONS, meta.getParallelConnections() ) );
+    list.add( StepInjectionUtil.getEntry( Entry.ROUTING_FIELD, meta.getRoutingField() ) );
 
     list.add( StepInjectionUtil.getEntry( Entry.PARTITION_OVER_TABLES, meta.isPartitioningEnabled() ) );
     list.add( StepInjectionUtil.getEntry( Entry.PARTITIONING_FIELD, meta.getPartitioningField() ) );
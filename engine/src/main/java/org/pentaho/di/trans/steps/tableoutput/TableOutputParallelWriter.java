@@ -0,0 +1,464 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseBatchException;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+
+/**
+ * Writes the rows of a Table Output step over several database connections at the same time.<br>
+ * <br>
+ * Rows are collected in batches per connection and per table. A row goes to the connection given by the step (for
+ * example based on the hash of a key field, so the rows of one key always use the same connection) or, without one,
+ * to the connections in turn, one batch at a time. Every connection has its own thread that binds the rows of a batch,
+ * executes it and keeps its prepared statements. At most a fixed number of batches is pending per connection.<br>
+ * <br>
+ * The batches are not committed: all connections are committed together with {@link #commit()} after the last batch
+ * was executed, or rolled back together with {@link #rollback()}. Once a batch fails and the error isn't handled by
+ * the step, the batches still pending on all connections are skipped.
+ */
+public class TableOutputParallelWriter {
+
+  /**
+   * A batch of rows for one table on one connection.
+   */
+  public static class Batch {
+    private final int connectionNr;
+    private final String tableName;
+    private final RowMetaInterface insertRowMeta;
+    private final List<Object[]> insertRows = new ArrayList<Object[]>();
+    private final List<Object[]> outputRows = new ArrayList<Object[]>();
+    private final List<Object[]> failedRows = new ArrayList<Object[]>();
+    private final List<KettleDatabaseException> failedRowExceptions = new ArrayList<KettleDatabaseException>();
+
+    private KettleDatabaseBatchException batchException;
+    private KettleDatabaseException exception;
+    private boolean skipped;
+
+    Batch( int connectionNr, String tableName, RowMetaInterface insertRowMeta ) {
+      this.connectionNr = connectionNr;
+      this.tableName = tableName;
+      this.insertRowMeta = insertRowMeta;
+    }
+
+    public int getConnectionNr() {
+      return connectionNr;
+    }
+
+    public String getTableName() {
+      return tableName;
+    }
+
+    /**
+     * @return the output rows of the rows in the batch, in the order they were added
+     */
+    public List<Object[]> getRows() {
+      return outputRows;
+    }
+
+    /**
+     * @return the output rows of the rows that couldn't be bound to the statement, for example because a value can't
+     *         be converted. They are not part of the batch.
+     */
+    public List<Object[]> getFailedRows() {
+      return failedRows;
+    }
+
+    /**
+     * @return the errors of the failed rows, in the same order
+     */
+    public List<KettleDatabaseException> getFailedRowExceptions() {
+      return failedRowExceptions;
+    }
+
+    /**
+     * @return the error reported by the database for the batch or null if the batch was executed
+     */
+    public KettleDatabaseBatchException getBatchException() {
+      return batchException;
+    }
+
+    /**
+     * @return an unexpected error binding or executing the batch or null
+     */
+    public KettleDatabaseException getException() {
+      return exception;
+    }
+
+    /**
+     * @return true if the batch wasn't executed because an earlier batch failed
+     */
+    public boolean isSkipped() {
+      return skipped;
+    }
+
+    public boolean isSuccessful() {
+      return batchException == null && exception == null && !skipped;
+    }
+  }
+
+  /**
+   * One connection with the thread executing its batches.
+   */
+  private class ConnectionWriter {
+    private final int nr;
+    private final Database db;
+    private final ExecutorService executor;
+    private final Deque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+    private final Map<String, Batch> filling = new LinkedHashMap<String, Batch>();
+
+    /** Only used by the thread of this connection */
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+
+    private volatile long rowsWritten;
+    private volatile long batchesWritten;
+    private volatile long executionNanos;
+
+    ConnectionWriter( int nr, Database db, final String threadName ) {
+      this.nr = nr;
+      this.db = db;
+      this.executor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = Executors.defaultThreadFactory().newThread( r );
+          thread.setDaemon( true );
+          thread.setName( threadName );
+          return thread;
+        }
+      } );
+    }
+
+    void submit( final Batch batch ) {
+      pending.add( executor.submit( new Callable<Batch>() {
+        @Override
+        public Batch call() {
+          execute( batch );
+          return batch;
+        }
+      } ) );
+    }
+
+    Batch waitForOldest() throws KettleException {
+      Future<Batch> future = pending.poll();
+      try {
+        return future.get();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new KettleException( "Interrupted while waiting for a batch insert to finish", e );
+      } catch ( ExecutionException e ) {
+        throw new KettleException( "Unexpected error executing a batch insert", e.getCause() );
+      }
+    }
+
+    /**
+     * Runs on the thread of this connection.
+     */
+    void execute( Batch batch ) {
+      if ( failed.get() ) {
+        batch.skipped = true;
+        return;
+      }
+      long start = System.nanoTime();
+      PreparedStatement statement = null;
+      try {
+        statement =
+          TableOutputBatchWriter.getStatement( db, statements, schemaName, batch.tableName, batch.insertRowMeta );
+        TableOutputBatchWriter.bindRows( db, statement, batch.insertRowMeta, batch.insertRows, batch.outputRows,
+          batch.failedRows, batch.failedRowExceptions, continueOnRowError );
+        if ( !batch.outputRows.isEmpty() ) {
+          statement.executeBatch();
+          statement.clearBatch();
+
+          rowsWritten += batch.outputRows.size();
+          batchesWritten++;
+        }
+      } catch ( SQLException ex ) {
+        batch.batchException = Database.createKettleDatabaseBatchException( "Error updating batch", ex );
+      } catch ( KettleDatabaseException ex ) {
+        batch.exception = ex;
+      } catch ( Exception ex ) {
+        batch.exception = new KettleDatabaseException( "Unexpected error inserting row", ex );
+      } finally {
+        executionNanos += System.nanoTime() - start;
+      }
+
+      if ( !batch.isSuccessful() ) {
+        if ( statement != null ) {
+          try {
+            db.clearBatch( statement );
+          } catch ( KettleDatabaseException e ) {
+            // The transaction is rolled back anyway
+            failed.set( true );
+          }
+        }
+        if ( !continueOnBatchError || batch.batchException == null ) {
+          failed.set( true );
+        }
+      }
+    }
+
+    void closeStatements() {
+      TableOutputBatchWriter.closeStatements( statements );
+    }
+  }
+
+  private final List<ConnectionWriter> writers = new ArrayList<ConnectionWriter>();
+  private final String schemaName;
+  private final int batchSize;
+  private final int maxPending;
+  private final boolean continueOnBatchError;
+  private final boolean continueOnRowError;
+  private final AtomicBoolean failed = new AtomicBoolean( false );
+
+  private int roundRobin;
+
+  /**
+   * @param databases
+   *          the connected databases to write to, with auto commit disabled
+   * @param schemaName
+   *          the schema of the tables
+   * @param batchSize
+   *          the number of rows in a batch
+   * @param maxPending
+   *          the maximum number of batches handed over and not finished yet, per connection
+   * @param continueOnBatchError
+   *          true to keep on writing when the database reports errors for a batch (the step does error handling)
+   * @param continueOnRowError
+   *          true to leave a row that can't be bound out of its batch and report it (the step does error handling or
+   *          ignores errors), false to fail the batch
+   * @param threadName
+   *          the name of the threads, followed by the number of the connection
+   */
+  public TableOutputParallelWriter( List<Database> databases, String schemaName, int batchSize, int maxPending,
+    boolean continueOnBatchError, boolean continueOnRowError, String threadName ) {
+    this.schemaName = schemaName;
+    this.batchSize = Math.max( 1, batchSize );
+    this.maxPending = Math.max( 1, maxPending );
+    this.continueOnBatchError = continueOnBatchError;
+    this.continueOnRowError = continueOnRowError;
+    for ( int i = 0; i < databases.size(); i++ ) {
+      writers.add( new ConnectionWriter( i, databases.get( i ), threadName + " #" + ( i + 1 ) ) );
+    }
+  }
+
+  public int getNrConnections() {
+    return writers.size();
+  }
+
+  /**
+   * Add a row to the batch of a connection, handing the batch over when it is full.
+   *
+   * @param connectionNr
+   *          the connection to use (modulo the number of connections), or a negative number to use the connections
+   *          in turn, one batch at a time
+   * @param tableName
+   *          the table to insert into
+   * @param insertRowMeta
+   *          the metadata of the row to insert
+   * @param insertRow
+   *          the row to insert
+   * @param outputRow
+   *          the row to pass on once the row was inserted
+   * @return the batches that finished in the meantime, on any connection. When too many batches are pending on the
+   *         connection this waits for its oldest ones to finish.
+   * @throws KettleException
+   *           in case the writer was interrupted
+   */
+  public List<Batch> addRow( int connectionNr, String tableName, RowMetaInterface insertRowMeta, Object[] insertRow,
+    Object[] outputRow ) throws KettleException {
+    int nr = connectionNr < 0 ? roundRobin : connectionNr % writers.size();
+    ConnectionWriter writer = writers.get( nr );
+
+    Batch batch = writer.filling.get( tableName );
+    if ( batch == null ) {
+      batch = new Batch( nr, tableName, insertRowMeta );
+      writer.filling.put( tableName, batch );
+    }
+    batch.insertRows.add( insertRow );
+    batch.outputRows.add( outputRow );
+
+    List<Batch> finished = new ArrayList<Batch>();
+    if ( batch.insertRows.size() >= batchSize ) {
+      writer.filling.remove( tableName );
+      writer.submit( batch );
+      if ( connectionNr < 0 ) {
+        roundRobin = ( roundRobin + 1 ) % writers.size();
+      }
+      while ( writer.pending.size() > maxPending ) {
+        finished.add( writer.waitForOldest() );
+      }
+    }
+    collectFinished( finished );
+    return finished;
+  }
+
+  /**
+   * Hand over the batches that are not full yet and wait for all batches to finish.
+   *
+   * @return the finished batches
+   * @throws KettleException
+   *           in case the writer was interrupted
+   */
+  public List<Batch> flush() throws KettleException {
+    for ( ConnectionWriter writer : writers ) {
+      for ( Batch batch : writer.filling.values() ) {
+        writer.submit( batch );
+      }
+      writer.filling.clear();
+    }
+    List<Batch> finished = new ArrayList<Batch>();
+    for ( ConnectionWriter writer : writers ) {
+      while ( !writer.pending.isEmpty() ) {
+        finished.add( writer.waitForOldest() );
+      }
+    }
+    return finished;
+  }
+
+  /**
+   * Commit all connections, after {@link #flush()}. If a commit fails, the connections not committed yet are rolled
+   * back.
+   *
+   * @throws KettleDatabaseException
+   *           if a batch failed or in case of a commit error
+   */
+  public void commit() throws KettleDatabaseException {
+    if ( failed.get() ) {
+      rollback();
+      throw new KettleDatabaseException( "Not committing: a batch insert failed, all connections were rolled back" );
+    }
+    for ( int i = 0; i < writers.size(); i++ ) {
+      try {
+        writers.get( i ).db.commit( true );
+      } catch ( KettleDatabaseException e ) {
+        for ( int j = i; j < writers.size(); j++ ) {
+          rollbackQuietly( writers.get( j ) );
+        }
+        throw new KettleDatabaseException( "Error committing connection #" + ( i + 1 ) + ", " + i
+          + " connection(s) were committed already", e );
+      }
+    }
+  }
+
+  /**
+   * Roll back all connections, after {@link #flush()} or {@link #close()}.
+   */
+  public void rollback() {
+    failed.set( true );
+    for ( ConnectionWriter writer : writers ) {
+      rollbackQuietly( writer );
+    }
+  }
+
+  /**
+   * Skip the batches still pending, wait for the ones being executed and close the statements. The connections are
+   * not disconnected.
+   */
+  public void close() {
+    failed.set( true );
+    for ( final ConnectionWriter writer : writers ) {
+      for ( Future<Batch> future : writer.pending ) {
+        try {
+          future.get();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch ( ExecutionException e ) {
+          // Ignore, we are closing down
+        }
+      }
+      writer.pending.clear();
+      writer.filling.clear();
+      // Close the statements on the thread that uses them
+      try {
+        writer.executor.submit( new Runnable() {
+          @Override
+          public void run() {
+            writer.closeStatements();
+          }
+        } ).get();
+      } catch ( Exception e ) {
+        // Ignore, we are closing down
+      }
+      writer.executor.shutdown();
+    }
+  }
+
+  /**
+   * @return true if a batch failed and the batches still pending are skipped
+   */
+  public boolean isFailed() {
+    return failed.get();
+  }
+
+  public long getRowsWritten( int connectionNr ) {
+    return writers.get( connectionNr ).rowsWritten;
+  }
+
+  public long getBatchesWritten( int connectionNr ) {
+    return writers.get( connectionNr ).batchesWritten;
+  }
+
+  /**
+   * @return the time spent binding and executing batches on a connection, in milliseconds
+   */
+  public long getExecutionTime( int connectionNr ) {
+    return writers.get( connectionNr ).executionNanos / 1000000L;
+  }
+
+  private void collectFinished( List<Batch> finished ) throws KettleException {
+    for ( ConnectionWriter writer : writers ) {
+      while ( !writer.pending.isEmpty() && writer.pending.peek().isDone() ) {
+        finished.add( writer.waitForOldest() );
+      }
+    }
+  }
+
+  private void rollbackQuietly( ConnectionWriter writer ) {
+    try {
+      writer.db.rollback( true );
+    } catch ( KettleDatabaseException e ) {
+      // The connection is disconnected next
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -24,8 +24,13 @@ package org.pentaho.di.trans.steps.uniquerowsbyhashset;
 
 import java.util.Arrays;
 
+import org.pentaho.di.trans.TransMemoryQuota;
+
 // Package private
 class RowKey {
+  // The key object and its entry in the hash set
+  private static final long MEMORY_OVERHEAD = 64L;
+
   // TODO: This field needs to be set by a checkbox in the step dialog.
   private boolean storeValues;
   private int hash;
@@ -67,4 +72,11 @@ class RowKey {
   public int hashCode() {
     return hash;
   }
+
+  /**
+   * @return the estimated number of bytes this key takes in the hash set
+   */
+  long getMemorySize() {
+    return MEMORY_OVERHEAD + ( storeValues ? TransMemoryQuota.getRowSize( storedFieldValues ) : 0L );
+  }
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -47,10 +47,6 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
     data = (UniqueRowsByHashSetData) stepDataInterface; // create new data object.
   }
 
-  private boolean isUniqueRow( Object[] row ) {
-    return data.seen.add( new RowKey( row, data ) );
-  }
-
   public boolean processRow( StepMetaInterface smi, StepDataInterface sdi ) throws KettleException {
     meta = (UniqueRowsByHashSetMeta) smi;
     data = (UniqueRowsByHashSetData) sdi;
@@ -59,6 +55,7 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
     if ( r == null ) { // no more input to be expected...
 
       data.clearHashSet();
+      releaseMemoryUsage();
       setOutputDone();
       return false;
     }
@@ -95,7 +92,14 @@ public class UniqueRowsByHashSet extends BaseStep implements StepInterface {
       }
     }
 
-    if ( isUniqueRow( r ) ) {
+    RowKey rowKey = new RowKey( r, data );
+    if ( data.seen.add( rowKey ) ) {
+      // The keys of the rows seen are kept in memory: stop when they take more than the memory quota
+      //
+      if ( !addMemoryUsage( rowKey.getMemorySize() ) ) {
+        stopOnMemoryQuota();
+        return false;
+      }
       putRow( data.outputRowMeta, r );
     } else {
       incrementLinesRejected();
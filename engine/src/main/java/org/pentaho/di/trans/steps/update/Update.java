@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -181,6 +181,15 @@ public class Update extends BaseStep implements StepInterface {
         for ( int i = 0; i < lookupRow.length; i++ ) {
           updateRow[data.valuenrs.length + i] = lookupRow[i];
         }
+        if ( data.updateChangedOnly ) {
+          // every value is compared three times, see prepareUpdate()
+          int j = data.valuenrs.length + lookupRow.length;
+          for ( int i = 0; i < data.valuenrs.length; i++ ) {
+            updateRow[j++] = row[data.valuenrs[i]];
+            updateRow[j++] = row[data.valuenrs[i]];
+            updateRow[j++] = row[data.valuenrs[i]];
+          }
+        }
 
         if ( log.isRowLevel() ) {
           logRowlevel( BaseMessages.getString( PKG, "Update.Log.UpdateRow" )
@@ -188,7 +197,14 @@ public class Update extends BaseStep implements StepInterface {
         }
         data.db.setValues( data.updateParameterRowMeta, updateRow, data.prepStatementUpdate );
         data.db.insertRow( data.prepStatementUpdate, meta.useBatchUpdate(), true );
-        incrementLinesUpdated();
+        // Comparing the values in the WHERE clause, the database doesn't touch an unchanged row.
+        // In a batch the count isn't known yet, the row counts as updated.
+        //
+        if ( data.updateChangedOnly && data.db.getLastUpdateCount() == 0 ) {
+          incrementLinesSkipped();
+        } else {
+          incrementLinesUpdated();
+        }
       } else {
         incrementLinesSkipped();
       }
@@ -467,6 +483,29 @@ public class Update extends BaseStep implements StepInterface {
       }
       sql += " ) ) ";
     }
+
+    // Without a lookup, let the database skip the rows of which all values are the same
+    data.updateChangedOnly = meta.isSkipLookup() && meta.isUpdateChangedOnly() && meta.getUpdateLookup().length > 0;
+    if ( data.updateChangedOnly ) {
+      String parameterIsNull =
+        databaseMeta.requiresCastToVariousForIsNull() ? "CAST(? AS VARCHAR(256)) IS NULL" : "? IS NULL";
+      String parameterIsNotNull =
+        databaseMeta.requiresCastToVariousForIsNull() ? "CAST(? AS VARCHAR(256)) IS NOT NULL" : "? IS NOT NULL";
+      sql += "AND   ( ";
+      for ( int i = 0; i < meta.getUpdateLookup().length; i++ ) {
+        if ( i != 0 ) {
+          sql += " OR ";
+        }
+        String column = databaseMeta.quoteField( meta.getUpdateLookup()[i] );
+        sql += "( " + column + " <> ? OR ( " + column + " IS NULL AND " + parameterIsNotNull + " ) OR ( " + column
+          + " IS NOT NULL AND " + parameterIsNull + " ) )";
+        for ( int j = 0; j < 3; j++ ) {
+          data.updateParameterRowMeta.addValueMeta( rowMeta.searchValueMeta( meta.getUpdateStream()[i] ).clone() );
+        }
+      }
+      sql += " )";
+    }
+
     try {
       if ( log.isDetailed() ) {
         logDetailed( "Setting update preparedStatement to [" + sql + "]" );
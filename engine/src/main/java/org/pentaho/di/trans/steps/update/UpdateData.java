@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -52,6 +52,8 @@ public class UpdateData extends BaseStepData implements StepDataInterface {
   public PreparedStatement prepStatementLookup;
   public PreparedStatement prepStatementUpdate;
 
+  public boolean updateChangedOnly; // the update statement compares the values
+
   public RowMetaInterface lookupParameterRowMeta;
   public RowMetaInterface lookupReturnRowMeta;
   public RowMetaInterface updateParameterRowMeta;
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -121,6 +121,10 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface {
   @Injection( name = "SKIP_LOOKUP" )
   private boolean skipLookup;
 
+  /** with skip lookup: only update the rows of which one of the values differs, the database compares them */
+  @Injection( name = "UPDATE_CHANGED_ONLY" )
+  private boolean updateChangedOnly;
+
   /** Flag to indicate the use of batch updates, enabled by default but disabled for backward compatibility */
   @Injection( name = "BATCH_UPDATE" )
   private boolean useBatchUpdate;
@@ -191,6 +195,22 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface {
     this.skipLookup = skipLookup;
   }
 
+  /**
+   * @return true if, with skip lookup, only the rows of which one of the values differs are updated. The update
+   *         statement then compares the values instead of a lookup for every row.
+   */
+  public boolean isUpdateChangedOnly() {
+    return updateChangedOnly;
+  }
+
+  /**
+   * @param updateChangedOnly
+   *          true to only update the rows with a different value when the lookup is skipped
+   */
+  public void setUpdateChangedOnly( boolean updateChangedOnly ) {
+    this.updateChangedOnly = updateChangedOnly;
+  }
+
   /**
    * @return Returns the database.
    */
@@ -385,6 +405,7 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface {
       commitSize = ( csize == null ) ? "0" : csize;
       useBatchUpdate = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "use_batch" ) );
       skipLookup = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "skip_lookup" ) );
+      updateChangedOnly = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "update_changed_only" ) );
       errorIgnored = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "error_ignored" ) );
       ignoreFlagField = XMLHandler.getTagValue( stepnode, "ignore_flag_field" );
       schemaName = XMLHandler.getTagValue( stepnode, "lookup", "schema" );
@@ -426,6 +447,7 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface {
   @Override
   public void setDefault() {
     skipLookup = false;
+    updateChangedOnly = false;
     keyStream = null;
     updateLookup = null;
     databaseMeta = null;
@@ -458,6 +480,7 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface {
     retval
       .append( "    " + XMLHandler.addTagValue( "connection", databaseMeta == null ? "" : databaseMeta.getName() ) );
     retval.append( "    " + XMLHandler.addTagValue( "skip_lookup", skipLookup ) );
+    retval.append( "    " + XMLHandler.addTagValue( "update_changed_only", updateChangedOnly ) );
     retval.append( "    " + XMLHandler.addTagValue( "commit", commitSize ) );
     retval.append( "    " + XMLHandler.addTagValue( "use_batch", useBatchUpdate ) );
     retval.append( "    " + XMLHandler.addTagValue( "error_ignored", errorIgnored ) );
@@ -493,6 +516,7 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface {
     try {
       databaseMeta = rep.loadDatabaseMetaFromStepAttribute( id_step, "id_connection", databases );
       skipLookup = rep.getStepAttributeBoolean( id_step, "skip_lookup" );
+      updateChangedOnly = rep.getStepAttributeBoolean( id_step, "update_changed_only" );
       commitSize = rep.getStepAttributeString( id_step, "commit" );
       if ( commitSize == null ) {
         long comSz = -1;
@@ -548,6 +572,7 @@ public class UpdateMeta extends BaseStepMeta implements StepMetaInterface {
     try {
       rep.saveDatabaseMetaStepAttribute( id_transformation, id_step, "id_connection", databaseMeta );
       rep.saveStepAttribute( id_transformation, id_step, "skip_lookup", skipLookup );
+      rep.saveStepAttribute( id_transformation, id_step, "update_changed_only", updateChangedOnly );
       rep.saveStepAttribute( id_transformation, id_step, "commit", commitSize );
       rep.saveStepAttribute( id_transformation, id_step, "use_batch", useBatchUpdate );
       rep.saveStepAttribute( id_transformation, id_step, "schema", schemaName );
@@ -0,0 +1,560 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.www;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransAdapter;
+import org.pentaho.di.trans.TransMeta;
+
+/**
+ * Decides when the transformations started on a Carte server may run.<br>
+ * <br>
+ * A transformation starts right away as long as there's a free execution slot (KETTLE_CARTE_MAX_EXECUTIONS) and the
+ * memory it needs fits in what's left of the memory for executions (KETTLE_CARTE_EXECUTION_MEMORY). Otherwise it waits
+ * in a queue of at most KETTLE_CARTE_MAX_QUEUED_EXECUTIONS transformations, for at most KETTLE_CARTE_QUEUE_TIMEOUT
+ * seconds: a transformation that waited longer is dropped from the queue and marked as stopped without running. A
+ * transformation that is stopped or removed while it waits is dropped as well. The queue is ordered by priority, then
+ * by the number of running transformations with the same tag (the user by default) so one user can't take all the
+ * slots, then by arrival. The first transformation of the queue waits until it fits, smaller ones don't overtake it,
+ * so a large transformation can't starve. There are no limits by default.
+ */
+public class CarteExecutionQueue {
+
+  private static Class<?> PKG = CarteExecutionQueue.class; // for i18n purposes, needed by Translator2!!
+
+  /** The memory used by a row in a row set to estimate the memory of a transformation */
+  private static final long ESTIMATED_ROW_SIZE = 1024L;
+
+  private static CarteExecutionQueue instance;
+
+  private final LogChannelInterface log = new LogChannel( "Carte execution queue" );
+
+  private final int maxExecutions;
+  private final int maxQueuedExecutions;
+  private final long maxMemory;
+  private final long timeoutMillis;
+
+  private final List<Ticket> waiting = new ArrayList<Ticket>();
+  private final Map<String, Integer> runningPerTag = new HashMap<String, Integer>();
+  private int running;
+  private long reservedMemory;
+  private long sequence;
+  private Timer timer;
+
+  private long admitted;
+  private long rejected;
+  private long totalWaitTime;
+  private long maxWaitTime;
+
+  /**
+   * @param maxExecutions
+   *          the maximum number of transformations running at the same time, 0 for no limit
+   * @param maxQueuedExecutions
+   *          the maximum number of transformations waiting, 0 for no limit
+   * @param maxMemory
+   *          the memory in MB the running transformations may use together, 0 for no limit
+   * @param timeoutMillis
+   *          the maximum time to wait in the queue, 0 to wait without a limit
+   */
+  public CarteExecutionQueue( int maxExecutions, int maxQueuedExecutions, long maxMemory, long timeoutMillis ) {
+    this.maxExecutions = Math.max( 0, maxExecutions );
+    this.maxQueuedExecutions = Math.max( 0, maxQueuedExecutions );
+    this.maxMemory = Math.max( 0L, maxMemory );
+    this.timeoutMillis = Math.max( 0L, timeoutMillis );
+  }
+
+  /**
+   * @return the queue of the server, with the limits from the variables read when it's first used
+   */
+  public static synchronized CarteExecutionQueue getInstance() {
+    if ( instance == null ) {
+      instance =
+        new CarteExecutionQueue( Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_CARTE_MAX_EXECUTIONS ), 0 ),
+          Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_CARTE_MAX_QUEUED_EXECUTIONS ), 0 ),
+          Const.toLong( EnvUtil.getSystemProperty( Const.KETTLE_CARTE_EXECUTION_MEMORY ), 0L ),
+          Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_CARTE_QUEUE_TIMEOUT ), Const.CARTE_QUEUE_TIMEOUT )
+            * 1000L );
+    }
+    return instance;
+  }
+
+  /**
+   * Wait until the transformation may run. The admission is released when the transformation finishes, or by the
+   * caller if it fails to start.
+   *
+   * @param trans
+   *          the transformation to run
+   * @param user
+   *          the user starting the transformation, can be null
+   * @return the admission
+   * @throws KettleException
+   *           if the queue is full, the wait timed out or was interrupted
+   */
+  public Admission acquire( Trans trans, String user ) throws KettleException {
+    TransMeta transMeta = trans.getTransMeta();
+    Admission admission =
+      acquire( trans.getName(), getTag( transMeta, user ), getPriority( transMeta ), getMemoryEstimate( transMeta ) );
+    releaseWhenFinished( trans, admission );
+    return admission;
+  }
+
+  /**
+   * Run the transformation now if it may, or else once it's its turn in the queue. A transformation that doesn't get
+   * its turn within the timeout is dropped from the queue and marked as stopped.
+   *
+   * @param trans
+   *          the transformation to run
+   * @param user
+   *          the user starting the transformation, can be null
+   * @param execution
+   *          starts the transformation, in this thread when the transformation may run right away
+   * @return true if the transformation was started, false if it's waiting in the queue
+   * @throws KettleException
+   *           if the queue is full or the transformation failed to start right away
+   */
+  public boolean submit( final Trans trans, String user, final Execution execution ) throws KettleException {
+    TransMeta transMeta = trans.getTransMeta();
+    final Ticket ticket =
+      new Ticket( trans.getName(), getTag( transMeta, user ), getPriority( transMeta ),
+        getMemoryEstimate( transMeta ), trans, new Execution() {
+          public void start( Admission admission ) throws KettleException {
+            releaseWhenFinished( trans, admission );
+            execution.start( admission );
+          }
+        } );
+    List<Ticket> started = new ArrayList<Ticket>();
+    try {
+      synchronized ( this ) {
+        enqueue( ticket, started );
+        if ( ticket.admission == null && timeoutMillis > 0 ) {
+          ticket.expiry = new TimerTask() {
+            public void run() {
+              expire( ticket );
+            }
+          };
+          getTimer().schedule( ticket.expiry, timeoutMillis );
+        }
+      }
+    } finally {
+      // This one starts in this thread
+      started.remove( ticket );
+      startAll( started );
+    }
+
+    if ( ticket.admission == null ) {
+      log.logBasic( "Transformation '" + ticket.name + "' is waiting in the execution queue" );
+      return false;
+    }
+    try {
+      ticket.execution.start( ticket.admission );
+    } catch ( KettleException e ) {
+      ticket.admission.release();
+      throw e;
+    } catch ( RuntimeException e ) {
+      ticket.admission.release();
+      throw e;
+    }
+    return true;
+  }
+
+  /**
+   * Wait until an execution may run.
+   *
+   * @param name
+   *          the name of the execution
+   * @param tag
+   *          the tag to share the slots fairly with, for example the user
+   * @param priority
+   *          the priority, higher priorities run first
+   * @param memory
+   *          the memory in MB the execution needs
+   * @return the admission to release once the execution finished
+   * @throws KettleException
+   *           if the queue is full, the wait timed out or was interrupted
+   */
+  public Admission acquire( String name, String tag, int priority, long memory ) throws KettleException {
+    Ticket ticket = new Ticket( name, tag, priority, memory, null, null );
+    List<Ticket> started = new ArrayList<Ticket>();
+    try {
+      synchronized ( this ) {
+        enqueue( ticket, started );
+        long deadline = timeoutMillis > 0 ? ticket.queuedAt + timeoutMillis : Long.MAX_VALUE;
+        while ( ticket.admission == null ) {
+          long remaining = deadline - System.currentTimeMillis();
+          if ( remaining <= 0 ) {
+            waiting.remove( ticket );
+            rejected++;
+            dispatch( started );
+            throw new KettleException( BaseMessages.getString( PKG, "CarteExecutionQueue.Error.Timeout", name,
+              timeoutMillis / 1000 ) );
+          }
+          try {
+            wait( remaining );
+          } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            waiting.remove( ticket );
+            rejected++;
+            dispatch( started );
+            throw new KettleException( BaseMessages.getString( PKG, "CarteExecutionQueue.Error.Interrupted", name ),
+              e );
+          }
+        }
+      }
+    } finally {
+      startAll( started );
+    }
+    return ticket.admission;
+  }
+
+  /**
+   * Drop a transformation that waits in the queue, for example because it was stopped or removed. It's marked as
+   * stopped so it shows it never ran.
+   *
+   * @param trans
+   *          the transformation
+   * @return true if the transformation was waiting in the queue, false if it's not queued or was already admitted
+   */
+  public boolean cancel( Trans trans ) {
+    Ticket cancelled = null;
+    List<Ticket> started = new ArrayList<Ticket>();
+    synchronized ( this ) {
+      for ( Ticket ticket : waiting ) {
+        if ( ticket.trans == trans ) {
+          cancelled = ticket;
+          break;
+        }
+      }
+      if ( cancelled != null ) {
+        drop( cancelled, started );
+      }
+    }
+    startAll( started );
+    if ( cancelled == null ) {
+      return false;
+    }
+    log.logBasic( "Transformation '" + cancelled.name + "' was removed from the execution queue" );
+    trans.setStopped( true );
+    return true;
+  }
+
+  /**
+   * Drop a submitted transformation that waited longer than the timeout.
+   */
+  private void expire( Ticket ticket ) {
+    List<Ticket> started = new ArrayList<Ticket>();
+    synchronized ( this ) {
+      if ( !waiting.contains( ticket ) ) {
+        return; // Admitted or cancelled in the meantime
+      }
+      drop( ticket, started );
+      rejected++;
+    }
+    startAll( started );
+    String message =
+      BaseMessages.getString( PKG, "CarteExecutionQueue.Error.Timeout", ticket.name, timeoutMillis / 1000 );
+    log.logError( message );
+    if ( ticket.trans.getLogChannel() != null ) {
+      ticket.trans.getLogChannel().logError( message );
+    }
+    ticket.trans.setStopped( true );
+  }
+
+  private void drop( Ticket ticket, List<Ticket> started ) {
+    waiting.remove( ticket );
+    if ( ticket.expiry != null ) {
+      ticket.expiry.cancel();
+    }
+    // The dropped transformation may have held back the ones behind it
+    dispatch( started );
+  }
+
+  private Timer getTimer() {
+    if ( timer == null ) {
+      timer = new Timer( "Carte execution queue timeout", true );
+    }
+    return timer;
+  }
+
+  /**
+   * @return a snapshot of the state of the queue
+   */
+  public synchronized SlaveServerQueueStatus getStatus() {
+    SlaveServerQueueStatus status = new SlaveServerQueueStatus();
+    status.setMaxExecutions( maxExecutions );
+    status.setRunning( running );
+    status.setMaxQueued( maxQueuedExecutions );
+    status.setQueued( waiting.size() );
+    status.setMaxMemory( maxMemory );
+    status.setReservedMemory( reservedMemory );
+    status.setAdmitted( admitted );
+    status.setRejected( rejected );
+    status.setTotalWaitTime( totalWaitTime );
+    status.setMaxWaitTime( maxWaitTime );
+    return status;
+  }
+
+  /**
+   * @return the priority from the KETTLE_TRANS_PRIORITY variable of the transformation, 0 by default
+   */
+  public static int getPriority( TransMeta transMeta ) {
+    return transMeta == null ? 0 : Const.toInt( transMeta.getVariable( Const.KETTLE_TRANS_PRIORITY ), 0 );
+  }
+
+  /**
+   * @return the tag from the KETTLE_TRANS_QUEUE_TAG variable of the transformation, or else the user
+   */
+  public static String getTag( TransMeta transMeta, String user ) {
+    String tag = transMeta == null ? null : transMeta.getVariable( Const.KETTLE_TRANS_QUEUE_TAG );
+    return Utils.isEmpty( tag ) ? Const.NVL( user, "" ) : tag;
+  }
+
+  /**
+   * @return the memory in MB declared with the KETTLE_TRANS_MEMORY variable of the transformation, or else an estimate
+   *         of the memory the full row sets between the steps use
+   */
+  public static long getMemoryEstimate( TransMeta transMeta ) {
+    if ( transMeta == null ) {
+      return 0L;
+    }
+    long declared = Const.toLong( transMeta.getVariable( Const.KETTLE_TRANS_MEMORY ), -1L );
+    if ( declared >= 0 ) {
+      return declared;
+    }
+    long bytes = (long) transMeta.nrTransHops() * transMeta.getSizeRowset() * ESTIMATED_ROW_SIZE;
+    return ( bytes + 1024L * 1024L - 1 ) / ( 1024L * 1024L );
+  }
+
+  private void enqueue( Ticket ticket, List<Ticket> started ) throws KettleException {
+    ticket.sequence = sequence++;
+    waiting.add( ticket );
+    dispatch( started );
+    if ( ticket.admission == null && maxQueuedExecutions > 0 && waiting.size() > maxQueuedExecutions ) {
+      waiting.remove( ticket );
+      rejected++;
+      throw new KettleException( BaseMessages.getString( PKG, "CarteExecutionQueue.Error.QueueFull", ticket.name,
+        maxQueuedExecutions ) );
+    }
+  }
+
+  /**
+   * Admit the first executions of the queue as long as they fit.
+   *
+   * @param started
+   *          receives the admitted executions to start
+   */
+  private void dispatch( List<Ticket> started ) {
+    while ( !waiting.isEmpty() ) {
+      Ticket next = waiting.get( 0 );
+      for ( Ticket ticket : waiting ) {
+        if ( comesBefore( ticket, next ) ) {
+          next = ticket;
+        }
+      }
+      if ( !fits( next ) ) {
+        break;
+      }
+      waiting.remove( next );
+      admit( next );
+      if ( next.execution != null ) {
+        started.add( next );
+      }
+    }
+    notifyAll();
+  }
+
+  private boolean comesBefore( Ticket ticket, Ticket other ) {
+    if ( ticket.priority != other.priority ) {
+      return ticket.priority > other.priority;
+    }
+    int running = getRunning( ticket.tag );
+    int otherRunning = getRunning( other.tag );
+    if ( running != otherRunning ) {
+      return running < otherRunning;
+    }
+    return ticket.sequence < other.sequence;
+  }
+
+  private boolean fits( Ticket ticket ) {
+    if ( maxExecutions > 0 && running >= maxExecutions ) {
+      return false;
+    }
+    // A transformation needing more than the maximum memory runs alone
+    return maxMemory == 0 || running == 0 || reservedMemory + ticket.memory <= maxMemory;
+  }
+
+  private int getRunning( String tag ) {
+    Integer count = runningPerTag.get( tag );
+    return count == null ? 0 : count;
+  }
+
+  private void admit( Ticket ticket ) {
+    if ( ticket.expiry != null ) {
+      ticket.expiry.cancel();
+    }
+    long waitTime = System.currentTimeMillis() - ticket.queuedAt;
+    running++;
+    reservedMemory += ticket.memory;
+    runningPerTag.put( ticket.tag, getRunning( ticket.tag ) + 1 );
+    admitted++;
+    totalWaitTime += waitTime;
+    maxWaitTime = Math.max( maxWaitTime, waitTime );
+    ticket.admission = new Admission( ticket, waitTime );
+  }
+
+  private void release( Ticket ticket ) {
+    List<Ticket> started = new ArrayList<Ticket>();
+    synchronized ( this ) {
+      running--;
+      reservedMemory -= ticket.memory;
+      int count = getRunning( ticket.tag ) - 1;
+      if ( count > 0 ) {
+        runningPerTag.put( ticket.tag, count );
+      } else {
+        runningPerTag.remove( ticket.tag );
+      }
+      dispatch( started );
+    }
+    startAll( started );
+  }
+
+  /**
+   * Start the queued executions in threads of their own, a thread releasing an admission shouldn't run them.
+   */
+  private void startAll( List<Ticket> started ) {
+    for ( final Ticket ticket : started ) {
+      log.logBasic( "Starting transformation '" + ticket.name + "' after waiting "
+        + ticket.admission.getWaitTime() + " ms in the execution queue" );
+      Thread thread = new Thread( new Runnable() {
+        public void run() {
+          try {
+            ticket.execution.start( ticket.admission );
+          } catch ( Exception e ) {
+            log.logError( "Unable to start transformation '" + ticket.name + "' from the execution queue", e );
+            ticket.admission.release();
+          }
+        }
+      }, "Carte execution queue - " + ticket.name );
+      thread.start();
+    }
+    started.clear();
+  }
+
+  private static void releaseWhenFinished( Trans trans, final Admission admission ) {
+    trans.addTransListener( new TransAdapter() {
+      @Override
+      public void transFinished( Trans trans ) {
+        admission.release();
+      }
+    } );
+  }
+
+  /**
+   * Starts an execution once it's admitted.
+   */
+  public interface Execution {
+    /**
+     * @param admission
+     *          the admission of the execution, released when the transformation finishes or fails to start
+     */
+    void start( Admission admission ) throws KettleException;
+  }
+
+  private static class Ticket {
+    private final String name;
+    private final String tag;
+    private final int priority;
+    private final long memory;
+    private final Trans trans;
+    private final Execution execution;
+    private final long queuedAt = System.currentTimeMillis();
+    private long sequence;
+    private volatile Admission admission;
+    private TimerTask expiry;
+
+    Ticket( String name, String tag, int priority, long memory, Trans trans, Execution execution ) {
+      this.name = name;
+      this.tag = Const.NVL( tag, "" );
+      this.priority = priority;
+      this.memory = Math.max( 0L, memory );
+      this.trans = trans;
+      this.execution = execution;
+    }
+  }
+
+  /**
+   * The right of an execution to run, to be released exactly once when it finishes.
+   */
+  public class Admission {
+    private final Ticket ticket;
+    private final long waitTime;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Admission( Ticket ticket, long waitTime ) {
+      this.ticket = ticket;
+      this.waitTime = waitTime;
+    }
+
+    /**
+     * Release the admission, releasing it again has no effect.
+     */
+    public void release() {
+      if ( released.compareAndSet( false, true ) ) {
+        CarteExecutionQueue.this.release( ticket );
+      }
+    }
+
+    public boolean isReleased() {
+      return released.get();
+    }
+
+    /**
+     * @return the time in milliseconds the execution waited in the queue
+     */
+    public long getWaitTime() {
+      return waitTime;
+    }
+
+    /**
+     * @return the memory in MB reserved for the execution
+     */
+    public long getMemory() {
+      return ticket.memory;
+    }
+  }
+}
@@ -0,0 +1,380 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.KettleLogLayout;
+import org.pentaho.di.core.logging.KettleLogStore;
+import org.pentaho.di.core.logging.KettleLoggingEvent;
+import org.pentaho.di.core.logging.KettleLoggingEventListener;
+import org.pentaho.di.core.logging.LogMessage;
+import org.pentaho.di.core.logging.LoggingBuffer;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.logging.LoggingRegistry;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransAdapter;
+
+/**
+ * Keeps the log lines of the transformations on a Carte server that clients follow, so a client asking for the new
+ * lines doesn't make the server scan the whole logging buffer and render the log again.<br>
+ * <br>
+ * The stream of a transformation is opened when a client first asks for its log, starting with the lines already in
+ * the logging buffer. From then on every logging event of the transformation, its steps and their children is
+ * formatted once and kept in a ring buffer of KETTLE_CARTE_LOG_STREAM_LINES lines. A client reads from a cursor, the
+ * number of lines it has already seen, and gets the lines after it and the cursor to continue from. A client that
+ * falls too far behind misses the lines that were dropped from the ring buffer. The stream is closed when the
+ * transformation is removed from the server.
+ */
+public class CarteLogStreams implements KettleLoggingEventListener {
+
+  private static CarteLogStreams instance;
+
+  private static final int MAX_OWNERS = 10000;
+
+  private final int maxLines;
+
+  private final KettleLogLayout layout = new KettleLogLayout( true );
+
+  private final LoggingRegistry loggingRegistry = LoggingRegistry.getInstance();
+
+  /**
+   * The streams by the log channel id of their transformation.
+   */
+  private final Map<String, LogStream> streams = new ConcurrentHashMap<String, LogStream>();
+
+  /**
+   * The stream a log channel belongs to, or noStream if it doesn't belong to one.
+   */
+  private final Map<String, LogStream> owners = new ConcurrentHashMap<String, LogStream>();
+
+  private final LogStream noStream = new LogStream( 1 );
+
+  /**
+   * Changes each time a stream is opened or closed, under the lock of this object, so a lookup that raced with it isn't
+   * remembered.
+   */
+  private volatile long generation;
+
+  /**
+   * @param maxLines
+   *          the number of lines to keep for each transformation
+   */
+  public CarteLogStreams( int maxLines ) {
+    this.maxLines = Math.max( 1, maxLines );
+  }
+
+  /**
+   * @return the log streams of the server, listening to the logging buffer
+   */
+  public static synchronized CarteLogStreams getInstance() {
+    if ( instance == null ) {
+      instance =
+        new CarteLogStreams( Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_CARTE_LOG_STREAM_LINES ),
+          Const.CARTE_LOG_STREAM_LINES ) );
+      KettleLogStore.getAppender().addLoggingEventListener( instance );
+    }
+    return instance;
+  }
+
+  /**
+   * Closes the stream of a transformation, if it was opened.
+   *
+   * @param logChannelId
+   *          the log channel id of the transformation
+   */
+  public static synchronized void remove( String logChannelId ) {
+    if ( instance != null && logChannelId != null ) {
+      instance.close( logChannelId );
+    }
+  }
+
+  /**
+   * Reads the lines of the transformation after a cursor. The stream is opened when it's first read.
+   *
+   * @param trans
+   *          the transformation
+   * @param cursor
+   *          the number of lines the client has already read, 0 to start from the first line
+   * @param maxLines
+   *          the maximum number of lines to return
+   * @param waitMillis
+   *          how long to wait for new lines if there are none after the cursor and the transformation is still running,
+   *          0 to return immediately
+   * @return the lines
+   * @throws KettleException
+   *           if the wait was interrupted
+   */
+  public LogChunk read( Trans trans, long cursor, int maxLines, long waitMillis ) throws KettleException {
+    LogStream stream = open( trans );
+    try {
+      return stream.read( cursor, Math.max( 1, maxLines ), waitMillis );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleException( e );
+    }
+  }
+
+  private LogStream open( Trans trans ) {
+    final String logChannelId = trans.getLogChannelId();
+    LogStream stream = streams.get( logChannelId );
+    if ( stream != null ) {
+      return stream;
+    }
+    synchronized ( this ) {
+      stream = streams.get( logChannelId );
+      if ( stream != null ) {
+        return stream;
+      }
+
+      // Listen before taking the lines already in the buffer so nothing falls in between, the events seen twice are
+      // skipped
+      //
+      stream = new LogStream( maxLines );
+      stream.seeding = new ArrayList<KettleLoggingEvent>();
+      streams.put( logChannelId, stream );
+      generation++;
+      owners.clear();
+
+      LoggingBuffer buffer = KettleLogStore.getAppender();
+      List<KettleLoggingEvent> events =
+        buffer.getLogBufferFromTo( logChannelId, false, 0, buffer.getLastBufferLineNr() );
+      stream.seed( events );
+
+      final LogStream finishing = stream;
+      trans.addTransListener( new TransAdapter() {
+        @Override
+        public void transFinished( Trans trans ) {
+          finishing.finish();
+        }
+      } );
+      if ( trans.isFinishedOrStopped() ) {
+        stream.finish();
+      }
+      return stream;
+    }
+  }
+
+  private synchronized void close( String logChannelId ) {
+    LogStream stream = streams.remove( logChannelId );
+    if ( stream != null ) {
+      generation++;
+      owners.clear();
+      stream.finish();
+    }
+  }
+
+  /**
+   * @return the number of open streams
+   */
+  public int size() {
+    return streams.size();
+  }
+
+  @Override
+  public void eventAdded( KettleLoggingEvent event ) {
+    if ( streams.isEmpty() || !( event.getMessage() instanceof LogMessage ) ) {
+      return;
+    }
+    LogStream stream = getStream( ( (LogMessage) event.getMessage() ).getLogChannelId() );
+    if ( stream != noStream ) {
+      stream.add( event );
+    }
+  }
+
+  /**
+   * Finds the stream of a log channel by walking up its parents, the result is remembered unless a stream was opened or
+   * closed during the walk.
+   */
+  private LogStream getStream( String logChannelId ) {
+    if ( logChannelId == null ) {
+      return noStream;
+    }
+    LogStream stream = owners.get( logChannelId );
+    if ( stream != null ) {
+      return stream;
+    }
+    long walkGeneration = generation;
+    stream = noStream;
+    String id = logChannelId;
+    for ( int depth = 0; id != null && depth < 100; depth++ ) {
+      LogStream found = streams.get( id );
+      if ( found != null ) {
+        stream = found;
+        break;
+      }
+      LoggingObjectInterface loggingObject = loggingRegistry.getLoggingObject( id );
+      LoggingObjectInterface parent = loggingObject == null ? null : loggingObject.getParent();
+      id = parent == null ? null : parent.getLogChannelId();
+    }
+    synchronized ( this ) {
+      if ( generation == walkGeneration ) {
+        if ( owners.size() >= MAX_OWNERS ) {
+          owners.clear();
+        }
+        owners.put( logChannelId, stream );
+      }
+    }
+    return stream;
+  }
+
+  /**
+   * The last lines of a transformation in a ring buffer.
+   */
+  private class LogStream {
+    private final String[] lines;
+
+    /**
+     * The number of lines added so far, the cursor after the last line.
+     */
+    private long next;
+
+    private boolean finished;
+
+    /**
+     * The events that came in while the stream takes the lines from the logging buffer, null once it's done.
+     */
+    private List<KettleLoggingEvent> seeding;
+
+    LogStream( int maxLines ) {
+      this.lines = new String[maxLines];
+    }
+
+    synchronized void seed( List<KettleLoggingEvent> events ) {
+      Set<KettleLoggingEvent> seen =
+        Collections.newSetFromMap( new IdentityHashMap<KettleLoggingEvent, Boolean>() );
+      for ( KettleLoggingEvent event : events ) {
+        seen.add( event );
+        append( event );
+      }
+      List<KettleLoggingEvent> added = seeding;
+      seeding = null;
+      for ( KettleLoggingEvent event : added ) {
+        if ( !seen.contains( event ) ) {
+          append( event );
+        }
+      }
+      notifyAll();
+    }
+
+    synchronized void add( KettleLoggingEvent event ) {
+      if ( seeding != null ) {
+        seeding.add( event );
+      } else {
+        append( event );
+        notifyAll();
+      }
+    }
+
+    private void append( KettleLoggingEvent event ) {
+      lines[(int) ( next % lines.length )] = layout.format( event );
+      next++;
+    }
+
+    synchronized void finish() {
+      finished = true;
+      notifyAll();
+    }
+
+    synchronized LogChunk read( long cursor, int maxLines, long waitMillis ) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + waitMillis;
+      long remaining = waitMillis;
+      while ( cursor >= next && !finished && remaining > 0 ) {
+        wait( remaining );
+        remaining = deadline - System.currentTimeMillis();
+      }
+
+      long first = Math.max( 0L, next - lines.length );
+      long start = Math.min( Math.max( cursor, first ), next );
+      long end = Math.min( next, start + maxLines );
+      List<String> chunk = new ArrayList<String>( (int) ( end - start ) );
+      for ( long nr = start; nr < end; nr++ ) {
+        chunk.add( lines[(int) ( nr % lines.length )] );
+      }
+      return new LogChunk( chunk, first, start, end, finished && end == next );
+    }
+  }
+
+  /**
+   * The lines of a transformation read from a cursor.
+   */
+  public static class LogChunk {
+    private final List<String> lines;
+    private final long firstCursor;
+    private final long startCursor;
+    private final long nextCursor;
+    private final boolean finished;
+
+    LogChunk( List<String> lines, long firstCursor, long startCursor, long nextCursor, boolean finished ) {
+      this.lines = Collections.unmodifiableList( lines );
+      this.firstCursor = firstCursor;
+      this.startCursor = startCursor;
+      this.nextCursor = nextCursor;
+      this.finished = finished;
+    }
+
+    /**
+     * @return the lines, without line separators
+     */
+    public List<String> getLines() {
+      return lines;
+    }
+
+    /**
+     * @return the cursor of the oldest line still kept
+     */
+    public long getFirstCursor() {
+      return firstCursor;
+    }
+
+    /**
+     * @return the cursor of the first line returned, after the requested one if lines were dropped in between
+     */
+    public long getStartCursor() {
+      return startCursor;
+    }
+
+    /**
+     * @return the cursor to read the next lines from
+     */
+    public long getNextCursor() {
+      return nextCursor;
+    }
+
+    /**
+     * @return true if the transformation finished and all its lines were read
+     */
+    public boolean isFinished() {
+      return finished;
+    }
+  }
+}
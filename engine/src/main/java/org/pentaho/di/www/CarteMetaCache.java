@@ -0,0 +1,322 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.vfs2.FileObject;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.job.JobMeta;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.repository.RepositoryObject;
+import org.pentaho.di.repository.RepositoryObjectType;
+import org.pentaho.di.trans.TransMeta;
+
+/**
+ * Keeps the transformations and jobs executed on a Carte server after they are parsed, so executing them again doesn't
+ * load and parse them again.<br>
+ * <br>
+ * A file is identified by its name and its version by the modification time, size and checksum of its content. A
+ * transformation or job in a repository is identified by the repository and its object id and its version by the
+ * modification date in the repository. A changed version is loaded again. Every execution gets a copy of the cached
+ * transformation or job (see {@link TransMeta#copyForExecution()}) so the parameters and variables it sets don't change
+ * the cached one. The cache keeps at most KETTLE_CARTE_META_CACHE_SIZE transformations and jobs, the least recently
+ * used one is dropped to make room for a new one.
+ */
+public class CarteMetaCache {
+
+  private static CarteMetaCache instance;
+
+  private final int maxSize;
+
+  private final Map<String, CachedMeta> entries;
+
+  private long hits;
+  private long misses;
+
+  /**
+   * @param maxSize
+   *          the maximum number of transformations and jobs to keep, 0 to disable the cache
+   */
+  public CarteMetaCache( int maxSize ) {
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<String, CachedMeta>( 16, 0.75f, true ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<String, CachedMeta> eldest ) {
+        return size() > CarteMetaCache.this.maxSize;
+      }
+    };
+  }
+
+  public static synchronized CarteMetaCache getInstance() {
+    if ( instance == null ) {
+      instance =
+        new CarteMetaCache( Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_CARTE_META_CACHE_SIZE ),
+          Const.CARTE_META_CACHE_SIZE ) );
+    }
+    return instance;
+  }
+
+  /**
+   * @param filename
+   *          the name or URL of the transformation file
+   * @return a copy of the transformation to execute
+   * @throws KettleException
+   *           if the transformation can't be loaded
+   */
+  public TransMeta getTransMeta( final String filename ) throws KettleException {
+    return get( RepositoryObjectType.TRANSFORMATION + ":" + filename, getFileVersion( filename ),
+      new Loader<TransMeta>() {
+        @Override
+        public TransMeta load() throws KettleException {
+          return new TransMeta( filename );
+        }
+
+        @Override
+        public TransMeta copy( TransMeta transMeta ) {
+          return transMeta.copyForExecution();
+        }
+      } );
+  }
+
+  /**
+   * @param repository
+   *          the repository to load the transformation from
+   * @param transformationId
+   *          the id of the transformation in the repository
+   * @return a copy of the transformation to execute
+   * @throws KettleException
+   *           if the transformation can't be loaded
+   */
+  public TransMeta getTransMeta( final Repository repository, final ObjectId transformationId )
+    throws KettleException {
+    return get( getRepositoryKey( repository, transformationId, RepositoryObjectType.TRANSFORMATION ),
+      getRepositoryVersion( repository, transformationId, RepositoryObjectType.TRANSFORMATION ),
+      new Loader<TransMeta>() {
+        @Override
+        public TransMeta load() throws KettleException {
+          return repository.loadTransformation( transformationId, null );
+        }
+
+        @Override
+        public TransMeta copy( TransMeta transMeta ) {
+          // The repository connection of the cached transformation is closed when its execution is done
+          TransMeta copy = transMeta.copyForExecution();
+          copy.setRepository( repository );
+          copy.setMetaStore( repository.getMetaStore() );
+          return copy;
+        }
+      } );
+  }
+
+  /**
+   * @param filename
+   *          the name or URL of the job file
+   * @return a copy of the job to execute
+   * @throws KettleException
+   *           if the job can't be loaded
+   */
+  public JobMeta getJobMeta( final String filename ) throws KettleException {
+    return get( RepositoryObjectType.JOB + ":" + filename, getFileVersion( filename ), new Loader<JobMeta>() {
+      @Override
+      public JobMeta load() throws KettleException {
+        return new JobMeta( filename, null );
+      }
+
+      @Override
+      public JobMeta copy( JobMeta jobMeta ) {
+        return jobMeta.copyForExecution();
+      }
+    } );
+  }
+
+  /**
+   * @param repository
+   *          the repository to load the job from
+   * @param jobId
+   *          the id of the job in the repository
+   * @return a copy of the job to execute
+   * @throws KettleException
+   *           if the job can't be loaded
+   */
+  public JobMeta getJobMeta( final Repository repository, final ObjectId jobId ) throws KettleException {
+    return get( getRepositoryKey( repository, jobId, RepositoryObjectType.JOB ),
+      getRepositoryVersion( repository, jobId, RepositoryObjectType.JOB ), new Loader<JobMeta>() {
+        @Override
+        public JobMeta load() throws KettleException {
+          return repository.loadJob( jobId, null );
+        }
+
+        @Override
+        public JobMeta copy( JobMeta jobMeta ) {
+          JobMeta copy = jobMeta.copyForExecution();
+          copy.setRepository( repository );
+          copy.setMetaStore( repository.getMetaStore() );
+          return copy;
+        }
+      } );
+  }
+
+  /**
+   * Get a copy of the cached object with the key if it has the version, or else load it and keep it.
+   *
+   * @param key
+   *          the key of the object
+   * @param version
+   *          the version of the object, null if the version is unknown and the object can't be cached
+   * @param loader
+   *          loads and copies the object
+   * @return a copy of the object
+   * @throws KettleException
+   *           if the object can't be loaded
+   */
+  <T> T get( String key, String version, Loader<T> loader ) throws KettleException {
+    if ( maxSize <= 0 || version == null ) {
+      return loader.load();
+    }
+    CachedMeta cached;
+    synchronized ( this ) {
+      cached = entries.get( key );
+      if ( cached != null && cached.version.equals( version ) ) {
+        hits++;
+      } else {
+        misses++;
+        cached = null;
+      }
+    }
+    if ( cached == null ) {
+      // Loading takes a while, two executions missing the same key at once simply both load it
+      cached = new CachedMeta( version, loader.load() );
+      synchronized ( this ) {
+        entries.put( key, cached );
+      }
+    }
+    @SuppressWarnings( "unchecked" )
+    T meta = (T) cached.meta;
+    return loader.copy( meta );
+  }
+
+  /**
+   * @return the version of the file from its modification time, size and checksum or null if it doesn't exist
+   */
+  static String getFileVersion( String filename ) throws KettleException {
+    InputStream inputStream = null;
+    try {
+      FileObject fileObject = KettleVFS.getFileObject( filename );
+      if ( !fileObject.exists() ) {
+        return null;
+      }
+      CRC32 checksum = new CRC32();
+      inputStream = KettleVFS.getInputStream( fileObject );
+      byte[] buffer = new byte[8192];
+      int read;
+      while ( ( read = inputStream.read( buffer ) ) >= 0 ) {
+        checksum.update( buffer, 0, read );
+      }
+      return fileObject.getContent().getLastModifiedTime() + "/" + fileObject.getContent().getSize() + "/"
+        + Long.toHexString( checksum.getValue() );
+    } catch ( IOException e ) {
+      throw new KettleException( "Unable to read file '" + filename + "'", e );
+    } finally {
+      if ( inputStream != null ) {
+        try {
+          inputStream.close();
+        } catch ( IOException e ) {
+          // Ignore
+        }
+      }
+    }
+  }
+
+  private static String getRepositoryKey( Repository repository, ObjectId objectId, RepositoryObjectType type ) {
+    return type + ":" + repository.getName() + ":" + objectId.getId();
+  }
+
+  /**
+   * @return the modification date of the object in the repository or null if the repository doesn't keep it
+   */
+  private static String getRepositoryVersion( Repository repository, ObjectId objectId, RepositoryObjectType type )
+    throws KettleException {
+    RepositoryObject information = repository.getObjectInformation( objectId, type );
+    if ( information == null ) {
+      return null;
+    }
+    Date modifiedDate = information.getModifiedDate();
+    return modifiedDate == null ? null : Long.toString( modifiedDate.getTime() );
+  }
+
+  /**
+   * Forget all the cached transformations and jobs.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return the number of executions that used a cached transformation or job
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of executions that loaded the transformation or job
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Loads an object that isn't cached and copies a cached one for an execution.
+   */
+  interface Loader<T> {
+    T load() throws KettleException;
+
+    T copy( T meta );
+  }
+
+  private static class CachedMeta {
+    private final String version;
+    private final Object meta;
+
+    CachedMeta( String version, Object meta ) {
+      this.version = version;
+      this.meta = meta;
+    }
+  }
+}
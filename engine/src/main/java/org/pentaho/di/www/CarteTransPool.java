@@ -0,0 +1,426 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.logging.KettleLogStore;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.logging.LoggingObjectInterface;
+import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.logging.SimpleLoggingObject;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.util.EnvUtil;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.RowProducer;
+import org.pentaho.di.trans.SingleThreadedTransExecutor;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransMeta.TransformationType;
+import org.pentaho.di.trans.step.RowAdapter;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaDataCombi;
+
+/**
+ * Keeps transformations prepared and initialized on a Carte server to execute small requests without the cost of
+ * preparing the transformation, connecting to the databases and initializing the steps every time.<br>
+ * <br>
+ * A pooled transformation runs in the single threaded engine, like the sub-transformation of the Single Threader step.
+ * The rows of a request are injected into the inject step, one iteration processes them and the rows written by the
+ * retrieve step are the result. The rows always have the layout of the fields the inject step declares, whatever
+ * the request, because the steps of an instance keep the indexes of the fields from the first row. The transformation
+ * then waits for the next request with its steps still initialized,
+ * so it has to be designed for it: every step must support the single threaded engine and must not keep state from
+ * one request that changes the result of the next one. Up to KETTLE_CARTE_TRANS_POOL_SIZE instances of a
+ * transformation are created as the concurrent requests need them, a request waits at most
+ * KETTLE_CARTE_TRANS_POOL_TIMEOUT seconds for a free one. A changed transformation file replaces the instances, a
+ * failed instance is disposed of.
+ */
+public class CarteTransPool {
+
+  private static Class<?> PKG = CarteTransPool.class; // for i18n purposes, needed by Translator2!!
+
+  private static CarteTransPool instance;
+
+  private final LogChannelInterface log = new LogChannel( "Carte transformation pool" );
+
+  private final LoggingObjectInterface parentLoggingObject =
+    new SimpleLoggingObject( ExecutePooledTransServlet.CONTEXT_PATH, LoggingObjectType.CARTE, null );
+
+  private final int maxSize;
+  private final long timeoutMillis;
+
+  private final Map<String, Pool> pools = new HashMap<String, Pool>();
+
+  /**
+   * @param maxSize
+   *          the maximum number of instances of a transformation
+   * @param timeoutMillis
+   *          the maximum time to wait for a free instance, 0 to wait without a limit
+   */
+  public CarteTransPool( int maxSize, long timeoutMillis ) {
+    this.maxSize = Math.max( 1, maxSize );
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  public static synchronized CarteTransPool getInstance() {
+    if ( instance == null ) {
+      int maxSize =
+        Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_CARTE_TRANS_POOL_SIZE ), Const.CARTE_TRANS_POOL_SIZE );
+      int timeout =
+        Const.toInt( EnvUtil.getSystemProperty( Const.KETTLE_CARTE_TRANS_POOL_TIMEOUT ),
+          Const.CARTE_TRANS_POOL_TIMEOUT );
+      instance = new CarteTransPool( maxSize, Math.max( 0, timeout ) * 1000L );
+    }
+    return instance;
+  }
+
+  /**
+   * Execute the rows with a pooled instance of the transformation.
+   *
+   * @param filename
+   *          the name or URL of the transformation file
+   * @param injectStep
+   *          the name of the step to inject the rows into
+   * @param retrieveStep
+   *          the name of the step to retrieve the result rows from
+   * @param rowMeta
+   *          the layout of the rows to inject, the one of {@link #getInjectRowMeta(String, String, String)}
+   * @param rows
+   *          the rows to inject
+   * @return the rows written by the retrieve step
+   * @throws KettleException
+   *           if no instance was free in time, the transformation can't be prepared, the layout doesn't match or the
+   *           execution failed
+   */
+  public List<RowMetaAndData> execute( String filename, String injectStep, String retrieveStep,
+    RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleException {
+    Pool pool = getPool( filename, injectStep, retrieveStep );
+    RowMetaInterface injectRowMeta = pool.getInjectRowMeta();
+    if ( !Arrays.equals( injectRowMeta.getFieldNames(), rowMeta.getFieldNames() ) ) {
+      // For example the transformation file changed since the layout was asked for
+      throw new KettleException( BaseMessages.getString( PKG, "CarteTransPool.Error.LayoutChanged", injectStep,
+        filename ) );
+    }
+    PooledTrans pooledTrans = pool.borrow();
+    boolean reusable = false;
+    try {
+      List<RowMetaAndData> result = pooledTrans.execute( injectRowMeta, rows );
+      reusable = pooledTrans.isReusable();
+      return result;
+    } finally {
+      pool.giveBack( pooledTrans, reusable );
+    }
+  }
+
+  /**
+   * The layout of the rows to inject: the fields the inject step declares, in their order. It's the same for every
+   * instance of the transformation.
+   *
+   * @param filename
+   *          the name or URL of the transformation file
+   * @param injectStep
+   *          the name of the step to inject the rows into
+   * @param retrieveStep
+   *          the name of the step to retrieve the result rows from
+   * @return the layout of the rows to inject
+   * @throws KettleException
+   *           if the transformation or the inject step can't be found
+   */
+  public RowMetaInterface getInjectRowMeta( String filename, String injectStep, String retrieveStep )
+    throws KettleException {
+    return getPool( filename, injectStep, retrieveStep ).getInjectRowMeta().clone();
+  }
+
+  /**
+   * Dispose of all the idle instances, the busy ones are disposed of when their request is done.
+   */
+  public void clear() {
+    List<Pool> retired;
+    synchronized ( this ) {
+      retired = new ArrayList<Pool>( pools.values() );
+      pools.clear();
+    }
+    for ( Pool pool : retired ) {
+      pool.retire();
+    }
+  }
+
+  /**
+   * @return the number of instances per transformation file, inject and retrieve step
+   */
+  public synchronized Map<String, Integer> getSizes() {
+    Map<String, Integer> sizes = new HashMap<String, Integer>();
+    for ( Map.Entry<String, Pool> entry : pools.entrySet() ) {
+      sizes.put( entry.getKey(), entry.getValue().getCreated() );
+    }
+    return sizes;
+  }
+
+  private Pool getPool( String filename, String injectStep, String retrieveStep ) throws KettleException {
+    String version = CarteMetaCache.getFileVersion( filename );
+    if ( version == null ) {
+      throw new KettleException( BaseMessages.getString( PKG, "CarteTransPool.Error.FileNotFound", filename ) );
+    }
+    String key = filename + " [" + injectStep + " > " + retrieveStep + "]";
+    Pool retired = null;
+    Pool pool;
+    synchronized ( this ) {
+      pool = pools.get( key );
+      if ( pool == null || !pool.version.equals( version ) ) {
+        retired = pool;
+        pool = new Pool( filename, injectStep, retrieveStep, version );
+        pools.put( key, pool );
+      }
+    }
+    if ( retired != null ) {
+      log.logBasic( BaseMessages.getString( PKG, "CarteTransPool.Log.TransformationChanged", filename ) );
+      retired.retire();
+    }
+    return pool;
+  }
+
+  /**
+   * The instances of one transformation with the same inject and retrieve steps.
+   */
+  private class Pool {
+    private final String filename;
+    private final String injectStep;
+    private final String retrieveStep;
+    private final String version;
+
+    // The most recently used instance is used first, the others may be idle for a while
+    private final Deque<PooledTrans> idle = new ArrayDeque<PooledTrans>();
+    private int created;
+    private boolean retired;
+    private RowMetaInterface injectRowMeta;
+
+    Pool( String filename, String injectStep, String retrieveStep, String version ) {
+      this.filename = filename;
+      this.injectStep = injectStep;
+      this.retrieveStep = retrieveStep;
+      this.version = version;
+    }
+
+    PooledTrans borrow() throws KettleException {
+      long start = System.currentTimeMillis();
+      synchronized ( this ) {
+        while ( idle.isEmpty() && created >= maxSize ) {
+          long wait = timeoutMillis > 0 ? timeoutMillis - ( System.currentTimeMillis() - start ) : 0L;
+          if ( timeoutMillis > 0 && wait <= 0 ) {
+            throw new KettleException( BaseMessages.getString( PKG, "CarteTransPool.Error.Timeout", filename,
+              timeoutMillis / 1000 ) );
+          }
+          try {
+            wait( wait );
+          } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new KettleException( BaseMessages.getString( PKG, "CarteTransPool.Error.Interrupted", filename ), e );
+          }
+        }
+        if ( !idle.isEmpty() ) {
+          return idle.pop();
+        }
+        created++;
+      }
+
+      // Preparing the transformation takes a while, it's done without holding the lock
+      boolean ok = false;
+      try {
+        PooledTrans pooledTrans = new PooledTrans( filename, injectStep, retrieveStep, parentLoggingObject );
+        ok = true;
+        return pooledTrans;
+      } finally {
+        if ( !ok ) {
+          synchronized ( this ) {
+            created--;
+            notifyAll();
+          }
+        }
+      }
+    }
+
+    void giveBack( PooledTrans pooledTrans, boolean reusable ) {
+      boolean keep;
+      synchronized ( this ) {
+        keep = reusable && !retired;
+        if ( keep ) {
+          idle.push( pooledTrans );
+        } else {
+          created--;
+        }
+        notifyAll();
+      }
+      if ( !keep ) {
+        pooledTrans.dispose();
+      }
+    }
+
+    void retire() {
+      List<PooledTrans> disposed;
+      synchronized ( this ) {
+        retired = true;
+        disposed = new ArrayList<PooledTrans>( idle );
+        idle.clear();
+        created -= disposed.size();
+        notifyAll();
+      }
+      for ( PooledTrans pooledTrans : disposed ) {
+        pooledTrans.dispose();
+      }
+    }
+
+    synchronized int getCreated() {
+      return created;
+    }
+
+    synchronized RowMetaInterface getInjectRowMeta() throws KettleException {
+      if ( injectRowMeta == null ) {
+        TransMeta transMeta = CarteMetaCache.getInstance().getTransMeta( filename );
+        StepMeta stepMeta = transMeta.findStep( injectStep );
+        if ( stepMeta == null ) {
+          throw new KettleException( BaseMessages.getString( PKG, "CarteTransPool.Error.StepNotFound", injectStep,
+            transMeta.getName() ) );
+        }
+        injectRowMeta = transMeta.getStepFields( stepMeta );
+      }
+      return injectRowMeta;
+    }
+  }
+
+  /**
+   * A transformation prepared and initialized in the single threaded engine, used by one request at a time.
+   */
+  static class PooledTrans {
+    private final Trans trans;
+    private final SingleThreadedTransExecutor executor;
+    private final RowProducer rowProducer;
+    private final List<RowMetaAndData> resultRows = new ArrayList<RowMetaAndData>();
+    private boolean reusable;
+
+    PooledTrans( String filename, String injectStep, String retrieveStep, LoggingObjectInterface parent )
+      throws KettleException {
+      TransMeta transMeta = CarteMetaCache.getInstance().getTransMeta( filename );
+      transMeta.setTransformationType( TransformationType.SingleThreaded );
+      // The single threaded engine doesn't use threads, there's nothing to prioritize
+      transMeta.setUsingThreadPriorityManagment( false );
+
+      trans = new Trans( transMeta, parent );
+      trans.prepareExecution( null );
+      try {
+        // prepareExecution() initialized the steps already, the executor doesn't need to do it again
+        for ( StepMetaDataCombi combi : trans.getSteps() ) {
+          if ( !isSingleThreaded( combi ) ) {
+            throw new KettleException( BaseMessages.getString( PKG, "CarteTransPool.Error.StepNotSupported",
+              combi.stepname, transMeta.getName() ) );
+          }
+        }
+
+        rowProducer = trans.addRowProducer( injectStep, 0 );
+        StepInterface retrieve = trans.getStepInterface( retrieveStep, 0 );
+        if ( retrieve == null ) {
+          throw new KettleException( BaseMessages.getString( PKG, "CarteTransPool.Error.StepNotFound", retrieveStep,
+            transMeta.getName() ) );
+        }
+        retrieve.addRowListener( new RowAdapter() {
+          @Override
+          public void rowWrittenEvent( RowMetaInterface rowMeta, Object[] row ) throws KettleStepException {
+            resultRows.add( new RowMetaAndData( rowMeta, row ) );
+          }
+        } );
+        trans.startThreads();
+        executor = new SingleThreadedTransExecutor( trans );
+      } catch ( KettleException e ) {
+        // Close what the steps opened in their initialization
+        for ( StepMetaDataCombi combi : trans.getSteps() ) {
+          combi.step.dispose( combi.meta, combi.data );
+          combi.step.markStop();
+        }
+        throw e;
+      }
+      reusable = true;
+    }
+
+    List<RowMetaAndData> execute( RowMetaInterface rowMeta, List<Object[]> rows ) throws KettleException {
+      resultRows.clear();
+      for ( Object[] row : rows ) {
+        rowProducer.putRow( rowMeta, row );
+      }
+      boolean more;
+      try {
+        more = executor.oneIteration();
+      } catch ( KettleException e ) {
+        reusable = false;
+        throw e;
+      }
+      if ( executor.getErrors() > 0 || executor.isStopped() ) {
+        reusable = false;
+        throw new KettleException( BaseMessages.getString( PKG, "CarteTransPool.Error.ExecutionFailed",
+          trans.getName(), getLogText() ) );
+      }
+      // All steps are done: the result is complete but there's no next time
+      reusable = more;
+      List<RowMetaAndData> result = new ArrayList<RowMetaAndData>( resultRows );
+      resultRows.clear();
+      return Collections.unmodifiableList( result );
+    }
+
+    boolean isReusable() {
+      return reusable;
+    }
+
+    void dispose() {
+      try {
+        executor.dispose();
+      } catch ( Exception e ) {
+        trans.getLogChannel().logError( "Error disposing of the pooled transformation", e );
+      }
+    }
+
+    private static boolean isSingleThreaded( StepMetaDataCombi combi ) {
+      for ( TransformationType type : combi.meta.getSupportedTransformationTypes() ) {
+        if ( type == TransformationType.SingleThreaded ) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private String getLogText() {
+      return Const.CR + KettleLogStore.getAppender().getBuffer( trans.getLogChannelId(), false ).toString();
+    }
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -285,7 +285,7 @@ public class ExecuteJobServlet extends BaseHttpServlet implements CartePluginInt
 
       // Without a repository it's a filename --> file:///foo/bar/job.kjb
       //
-      JobMeta jobMeta = new JobMeta( job, repository );
+      JobMeta jobMeta = CarteMetaCache.getInstance().getJobMeta( job );
       return jobMeta;
 
     } else {
@@ -313,7 +313,7 @@ public class ExecuteJobServlet extends BaseHttpServlet implements CartePluginInt
       if ( jobID == null ) {
         throw new KettleException( "Unable to find job '" + name + "' in directory :" + directory );
       }
-      JobMeta jobMeta = repository.loadJob( jobID, null );
+      JobMeta jobMeta = CarteMetaCache.getInstance().getJobMeta( repository, jobID );
       return jobMeta;
     }
   }
@@ -0,0 +1,259 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.i18n.BaseMessages;
+
+public class ExecutePooledTransServlet extends BaseHttpServlet implements CartePluginInterface {
+
+  private static Class<?> PKG = ExecutePooledTransServlet.class; // i18n
+
+  private static final long serialVersionUID = 6398347122591307340L;
+
+  public static final String CONTEXT_PATH = "/kettle/executePooledTrans";
+
+  public static final String PARAM_TRANS = "trans";
+  public static final String PARAM_INJECT = "inject";
+  public static final String PARAM_RETRIEVE = "retrieve";
+
+  public static final String XML_TAG = "pooledresult";
+
+  public ExecutePooledTransServlet() {
+  }
+
+  public ExecutePooledTransServlet( TransformationMap transformationMap ) {
+    super( transformationMap );
+  }
+
+  /**
+<div id="mindtouch">
+    <h1>/kettle/executePooledTrans</h1>
+    <a name="GET"></a>
+    <h2>GET</h2>
+    <p>Executes rows with a prepared instance of a transformation file and returns the result rows.
+  The server keeps the instances of the transformation initialized between requests, see CarteTransPool. The request
+  parameters other than the ones below are the values of the fields the inject step declares, converted from String
+  to the type of the field. A field that isn't given is null, a parameter given several times makes several rows. The
+  rows written by the retrieve step are returned.</p>
+
+    <p><b>Example Request:</b><br />
+    <pre function="syntax.xml">
+    GET /kettle/executePooledTrans/?trans=/srv/lookup.ktr&inject=Injector&retrieve=Output&customer_id=42
+    </pre>
+
+    </p>
+    <h3>Parameters</h3>
+    <table class="pentaho-table">
+    <tbody>
+    <tr>
+      <th>name</th>
+      <th>description</th>
+      <th>type</th>
+    </tr>
+    <tr>
+    <td>trans</td>
+    <td>The name or URL of the transformation file.</td>
+    <td>query</td>
+    </tr>
+    <tr>
+    <td>inject</td>
+    <td>The name of the step to inject the rows into, usually an Injector step.</td>
+    <td>query</td>
+    </tr>
+    <tr>
+    <td>retrieve</td>
+    <td>The name of the step to retrieve the result rows from.</td>
+    <td>query</td>
+    </tr>
+    </tbody>
+    </table>
+
+  <h3>Response Body</h3>
+
+  <table class="pentaho-table">
+    <tbody>
+      <tr>
+        <td align="right">element:</td>
+        <td>(custom)</td>
+      </tr>
+      <tr>
+        <td align="right">media types:</td>
+        <td>text/xml</td>
+      </tr>
+    </tbody>
+  </table>
+    <p>The layout of the result rows followed by the rows, or a <code>webresult</code> with the error.</p>
+
+    <p><b>Example Response:</b></p>
+    <pre function="syntax.xml">
+    <pooledresult>
+      <row-meta>...</row-meta>
+      <row-data>...</row-data>
+    </pooledresult>
+    </pre>
+
+    <h3>Status Codes</h3>
+    <table class="pentaho-table">
+  <tbody>
+    <tr>
+      <th>code</th>
+      <th>description</th>
+    </tr>
+    <tr>
+      <td>200</td>
+      <td>Request was processed.</td>
+    </tr>
+    <tr>
+      <td>400</td>
+      <td>A required parameter is missing, a parameter isn't a field of the inject step or its value is invalid.</td>
+    </tr>
+    <tr>
+      <td>500</td>
+      <td>The execution of the transformation failed.</td>
+    </tr>
+  </tbody>
+</table>
+</div>
+  */
+  public void doGet( HttpServletRequest request, HttpServletResponse response ) throws ServletException,
+    IOException {
+    if ( isJettyMode() && !request.getContextPath().startsWith( CONTEXT_PATH ) ) {
+      return;
+    }
+
+    if ( log.isDebug() ) {
+      logDebug( toString() );
+    }
+
+    String[] knownOptions = new String[] { PARAM_TRANS, PARAM_INJECT, PARAM_RETRIEVE, };
+    String transOption = request.getParameter( PARAM_TRANS );
+    String injectOption = request.getParameter( PARAM_INJECT );
+    String retrieveOption = request.getParameter( PARAM_RETRIEVE );
+
+    response.setContentType( "text/xml" );
+    response.setCharacterEncoding( Const.XML_ENCODING );
+    PrintWriter out = response.getWriter();
+
+    for ( String option : knownOptions ) {
+      if ( Utils.isEmpty( request.getParameter( option ) ) ) {
+        response.setStatus( HttpServletResponse.SC_BAD_REQUEST );
+        out.println( new WebResult( WebResult.STRING_ERROR, BaseMessages.getString(
+          PKG, "ExecutePooledTransServlet.Error.MissingParameter", option ) ) );
+        return;
+      }
+    }
+
+    try {
+      // The rows get the layout the inject step declares, the same for every request so the pooled instances can
+      // rely on it. Every other parameter is a field, the n-th values of the fields make the n-th row.
+      //
+      RowMetaInterface rowMeta =
+        CarteTransPool.getInstance().getInjectRowMeta( transOption, injectOption, retrieveOption );
+      Enumeration<?> parameterNames = request.getParameterNames();
+      while ( parameterNames.hasMoreElements() ) {
+        String parameter = (String) parameterNames.nextElement();
+        if ( Const.indexOfString( parameter, knownOptions ) < 0 && rowMeta.indexOfValue( parameter ) < 0 ) {
+          response.setStatus( HttpServletResponse.SC_BAD_REQUEST );
+          out.println( new WebResult( WebResult.STRING_ERROR, BaseMessages.getString(
+            PKG, "ExecutePooledTransServlet.Error.UnknownField", parameter, injectOption ) ) );
+          return;
+        }
+      }
+      String[][] values = new String[rowMeta.size()][];
+      int nrRows = 0;
+      for ( int i = 0; i < values.length; i++ ) {
+        values[i] = request.getParameterValues( rowMeta.getValueMeta( i ).getName() );
+        nrRows = Math.max( nrRows, values[i] == null ? 0 : values[i].length );
+      }
+      List<Object[]> rows = new ArrayList<Object[]>( nrRows );
+      for ( int r = 0; r < nrRows; r++ ) {
+        Object[] row = new Object[rowMeta.size()];
+        for ( int i = 0; i < row.length; i++ ) {
+          ValueMetaInterface valueMeta = rowMeta.getValueMeta( i );
+          String value = values[i] != null && r < values[i].length ? values[i][r] : null;
+          try {
+            row[i] = valueMeta.convertData( new ValueMetaString( valueMeta.getName() ), value );
+          } catch ( KettleValueException e ) {
+            response.setStatus( HttpServletResponse.SC_BAD_REQUEST );
+            out.println( new WebResult( WebResult.STRING_ERROR, BaseMessages.getString(
+              PKG, "ExecutePooledTransServlet.Error.InvalidValue", valueMeta.getName(), e.getMessage() ) ) );
+            return;
+          }
+        }
+        rows.add( row );
+      }
+
+      List<RowMetaAndData> result =
+        CarteTransPool.getInstance().execute( transOption, injectOption, retrieveOption, rowMeta, rows );
+
+      StringBuilder xml = new StringBuilder();
+      xml.append( XMLHandler.getXMLHeader( Const.XML_ENCODING ) );
+      xml.append( XMLHandler.openTag( XML_TAG ) ).append( Const.CR );
+      if ( !result.isEmpty() ) {
+        xml.append( result.get( 0 ).getRowMeta().getMetaXML() ).append( Const.CR );
+        for ( RowMetaAndData row : result ) {
+          xml.append( row.getRowMeta().getDataXML( row.getData() ) ).append( Const.CR );
+        }
+      }
+      xml.append( XMLHandler.closeTag( XML_TAG ) ).append( Const.CR );
+
+      response.setStatus( HttpServletResponse.SC_OK );
+      out.print( xml );
+    } catch ( KettleException e ) {
+      response.setStatus( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+      out.println( new WebResult( WebResult.STRING_ERROR, BaseMessages.getString(
+        PKG, "ExecutePooledTransServlet.Error.UnexpectedError", Const.CR + Const.getStackTracker( e ) ) ) );
+    }
+  }
+
+  public String toString() {
+    return "Execute a transformation in pooled mode";
+  }
+
+  public String getService() {
+    return CONTEXT_PATH + " (" + toString() + ")";
+  }
+
+  public String getContextPath() {
+    return CONTEXT_PATH;
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -291,6 +291,19 @@ public class ExecuteTransServlet extends BaseHttpServlet implements CartePluginI
       trans.setServletReponse( response );
       trans.setServletRequest( request );
 
+      // Wait for our turn on a busy server...
+      //
+      CarteExecutionQueue.Admission admission;
+      try {
+        admission = CarteExecutionQueue.getInstance().acquire( trans, request.getRemoteUser() );
+      } catch ( KettleException e ) {
+        // It will never run, don't keep it in the list
+        getTransformationMap().removeTransformation( new CarteObjectEntry( transMeta.getName(), carteObjectId ) );
+        if ( repository != null ) {
+          repository.disconnect();
+        }
+        throw e;
+      }
       try {
         // Execute the transformation...
         //
@@ -300,6 +313,8 @@ public class ExecuteTransServlet extends BaseHttpServlet implements CartePluginI
       } catch ( Exception executionException ) {
         String logging = KettleLogStore.getAppender().getBuffer( trans.getLogChannelId(), false ).toString();
         throw new KettleException( "Error executing transformation: " + logging, executionException );
+      } finally {
+        admission.release();
       }
     } catch ( Exception ex ) {
 
@@ -314,7 +329,7 @@ public class ExecuteTransServlet extends BaseHttpServlet implements CartePluginI
 
       // Without a repository it's a filename --> file:///foo/bar/trans.ktr
       //
-      TransMeta transMeta = new TransMeta( trans );
+      TransMeta transMeta = CarteMetaCache.getInstance().getTransMeta( trans );
       return transMeta;
 
     } else {
@@ -342,7 +357,7 @@ public class ExecuteTransServlet extends BaseHttpServlet implements CartePluginI
       if ( transformationID == null ) {
         throw new KettleException( "Unable to find transformation '" + name + "' in directory :" + directory );
       }
-      TransMeta transMeta = repository.loadTransformation( transformationID, null );
+      TransMeta transMeta = CarteMetaCache.getInstance().getTransMeta( repository, transformationID );
       return transMeta;
     }
   }
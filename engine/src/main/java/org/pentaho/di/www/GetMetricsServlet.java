@@ -0,0 +1,336 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMemoryQuota;
+import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.di.trans.step.StepMetaDataCombi;
+
+public class GetMetricsServlet extends BaseHttpServlet implements CartePluginInterface {
+
+  private static Class<?> PKG = GetMetricsServlet.class; // i18n
+
+  private static final long serialVersionUID = -2215939128713472036L;
+
+  public static final String CONTEXT_PATH = "/kettle/metrics";
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+  public GetMetricsServlet() {
+  }
+
+  public GetMetricsServlet( TransformationMap transformationMap ) {
+    super( transformationMap );
+  }
+
+  /**
+<div id="mindtouch">
+    <h1>/kettle/metrics</h1>
+    <a name="GET"></a>
+    <h2>GET</h2>
+    <p>Returns the metrics of the server in the Prometheus text format, to be scraped by a monitoring system.
+  The metrics are read from the counters of the running steps and row sets, the logging of the transformations is
+  not used. The metrics of a step are labelled with the name and id of the transformation, the step and the copy,
+  the metrics of a hop with the steps and copies it connects.</p>
+
+    <p><b>Example Request:</b><br />
+    <pre function="syntax.xml">
+    GET /kettle/metrics
+    </pre>
+
+    </p>
+
+  <h3>Response Body</h3>
+
+  <table class="pentaho-table">
+    <tbody>
+      <tr>
+        <td align="right">media types:</td>
+        <td>text/plain</td>
+      </tr>
+    </tbody>
+  </table>
+    <p>The metrics, one sample per line.</p>
+
+    <p><b>Example Response:</b></p>
+    <pre function="syntax.xml">
+    # HELP kettle_step_lines_read_total The rows read from the previous steps.
+    # TYPE kettle_step_lines_read_total counter
+    kettle_step_lines_read_total{trans="load",id="4a2f...",step="Sort rows",copy="0"} 120000
+    ...
+    # HELP kettle_carte_queue_queued The executions waiting in the queue.
+    # TYPE kettle_carte_queue_queued gauge
+    kettle_carte_queue_queued 3
+    </pre>
+
+    <h3>Status Codes</h3>
+    <table class="pentaho-table">
+  <tbody>
+    <tr>
+      <th>code</th>
+      <th>description</th>
+    </tr>
+    <tr>
+      <td>200</td>
+      <td>Request was processed.</td>
+    </tr>
+  </tbody>
+</table>
+</div>
+  */
+  public void doGet( HttpServletRequest request, HttpServletResponse response ) throws ServletException,
+    IOException {
+    if ( isJettyMode() && !request.getContextPath().startsWith( CONTEXT_PATH ) ) {
+      return;
+    }
+
+    if ( log.isDebug() ) {
+      logDebug( BaseMessages.getString( PKG, "GetMetricsServlet.Log.MetricsRequested" ) );
+    }
+
+    response.setStatus( HttpServletResponse.SC_OK );
+    response.setContentType( CONTENT_TYPE );
+    PrintWriter out = response.getWriter();
+    out.print( getMetrics() );
+    out.flush();
+  }
+
+  String getMetrics() {
+    Metric running = new Metric( "kettle_trans_running", "gauge", "1 if the transformation is running." );
+    Metric transMemory =
+      new Metric( "kettle_trans_memory_used_bytes", "gauge", "The estimated memory taken by the buffered rows." );
+    Metric transMemoryQuota =
+      new Metric( "kettle_trans_memory_quota_bytes", "gauge", "The memory quota of the transformation, 0 if none." );
+    Metric linesRead =
+      new Metric( "kettle_step_lines_read_total", "counter", "The rows read from the previous steps." );
+    Metric linesWritten =
+      new Metric( "kettle_step_lines_written_total", "counter", "The rows written to the next steps." );
+    Metric linesInput =
+      new Metric( "kettle_step_lines_input_total", "counter", "The rows read from a file, database, etc." );
+    Metric linesOutput =
+      new Metric( "kettle_step_lines_output_total", "counter", "The rows written to a file, database, etc." );
+    Metric linesUpdated = new Metric( "kettle_step_lines_updated_total", "counter", "The rows updated." );
+    Metric linesRejected =
+      new Metric( "kettle_step_lines_rejected_total", "counter", "The rows sent to the error handling." );
+    Metric errors = new Metric( "kettle_step_errors_total", "counter", "The errors of the step." );
+    Metric speed = new Metric( "kettle_step_rows_per_second", "gauge", "The rows processed per second of runtime." );
+    Metric runtime = new Metric( "kettle_step_runtime_seconds", "gauge", "The time the step has been running." );
+    Metric blocked =
+      new Metric( "kettle_step_output_blocked_seconds_total", "counter",
+        "The time the step waited for room in the buffers to the next steps." );
+    Metric inputBuffer = new Metric( "kettle_step_input_buffer_rows", "gauge", "The rows waiting to be read." );
+    Metric outputBuffer =
+      new Metric( "kettle_step_output_buffer_rows", "gauge", "The rows waiting to be read by the next steps." );
+    Metric stepMemory =
+      new Metric( "kettle_step_memory_used_bytes", "gauge", "The estimated memory taken by the buffered rows." );
+    Metric hopBuffer = new Metric( "kettle_hop_buffer_rows", "gauge", "The rows in the buffer of the hop." );
+    Metric hopCapacity =
+      new Metric( "kettle_hop_buffer_capacity_rows", "gauge", "The rows the buffer of the hop can hold." );
+
+    for ( CarteObjectEntry entry : getTransformationMap().getTransformationObjects() ) {
+      Trans trans = getTransformationMap().getTransformation( entry );
+      if ( trans == null ) {
+        continue;
+      }
+      String transLabels = label( "trans", entry.getName() ) + "," + label( "id", entry.getId() );
+      running.add( transLabels, trans.isRunning() ? 1 : 0 );
+      TransMemoryQuota memoryQuota = trans.getMemoryQuota();
+      if ( memoryQuota != null ) {
+        transMemory.add( transLabels, memoryQuota.getUsage() );
+        transMemoryQuota.add( transLabels, Math.max( memoryQuota.getQuota(), 0L ) );
+      }
+
+      List<StepMetaDataCombi> steps = trans.getSteps();
+      if ( steps != null ) {
+        for ( StepMetaDataCombi combi : new ArrayList<StepMetaDataCombi>( steps ) ) {
+          StepInterface step = combi.step;
+          String labels =
+            transLabels + "," + label( "step", step.getStepname() ) + "," + label( "copy", Integer.toString( step
+              .getCopy() ) );
+          linesRead.add( labels, step.getLinesRead() );
+          linesWritten.add( labels, step.getLinesWritten() );
+          linesInput.add( labels, step.getLinesInput() );
+          linesOutput.add( labels, step.getLinesOutput() );
+          linesUpdated.add( labels, step.getLinesUpdated() );
+          linesRejected.add( labels, step.getLinesRejected() );
+          errors.add( labels, step.getErrors() );
+
+          // The same speed as in the step status
+          //
+          double seconds = step.getRuntime() / 1000.0;
+          long in = Math.max( step.getLinesInput(), step.getLinesRead() );
+          long out =
+            Math.max( step.getLinesOutput() + step.getLinesUpdated(), step.getLinesWritten() + step
+              .getLinesRejected() );
+          speed.add( labels, seconds == 0 ? 0 : Math.max( in, out ) / seconds );
+          runtime.add( labels, seconds );
+          if ( step instanceof BaseStep ) {
+            blocked.add( labels, ( (BaseStep) step ).getOutputBlockedTime() / 1000.0 );
+            stepMemory.add( labels, ( (BaseStep) step ).getMemoryUsage() );
+          }
+          inputBuffer.add( labels, step.rowsetInputSize() );
+          outputBuffer.add( labels, step.rowsetOutputSize() );
+        }
+      }
+
+      List<RowSet> rowSets = trans.getRowsets();
+      if ( rowSets != null ) {
+        int capacity = trans.getTransMeta().getSizeRowset();
+        for ( RowSet rowSet : new ArrayList<RowSet>( rowSets ) ) {
+          String labels =
+            transLabels + "," + label( "from", rowSet.getOriginStepName() ) + "," + label( "from_copy", Integer
+              .toString( rowSet.getOriginStepCopy() ) ) + "," + label( "to", rowSet.getDestinationStepName() ) + ","
+              + label( "to_copy", Integer.toString( rowSet.getDestinationStepCopy() ) );
+          hopBuffer.add( labels, rowSet.size() );
+          hopCapacity.add( labels, capacity );
+        }
+      }
+    }
+
+    Runtime jvm = Runtime.getRuntime();
+    Metric memoryUsed = new Metric( "kettle_jvm_memory_used_bytes", "gauge", "The memory used by the JVM." );
+    memoryUsed.add( null, jvm.totalMemory() - jvm.freeMemory() );
+    Metric memoryTotal =
+      new Metric( "kettle_jvm_memory_total_bytes", "gauge", "The memory currently allocated by the JVM." );
+    memoryTotal.add( null, jvm.totalMemory() );
+    Metric memoryMax = new Metric( "kettle_jvm_memory_max_bytes", "gauge", "The memory the JVM can allocate." );
+    memoryMax.add( null, jvm.maxMemory() );
+    Metric threads = new Metric( "kettle_jvm_threads", "gauge", "The live threads of the JVM." );
+    threads.add( null, Thread.activeCount() );
+
+    SlaveServerQueueStatus queue = CarteExecutionQueue.getInstance().getStatus();
+    Metric queued = new Metric( "kettle_carte_queue_queued", "gauge", "The executions waiting in the queue." );
+    queued.add( null, queue.getQueued() );
+    Metric queueRunning =
+      new Metric( "kettle_carte_queue_running", "gauge", "The executions admitted by the queue and running." );
+    queueRunning.add( null, queue.getRunning() );
+    Metric reserved =
+      new Metric( "kettle_carte_queue_reserved_memory_megabytes", "gauge",
+        "The memory reserved by the running executions." );
+    reserved.add( null, queue.getReservedMemory() );
+    Metric admitted = new Metric( "kettle_carte_queue_admitted_total", "counter", "The executions admitted." );
+    admitted.add( null, queue.getAdmitted() );
+    Metric rejected =
+      new Metric( "kettle_carte_queue_rejected_total", "counter", "The executions rejected or timed out." );
+    rejected.add( null, queue.getRejected() );
+
+    StringBuilder metrics = new StringBuilder();
+    for ( Metric metric : new Metric[] {
+      running, transMemory, transMemoryQuota, linesRead, linesWritten, linesInput, linesOutput, linesUpdated,
+      linesRejected, errors, speed, runtime, blocked, stepMemory, inputBuffer, outputBuffer, hopBuffer, hopCapacity,
+      memoryUsed, memoryTotal, memoryMax, threads, queued, queueRunning, reserved, admitted, rejected } ) {
+      metric.appendTo( metrics );
+    }
+    return metrics.toString();
+  }
+
+  static String label( String name, String value ) {
+    StringBuilder label = new StringBuilder( name ).append( "=\"" );
+    if ( value != null ) {
+      for ( int i = 0; i < value.length(); i++ ) {
+        char c = value.charAt( i );
+        switch ( c ) {
+          case '\\':
+            label.append( "\\\\" );
+            break;
+          case '"':
+            label.append( "\\\"" );
+            break;
+          case '\n':
+            label.append( "\\n" );
+            break;
+          default:
+            label.append( c );
+            break;
+        }
+      }
+    }
+    return label.append( '"' ).toString();
+  }
+
+  /**
+   * The samples of a metric, written together after the help and type lines.
+   */
+  private static class Metric {
+    private final String name;
+    private final String type;
+    private final String help;
+    private final StringBuilder samples = new StringBuilder();
+
+    Metric( String name, String type, String help ) {
+      this.name = name;
+      this.type = type;
+      this.help = help;
+    }
+
+    void add( String labels, long value ) {
+      sample( labels ).append( value ).append( '\n' );
+    }
+
+    void add( String labels, double value ) {
+      sample( labels ).append( value ).append( '\n' );
+    }
+
+    private StringBuilder sample( String labels ) {
+      samples.append( name );
+      if ( labels != null ) {
+        samples.append( '{' ).append( labels ).append( '}' );
+      }
+      return samples.append( ' ' );
+    }
+
+    void appendTo( StringBuilder metrics ) {
+      if ( samples.length() == 0 ) {
+        return;
+      }
+      metrics.append( "# HELP " ).append( name ).append( ' ' ).append( help ).append( '\n' );
+      metrics.append( "# TYPE " ).append( name ).append( ' ' ).append( type ).append( '\n' );
+      metrics.append( samples );
+    }
+  }
+
+  public String toString() {
+    return "Metrics";
+  }
+
+  public String getService() {
+    return CONTEXT_PATH + " (" + toString() + ")";
+  }
+
+  public String getContextPath() {
+    return CONTEXT_PATH;
+  }
+}
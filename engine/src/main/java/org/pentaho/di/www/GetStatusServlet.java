@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -28,16 +28,20 @@ import java.lang.management.OperatingSystemMXBean;
 import java.lang.management.RuntimeMXBean;
 import java.lang.management.ThreadMXBean;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.owasp.encoder.Encode;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.database.ConnectionLimiter;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
@@ -159,6 +163,31 @@ public class GetStatusServlet extends BaseHttpServlet implements CartePluginInte
             <last_log_line_nr>0</last_log_line_nr>
           </jobstatus>
         </jobstatuslist>
+        <databasestatuslist>
+          <databasestatus>
+            <connection_name>warehouse</connection_name>
+            <max_connections>20</max_connections>
+            <active>20</active>
+            <idle>0</idle>
+            <waiting>3</waiting>
+            <acquired>1250</acquired>
+            <timeouts>0</timeouts>
+            <total_wait_time>48210</total_wait_time>
+            <max_wait_time>2310</max_wait_time>
+          </databasestatus>
+        </databasestatuslist>
+        <queuestatus>
+          <max_executions>8</max_executions>
+          <running>8</running>
+          <max_queued>500</max_queued>
+          <queued>12</queued>
+          <max_memory>24000</max_memory>
+          <reserved_memory>16384</reserved_memory>
+          <admitted>412</admitted>
+          <rejected>0</rejected>
+          <total_wait_time>1852400</total_wait_time>
+          <max_wait_time>61200</max_wait_time>
+        </queuestatus>
       </serverstatus>
       </pre>
 
@@ -231,6 +260,9 @@ public class GetStatusServlet extends BaseHttpServlet implements CartePluginInte
         serverStatus.getJobStatusList().add( jobStatus );
       }
 
+      serverStatus.setDatabaseStatusList( getDatabaseStatusList() );
+      serverStatus.setQueueStatus( CarteExecutionQueue.getInstance().getStatus() );
+
       try {
         out.println( serverStatus.getXML() );
       } catch ( KettleException e ) {
@@ -359,6 +391,61 @@ public class GetStatusServlet extends BaseHttpServlet implements CartePluginInte
         }
         out.print( "</table>" );
 
+        List<SlaveServerDatabaseStatus> databaseStatusList = getDatabaseStatusList();
+        if ( !databaseStatusList.isEmpty() ) {
+          out.print( "<p>" );
+          out.println( "<table border=\"1\">" );
+          out.print( "<tr> <th>"
+            + BaseMessages.getString( PKG, "GetStatusServlet.DatabaseConnection" ) + "</th> <th>"
+            + BaseMessages.getString( PKG, "GetStatusServlet.MaxConnections" ) + "</th> <th>"
+            + BaseMessages.getString( PKG, "GetStatusServlet.ActiveConnections" ) + "</th> <th>"
+            + BaseMessages.getString( PKG, "GetStatusServlet.IdleConnections" ) + "</th> <th>"
+            + BaseMessages.getString( PKG, "GetStatusServlet.WaitingConnections" ) + "</th> <th>"
+            + BaseMessages.getString( PKG, "GetStatusServlet.AverageWaitTime" ) + "</th> <th>"
+            + BaseMessages.getString( PKG, "GetStatusServlet.MaxWaitTime" ) + "</th> <th>"
+            + BaseMessages.getString( PKG, "GetStatusServlet.ConnectionTimeouts" ) + "</th> </tr>" );
+          for ( SlaveServerDatabaseStatus databaseStatus : databaseStatusList ) {
+            out.print( "<tr>" );
+            out.print( "<td>" + Encode.forHtml( databaseStatus.getConnectionName() ) + "</td>" );
+            out.print( "<td>" + ( databaseStatus.getMaxConnections() == 0
+              ? BaseMessages.getString( PKG, "GetStatusServlet.NoLimit" ) : databaseStatus.getMaxConnections() )
+              + "</td>" );
+            out.print( "<td>" + databaseStatus.getActive() + "</td>" );
+            out.print( "<td>" + databaseStatus.getIdle() + "</td>" );
+            out.print( "<td>" + databaseStatus.getWaiting() + "</td>" );
+            out.print( "<td>" + databaseStatus.getAverageWaitTime() + " ms</td>" );
+            out.print( "<td>" + databaseStatus.getMaxWaitTime() + " ms</td>" );
+            out.print( "<td>" + databaseStatus.getTimeouts() + "</td>" );
+            out.print( "</tr>" );
+          }
+          out.print( "</table>" );
+        }
+
+        SlaveServerQueueStatus queueStatus = CarteExecutionQueue.getInstance().getStatus();
+        String noLimit = BaseMessages.getString( PKG, "GetStatusServlet.NoLimit" );
+        out.print( "<p>" );
+        out.println( "<table border=\"1\">" );
+        out.print( "<tr> <th>"
+          + BaseMessages.getString( PKG, "GetStatusServlet.RunningExecutions" ) + "</th> <th>"
+          + BaseMessages.getString( PKG, "GetStatusServlet.MaxExecutions" ) + "</th> <th>"
+          + BaseMessages.getString( PKG, "GetStatusServlet.QueuedExecutions" ) + "</th> <th>"
+          + BaseMessages.getString( PKG, "GetStatusServlet.ReservedMemory" ) + "</th> <th>"
+          + BaseMessages.getString( PKG, "GetStatusServlet.AverageQueueWaitTime" ) + "</th> <th>"
+          + BaseMessages.getString( PKG, "GetStatusServlet.MaxQueueWaitTime" ) + "</th> <th>"
+          + BaseMessages.getString( PKG, "GetStatusServlet.RejectedExecutions" ) + "</th> </tr>" );
+        out.print( "<tr>" );
+        out.print( "<td>" + queueStatus.getRunning() + "</td>" );
+        out.print( "<td>" + ( queueStatus.getMaxExecutions() == 0 ? noLimit : queueStatus.getMaxExecutions() )
+          + "</td>" );
+        out.print( "<td>" + queueStatus.getQueued() + "</td>" );
+        out.print( "<td>" + queueStatus.getReservedMemory() + " / "
+          + ( queueStatus.getMaxMemory() == 0 ? noLimit : queueStatus.getMaxMemory() ) + " MB</td>" );
+        out.print( "<td>" + queueStatus.getAverageWaitTime() + " ms</td>" );
+        out.print( "<td>" + queueStatus.getMaxWaitTime() + " ms</td>" );
+        out.print( "<td>" + queueStatus.getRejected() + "</td>" );
+        out.print( "</tr>" );
+        out.print( "</table>" );
+
       } catch ( Exception ex ) {
         out.println( "<p>" );
         out.println( "<pre>" );
@@ -443,6 +530,15 @@ public class GetStatusServlet extends BaseHttpServlet implements CartePluginInte
     }
   }
 
+  private static List<SlaveServerDatabaseStatus> getDatabaseStatusList() {
+    List<SlaveServerDatabaseStatus> databaseStatusList = new ArrayList<SlaveServerDatabaseStatus>();
+    for ( Map.Entry<String, ConnectionLimiter.ConnectionStatistics> entry
+      : ConnectionLimiter.getInstance().getStatistics().entrySet() ) {
+      databaseStatusList.add( new SlaveServerDatabaseStatus( entry.getKey(), entry.getValue() ) );
+    }
+    return databaseStatusList;
+  }
+
   private static void getSystemInfo( SlaveServerStatus serverStatus ) {
     OperatingSystemMXBean operatingSystemMXBean =
       java.lang.management.ManagementFactory.getOperatingSystemMXBean();
@@ -0,0 +1,278 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.Trans;
+
+public class GetTransLogServlet extends BaseHttpServlet implements CartePluginInterface {
+
+  private static Class<?> PKG = GetTransLogServlet.class; // i18n
+
+  private static final long serialVersionUID = -7183624075512379218L;
+
+  public static final String CONTEXT_PATH = "/kettle/transLog";
+
+  public static final String XML_TAG = "translog";
+
+  /**
+   * The response headers with the cursors and state of the log, for the text response.
+   */
+  public static final String HEADER_NEXT_CURSOR = "Kettle-Log-Next-Cursor";
+  public static final String HEADER_START_CURSOR = "Kettle-Log-Start-Cursor";
+  public static final String HEADER_FINISHED = "Kettle-Log-Finished";
+
+  public static final int DEFAULT_MAX_LINES = 1000;
+
+  /**
+   * The longest a request waits for new lines, in seconds.
+   */
+  public static final int MAX_WAIT = 60;
+
+  CarteLogStreams streams;
+
+  public GetTransLogServlet() {
+  }
+
+  public GetTransLogServlet( TransformationMap transformationMap ) {
+    super( transformationMap );
+  }
+
+  /**
+<div id="mindtouch">
+    <h1>/kettle/transLog</h1>
+    <a name="GET"></a>
+    <h2>GET</h2>
+    <p>Returns the log lines of a transformation after a cursor. The cursor is the number of lines the client has
+  already read: start at 0 and continue from the cursor returned by the previous request. With the wait parameter the
+  request waits for new lines when there are none yet, so a client can follow the log with one request at a time
+  without polling the whole status. The server keeps the last lines of the followed transformations, see
+  KETTLE_CARTE_LOG_STREAM_LINES. When a client falls further behind, the start cursor of the response is after the
+  requested one.</p>
+
+    <p><b>Example Request:</b><br />
+    <pre function="syntax.xml">
+    GET /kettle/transLog/?name=dummy-trans&id=a4d54106-25db-41c5-b9f8-73afd42766a6&cursor=120&wait=30&xml=Y
+    </pre>
+
+    </p>
+    <h3>Parameters</h3>
+    <table class="pentaho-table">
+    <tbody>
+    <tr>
+      <th>name</th>
+      <th>description</th>
+      <th>type</th>
+    </tr>
+    <tr>
+    <td>name</td>
+    <td>Name of the transformation.</td>
+    <td>query</td>
+    </tr>
+    <tr>
+    <td>id</td>
+    <td>Carte id of the transformation, optional. The first transformation with the name is used without it.</td>
+    <td>query, optional</td>
+    </tr>
+    <tr>
+    <td>cursor</td>
+    <td>The number of lines already read, 0 by default.</td>
+    <td>query, optional</td>
+    </tr>
+    <tr>
+    <td>lines</td>
+    <td>The maximum number of lines to return, 1000 by default.</td>
+    <td>query, optional</td>
+    </tr>
+    <tr>
+    <td>wait</td>
+    <td>The number of seconds to wait for new lines while the transformation runs, at most 60. 0 by default.</td>
+    <td>query, optional</td>
+    </tr>
+    <tr>
+    <td>xml</td>
+    <td>Boolean flag which sets the output format required. Use <code>Y</code> to receive XML response, the lines
+    are returned as plain text with the cursors in the Kettle-Log-* headers otherwise.</td>
+    <td>boolean, optional</td>
+    </tr>
+    </tbody>
+    </table>
+
+  <h3>Response Body</h3>
+
+  <table class="pentaho-table">
+    <tbody>
+      <tr>
+        <td align="right">element:</td>
+        <td>(custom)</td>
+      </tr>
+      <tr>
+        <td align="right">media types:</td>
+        <td>text/xml, text/plain</td>
+      </tr>
+    </tbody>
+  </table>
+    <p>The cursors, whether the transformation finished and all its lines were read, and the lines.</p>
+
+    <p><b>Example Response:</b></p>
+    <pre function="syntax.xml">
+    <?xml version="1.0" encoding="UTF-8"?>
+    <translog>
+      <start_cursor>120</start_cursor>
+      <next_cursor>122</next_cursor>
+      <finished>N</finished>
+      <log_text>2018/02/01 10:00:00 - Dummy.0 - Finished processing (I=0, O=0, R=10, W=10, U=0, E=0)
+2018/02/01 10:00:00 - dummy-trans - Transformation finished
+</log_text>
+    </translog>
+    </pre>
+
+    <h3>Status Codes</h3>
+    <table class="pentaho-table">
+  <tbody>
+    <tr>
+      <th>code</th>
+      <th>description</th>
+    </tr>
+    <tr>
+      <td>200</td>
+      <td>Request was processed.</td>
+    </tr>
+    <tr>
+      <td>404</td>
+      <td>The transformation was not found.</td>
+    </tr>
+    <tr>
+      <td>500</td>
+      <td>Internal server error occurs during request processing.</td>
+    </tr>
+  </tbody>
+</table>
+</div>
+  */
+  public void doGet( HttpServletRequest request, HttpServletResponse response ) throws ServletException,
+    IOException {
+    if ( isJettyMode() && !request.getContextPath().startsWith( CONTEXT_PATH ) ) {
+      return;
+    }
+
+    String transName = request.getParameter( "name" );
+    String id = request.getParameter( "id" );
+    boolean useXML = "Y".equalsIgnoreCase( request.getParameter( "xml" ) );
+    long cursor = Math.max( 0L, Const.toLong( request.getParameter( "cursor" ), 0L ) );
+    int maxLines = Const.toInt( request.getParameter( "lines" ), DEFAULT_MAX_LINES );
+    int wait = Math.min( MAX_WAIT, Math.max( 0, Const.toInt( request.getParameter( "wait" ), 0 ) ) );
+
+    if ( log.isDebug() ) {
+      logDebug( BaseMessages.getString( PKG, "GetTransLogServlet.Log.LogRequested", transName, cursor ) );
+    }
+
+    if ( useXML ) {
+      response.setContentType( "text/xml" );
+      response.setCharacterEncoding( Const.XML_ENCODING );
+    } else {
+      response.setContentType( "text/plain;charset=UTF-8" );
+    }
+    PrintWriter out = response.getWriter();
+
+    // ID is optional...
+    //
+    Trans trans = null;
+    if ( Utils.isEmpty( id ) ) {
+      CarteObjectEntry entry = getTransformationMap().getFirstCarteObjectEntry( transName );
+      if ( entry != null ) {
+        trans = getTransformationMap().getTransformation( entry );
+      }
+    } else if ( getTransformationMap().getTransformationObjects().contains( new CarteObjectEntry( transName, id ) ) ) {
+      trans = getTransformationMap().getTransformation( new CarteObjectEntry( transName, id ) );
+    }
+
+    if ( trans == null ) {
+      response.setStatus( HttpServletResponse.SC_NOT_FOUND );
+      String message = BaseMessages.getString( PKG, "GetTransLogServlet.Error.TransNotFound", transName, id );
+      out.println( useXML ? new WebResult( WebResult.STRING_ERROR, message ).getXML() : message );
+      return;
+    }
+
+    try {
+      CarteLogStreams.LogChunk chunk = getStreams().read( trans, cursor, maxLines, wait * 1000L );
+
+      StringBuilder logText = new StringBuilder();
+      for ( String line : chunk.getLines() ) {
+        logText.append( line ).append( Const.CR );
+      }
+
+      response.setStatus( HttpServletResponse.SC_OK );
+      if ( useXML ) {
+        StringBuilder xml = new StringBuilder( logText.length() + 200 );
+        xml.append( XMLHandler.getXMLHeader( Const.XML_ENCODING ) );
+        xml.append( XMLHandler.openTag( XML_TAG ) ).append( Const.CR );
+        xml.append( "  " ).append( XMLHandler.addTagValue( "start_cursor", chunk.getStartCursor() ) );
+        xml.append( "  " ).append( XMLHandler.addTagValue( "next_cursor", chunk.getNextCursor() ) );
+        xml.append( "  " ).append( XMLHandler.addTagValue( "finished", chunk.isFinished() ) );
+        xml.append( "  " ).append( XMLHandler.addTagValue( "log_text", logText.toString() ) );
+        xml.append( XMLHandler.closeTag( XML_TAG ) ).append( Const.CR );
+        out.print( xml );
+      } else {
+        response.setHeader( HEADER_START_CURSOR, Long.toString( chunk.getStartCursor() ) );
+        response.setHeader( HEADER_NEXT_CURSOR, Long.toString( chunk.getNextCursor() ) );
+        response.setHeader( HEADER_FINISHED, chunk.isFinished() ? "Y" : "N" );
+        out.print( logText );
+      }
+    } catch ( KettleException e ) {
+      response.setStatus( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+      String message =
+        BaseMessages.getString( PKG, "GetTransLogServlet.Error.UnexpectedError", Const.CR + Const
+          .getStackTracker( e ) );
+      out.println( useXML ? new WebResult( WebResult.STRING_ERROR, message ).getXML() : message );
+    }
+    out.flush();
+  }
+
+  private CarteLogStreams getStreams() {
+    return streams != null ? streams : CarteLogStreams.getInstance();
+  }
+
+  public String toString() {
+    return "Transformation log";
+  }
+
+  public String getService() {
+    return CONTEXT_PATH + " (" + toString() + ")";
+  }
+
+  public String getContextPath() {
+    return CONTEXT_PATH;
+  }
+}
@@ -44,6 +44,7 @@ import org.pentaho.di.core.logging.KettleLogStore;
 import org.pentaho.di.core.xml.XMLHandler;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMemoryQuota;
 import org.pentaho.di.trans.step.BaseStepData.StepExecutionStatus;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.di.trans.step.StepStatus;
@@ -295,6 +296,15 @@ public class GetTransStatusServlet extends BaseHttpServlet implements CartePlugi
             //
             transStatus.setPaused( trans.isPaused() );
 
+            // How much memory do the buffered rows take?
+            //
+            TransMemoryQuota memoryQuota = trans.getMemoryQuota();
+            if ( memoryQuota != null ) {
+              transStatus.setMemoryUsage( memoryQuota.getUsage() );
+              transStatus.setPeakMemoryUsage( memoryQuota.getPeakUsage() );
+              transStatus.setMemoryQuota( Math.max( memoryQuota.getQuota(), 0L ) );
+            }
+
             // Send the result back as XML
             //
             String xml = transStatus.getXML();
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -193,6 +193,7 @@ public class RemoveTransServlet extends BaseHttpServlet implements CartePluginIn
 
       cache.remove( trans.getLogChannelId() );
       KettleLogStore.discardLines( trans.getLogChannelId(), true );
+      CarteExecutionQueue.getInstance().cancel( trans );
       getTransformationMap().removeTransformation( entry );
 
       if ( useXML ) {
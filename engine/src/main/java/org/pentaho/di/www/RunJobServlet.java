@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -303,7 +303,7 @@ public class RunJobServlet extends BaseHttpServlet implements CartePluginInterfa
 
         ObjectId jobID = repository.getJobId( name, directory );
 
-        JobMeta transJob = repository.loadJob( jobID, null );
+        JobMeta transJob = CarteMetaCache.getInstance().getJobMeta( repository, jobID );
         return transJob;
       }
     }
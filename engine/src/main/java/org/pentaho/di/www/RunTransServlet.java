@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -247,6 +247,16 @@ public class RunTransServlet extends BaseHttpServlet implements CartePluginInter
       String message = "Transformation '" + trans.getName() + "' was added to the list with id " + carteObjectId;
       logBasic( message );
 
+      // Wait for our turn on a busy server, the admission is released when the transformation finishes
+      //
+      CarteExecutionQueue.Admission admission;
+      try {
+        admission = CarteExecutionQueue.getInstance().acquire( trans, request.getRemoteUser() );
+      } catch ( KettleException e ) {
+        // It will never run, don't keep it in the list
+        getTransformationMap().removeTransformation( new CarteObjectEntry( trans.getName(), carteObjectId ) );
+        throw e;
+      }
       try {
         // Execute the transformation...
         //
@@ -255,6 +265,7 @@ public class RunTransServlet extends BaseHttpServlet implements CartePluginInter
         finishProcessing( trans, out );
 
       } catch ( Exception executionException ) {
+        admission.release();
         String logging = KettleLogStore.getAppender().getBuffer( trans.getLogChannelId(), false ).toString();
         throw new KettleException( "Error executing Transformation: " + logging, executionException );
       }
@@ -295,7 +306,7 @@ public class RunTransServlet extends BaseHttpServlet implements CartePluginInter
 
         ObjectId transformationId = repository.getTransformationID( name, directory );
 
-        TransMeta transMeta = repository.loadTransformation( transformationId, null );
+        TransMeta transMeta = CarteMetaCache.getInstance().getTransMeta( repository, transformationId );
         return transMeta;
       }
     }
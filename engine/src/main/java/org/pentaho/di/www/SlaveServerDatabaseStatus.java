@@ -0,0 +1,184 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.database.ConnectionLimiter;
+import org.pentaho.di.core.database.ConnectionPoolUtil;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.w3c.dom.Node;
+
+/**
+ * The usage of the connections to one database on a slave server.
+ */
+public class SlaveServerDatabaseStatus {
+  public static final String XML_TAG = "databasestatus";
+
+  private String connectionName;
+  private int maxConnections;
+  private int active;
+  private int idle;
+  private int waiting;
+  private long acquired;
+  private long timeouts;
+  private long totalWaitTime;
+  private long maxWaitTime;
+
+  public SlaveServerDatabaseStatus() {
+  }
+
+  /**
+   * @param connectionName
+   *          the name of the database connection
+   * @param statistics
+   *          the statistics of the connections kept by the connection limiter
+   */
+  public SlaveServerDatabaseStatus( String connectionName, ConnectionLimiter.ConnectionStatistics statistics ) {
+    this();
+    this.connectionName = connectionName;
+    this.maxConnections = ConnectionLimiter.getMaxConnections( connectionName );
+    this.active = statistics.getActive();
+    this.idle = ConnectionPoolUtil.getIdleConnections( connectionName );
+    this.waiting = statistics.getWaiting();
+    this.acquired = statistics.getAcquired();
+    this.timeouts = statistics.getTimeouts();
+    this.totalWaitTime = statistics.getTotalWaitTime();
+    this.maxWaitTime = statistics.getMaxWaitTime();
+  }
+
+  public SlaveServerDatabaseStatus( Node databaseStatusNode ) {
+    this();
+    connectionName = XMLHandler.getTagValue( databaseStatusNode, "connection_name" );
+    maxConnections = Const.toInt( XMLHandler.getTagValue( databaseStatusNode, "max_connections" ), 0 );
+    active = Const.toInt( XMLHandler.getTagValue( databaseStatusNode, "active" ), 0 );
+    idle = Const.toInt( XMLHandler.getTagValue( databaseStatusNode, "idle" ), 0 );
+    waiting = Const.toInt( XMLHandler.getTagValue( databaseStatusNode, "waiting" ), 0 );
+    acquired = Const.toLong( XMLHandler.getTagValue( databaseStatusNode, "acquired" ), 0L );
+    timeouts = Const.toLong( XMLHandler.getTagValue( databaseStatusNode, "timeouts" ), 0L );
+    totalWaitTime = Const.toLong( XMLHandler.getTagValue( databaseStatusNode, "total_wait_time" ), 0L );
+    maxWaitTime = Const.toLong( XMLHandler.getTagValue( databaseStatusNode, "max_wait_time" ), 0L );
+  }
+
+  public String getXML() {
+    StringBuilder xml = new StringBuilder();
+
+    xml.append( XMLHandler.openTag( XML_TAG ) ).append( Const.CR );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "connection_name", connectionName ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "max_connections", maxConnections ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "active", active ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "idle", idle ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "waiting", waiting ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "acquired", acquired ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "timeouts", timeouts ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "total_wait_time", totalWaitTime ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "max_wait_time", maxWaitTime ) );
+    xml.append( XMLHandler.closeTag( XML_TAG ) );
+
+    return xml.toString();
+  }
+
+  /**
+   * @return the average time in milliseconds a connection waited to be opened
+   */
+  public long getAverageWaitTime() {
+    return acquired == 0 ? 0L : totalWaitTime / acquired;
+  }
+
+  public String getConnectionName() {
+    return connectionName;
+  }
+
+  public void setConnectionName( String connectionName ) {
+    this.connectionName = connectionName;
+  }
+
+  /**
+   * @return the maximum number of connections to the database, 0 for no limit
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public void setMaxConnections( int maxConnections ) {
+    this.maxConnections = maxConnections;
+  }
+
+  public int getActive() {
+    return active;
+  }
+
+  public void setActive( int active ) {
+    this.active = active;
+  }
+
+  /**
+   * @return the number of idle connections in the connection pools of the database
+   */
+  public int getIdle() {
+    return idle;
+  }
+
+  public void setIdle( int idle ) {
+    this.idle = idle;
+  }
+
+  public int getWaiting() {
+    return waiting;
+  }
+
+  public void setWaiting( int waiting ) {
+    this.waiting = waiting;
+  }
+
+  public long getAcquired() {
+    return acquired;
+  }
+
+  public void setAcquired( long acquired ) {
+    this.acquired = acquired;
+  }
+
+  public long getTimeouts() {
+    return timeouts;
+  }
+
+  public void setTimeouts( long timeouts ) {
+    this.timeouts = timeouts;
+  }
+
+  public long getTotalWaitTime() {
+    return totalWaitTime;
+  }
+
+  public void setTotalWaitTime( long totalWaitTime ) {
+    this.totalWaitTime = totalWaitTime;
+  }
+
+  public long getMaxWaitTime() {
+    return maxWaitTime;
+  }
+
+  public void setMaxWaitTime( long maxWaitTime ) {
+    this.maxWaitTime = maxWaitTime;
+  }
+}
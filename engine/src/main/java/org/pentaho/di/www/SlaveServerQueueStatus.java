@@ -0,0 +1,201 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.www;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.w3c.dom.Node;
+
+/**
+ * The state of the execution queue of a slave server.
+ *
+ * @see CarteExecutionQueue
+ */
+public class SlaveServerQueueStatus {
+  public static final String XML_TAG = "queuestatus";
+
+  private int maxExecutions;
+  private int running;
+  private int maxQueued;
+  private int queued;
+  private long maxMemory;
+  private long reservedMemory;
+  private long admitted;
+  private long rejected;
+  private long totalWaitTime;
+  private long maxWaitTime;
+
+  public SlaveServerQueueStatus() {
+  }
+
+  public SlaveServerQueueStatus( Node queueStatusNode ) {
+    this();
+    maxExecutions = Const.toInt( XMLHandler.getTagValue( queueStatusNode, "max_executions" ), 0 );
+    running = Const.toInt( XMLHandler.getTagValue( queueStatusNode, "running" ), 0 );
+    maxQueued = Const.toInt( XMLHandler.getTagValue( queueStatusNode, "max_queued" ), 0 );
+    queued = Const.toInt( XMLHandler.getTagValue( queueStatusNode, "queued" ), 0 );
+    maxMemory = Const.toLong( XMLHandler.getTagValue( queueStatusNode, "max_memory" ), 0L );
+    reservedMemory = Const.toLong( XMLHandler.getTagValue( queueStatusNode, "reserved_memory" ), 0L );
+    admitted = Const.toLong( XMLHandler.getTagValue( queueStatusNode, "admitted" ), 0L );
+    rejected = Const.toLong( XMLHandler.getTagValue( queueStatusNode, "rejected" ), 0L );
+    totalWaitTime = Const.toLong( XMLHandler.getTagValue( queueStatusNode, "total_wait_time" ), 0L );
+    maxWaitTime = Const.toLong( XMLHandler.getTagValue( queueStatusNode, "max_wait_time" ), 0L );
+  }
+
+  public String getXML() {
+    StringBuilder xml = new StringBuilder();
+
+    xml.append( XMLHandler.openTag( XML_TAG ) ).append( Const.CR );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "max_executions", maxExecutions ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "running", running ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "max_queued", maxQueued ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "queued", queued ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "max_memory", maxMemory ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "reserved_memory", reservedMemory ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "admitted", admitted ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "rejected", rejected ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "total_wait_time", totalWaitTime ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "max_wait_time", maxWaitTime ) );
+    xml.append( XMLHandler.closeTag( XML_TAG ) );
+
+    return xml.toString();
+  }
+
+  /**
+   * @return the average time in milliseconds an admitted transformation waited in the queue
+   */
+  public long getAverageWaitTime() {
+    return admitted == 0 ? 0L : totalWaitTime / admitted;
+  }
+
+  /**
+   * @return the maximum number of transformations running at the same time, 0 for no limit
+   */
+  public int getMaxExecutions() {
+    return maxExecutions;
+  }
+
+  public void setMaxExecutions( int maxExecutions ) {
+    this.maxExecutions = maxExecutions;
+  }
+
+  /**
+   * @return the number of transformations admitted and running
+   */
+  public int getRunning() {
+    return running;
+  }
+
+  public void setRunning( int running ) {
+    this.running = running;
+  }
+
+  /**
+   * @return the maximum number of transformations waiting, 0 for no limit
+   */
+  public int getMaxQueued() {
+    return maxQueued;
+  }
+
+  public void setMaxQueued( int maxQueued ) {
+    this.maxQueued = maxQueued;
+  }
+
+  /**
+   * @return the number of transformations waiting in the queue
+   */
+  public int getQueued() {
+    return queued;
+  }
+
+  public void setQueued( int queued ) {
+    this.queued = queued;
+  }
+
+  /**
+   * @return the memory in MB the running transformations may use together, 0 for no limit
+   */
+  public long getMaxMemory() {
+    return maxMemory;
+  }
+
+  public void setMaxMemory( long maxMemory ) {
+    this.maxMemory = maxMemory;
+  }
+
+  /**
+   * @return the memory in MB reserved by the running transformations
+   */
+  public long getReservedMemory() {
+    return reservedMemory;
+  }
+
+  public void setReservedMemory( long reservedMemory ) {
+    this.reservedMemory = reservedMemory;
+  }
+
+  /**
+   * @return the number of transformations admitted since the start
+   */
+  public long getAdmitted() {
+    return admitted;
+  }
+
+  public void setAdmitted( long admitted ) {
+    this.admitted = admitted;
+  }
+
+  /**
+   * @return the number of transformations refused because the queue was full or the wait timed out
+   */
+  public long getRejected() {
+    return rejected;
+  }
+
+  public void setRejected( long rejected ) {
+    this.rejected = rejected;
+  }
+
+  /**
+   * @return the total time in milliseconds the admitted transformations waited
+   */
+  public long getTotalWaitTime() {
+    return totalWaitTime;
+  }
+
+  public void setTotalWaitTime( long totalWaitTime ) {
+    this.totalWaitTime = totalWaitTime;
+  }
+
+  /**
+   * @return the longest time in milliseconds a transformation waited
+   */
+  public long getMaxWaitTime() {
+    return maxWaitTime;
+  }
+
+  public void setMaxWaitTime( long maxWaitTime ) {
+    this.maxWaitTime = maxWaitTime;
+  }
+}
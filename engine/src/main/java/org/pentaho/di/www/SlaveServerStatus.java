@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -41,6 +41,10 @@ public class SlaveServerStatus {
   private List<SlaveServerTransStatus> transStatusList;
   private List<SlaveServerJobStatus> jobStatusList;
 
+  private List<SlaveServerDatabaseStatus> databaseStatusList = new ArrayList<SlaveServerDatabaseStatus>();
+
+  private SlaveServerQueueStatus queueStatus;
+
   private long memoryFree;
   private long memoryTotal;
 
@@ -116,6 +120,16 @@ public class SlaveServerStatus {
     }
     xml.append( "  </jobstatuslist>" ).append( Const.CR );
 
+    xml.append( "  <databasestatuslist>" ).append( Const.CR );
+    for ( SlaveServerDatabaseStatus databaseStatus : databaseStatusList ) {
+      xml.append( "    " ).append( databaseStatus.getXML() ).append( Const.CR );
+    }
+    xml.append( "  </databasestatuslist>" ).append( Const.CR );
+
+    if ( queueStatus != null ) {
+      xml.append( "  " ).append( queueStatus.getXML() ).append( Const.CR );
+    }
+
     xml.append( "</" + XML_TAG + ">" ).append( Const.CR );
 
     return xml.toString();
@@ -156,6 +170,18 @@ public class SlaveServerStatus {
       Node jobStatusNode = XMLHandler.getSubNodeByNr( listJobsNode, SlaveServerJobStatus.XML_TAG, i );
       jobStatusList.add( new SlaveServerJobStatus( jobStatusNode ) );
     }
+
+    Node listDatabasesNode = XMLHandler.getSubNode( statusNode, "databasestatuslist" );
+    int nrDatabases = XMLHandler.countNodes( listDatabasesNode, SlaveServerDatabaseStatus.XML_TAG );
+    for ( int i = 0; i < nrDatabases; i++ ) {
+      Node databaseStatusNode = XMLHandler.getSubNodeByNr( listDatabasesNode, SlaveServerDatabaseStatus.XML_TAG, i );
+      databaseStatusList.add( new SlaveServerDatabaseStatus( databaseStatusNode ) );
+    }
+
+    Node queueStatusNode = XMLHandler.getSubNode( statusNode, SlaveServerQueueStatus.XML_TAG );
+    if ( queueStatusNode != null ) {
+      queueStatus = new SlaveServerQueueStatus( queueStatusNode );
+    }
   }
 
   public static SlaveServerStatus fromXML( String xml ) throws KettleException {
@@ -245,6 +271,28 @@ public class SlaveServerStatus {
     this.jobStatusList = jobStatusList;
   }
 
+  /**
+   * @return the usage of the connections per database
+   */
+  public List<SlaveServerDatabaseStatus> getDatabaseStatusList() {
+    return databaseStatusList;
+  }
+
+  public void setDatabaseStatusList( List<SlaveServerDatabaseStatus> databaseStatusList ) {
+    this.databaseStatusList = databaseStatusList;
+  }
+
+  /**
+   * @return the state of the execution queue, null if unknown
+   */
+  public SlaveServerQueueStatus getQueueStatus() {
+    return queueStatus;
+  }
+
+  public void setQueueStatus( SlaveServerQueueStatus queueStatus ) {
+    this.queueStatus = queueStatus;
+  }
+
   /**
    * @return the memoryFree
    */
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -65,6 +65,12 @@ public class SlaveServerTransStatus {
 
   private boolean paused;
 
+  private long memoryUsage;
+
+  private long peakMemoryUsage;
+
+  private long memoryQuota;
+
   public SlaveServerTransStatus() {
     stepStatusList = new ArrayList<StepStatus>();
   }
@@ -92,6 +98,9 @@ public class SlaveServerTransStatus {
     xml.append( "  " ).append( XMLHandler.addTagValue( "error_desc", errorDescription ) );
     xml.append( "  " ).append( XMLHandler.addTagValue( "log_date", XMLHandler.date2string( logDate ) ) );
     xml.append( "  " ).append( XMLHandler.addTagValue( "paused", paused ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "memory_usage", memoryUsage ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "memory_peak_usage", peakMemoryUsage ) );
+    xml.append( "  " ).append( XMLHandler.addTagValue( "memory_quota", memoryQuota ) );
 
     xml.append( "  " ).append( XMLHandler.openTag( "stepstatuslist" ) ).append( Const.CR );
     for ( int i = 0; i < stepStatusList.size(); i++ ) {
@@ -123,6 +132,9 @@ public class SlaveServerTransStatus {
     errorDescription = XMLHandler.getTagValue( transStatusNode, "error_desc" );
     logDate = XMLHandler.stringToDate( XMLHandler.getTagValue( transStatusNode, "log_date" ) );
     paused = "Y".equalsIgnoreCase( XMLHandler.getTagValue( transStatusNode, "paused" ) );
+    memoryUsage = Const.toLong( XMLHandler.getTagValue( transStatusNode, "memory_usage" ), 0L );
+    peakMemoryUsage = Const.toLong( XMLHandler.getTagValue( transStatusNode, "memory_peak_usage" ), 0L );
+    memoryQuota = Const.toLong( XMLHandler.getTagValue( transStatusNode, "memory_quota" ), 0L );
 
     Node statusListNode = XMLHandler.getSubNode( transStatusNode, "stepstatuslist" );
     int nr = XMLHandler.countNodes( statusListNode, StepStatus.XML_TAG );
@@ -397,4 +409,49 @@ public class SlaveServerTransStatus {
   public void setId( String id ) {
     this.id = id;
   }
+
+  /**
+   * @return the estimated memory in bytes taken by the rows the steps of the transformation buffer
+   */
+  public long getMemoryUsage() {
+    return memoryUsage;
+  }
+
+  /**
+   * @param memoryUsage
+   *          the estimated memory in bytes taken by the rows the steps of the transformation buffer
+   */
+  public void setMemoryUsage( long memoryUsage ) {
+    this.memoryUsage = memoryUsage;
+  }
+
+  /**
+   * @return the highest memory usage in bytes of the transformation so far
+   */
+  public long getPeakMemoryUsage() {
+    return peakMemoryUsage;
+  }
+
+  /**
+   * @param peakMemoryUsage
+   *          the highest memory usage in bytes of the transformation so far
+   */
+  public void setPeakMemoryUsage( long peakMemoryUsage ) {
+    this.peakMemoryUsage = peakMemoryUsage;
+  }
+
+  /**
+   * @return the memory quota in bytes of the transformation (KETTLE_TRANS_MEMORY_QUOTA), 0 if there is none
+   */
+  public long getMemoryQuota() {
+    return memoryQuota;
+  }
+
+  /**
+   * @param memoryQuota
+   *          the memory quota in bytes of the transformation, 0 if there is none
+   */
+  public void setMemoryQuota( long memoryQuota ) {
+    this.memoryQuota = memoryQuota;
+  }
 }
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -223,9 +223,18 @@ public class StartTransServlet extends BaseHttpServlet implements CartePluginInt
         servletLoggingObject.setLogLevel( trans.getLogLevel() );
         trans.setParent( servletLoggingObject );
 
-        executeTrans( trans );
-
-        String message = BaseMessages.getString( PKG, "StartTransServlet.Log.TransStarted", transName );
+        final Trans queuedTrans = trans;
+        boolean started =
+          CarteExecutionQueue.getInstance().submit( trans, request.getRemoteUser(),
+            new CarteExecutionQueue.Execution() {
+              public void start( CarteExecutionQueue.Admission admission ) throws KettleException {
+                executeTrans( queuedTrans );
+              }
+            } );
+
+        String message =
+          BaseMessages.getString( PKG, started ? "StartTransServlet.Log.TransStarted"
+            : "StartTransServlet.Log.TransQueued", transName );
         if ( useXML ) {
           out.println( new WebResult( WebResult.STRING_OK, message ).getXML() );
         } else {
@@ -197,6 +197,8 @@ public class StopTransServlet extends BaseHttpServlet implements CartePluginInte
       }
 
       if ( trans != null ) {
+        // A transformation waiting for its turn doesn't run at all
+        CarteExecutionQueue.getInstance().cancel( trans );
         if ( inputOnly ) {
           trans.safeStop();
         } else {
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -133,7 +133,10 @@ public class TransformationMap {
    *          the Carte object entry
    */
   public void removeTransformation( CarteObjectEntry entry ) {
-    transMap.remove( entry );
+    TransData data = transMap.remove( entry );
+    if ( data != null && data.getTrans() != null ) {
+      CarteLogStreams.remove( data.getTrans().getLogChannelId() );
+    }
   }
 
   public List<CarteObjectEntry> getTransformationObjects() {
@@ -0,0 +1,132 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.variables.Variables;
+
+public class JobEntryCheckpointStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static RowMetaAndData row( String filename ) {
+    RowMeta rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "filename" ) );
+    return new RowMetaAndData( rowMeta, filename );
+  }
+
+  private static String runKey( String date ) {
+    Map<String, String> settings = new HashMap<String, String>();
+    settings.put( "transformation", "/etl/load.ktr" );
+    settings.put( "job.parameter.DATE", date );
+    return JobEntryCheckpointStore.getRunKey( settings );
+  }
+
+  private Variables checkpointVariables() {
+    Variables variables = new Variables();
+    variables.setVariable( Const.KETTLE_JOB_CHECKPOINTS, "Y" );
+    variables.setVariable( Const.KETTLE_JOB_CHECKPOINT_DIRECTORY, folder.getRoot().getAbsolutePath() );
+    return variables;
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    assertNull( JobEntryCheckpointStore.open( new Variables(), "job", "entry", runKey( "2018-01-01" ) ) );
+  }
+
+  @Test
+  public void testCompletedRowsSurviveARestart() throws Exception {
+    Variables variables = checkpointVariables();
+    String run = runKey( "2018-01-01" );
+
+    String first = JobEntryCheckpointStore.getRowKey( row( "/data/part-1.csv" ) );
+    String second = JobEntryCheckpointStore.getRowKey( row( "/data/part-2.csv" ) );
+    assertNotEquals( first, second );
+    assertEquals( first, JobEntryCheckpointStore.getRowKey( row( "/data/part-1.csv" ) ) );
+
+    JobEntryCheckpointStore store = JobEntryCheckpointStore.open( variables, "nightly load", "load files", run );
+    assertNotNull( store );
+    assertFalse( store.isCompleted( first ) );
+    store.markCompleted( first );
+    store.markCompleted( first );
+    // A row that comes twice in the same run is processed twice
+    assertFalse( store.isCompleted( first ) );
+
+    JobEntryCheckpointStore restarted = JobEntryCheckpointStore.open( variables, "nightly load", "load files", run );
+    assertTrue( restarted.isCompleted( first ) );
+    assertFalse( restarted.isCompleted( second ) );
+    assertEquals( 1, restarted.getNrCompleted() );
+
+    restarted.clear();
+    assertFalse( restarted.getFile().exists() );
+    assertEquals( 0, JobEntryCheckpointStore.open( variables, "nightly load", "load files", run ).getNrCompleted() );
+  }
+
+  @Test
+  public void testOtherRunStartsFromScratch() throws Exception {
+    Variables variables = checkpointVariables();
+    String key = JobEntryCheckpointStore.getRowKey( row( "/data/part-1.csv" ) );
+    assertEquals( runKey( "2018-01-01" ), runKey( "2018-01-01" ) );
+    assertNotEquals( runKey( "2018-01-01" ), runKey( "2018-01-02" ) );
+
+    JobEntryCheckpointStore failed = JobEntryCheckpointStore.open( variables, "job", "entry", runKey( "2018-01-01" ) );
+    failed.markCompleted( key );
+
+    JobEntryCheckpointStore other = JobEntryCheckpointStore.open( variables, "job", "entry", runKey( "2018-01-02" ) );
+    assertFalse( other.isCompleted( key ) );
+    assertEquals( 0, other.getNrCompleted() );
+    other.markCompleted( key );
+
+    // The file now belongs to the other run
+    assertTrue( JobEntryCheckpointStore.open( variables, "job", "entry", runKey( "2018-01-02" ) ).isCompleted( key ) );
+    assertFalse( JobEntryCheckpointStore.open( variables, "job", "entry", runKey( "2018-01-01" ) ).isCompleted( key ) );
+  }
+
+  @Test
+  public void testFilename() {
+    String filename = JobEntryCheckpointStore.getFilename( "my/job", "load files?" );
+    assertTrue( filename, filename.matches( "my_job_load_files__[0-9a-f]{32}\\.checkpoint" ) );
+    File file = new File( folder.getRoot(), JobEntryCheckpointStore.getFilename( null, "entry" ) );
+    assertTrue( file.getName(), file.getName().startsWith( "_entry_" ) );
+    assertNotEquals( JobEntryCheckpointStore.getFilename( "job", "a b" ),
+      JobEntryCheckpointStore.getFilename( "job", "a_b" ) );
+  }
+}
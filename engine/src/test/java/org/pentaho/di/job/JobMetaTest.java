@@ -56,6 +56,8 @@ import java.util.HashMap;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.same;
@@ -412,6 +414,32 @@ public class JobMetaTest {
     assertFalse( jobMetaSpy.hasLoop( jobEntryCopyMain ) );
   }
 
+  @Test
+  public void testCopyForExecutionDoesNotChangeTheOriginal() {
+    JobEntryEmpty start = new JobEntryEmpty();
+    start.setName( "start" );
+    JobEntryEmpty end = new JobEntryEmpty();
+    end.setName( "end" );
+    JobEntryCopy startCopy = new JobEntryCopy( start );
+    JobEntryCopy endCopy = new JobEntryCopy( end );
+    jobMeta.addJobEntry( startCopy );
+    jobMeta.addJobEntry( endCopy );
+    jobMeta.addJobHop( new JobHopMeta( startCopy, endCopy ) );
+    jobMeta.setVariable( "var", "original" );
+
+    JobMeta copy = jobMeta.copyForExecution();
+    copy.setVariable( "var", "copy" );
+
+    assertEquals( "original", jobMeta.getVariable( "var" ) );
+    assertEquals( "copy", copy.getVariable( "var" ) );
+    JobEntryCopy copiedStart = copy.findJobEntry( "start", 0, true );
+    assertNotSame( startCopy, copiedStart );
+    assertSame( copiedStart, copy.getJobHop( 0 ).getFromEntry() );
+    assertSame( copy.findJobEntry( "end", 0, true ), copy.getJobHop( 0 ).getToEntry() );
+    assertSame( copy, copiedStart.getEntry().getParentJobMeta() );
+    assertSame( jobMeta, startCopy.getEntry().getParentJobMeta() );
+  }
+
   private JobEntryCopy createJobEntryCopy( String name ) {
     JobEntryInterface jobEntry = mock( JobEntryInterface.class );
     JobEntryCopy jobEntryCopy = new JobEntryCopy( jobEntry );
@@ -0,0 +1,103 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class SkewAwarePartitionerTest {
+
+  @Test
+  public void testSerialization() throws KettleException {
+    List<String> attributes = Arrays.asList( "FieldName" );
+    LoadSaveTester<SkewAwarePartitioner> tester =
+      new LoadSaveTester<SkewAwarePartitioner>( SkewAwarePartitioner.class, attributes );
+
+    tester.testSerialization();
+  }
+
+  @Test
+  public void testBalancedBucketsStay() {
+    int[] table = { 0, 1, 0, 1 };
+    assertArrayEquals( table, SkewAwarePartitioner.rebalance( table, new long[] { 10, 10, 10, 10 }, 2 ) );
+    assertArrayEquals( table, SkewAwarePartitioner.rebalance( table, new long[] { 0, 0, 0, 0 }, 2 ) );
+  }
+
+  @Test
+  public void testMovesBucketsToTheIdlePartition() {
+    int[] table = { 0, 1, 0, 1, 0, 1 };
+    int[] rebalanced = SkewAwarePartitioner.rebalance( table, new long[] { 30, 5, 30, 5, 10, 0 }, 2 );
+
+    long[] load = new long[2];
+    long[] counts = { 30, 5, 30, 5, 10, 0 };
+    for ( int bucket = 0; bucket < rebalanced.length; bucket++ ) {
+      load[rebalanced[bucket]] += counts[bucket];
+    }
+    assertEquals( 40, load[0] );
+    assertEquals( 40, load[1] );
+  }
+
+  @Test
+  public void testSplitsAHotBucket() {
+    int[] table = { 0, 1, 0, 1 };
+    int[] rebalanced = SkewAwarePartitioner.rebalance( table, new long[] { 100, 1, 1, 1 }, 2 );
+    assertEquals( SkewAwarePartitioner.SPLIT, rebalanced[0] );
+
+    // Cooled down again
+    rebalanced = SkewAwarePartitioner.rebalance( rebalanced, new long[] { 1, 1, 1, 1 }, 2 );
+    assertTrue( rebalanced[0] >= 0 );
+  }
+
+  @Test
+  public void testSpreadsAHotKeyOverThePartitions() throws KettleException {
+    SkewAwarePartitioner partitioner = new SkewAwarePartitioner();
+    partitioner.setFieldName( "tenant" );
+    partitioner.setNrPartitions( 4 );
+    partitioner.setRebalanceRows( 100 );
+
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "tenant" ) );
+
+    // Before the first round the partitioner works like the mod partitioner
+    //
+    for ( int i = 0; i < 100; i++ ) {
+      assertEquals( 3, partitioner.getPartition( rowMeta, new Object[] { 7L } ) );
+    }
+
+    int[] rows = new int[4];
+    for ( int i = 0; i < 100; i++ ) {
+      rows[partitioner.getPartition( rowMeta, new Object[] { 7L } )]++;
+    }
+    assertArrayEquals( new int[] { 25, 25, 25, 25 }, rows );
+  }
+}
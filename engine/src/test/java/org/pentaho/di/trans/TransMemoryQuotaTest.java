@@ -0,0 +1,95 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class TransMemoryQuotaTest {
+
+  @Test
+  public void testNoQuota() {
+    TransMemoryQuota quota = new TransMemoryQuota( 0L );
+    quota.add( Long.MAX_VALUE / 2 );
+    assertFalse( quota.isExceeded() );
+    assertFalse( quota.isSpillThresholdReached() );
+  }
+
+  @Test
+  public void testQuota() {
+    TransMemoryQuota quota = new TransMemoryQuota( 1000L );
+    assertEquals( 700L, quota.add( 700L ) );
+    assertFalse( quota.isSpillThresholdReached() );
+
+    quota.add( 200L );
+    assertTrue( quota.isSpillThresholdReached() );
+    assertFalse( quota.isExceeded() );
+
+    quota.add( 200L );
+    assertTrue( quota.isExceeded() );
+
+    assertEquals( 100L, quota.add( -1000L ) );
+    assertFalse( quota.isSpillThresholdReached() );
+    assertEquals( 100L, quota.getUsage() );
+    assertEquals( 1100L, quota.getPeakUsage() );
+  }
+
+  @Test
+  public void testOnlyStepsWithARealShareSpill() {
+    TransMemoryQuota quota = new TransMemoryQuota( 1000L );
+    quota.add( 500L );
+    assertFalse( quota.isSpillNeeded( 500L ) );
+
+    // A lookup that can't spill holds 810 bytes, a sort 40: freeing the 40 bytes wouldn't help
+    quota.add( 350L );
+    assertTrue( quota.isSpillThresholdReached() );
+    assertFalse( quota.isSpillNeeded( 40L ) );
+    assertFalse( quota.isSpillNeeded( 0L ) );
+
+    // A sort holding 500 bytes of the 850 takes most of the memory left to it
+    assertTrue( quota.isSpillNeeded( 500L ) );
+  }
+
+  @Test
+  public void testRowSize() {
+    assertEquals( 0L, TransMemoryQuota.getRowSize( null ) );
+
+    long empty = TransMemoryQuota.getRowSize( new Object[] { null, null } );
+    long longer = TransMemoryQuota.getRowSize( new Object[] { "a much longer string value", null } );
+    long shorter = TransMemoryQuota.getRowSize( new Object[] { "short", null } );
+    assertTrue( empty > 0 );
+    assertTrue( shorter > empty );
+    assertEquals( 2L * ( "a much longer string value".length() - "short".length() ), longer - shorter );
+
+    assertEquals( 116L, TransMemoryQuota.getValueSize( new byte[100] ) );
+    assertTrue( TransMemoryQuota.getValueSize( new BigDecimal( "12345.6789" ) ) > TransMemoryQuota
+      .getValueSize( 1L ) );
+    assertTrue( TransMemoryQuota.getValueSize( new Date() ) > TransMemoryQuota.getValueSize( 1L ) );
+  }
+}
@@ -79,6 +79,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
@@ -411,6 +413,36 @@ public class TransMetaTest {
     assertNotNull( clone );
   }
 
+  @Test
+  public void testCopyForExecutionDoesNotChangeTheOriginal() {
+    StepMeta input = new StepMeta( "input", null );
+    StepMeta output = new StepMeta( "output", null );
+    transMeta.addStep( input );
+    transMeta.addStep( output );
+    transMeta.addTransHop( new TransHopMeta( input, output ) );
+    transMeta.getTransLogTable().findField( TransLogTable.ID.LINES_READ ).setSubject( input );
+    transMeta.getTransLogTable().setTableName( "${table}" );
+    transMeta.setVariable( "table", "original" );
+
+    TransMeta copy = transMeta.copyForExecution();
+    copy.setVariable( "table", "copy" );
+    copy.setVariable( "other", "copy" );
+
+    assertEquals( "original", transMeta.getVariable( "table" ) );
+    assertNull( transMeta.getVariable( "other" ) );
+    assertEquals( "copy", copy.getVariable( "table" ) );
+    assertEquals( "original", transMeta.getTransLogTable().getActualTableName() );
+    assertEquals( "copy", copy.getTransLogTable().getActualTableName() );
+
+    StepMeta copiedInput = copy.findStep( "input" );
+    assertNotSame( input, copiedInput );
+    assertSame( copy, copiedInput.getParentTransMeta() );
+    assertSame( copiedInput, copy.getTransHop( 0 ).getFromStep() );
+    assertSame( copy.findStep( "output" ), copy.getTransHop( 0 ).getToStep() );
+    assertSame( input, transMeta.getTransHop( 0 ).getFromStep() );
+    assertSame( copiedInput, copy.getTransLogTable().findField( TransLogTable.ID.LINES_READ ).getSubject() );
+  }
+
   private static StepMeta mockStepMeta( String name ) {
     StepMeta meta = mock( StepMeta.class );
     when( meta.getName() ).thenReturn( name );
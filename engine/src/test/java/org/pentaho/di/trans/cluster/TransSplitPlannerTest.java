@@ -0,0 +1,180 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.cluster.ClusterSchema;
+import org.pentaho.di.cluster.SlaveServer;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.performance.StepPerformanceSnapShot;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+
+public class TransSplitPlannerTest {
+
+  private TransMeta transMeta;
+  private StepMeta input;
+  private StepMeta filter;
+  private StepMeta select;
+  private StepMeta sort;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  /**
+   * input (clustered) -> filter -> select -> sort
+   */
+  private void createTransformation() {
+    transMeta = new TransMeta();
+    transMeta.setName( "planned" );
+    ClusterSchema clusterSchema = new ClusterSchema( "cluster", new ArrayList<SlaveServer>() );
+    input = new StepMeta( "RowGenerator", "input", new DummyTransMeta() );
+    input.setClusterSchema( clusterSchema );
+    filter = new StepMeta( "FilterRows", "filter", new DummyTransMeta() );
+    select = new StepMeta( "SelectValues", "select", new DummyTransMeta() );
+    sort = new StepMeta( "SortRows", "sort", new DummyTransMeta() );
+    for ( StepMeta stepMeta : Arrays.asList( input, filter, select, sort ) ) {
+      transMeta.addStep( stepMeta );
+    }
+    transMeta.addTransHop( new TransHopMeta( input, filter ) );
+    transMeta.addTransHop( new TransHopMeta( filter, select ) );
+    transMeta.addTransHop( new TransHopMeta( select, sort ) );
+  }
+
+  private static Map<String, TransSplitPlanner.StepStatistics> statistics( long input, long filter, long select ) {
+    Map<String, TransSplitPlanner.StepStatistics> statistics =
+      new HashMap<String, TransSplitPlanner.StepStatistics>();
+    statistics.put( "input", new TransSplitPlanner.StepStatistics( 0, input ) );
+    statistics.put( "filter", new TransSplitPlanner.StepStatistics( input, filter ) );
+    statistics.put( "select", new TransSplitPlanner.StepStatistics( filter, select ) );
+    statistics.put( "sort", new TransSplitPlanner.StepStatistics( select, select ) );
+    return statistics;
+  }
+
+  @Test
+  public void testMovesTheReducingStepsToTheSlaves() throws Exception {
+    createTransformation();
+
+    TransSplitPlanner.Plan plan = new TransSplitPlanner( transMeta, statistics( 1000, 10, 10 ) ).apply();
+
+    // The filter cuts the rows down, the select doesn't so it gains nothing on the slaves
+    //
+    assertEquals( Arrays.asList( "filter" ), plan.getMovedSteps() );
+    assertTrue( filter.isClustered() );
+    assertFalse( select.isClustered() );
+    assertFalse( sort.isClustered() );
+    assertEquals( 1000, plan.getBytesBefore() );
+    assertEquals( 10, plan.getBytesAfter() );
+    assertTrue( plan.getReport().contains( "Keep step [select] on the master: it would send 10 instead of 10" ) );
+  }
+
+  @Test
+  public void testKeepsTheStepsWithoutGain() throws Exception {
+    createTransformation();
+
+    TransSplitPlanner.Plan plan = new TransSplitPlanner( transMeta, statistics( 1000, 1000, 1000 ) ).apply();
+
+    assertTrue( plan.getMovedSteps().isEmpty() );
+    assertFalse( filter.isClustered() );
+    assertTrue( plan.getReport().contains( "Keep step [filter] on the master: it would send 1000 instead of 1000" ) );
+  }
+
+  @Test
+  public void testKeepsTheStepsWithoutStatistics() throws Exception {
+    createTransformation();
+
+    TransSplitPlanner.Plan plan =
+      new TransSplitPlanner( transMeta, new HashMap<String, TransSplitPlanner.StepStatistics>() ).apply();
+
+    assertTrue( plan.getMovedSteps().isEmpty() );
+    assertTrue( plan.getReport().contains( "Keep step [filter] on the master: there are no statistics for it" ) );
+  }
+
+  @Test
+  public void testKeepsTheStepOnTheMasterWhenTheEstimateFails() throws Exception {
+    createTransformation();
+    transMeta = spy( transMeta );
+    doThrow( new KettleStepException( "no fields" ) ).when( transMeta ).getStepFields( filter );
+
+    try {
+      new TransSplitPlanner( transMeta, statistics( 1000, 10, 10 ) ).apply();
+      fail( "The fields of the filter can't be determined" );
+    } catch ( KettleException e ) {
+      // expected
+    }
+    assertFalse( filter.isClustered() );
+  }
+
+  @Test
+  public void testRowWidth() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "code", 10, -1 ) );
+    rowMeta.addValueMeta( new ValueMetaString( "description" ) );
+    assertEquals( 8 + 10 + TransSplitPlanner.DEFAULT_FIELD_WIDTH, TransSplitPlanner.getRowWidth( rowMeta ) );
+  }
+
+  @Test
+  public void testStatisticsFromSnapShots() {
+    StepPerformanceSnapShot first = new StepPerformanceSnapShot(
+      1, 1, null, "planned", "filter", 0, 0, 0, 0, 0, 0, 0, 0 );
+    first.setLinesRead( 100 );
+    first.setLinesWritten( 10 );
+    StepPerformanceSnapShot second = new StepPerformanceSnapShot(
+      2, 1, null, "planned", "filter", 1, 0, 0, 0, 0, 0, 0, 0 );
+    second.setLinesRead( 50 );
+    second.setLinesWritten( 5 );
+    Map<String, List<StepPerformanceSnapShot>> snapShots = new HashMap<String, List<StepPerformanceSnapShot>>();
+    snapShots.put( "filter.0", Collections.singletonList( first ) );
+    snapShots.put( "filter.1", Collections.singletonList( second ) );
+
+    TransSplitPlanner.StepStatistics statistics = TransSplitPlanner.getStatistics( snapShots ).get( "filter" );
+    assertEquals( 150, statistics.getLinesRead() );
+    assertEquals( 15, statistics.getLinesWritten() );
+  }
+}
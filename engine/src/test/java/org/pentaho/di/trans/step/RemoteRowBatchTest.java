@@ -0,0 +1,99 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.step;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.exception.KettleEOFException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class RemoteRowBatchTest {
+
+  private static RowMetaInterface rowMeta;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleClientEnvironment.init();
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+  }
+
+  private static byte[] write( int rows, int batchSize, boolean compressing ) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    RemoteRowBatchWriter writer =
+      new RemoteRowBatchWriter( new DataOutputStream( bytes ), rowMeta, batchSize, compressing );
+    for ( long i = 0; i < rows; i++ ) {
+      writer.putRow( new Object[] { i, i % 3 == 0 ? null : "name of row " + i } );
+    }
+    writer.finish();
+    return bytes.toByteArray();
+  }
+
+  private static void assertRows( byte[] bytes, int rows ) throws Exception {
+    RemoteRowBatchReader reader =
+      new RemoteRowBatchReader( new DataInputStream( new ByteArrayInputStream( bytes ) ), rowMeta );
+    for ( long i = 0; i < rows; i++ ) {
+      assertArrayEquals( new Object[] { i, i % 3 == 0 ? null : "name of row " + i }, reader.getRow() );
+    }
+    assertNull( reader.getRow() );
+    assertNull( reader.getRow() );
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    assertRows( write( 1000, 100, false ), 1000 );
+    assertRows( write( 1001, 100, true ), 1001 );
+    assertRows( write( 0, 100, true ), 0 );
+  }
+
+  @Test
+  public void testCompressedBatchesAreSmaller() throws Exception {
+    assertTrue( write( 1000, 1000, true ).length < write( 1000, 1000, false ).length / 2 );
+  }
+
+  @Test( expected = KettleEOFException.class )
+  public void testStreamEndingBeforeTheLastRow() throws Exception {
+    byte[] bytes = write( 10, 5, true );
+    RemoteRowBatchReader reader = new RemoteRowBatchReader(
+      new DataInputStream( new ByteArrayInputStream( Arrays.copyOf( bytes, bytes.length - 10 ) ) ), rowMeta );
+    while ( reader.getRow() != null ) {
+      // read until the stream ends
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.cubeinput;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.Condition;
+import org.pentaho.di.core.KettleClientEnvironment;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaAndData;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.steps.cubeoutput.ColumnarCubeWriter;
+
+public class ColumnarCubeReaderTest {
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleClientEnvironment.init();
+  }
+
+  private static RowMetaInterface getRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    return rowMeta;
+  }
+
+  /**
+   * Writes ids 0 to 9 in row groups of 3 rows, every third name is null.
+   */
+  private static byte[] writeCube( String compression ) throws KettleFileException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ColumnarCubeWriter writer = new ColumnarCubeWriter( bos, getRowMeta(), 3, compression );
+    for ( long i = 0; i < 10; i++ ) {
+      writer.writeRow( new Object[] { i, i % 3 == 0 ? null : "name" + i } );
+    }
+    writer.close();
+    assertEquals( 4, writer.getRowGroupsWritten() );
+    return bos.toByteArray();
+  }
+
+  private static Condition idCondition( int function, long value ) {
+    return new Condition( "id", function, null, new ValueMetaAndData( new ValueMetaInteger( "constant" ), value ) );
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    for ( String compression : ColumnarCubeWriter.COMPRESSION_CODES ) {
+      ColumnarCubeReader reader =
+        new ColumnarCubeReader( new ByteArrayInputStream( writeCube( compression ) ), null, null );
+      assertEquals( 2, reader.getRowMeta().size() );
+      for ( long i = 0; i < 10; i++ ) {
+        assertArrayEquals( new Object[] { i, i % 3 == 0 ? null : "name" + i }, reader.readRow() );
+      }
+      assertNull( reader.readRow() );
+      assertEquals( 4, reader.getRowGroupsRead() );
+      assertEquals( 0, reader.getRowGroupsSkipped() );
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testProjection() throws Exception {
+    ColumnarCubeReader reader =
+      new ColumnarCubeReader( new ByteArrayInputStream( writeCube( "deflate" ) ), new String[] { "name" }, null );
+    assertEquals( 1, reader.getRowMeta().size() );
+    assertEquals( "name", reader.getRowMeta().getValueMeta( 0 ).getName() );
+    assertEquals( 2, reader.getFileRowMeta().size() );
+    assertArrayEquals( new Object[] { null }, reader.readRow() );
+    assertArrayEquals( new Object[] { "name1" }, reader.readRow() );
+    reader.close();
+  }
+
+  @Test( expected = KettleFileException.class )
+  public void testProjectionUnknownField() throws Exception {
+    new ColumnarCubeReader( new ByteArrayInputStream( writeCube( "none" ) ), new String[] { "unknown" }, null );
+  }
+
+  @Test
+  public void testRowGroupSkipping() throws Exception {
+    ColumnarCubeReader reader =
+      new ColumnarCubeReader( new ByteArrayInputStream( writeCube( "gzip" ) ), new String[] { "name" },
+        idCondition( Condition.FUNC_LARGER_EQUAL, 7L ) );
+    assertArrayEquals( new Object[] { "name7" }, reader.readRow() );
+    assertArrayEquals( new Object[] { "name8" }, reader.readRow() );
+    assertArrayEquals( new Object[] { null }, reader.readRow() );
+    assertNull( reader.readRow() );
+    assertEquals( 2, reader.getRowGroupsRead() );
+    assertEquals( 2, reader.getRowGroupsSkipped() );
+    reader.close();
+  }
+
+  @Test
+  public void testCanMatch() throws Exception {
+    ColumnarCubeReader reader = new ColumnarCubeReader( new ByteArrayInputStream( writeCube( "none" ) ), null, null );
+    long[] nullCounts = new long[] { 0L, 3L };
+    Object[] minimums = new Object[] { 3L, null };
+    Object[] maximums = new Object[] { 5L, null };
+
+    assertTrue( reader.canMatch( idCondition( Condition.FUNC_EQUAL, 4L ), 3, nullCounts, minimums, maximums ) );
+    assertFalse( reader.canMatch( idCondition( Condition.FUNC_EQUAL, 6L ), 3, nullCounts, minimums, maximums ) );
+    assertFalse( reader.canMatch( idCondition( Condition.FUNC_SMALLER, 3L ), 3, nullCounts, minimums, maximums ) );
+    assertTrue( reader.canMatch( idCondition( Condition.FUNC_SMALLER_EQUAL, 3L ), 3, nullCounts, minimums,
+      maximums ) );
+    assertFalse( reader.canMatch( idCondition( Condition.FUNC_NULL, 0L ), 3, nullCounts, minimums, maximums ) );
+    assertFalse( reader.canMatch( new Condition( "name", Condition.FUNC_NOT_NULL, null, null ), 3, nullCounts,
+      minimums, maximums ) );
+
+    Condition or = new Condition();
+    or.addCondition( idCondition( Condition.FUNC_EQUAL, 9L ) );
+    Condition equalFour = idCondition( Condition.FUNC_EQUAL, 4L );
+    equalFour.setOperator( Condition.OPERATOR_OR );
+    or.addCondition( equalFour );
+    assertTrue( reader.canMatch( or, 3, nullCounts, minimums, maximums ) );
+
+    Condition and = new Condition();
+    and.addCondition( idCondition( Condition.FUNC_LARGER, 1L ) );
+    Condition smallerThree = idCondition( Condition.FUNC_SMALLER, 3L );
+    smallerThree.setOperator( Condition.OPERATOR_AND );
+    and.addCondition( smallerThree );
+    assertFalse( reader.canMatch( and, 3, nullCounts, minimums, maximums ) );
+    reader.close();
+  }
+
+  @Test
+  public void testIsColumnarCube() throws Exception {
+    BufferedInputStream bis = new BufferedInputStream( new ByteArrayInputStream( writeCube( "none" ) ) );
+    assertTrue( ColumnarCubeReader.isColumnarCube( bis ) );
+    // the stream is reset, the reader can still read the header
+    assertEquals( 2, new ColumnarCubeReader( bis, null, null ).getRowMeta().size() );
+
+    assertFalse( ColumnarCubeReader.isColumnarCube( new BufferedInputStream( new ByteArrayInputStream(
+      new byte[] { 1, 2, 3 } ) ) ) );
+  }
+}
@@ -30,27 +30,38 @@ import java.util.Map;
 import org.junit.Test;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.trans.steps.loadsave.LoadSaveTester;
+import org.pentaho.di.trans.steps.loadsave.validator.ArrayLoadSaveValidator;
+import org.pentaho.di.trans.steps.loadsave.validator.ConditionLoadSaveValidator;
 import org.pentaho.di.trans.steps.loadsave.validator.FieldLoadSaveValidator;
+import org.pentaho.di.trans.steps.loadsave.validator.StringLoadSaveValidator;
 
 public class CubeInputMetaTest {
   @Test
   public void testRoundTrip() throws KettleException {
     List<String> attributes =
-      Arrays.asList( "name", "limit", "addfilenameresult" );
+      Arrays.asList( "name", "limit", "addfilenameresult", "field_name", "condition" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     getterMap.put( "name", "getFilename" );
     getterMap.put( "limit", "getRowLimit" );
     getterMap.put( "addfilenameresult", "isAddResultFile" );
+    getterMap.put( "field_name", "getFieldName" );
+    getterMap.put( "condition", "getCondition" );
 
     Map<String, String> setterMap = new HashMap<String, String>();
     setterMap.put( "name", "setFilename" );
     setterMap.put( "limit", "setRowLimit" );
     setterMap.put( "addfilenameresult", "setAddResultFile" );
+    setterMap.put( "field_name", "setFieldName" );
+    setterMap.put( "condition", "setCondition" );
+
+    Map<String, FieldLoadSaveValidator<?>> attrValidatorMap = new HashMap<String, FieldLoadSaveValidator<?>>();
+    attrValidatorMap.put( "field_name", new ArrayLoadSaveValidator<String>( new StringLoadSaveValidator(), 5 ) );
+    attrValidatorMap.put( "condition", new ConditionLoadSaveValidator() );
 
     LoadSaveTester loadSaveTester =
       new LoadSaveTester( CubeInputMeta.class, attributes, getterMap, setterMap,
-          new HashMap<String, FieldLoadSaveValidator<?>>(), new HashMap<String, FieldLoadSaveValidator<?>>() );
+          attrValidatorMap, new HashMap<String, FieldLoadSaveValidator<?>>() );
 
     loadSaveTester.testSerialization();
   }
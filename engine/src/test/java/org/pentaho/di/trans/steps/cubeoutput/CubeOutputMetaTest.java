@@ -36,17 +36,24 @@ public class CubeOutputMetaTest {
   @Test
   public void testRoundTrip() throws KettleException {
     List<String> attributes =
-      Arrays.asList( "name", "add_to_result_filenames", "do_not_open_newfile_init" );
+      Arrays.asList( "name", "add_to_result_filenames", "do_not_open_newfile_init", "columnar", "row_group_size",
+        "compression" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     getterMap.put( "name", "getFilename" );
     getterMap.put( "add_to_result_filenames", "isAddToResultFiles" );
     getterMap.put( "do_not_open_newfile_init", "isDoNotOpenNewFileInit" );
+    getterMap.put( "columnar", "isColumnar" );
+    getterMap.put( "row_group_size", "getRowGroupSize" );
+    getterMap.put( "compression", "getCompression" );
 
     Map<String, String> setterMap = new HashMap<String, String>();
     setterMap.put( "name", "setFilename" );
     setterMap.put( "add_to_result_filenames", "setAddToResultFiles" );
     setterMap.put( "do_not_open_newfile_init", "setDoNotOpenNewFileInit" );
+    setterMap.put( "columnar", "setColumnar" );
+    setterMap.put( "row_group_size", "setRowGroupSize" );
+    setterMap.put( "compression", "setCompression" );
 
     LoadSaveTester loadSaveTester =
       new LoadSaveTester( CubeOutputMeta.class, attributes, getterMap, setterMap,
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -43,7 +43,7 @@ public class GetFileNamesMetaTest {
     List<String> attributes =
       Arrays.asList( "filterfiletype", "doNotFailIfNoFile", "rownum", "isaddresult", "filefield", "rownum_field",
         "filename_Field", "wildcard_Field", "exclude_wildcard_Field", "dynamic_include_subfolders", "limit", "name",
-        "filemask", "exclude_filemask", "file_required", "include_subfolders" );
+        "filemask", "exclude_filemask", "file_required", "include_subfolders", "stream_files" );
 
     Map<String, String> getterMap = new HashMap<String, String>();
     getterMap.put( "filterfiletype", "getFileTypeFilter" );
@@ -62,6 +62,7 @@ public class GetFileNamesMetaTest {
     getterMap.put( "exclude_filemask", "getExludeFileMask" );
     getterMap.put( "file_required", "getFileRequired" );
     getterMap.put( "include_subfolders", "getIncludeSubFolders" );
+    getterMap.put( "stream_files", "isStreamFiles" );
 
     Map<String, String> setterMap = new HashMap<String, String>();
     setterMap.put( "filterfiletype", "setFilterFileType" );
@@ -80,6 +81,7 @@ public class GetFileNamesMetaTest {
     setterMap.put( "exclude_filemask", "setExcludeFileMask" );
     setterMap.put( "file_required", "setFileRequired" );
     setterMap.put( "include_subfolders", "setIncludeSubFolders" );
+    setterMap.put( "stream_files", "setStreamFiles" );
 
     Map<String, FieldLoadSaveValidator<?>> fieldLoadSaveValidatorAttributeMap =
       new HashMap<String, FieldLoadSaveValidator<?>>();
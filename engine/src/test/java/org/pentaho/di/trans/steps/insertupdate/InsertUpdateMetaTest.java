@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -137,7 +137,7 @@ public class InsertUpdateMetaTest {
   public void setUpLoadSave() throws Exception {
     List<String> attributes =
         Arrays.asList( "schemaName", "tableName", "databaseMeta", "keyStream", "keyLookup", "keyCondition",
-            "keyStream2", "updateLookup", "updateStream", "update", "commitSize", "updateBypassed" );
+            "keyStream2", "updateLookup", "updateStream", "update", "commitSize", "updateBypassed", "batchUpsert" );
 
     Map<String, String> getterMap = new HashMap<String, String>() {
       {
@@ -153,6 +153,7 @@ public class InsertUpdateMetaTest {
         put( "update", "getUpdate" );
         put( "commitSize", "getCommitSizeVar" );
         put( "updateBypassed", "isUpdateBypassed" );
+        put( "batchUpsert", "isBatchUpsert" );
       }
     };
 
@@ -170,6 +171,7 @@ public class InsertUpdateMetaTest {
         put( "update", "setUpdate" );
         put( "commitSize", "setCommitSize" );
         put( "updateBypassed", "setUpdateBypassed" );
+        put( "batchUpsert", "setBatchUpsert" );
       }
     };
     FieldLoadSaveValidator<String[]> stringArrayLoadSaveValidator =
@@ -0,0 +1,195 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.pgbulkloader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaNumber;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.row.value.ValueMetaTimestamp;
+
+public class PGBinaryCopyWriterTest {
+
+  /** 2000-01-01 00:00:00 UTC, the epoch of PostgreSQL */
+  private static final long PG_EPOCH = 946684800000L;
+
+  private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+  private PGBinaryCopyWriter createWriter( String... columnTypes ) throws KettleException {
+    return new PGBinaryCopyWriter( bytes, columnTypes, columnTypes, ZoneOffset.UTC );
+  }
+
+  private DataInputStream written() {
+    return new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) );
+  }
+
+  private static int[] indexes( int count ) {
+    int[] indexes = new int[count];
+    for ( int i = 0; i < count; i++ ) {
+      indexes[i] = i;
+    }
+    return indexes;
+  }
+
+  @Test
+  public void testHeaderAndTrailer() throws Exception {
+    PGBinaryCopyWriter writer = createWriter( "int4" );
+    writer.writeHeader();
+    writer.writeTrailer();
+
+    DataInputStream in = written();
+    byte[] signature = new byte[11];
+    in.readFully( signature );
+    assertArrayEquals( new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 }, signature );
+    assertEquals( 0, in.readInt() );
+    assertEquals( 0, in.readInt() );
+    assertEquals( -1, in.readShort() );
+    assertEquals( 0, in.available() );
+  }
+
+  @Test
+  public void testNumbersAreWrittenForTheColumnType() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "a" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "b" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "c" ) );
+    rowMeta.addValueMeta( new ValueMetaNumber( "d" ) );
+    rowMeta.addValueMeta( new ValueMetaString( "e" ) );
+
+    createWriter( "int2", "int4", "int8", "float8", "int4" ).writeRow( rowMeta,
+      new Object[] { 7L, 123456L, Long.MAX_VALUE, 1.5, null }, indexes( 5 ) );
+
+    DataInputStream in = written();
+    assertEquals( 5, in.readShort() );
+    assertEquals( 2, in.readInt() );
+    assertEquals( 7, in.readShort() );
+    assertEquals( 4, in.readInt() );
+    assertEquals( 123456, in.readInt() );
+    assertEquals( 8, in.readInt() );
+    assertEquals( Long.MAX_VALUE, in.readLong() );
+    assertEquals( 8, in.readInt() );
+    assertEquals( 1.5, in.readDouble(), 0.0 );
+    assertEquals( -1, in.readInt() );
+    assertEquals( 0, in.available() );
+  }
+
+  @Test
+  public void testNumeric() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "a" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "b" ) );
+    rowMeta.addValueMeta( new ValueMetaBigNumber( "c" ) );
+
+    createWriter( "numeric", "numeric", "numeric" ).writeRow( rowMeta,
+      new Object[] { new BigDecimal( "12345.678" ), new BigDecimal( "-0.0005" ), BigDecimal.ZERO }, indexes( 3 ) );
+
+    DataInputStream in = written();
+    assertEquals( 3, in.readShort() );
+    // 1 2345 . 6780 : 3 digits, weight 1, positive, scale 3
+    assertEquals( 14, in.readInt() );
+    short[] expected = new short[] { 3, 1, 0x0000, 3, 1, 2345, 6780 };
+    for ( short value : expected ) {
+      assertEquals( value, in.readShort() );
+    }
+    // 0.0005 : 1 digit at weight -1, negative, scale 4
+    assertEquals( 10, in.readInt() );
+    expected = new short[] { 1, -1, 0x4000, 4, 5 };
+    for ( short value : expected ) {
+      assertEquals( value, in.readShort() );
+    }
+    // 0 : no digits
+    assertEquals( 8, in.readInt() );
+    for ( int i = 0; i < 4; i++ ) {
+      assertEquals( 0, in.readShort() );
+    }
+    assertEquals( 0, in.available() );
+  }
+
+  @Test
+  public void testDatesAndTimestamps() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaDate( "a" ) );
+    rowMeta.addValueMeta( new ValueMetaTimestamp( "b" ) );
+    rowMeta.addValueMeta( new ValueMetaTimestamp( "c" ) );
+
+    Timestamp timestamp = new Timestamp( PG_EPOCH + 1000L );
+    timestamp.setNanos( 1000 );
+    createWriter( "date", "timestamp", "timestamptz" ).writeRow( rowMeta,
+      new Object[] { new Date( PG_EPOCH + 86400000L ), timestamp, timestamp }, indexes( 3 ) );
+
+    DataInputStream in = written();
+    assertEquals( 3, in.readShort() );
+    assertEquals( 4, in.readInt() );
+    assertEquals( 1, in.readInt() );
+    assertEquals( 8, in.readInt() );
+    assertEquals( 1000001L, in.readLong() );
+    assertEquals( 8, in.readInt() );
+    assertEquals( 1000001L, in.readLong() );
+    assertEquals( 0, in.available() );
+  }
+
+  @Test
+  public void testTextIsWrittenAsUtf8() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "a" ) );
+    rowMeta.addValueMeta( new ValueMetaInteger( "b" ) );
+
+    createWriter( "varchar", "text" ).writeRow( rowMeta, new Object[] { "h\u00e9", 42L }, indexes( 2 ) );
+
+    DataInputStream in = written();
+    assertEquals( 2, in.readShort() );
+    assertEquals( 3, in.readInt() );
+    in.skipBytes( 3 );
+    assertEquals( 2, in.readInt() );
+    assertEquals( '4', in.readByte() );
+    assertEquals( '2', in.readByte() );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testValueOutOfRange() throws Exception {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "a" ) );
+    createWriter( "int4" ).writeRow( rowMeta, new Object[] { Integer.MAX_VALUE + 1L }, indexes( 1 ) );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testUnsupportedColumnType() throws Exception {
+    createWriter( "int4", "xml" );
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -71,7 +71,8 @@ public class PGBulkLoaderMetaTest {
     PluginRegistry.init( true );
     List<String> attributes =
         Arrays.asList( "schemaName", "tableName", "loadAction", "dbNameOverride", "delimiter",
-            "enclosure", "stopOnError", "fieldTable", "fieldStream", "dateMask", "databaseMeta" );
+            "enclosure", "stopOnError", "fieldTable", "fieldStream", "dateMask", "databaseMeta", "copyFormat",
+            "bufferSize" );
 
     Map<String, String> getterMap = new HashMap<String, String>() {
       {
@@ -86,6 +87,8 @@ public class PGBulkLoaderMetaTest {
         put( "fieldStream", "getFieldStream" );
         put( "dateMask", "getDateMask" );
         put( "databaseMeta", "getDatabaseMeta" );
+        put( "copyFormat", "getCopyFormat" );
+        put( "bufferSize", "getBufferSize" );
       }
     };
     Map<String, String> setterMap = new HashMap<String, String>() {
@@ -101,6 +104,8 @@ public class PGBulkLoaderMetaTest {
         put( "fieldStream", "setFieldStream" );
         put( "dateMask", "setDateMask" );
         put( "databaseMeta", "setDatabaseMeta" );
+        put( "copyFormat", "setCopyFormat" );
+        put( "bufferSize", "setBufferSize" );
       }
     };
     FieldLoadSaveValidator<String[]> stringArrayLoadSaveValidator =
@@ -158,7 +163,8 @@ public class PGBulkLoaderMetaTest {
       List<StepInjectionMetaEntry> entries =
         loader.getStepMeta().getStepMetaInterface().getStepMetaInjectionInterface().getStepInjectionMetadataEntries();
 
-      String masterKeys = "SCHEMA TABLE LOADACTION STOPONERROR DELIMITER ENCLOSURE DBNAMEOVERRIDE MAPPINGS ";
+      String masterKeys =
+        "SCHEMA TABLE LOADACTION STOPONERROR DELIMITER ENCLOSURE DBNAMEOVERRIDE COPYFORMAT BUFFERSIZE MAPPINGS ";
 
       for ( StepInjectionMetaEntry entry : entries ) {
         String key = entry.getKey();
@@ -253,6 +259,8 @@ public class PGBulkLoaderMetaTest {
       assertEquals( "Enclosure not properly injected... ", "new_ENCLOSURE", lm.getEnclosure() );
       assertEquals( "Load action not properly injected... ", "new_LOADACTION", lm.getLoadAction() );
       assertEquals( "Stop on error not properly injected... ", Boolean.TRUE, lm.isStopOnError() );
+      assertEquals( "Copy format not properly injected... ", "new_COPYFORMAT", lm.getCopyFormat() );
+      assertEquals( "Buffer size not properly injected... ", "new_BUFFERSIZE", lm.getBufferSize() );
 
       assertEquals( "Field name not properly injected... ", "new_FIELDNAME", lm.getFieldTable()[0] );
       assertEquals( "Stream name not properly injected... ", "new_STREAMNAME", lm.getFieldStream()[0] );
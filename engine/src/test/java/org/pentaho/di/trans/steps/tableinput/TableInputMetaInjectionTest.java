@@ -60,6 +60,26 @@ public class TableInputMetaInjectionTest extends BaseMetadataInjectionTest<Table
         return meta.isLazyConversionActive();
       }
     } );
+    check( "SPLIT_FIELD", new StringGetter() {
+      public String get() {
+        return meta.getSplitField();
+      }
+    } );
+    check( "SPLIT_BOUNDARIES", new StringGetter() {
+      public String get() {
+        return meta.getSplitBoundaries();
+      }
+    } );
+    check( "INCREMENTAL_FIELD", new StringGetter() {
+      public String get() {
+        return meta.getIncrementalField();
+      }
+    } );
+    check( "WATERMARK_NAME", new StringGetter() {
+      public String get() {
+        return meta.getWatermarkName();
+      }
+    } );
     skipPropertyTest( "CONNECTIONNAME" );
   }
 }
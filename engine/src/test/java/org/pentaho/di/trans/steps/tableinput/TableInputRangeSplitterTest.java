@@ -0,0 +1,120 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.Test;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaBigNumber;
+import org.pentaho.di.core.row.value.ValueMetaDate;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+
+public class TableInputRangeSplitterTest {
+
+  private static final String[] BOUNDARIES = new String[] { "10", "20", "30" };
+
+  @Test
+  public void testRangesAreSpreadOverTheCopies() {
+    assertEquals( "( id < 10 OR id IS NULL ) OR ( id >= 20 AND id < 30 )",
+      new TableInputRangeSplitter( "id", 0, 2 ).getRangeCondition( BOUNDARIES ) );
+    assertEquals( "( id >= 10 AND id < 20 ) OR ( id >= 30 )",
+      new TableInputRangeSplitter( "id", 1, 2 ).getRangeCondition( BOUNDARIES ) );
+  }
+
+  @Test
+  public void testMoreCopiesThanRanges() {
+    assertEquals( "( id IS NULL OR id IS NOT NULL )",
+      new TableInputRangeSplitter( "id", 0, 2 ).getRangeCondition( new String[0] ) );
+    assertEquals( "1 = 0", new TableInputRangeSplitter( "id", 1, 2 ).getRangeCondition( new String[0] ) );
+  }
+
+  @Test
+  public void testQueriesWrapTheStatement() {
+    TableInputRangeSplitter splitter = new TableInputRangeSplitter( "id", 3, 4 );
+    assertEquals( "SELECT MIN(id), MAX(id) FROM (" + Const.CR + "SELECT * FROM t" + Const.CR + ") kettle_range",
+      splitter.getBoundaryQuery( "SELECT * FROM t ; " ) );
+    assertEquals( "SELECT * FROM (" + Const.CR + "SELECT * FROM t" + Const.CR + ") kettle_range WHERE ( id >= ? )",
+      splitter.getRangeQuery( "SELECT * FROM t;", 3 ) );
+  }
+
+  @Test
+  public void testRangeParametersMatchTheCondition() throws Exception {
+    ValueMetaInterface valueMeta = new ValueMetaInteger( "id" );
+    Object[] boundaries = new Object[] { 10L, 20L, 30L };
+
+    RowMetaAndData first = new TableInputRangeSplitter( "id", 0, 2 ).getRangeParameters( valueMeta, boundaries );
+    assertArrayEquals( new Object[] { 10L, 20L, 30L }, first.getData() );
+    assertEquals( 3, first.getRowMeta().size() );
+    assertEquals( ValueMetaInterface.TYPE_INTEGER, first.getRowMeta().getValueMeta( 0 ).getType() );
+
+    RowMetaAndData second = new TableInputRangeSplitter( "id", 1, 2 ).getRangeParameters( valueMeta, boundaries );
+    assertArrayEquals( new Object[] { 10L, 20L, 30L }, second.getData() );
+    RowMetaAndData last = new TableInputRangeSplitter( "id", 3, 4 ).getRangeParameters( valueMeta, boundaries );
+    assertArrayEquals( new Object[] { 30L }, last.getData() );
+    RowMetaAndData none = new TableInputRangeSplitter( "id", 5, 6 ).getRangeParameters( valueMeta, boundaries );
+    assertEquals( 0, none.getRowMeta().size() );
+  }
+
+  @Test
+  public void testIntegerBoundaries() throws Exception {
+    ValueMetaInterface valueMeta = new ValueMetaInteger( "id" );
+    assertArrayEquals( new Object[] { 25L, 50L, 75L }, TableInputRangeSplitter.computeBoundaries( valueMeta, 0L,
+      100L, 4 ) );
+    // no overflow over the full range of a long
+    assertArrayEquals( new Object[] { -1L },
+      TableInputRangeSplitter.computeBoundaries( valueMeta, Long.MIN_VALUE, Long.MAX_VALUE, 2 ) );
+    assertEquals( 0, TableInputRangeSplitter.computeBoundaries( valueMeta, null, null, 4 ).length );
+    assertEquals( 0, TableInputRangeSplitter.computeBoundaries( valueMeta, 0L, 100L, 1 ).length );
+  }
+
+  @Test
+  public void testBigNumberAndDateBoundaries() throws Exception {
+    assertArrayEquals( new Object[] { new BigDecimal( "1.5" ) }, TableInputRangeSplitter.computeBoundaries(
+      new ValueMetaBigNumber( "amount" ), new BigDecimal( "1.0" ), new BigDecimal( "2.0" ), 2 ) );
+
+    Object[] dates =
+      TableInputRangeSplitter.computeBoundaries( new ValueMetaDate( "day" ), new Date( 0L ), new Date( 3000L ), 3 );
+    assertArrayEquals( new Object[] { new Date( 1000L ), new Date( 2000L ) }, dates );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testStringsNeedBoundaries() throws Exception {
+    TableInputRangeSplitter.computeBoundaries( new ValueMetaString( "name" ), "a", "z", 2 );
+  }
+
+  @Test
+  public void testUnevenRanges() throws Exception {
+    Object[] boundaries =
+      TableInputRangeSplitter.computeBoundaries( new ValueMetaInteger( "id" ), 1L, 7L, 3 );
+    assertArrayEquals( new Object[] { 3L, 5L }, boundaries );
+  }
+}
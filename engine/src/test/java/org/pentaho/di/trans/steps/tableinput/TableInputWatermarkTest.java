@@ -0,0 +1,113 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.trans.steps.tableinput;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.row.value.ValueMetaTimestamp;
+
+public class TableInputWatermarkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testIntegerRoundTrip() throws Exception {
+    TableInputWatermark watermark = TableInputWatermark.fromRow( new ValueMetaString( "id" ), "1234" );
+    assertEquals( "String:1234", watermark.encode() );
+
+    watermark = TableInputWatermark.fromRow( new ValueMetaInteger( "id" ), 1234L );
+    assertEquals( "Integer:1234", watermark.encode() );
+    TableInputWatermark parsed = TableInputWatermark.parse( watermark.encode() );
+    assertEquals( ValueMetaInterface.TYPE_INTEGER, parsed.getValueMeta().getType() );
+    assertEquals( 1234L, parsed.getValue() );
+  }
+
+  @Test
+  public void testTimestampKeepsTheNanoseconds() throws Exception {
+    Timestamp timestamp = new Timestamp( 1500000000123L );
+    timestamp.setNanos( 123456789 );
+    TableInputWatermark watermark = new TableInputWatermark( new ValueMetaTimestamp( "updated" ), timestamp );
+    assertEquals( "Timestamp:1500000000.123456789", watermark.encode() );
+    TableInputWatermark parsed = TableInputWatermark.parse( watermark.encode() );
+    assertEquals( timestamp, parsed.getValue() );
+  }
+
+  @Test
+  public void testDateAndBinaryRoundTrip() throws Exception {
+    assertEquals( new Date( 1500000000123L ), TableInputWatermark.parse( "Date:1500000000123" ).getValue() );
+    TableInputWatermark binary = TableInputWatermark.parse( "Binary:00ff7f" );
+    assertArrayEquals( new byte[] { 0, (byte) 0xff, 0x7f }, (byte[]) binary.getValue() );
+    assertEquals( "Binary:00ff7f", binary.encode() );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testInvalidWatermark() throws Exception {
+    TableInputWatermark.parse( "Integer:abc" );
+  }
+
+  @Test
+  public void testIsAfter() throws Exception {
+    TableInputWatermark low = TableInputWatermark.parse( "Integer:9" );
+    TableInputWatermark high = TableInputWatermark.parse( "Integer:10" );
+    assertTrue( high.isAfter( low ) );
+    assertFalse( low.isAfter( high ) );
+    assertFalse( low.isAfter( low ) );
+    assertTrue( low.isAfter( null ) );
+  }
+
+  @Test
+  public void testDeltaQueryWrapsTheStatement() {
+    assertEquals( "SELECT * FROM (" + Const.CR + "SELECT * FROM t" + Const.CR + ") kettle_delta WHERE updated > ?",
+      TableInputWatermark.getDeltaQuery( "SELECT * FROM t ; ", "updated" ) );
+  }
+
+  @Test
+  public void testFileStoreReplacesOnlyTheExpectedWatermark() throws Exception {
+    File file = new File( folder.getRoot(), "watermarks.properties" );
+    FileWatermarkStore store = new FileWatermarkStore( file.getPath() );
+    assertEquals( null, store.getWatermark( "trans.step" ) );
+    assertTrue( store.replaceWatermark( "trans.step", null, "Integer:1" ) );
+    assertFalse( store.replaceWatermark( "trans.step", null, "Integer:2" ) );
+    assertTrue( store.replaceWatermark( "trans.step", "Integer:1", "Integer:2" ) );
+
+    FileWatermarkStore reopened = new FileWatermarkStore( store.getFilename() );
+    assertEquals( "Integer:2", reopened.getWatermark( "trans.step" ) );
+  }
+}
@@ -0,0 +1,223 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class TableOutputBatchWriterTest {
+
+  private Database db;
+  private PreparedStatement statement;
+  private RowMetaInterface rowMeta;
+  private TableOutputBatchWriter writer;
+
+  @Before
+  public void setUp() throws Exception {
+    db = mock( Database.class );
+    statement = mock( PreparedStatement.class );
+    when( db.getInsertStatement( anyString(), anyString(), any( RowMetaInterface.class ) ) ).thenReturn( "INSERT" );
+    when( db.prepareSQL( "INSERT" ) ).thenReturn( statement );
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+  }
+
+  @After
+  public void tearDown() {
+    if ( writer != null ) {
+      writer.close();
+    }
+  }
+
+  private List<TableOutputBatchWriter.Batch> addRows( int nr ) throws Exception {
+    List<TableOutputBatchWriter.Batch> finished = new ArrayList<TableOutputBatchWriter.Batch>();
+    for ( int i = 0; i < nr; i++ ) {
+      Object[] row = new Object[] { (long) i };
+      finished.addAll( writer.addRow( "t", rowMeta, row, row ) );
+    }
+    return finished;
+  }
+
+  @Test
+  public void testBatchesAreExecutedAndCommittedInOrder() throws Exception {
+    writer = new TableOutputBatchWriter( db, "s", 2, 1, false, false, "test" );
+
+    List<TableOutputBatchWriter.Batch> finished = addRows( 4 );
+    // only one batch may be pending
+    assertTrue( writer.getNrPending() <= 1 );
+    finished.addAll( addRows( 1 ) );
+    finished.addAll( writer.flush() );
+
+    assertEquals( 3, finished.size() );
+    assertEquals( 2, finished.get( 0 ).getRows().size() );
+    assertEquals( 1, finished.get( 2 ).getRows().size() );
+    for ( TableOutputBatchWriter.Batch batch : finished ) {
+      assertTrue( batch.isSuccessful() );
+    }
+
+    // the statement is prepared once and filled again
+    verify( db ).getInsertStatement( "s", "t", rowMeta );
+    verify( db, times( 1 ) ).prepareSQL( "INSERT" );
+    verify( statement, times( 5 ) ).addBatch();
+    InOrder order = inOrder( statement, db );
+    for ( int i = 0; i < 3; i++ ) {
+      order.verify( statement ).executeBatch();
+      order.verify( db ).commit();
+    }
+  }
+
+  @Test
+  public void testTheConnectionIsOnlyUsedByTheWriterThread() throws Exception {
+    final Set<Thread> threads = new CopyOnWriteArraySet<Thread>();
+    Answer<Object> recordThread = new Answer<Object>() {
+      @Override
+      public Object answer( InvocationOnMock invocation ) throws Throwable {
+        threads.add( Thread.currentThread() );
+        return invocation.getMethod().getName().equals( "prepareSQL" ) ? statement : null;
+      }
+    };
+    doAnswer( recordThread ).when( db ).prepareSQL( anyString() );
+    doAnswer( recordThread ).when( db ).setValues( any( RowMetaInterface.class ), any( Object[].class ),
+      any( PreparedStatement.class ) );
+    doAnswer( recordThread ).when( db ).commit();
+    doAnswer( recordThread ).when( statement ).addBatch();
+    doAnswer( recordThread ).when( statement ).executeBatch();
+    doAnswer( recordThread ).when( statement ).close();
+    writer = new TableOutputBatchWriter( db, "s", 2, 1, false, false, "test" );
+
+    addRows( 3 );
+    writer.flush();
+    writer.close();
+    writer = null;
+
+    assertEquals( 1, threads.size() );
+    assertFalse( threads.contains( Thread.currentThread() ) );
+    verify( statement ).close();
+  }
+
+  @Test
+  public void testFailedBatchRollsBackAndSkipsTheRest() throws Exception {
+    doThrow( new BatchUpdateException( "boom", new int[] { 1, -3 } ) ).when( statement ).executeBatch();
+    writer = new TableOutputBatchWriter( db, "s", 2, 2, false, false, "test" );
+
+    List<TableOutputBatchWriter.Batch> finished = addRows( 4 );
+    finished.addAll( writer.flush() );
+
+    assertEquals( 2, finished.size() );
+    TableOutputBatchWriter.Batch failed = finished.get( 0 );
+    assertFalse( failed.isSuccessful() );
+    assertNotNull( failed.getBatchException() );
+    assertTrue( Arrays.equals( new int[] { 1, -3 }, failed.getBatchException().getUpdateCounts() ) );
+    assertTrue( finished.get( 1 ).isSkipped() );
+
+    verify( db ).rollback();
+    verify( db, never() ).commit();
+    verify( statement, times( 1 ) ).executeBatch();
+  }
+
+  @Test
+  public void testFailedBatchIsCommittedWithErrorHandling() throws Exception {
+    when( statement.executeBatch() ).thenThrow( new BatchUpdateException( "boom", new int[] { 1, -3 } ) )
+      .thenReturn( new int[] { 1, 1 } );
+    writer = new TableOutputBatchWriter( db, "s", 2, 1, true, true, "test" );
+
+    addRows( 4 );
+    List<TableOutputBatchWriter.Batch> finished = writer.flush();
+
+    verify( db ).commit( true );
+    verify( db, never() ).rollback();
+    verify( statement, times( 2 ) ).executeBatch();
+    assertTrue( finished.get( finished.size() - 1 ).isSuccessful() );
+  }
+
+  @Test
+  public void testRowThatCannotBeBoundIsReported() throws Exception {
+    final Object[] bad = new Object[] { "not a number" };
+    KettleDatabaseException error = new KettleDatabaseException( "offending row" );
+    doThrow( error ).when( db ).setValues( any( RowMetaInterface.class ), eq( bad ), any( PreparedStatement.class ) );
+    writer = new TableOutputBatchWriter( db, "s", 3, 1, true, true, "test" );
+
+    List<TableOutputBatchWriter.Batch> finished = addRows( 1 );
+    finished.addAll( writer.addRow( "t", rowMeta, bad, bad ) );
+    finished.addAll( addRows( 1 ) );
+    finished.addAll( writer.flush() );
+
+    assertEquals( 1, finished.size() );
+    TableOutputBatchWriter.Batch batch = finished.get( 0 );
+    assertTrue( batch.isSuccessful() );
+    assertEquals( 2, batch.getRows().size() );
+    assertEquals( 1, batch.getFailedRows().size() );
+    assertTrue( batch.getFailedRows().get( 0 ) == bad );
+    assertTrue( batch.getFailedRowExceptions().get( 0 ) == error );
+    verify( statement, times( 2 ) ).addBatch();
+    verify( db ).commit();
+  }
+
+  @Test
+  public void testRowThatCannotBeBoundFailsTheBatchWithoutErrorHandling() throws Exception {
+    doThrow( new KettleDatabaseException( "offending row" ) ).when( db ).setValues( any( RowMetaInterface.class ),
+      any( Object[].class ), any( PreparedStatement.class ) );
+    writer = new TableOutputBatchWriter( db, "s", 2, 1, false, false, "test" );
+
+    addRows( 2 );
+    List<TableOutputBatchWriter.Batch> finished = writer.flush();
+
+    assertEquals( 1, finished.size() );
+    assertNotNull( finished.get( 0 ).getException() );
+    verify( statement, never() ).executeBatch();
+    verify( db ).rollback();
+  }
+}
@@ -0,0 +1,238 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.tableoutput;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+
+public class TableOutputParallelWriterTest {
+
+  private Database[] dbs;
+  private PreparedStatement[] statements;
+  private RowMetaInterface rowMeta;
+  private TableOutputParallelWriter writer;
+
+  @Before
+  public void setUp() throws Exception {
+    dbs = new Database[3];
+    statements = new PreparedStatement[3];
+    for ( int i = 0; i < dbs.length; i++ ) {
+      dbs[i] = mock( Database.class );
+      statements[i] = mock( PreparedStatement.class );
+      when( dbs[i].getInsertStatement( anyString(), anyString(), any( RowMetaInterface.class ) ) ).thenReturn(
+        "INSERT" );
+      when( dbs[i].prepareSQL( "INSERT" ) ).thenReturn( statements[i] );
+    }
+    rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+  }
+
+  @After
+  public void tearDown() {
+    if ( writer != null ) {
+      writer.close();
+    }
+  }
+
+  private List<TableOutputParallelWriter.Batch> write( int connectionNr, int nrRows ) throws Exception {
+    List<TableOutputParallelWriter.Batch> finished = new ArrayList<TableOutputParallelWriter.Batch>();
+    for ( int i = 0; i < nrRows; i++ ) {
+      Object[] row = new Object[] { (long) i };
+      finished.addAll( writer.addRow( connectionNr, "t", rowMeta, row, row ) );
+    }
+    return finished;
+  }
+
+  @Test
+  public void testRoundRobinOneBatchAtATime() throws Exception {
+    writer = new TableOutputParallelWriter( Arrays.asList( dbs ), "s", 2, 1, false, false, "test" );
+    List<TableOutputParallelWriter.Batch> finished = write( -1, 7 );
+    finished.addAll( writer.flush() );
+
+    assertEquals( 4, finished.size() );
+    int rows = 0;
+    for ( TableOutputParallelWriter.Batch batch : finished ) {
+      assertTrue( batch.isSuccessful() );
+      rows += batch.getRows().size();
+    }
+    assertEquals( 7, rows );
+
+    // batches of 2 rows go to connection 1, 2 and 3, the last row is flushed on connection 1
+    verify( statements[0], times( 2 ) ).executeBatch();
+    verify( statements[1], times( 1 ) ).executeBatch();
+    verify( statements[2], times( 1 ) ).executeBatch();
+    assertEquals( 3, writer.getRowsWritten( 0 ) );
+    assertEquals( 2, writer.getBatchesWritten( 0 ) );
+    assertEquals( 2, writer.getRowsWritten( 2 ) );
+
+    // nothing is committed until all connections are committed together
+    verify( dbs[0], never() ).commit();
+    verify( dbs[0], never() ).commit( true );
+    writer.commit();
+    for ( Database db : dbs ) {
+      verify( db ).commit( true );
+    }
+  }
+
+  @Test
+  public void testRoutedRowsStayOnTheirConnection() throws Exception {
+    writer = new TableOutputParallelWriter( Arrays.asList( dbs ), "s", 10, 2, false, false, "test" );
+    write( 4, 25 );
+    List<TableOutputParallelWriter.Batch> finished = writer.flush();
+
+    assertFalse( finished.isEmpty() );
+    assertEquals( 25, writer.getRowsWritten( 1 ) );
+    assertEquals( 0, writer.getRowsWritten( 0 ) );
+    assertEquals( 0, writer.getRowsWritten( 2 ) );
+    verify( statements[1], times( 25 ) ).addBatch();
+    verify( dbs[0], never() ).prepareSQL( anyString() );
+  }
+
+  @Test
+  public void testFailedBatchSkipsAllConnections() throws Exception {
+    doThrow( new BatchUpdateException( "boom", new int[] { 1, -3 } ) ).when( statements[0] ).executeBatch();
+    writer = new TableOutputParallelWriter( Arrays.asList( dbs ), "s", 2, 1, false, false, "test" );
+    write( 0, 2 );
+    writer.flush();
+    assertTrue( writer.isFailed() );
+
+    write( 1, 2 );
+    List<TableOutputParallelWriter.Batch> finished = writer.flush();
+    assertEquals( 1, finished.size() );
+    assertTrue( finished.get( 0 ).isSkipped() );
+    verify( statements[1], never() ).executeBatch();
+
+    try {
+      writer.commit();
+      fail( "A failed batch must not be committed" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    for ( Database db : dbs ) {
+      verify( db, never() ).commit( true );
+      verify( db ).rollback( true );
+    }
+  }
+
+  @Test
+  public void testFailedBatchIsReportedWithErrorHandling() throws Exception {
+    doThrow( new BatchUpdateException( "boom", new int[] { 1, -3 } ) ).when( statements[0] ).executeBatch();
+    writer = new TableOutputParallelWriter( Arrays.asList( dbs ), "s", 2, 1, true, true, "test" );
+    write( 0, 2 );
+    write( 1, 2 );
+    List<TableOutputParallelWriter.Batch> finished = writer.flush();
+
+    assertFalse( writer.isFailed() );
+    int errors = 0;
+    for ( TableOutputParallelWriter.Batch batch : finished ) {
+      if ( batch.getBatchException() != null ) {
+        errors++;
+        assertEquals( 0, batch.getConnectionNr() );
+      }
+    }
+    assertEquals( 1, errors );
+    verify( statements[1] ).executeBatch();
+  }
+
+  @Test
+  public void testRowThatCannotBeBoundIsReportedWithErrorHandling() throws Exception {
+    Object[] bad = new Object[] { "not a number" };
+    KettleDatabaseException error = new KettleDatabaseException( "offending row" );
+    doThrow( error ).when( dbs[0] ).setValues( any( RowMetaInterface.class ), eq( bad ),
+      any( PreparedStatement.class ) );
+    writer = new TableOutputParallelWriter( Arrays.asList( dbs ), "s", 3, 1, true, true, "test" );
+    write( 0, 1 );
+    writer.addRow( 0, "t", rowMeta, bad, bad );
+    write( 0, 1 );
+    List<TableOutputParallelWriter.Batch> finished = writer.flush();
+
+    assertFalse( writer.isFailed() );
+    assertEquals( 1, finished.size() );
+    TableOutputParallelWriter.Batch batch = finished.get( 0 );
+    assertTrue( batch.isSuccessful() );
+    assertEquals( 2, batch.getRows().size() );
+    assertEquals( 1, batch.getFailedRows().size() );
+    assertTrue( batch.getFailedRows().get( 0 ) == bad );
+    assertTrue( batch.getFailedRowExceptions().get( 0 ) == error );
+    verify( statements[0], times( 2 ) ).addBatch();
+    assertEquals( 2, writer.getRowsWritten( 0 ) );
+  }
+
+  @Test
+  public void testRowThatCannotBeBoundFailsWithoutErrorHandling() throws Exception {
+    doThrow( new KettleDatabaseException( "offending row" ) ).when( dbs[0] ).setValues(
+      any( RowMetaInterface.class ), any( Object[].class ), any( PreparedStatement.class ) );
+    writer = new TableOutputParallelWriter( Arrays.asList( dbs ), "s", 2, 1, false, false, "test" );
+    write( 0, 2 );
+    List<TableOutputParallelWriter.Batch> finished = writer.flush();
+
+    assertTrue( writer.isFailed() );
+    assertEquals( 1, finished.size() );
+    assertTrue( finished.get( 0 ).getException() != null );
+    verify( statements[0], never() ).executeBatch();
+  }
+
+  @Test
+  public void testCommitFailureRollsBackTheRest() throws Exception {
+    doThrow( new KettleDatabaseException( "boom" ) ).when( dbs[1] ).commit( true );
+    writer = new TableOutputParallelWriter( Arrays.asList( dbs ), "s", 2, 1, false, false, "test" );
+    write( -1, 6 );
+    writer.flush();
+    try {
+      writer.commit();
+      fail( "The commit error must be reported" );
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    verify( dbs[0] ).commit( true );
+    verify( dbs[1] ).rollback( true );
+    verify( dbs[2] ).rollback( true );
+    verify( dbs[2], never() ).commit( true );
+  }
+}
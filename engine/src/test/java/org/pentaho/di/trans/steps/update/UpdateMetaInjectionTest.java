@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -59,6 +59,11 @@ public class UpdateMetaInjectionTest extends BaseMetadataInjectionTest<UpdateMet
         return meta.isSkipLookup();
       }
     } );
+    check( "UPDATE_CHANGED_ONLY", new BooleanGetter() {
+      public boolean get() {
+        return meta.isUpdateChangedOnly();
+      }
+    } );
     check( "IGNORE_LOOKUP_FAILURE", new BooleanGetter() {
       public boolean get() {
         return meta.isErrorIgnored();
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -110,7 +110,7 @@ public class UpdateMetaTest extends TestCase implements InitializerInterface<Ste
 
     List<String> attributes =
         Arrays.asList( "schemaName", "tableName", "commitSize", "errorIgnored", "ignoreFlagField",
-            "skipLookup", "useBatchUpdate", "keyStream", "keyLookup", "keyCondition", "keyStream2",
+            "skipLookup", "updateChangedOnly", "useBatchUpdate", "keyStream", "keyLookup", "keyCondition", "keyStream2",
             "updateLookup", "updateStream", "databaseMeta" );
 
     Map<String, String> getterMap = new HashMap<String, String>() {
@@ -121,6 +121,7 @@ public class UpdateMetaTest extends TestCase implements InitializerInterface<Ste
         put( "errorIgnored", "isErrorIgnored" );
         put( "ignoreFlagField", "getIgnoreFlagField" );
         put( "skipLookup", "isSkipLookup" );
+        put( "updateChangedOnly", "isUpdateChangedOnly" );
         put( "useBatchUpdate", "useBatchUpdate" );
         put( "keyStream", "getKeyStream" );
         put( "keyLookup", "getKeyLookup" );
@@ -139,6 +140,7 @@ public class UpdateMetaTest extends TestCase implements InitializerInterface<Ste
         put( "errorIgnored", "setErrorIgnored" );
         put( "ignoreFlagField", "setIgnoreFlagField" );
         put( "skipLookup", "setSkipLookup" );
+        put( "updateChangedOnly", "setUpdateChangedOnly" );
         put( "useBatchUpdate", "setUseBatchUpdate" );
         put( "keyStream", "setKeyStream" );
         put( "keyLookup", "setKeyLookup" );
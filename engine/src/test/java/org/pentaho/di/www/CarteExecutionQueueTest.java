@@ -0,0 +1,223 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.di.www;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.KettleLogStore;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+
+public class CarteExecutionQueueTest {
+
+  private final BlockingQueue<String> started = new LinkedBlockingQueue<String>();
+  private final Map<String, CarteExecutionQueue.Admission> admissions =
+    new ConcurrentHashMap<String, CarteExecutionQueue.Admission>();
+
+  @BeforeClass
+  public static void setUpBeforeClass() {
+    KettleLogStore.init();
+  }
+
+  private static Trans trans( String name, String priority, String tag, String memory ) {
+    TransMeta transMeta = mock( TransMeta.class );
+    when( transMeta.getVariable( Const.KETTLE_TRANS_PRIORITY ) ).thenReturn( priority );
+    when( transMeta.getVariable( Const.KETTLE_TRANS_QUEUE_TAG ) ).thenReturn( tag );
+    when( transMeta.getVariable( Const.KETTLE_TRANS_MEMORY ) ).thenReturn( memory );
+    Trans trans = mock( Trans.class );
+    when( trans.getName() ).thenReturn( name );
+    when( trans.getTransMeta() ).thenReturn( transMeta );
+    return trans;
+  }
+
+  private boolean submit( CarteExecutionQueue queue, String name, String priority, String tag, String memory )
+    throws KettleException {
+    return submit( queue, trans( name, priority, tag, memory ) );
+  }
+
+  private boolean submit( CarteExecutionQueue queue, Trans trans ) throws KettleException {
+    final String execution = trans.getName();
+    return queue.submit( trans, null, new CarteExecutionQueue.Execution() {
+      public void start( CarteExecutionQueue.Admission admission ) {
+        admissions.put( execution, admission );
+        started.add( execution );
+      }
+    } );
+  }
+
+  private String nextStarted() throws InterruptedException {
+    return started.poll( 5, TimeUnit.SECONDS );
+  }
+
+  @Test
+  public void testNoLimits() throws Exception {
+    CarteExecutionQueue queue = new CarteExecutionQueue( 0, 0, 0L, 0L );
+    for ( int i = 0; i < 10; i++ ) {
+      assertTrue( submit( queue, "trans" + i, null, null, "1000" ) );
+    }
+    assertEquals( 10, queue.getStatus().getRunning() );
+    assertEquals( 10000L, queue.getStatus().getReservedMemory() );
+  }
+
+  @Test
+  public void testHigherPriorityStartsFirst() throws Exception {
+    CarteExecutionQueue queue = new CarteExecutionQueue( 1, 0, 0L, 0L );
+    CarteExecutionQueue.Admission running = queue.acquire( "running", "user", 0, 0L );
+    assertFalse( submit( queue, "low", "0", null, null ) );
+    assertFalse( submit( queue, "high", "5", null, null ) );
+    assertEquals( 2, queue.getStatus().getQueued() );
+
+    running.release();
+    running.release();
+    assertEquals( "high", nextStarted() );
+    assertNull( started.poll( 100, TimeUnit.MILLISECONDS ) );
+    admissions.get( "high" ).release();
+    assertEquals( "low", nextStarted() );
+    assertEquals( 0, queue.getStatus().getQueued() );
+    assertEquals( 3, queue.getStatus().getAdmitted() );
+  }
+
+  @Test
+  public void testTagWithFewerRunningStartsFirst() throws Exception {
+    CarteExecutionQueue queue = new CarteExecutionQueue( 2, 0, 0L, 0L );
+    CarteExecutionQueue.Admission first = queue.acquire( "first", "busy", 0, 0L );
+    queue.acquire( "second", "busy", 0, 0L );
+    assertFalse( submit( queue, "busy again", null, "busy", null ) );
+    assertFalse( submit( queue, "other", null, "other", null ) );
+
+    first.release();
+    assertEquals( "other", nextStarted() );
+  }
+
+  @Test
+  public void testLargeTransformationWaitsForMemory() throws Exception {
+    CarteExecutionQueue queue = new CarteExecutionQueue( 0, 0, 100L, 0L );
+    CarteExecutionQueue.Admission running = queue.acquire( "running", "user", 0, 60L );
+    assertFalse( submit( queue, "large", null, null, "60" ) );
+    // A small one doesn't overtake the large one
+    assertFalse( submit( queue, "small", null, null, "10" ) );
+
+    running.release();
+    assertEquals( new HashSet<String>( Arrays.asList( "large", "small" ) ),
+      new HashSet<String>( Arrays.asList( nextStarted(), nextStarted() ) ) );
+    assertEquals( 70L, queue.getStatus().getReservedMemory() );
+
+    // More than the maximum runs alone
+    assertFalse( submit( queue, "huge", null, null, "500" ) );
+    admissions.get( "large" ).release();
+    admissions.get( "small" ).release();
+    assertEquals( "huge", nextStarted() );
+  }
+
+  @Test
+  public void testFullQueueRefuses() throws Exception {
+    CarteExecutionQueue queue = new CarteExecutionQueue( 1, 1, 0L, 0L );
+    queue.acquire( "running", "user", 0, 0L );
+    assertFalse( submit( queue, "queued", null, null, null ) );
+    try {
+      submit( queue, "refused", null, null, null );
+      fail( "The queue is full" );
+    } catch ( KettleException e ) {
+      // expected
+    }
+    assertEquals( 1, queue.getStatus().getQueued() );
+    assertEquals( 1, queue.getStatus().getRejected() );
+  }
+
+  @Test
+  public void testWaitTimesOut() throws Exception {
+    CarteExecutionQueue queue = new CarteExecutionQueue( 1, 0, 0L, 50L );
+    queue.acquire( "running", "user", 0, 0L );
+    try {
+      queue.acquire( "waiting", "user", 0, 0L );
+      fail( "The wait should time out" );
+    } catch ( KettleException e ) {
+      // expected
+    }
+    assertEquals( 0, queue.getStatus().getQueued() );
+    assertEquals( 1, queue.getStatus().getRejected() );
+  }
+
+  @Test
+  public void testSubmittedWaitTimesOut() throws Exception {
+    CarteExecutionQueue queue = new CarteExecutionQueue( 1, 0, 0L, 50L );
+    CarteExecutionQueue.Admission running = queue.acquire( "running", "user", 0, 0L );
+    Trans waiting = trans( "waiting", null, null, null );
+    assertFalse( submit( queue, waiting ) );
+
+    verify( waiting, timeout( 5000 ) ).setStopped( true );
+    assertEquals( 0, queue.getStatus().getQueued() );
+    assertEquals( 1, queue.getStatus().getRejected() );
+    running.release();
+    assertNull( started.poll( 100, TimeUnit.MILLISECONDS ) );
+  }
+
+  @Test
+  public void testCancelledTransformationDoesNotStart() throws Exception {
+    CarteExecutionQueue queue = new CarteExecutionQueue( 1, 0, 0L, 0L );
+    CarteExecutionQueue.Admission running = queue.acquire( "running", "user", 0, 0L );
+    Trans cancelled = trans( "cancelled", "5", null, null );
+    assertFalse( submit( queue, cancelled ) );
+    assertFalse( submit( queue, "next", null, null, null ) );
+
+    assertTrue( queue.cancel( cancelled ) );
+    assertFalse( queue.cancel( cancelled ) );
+    verify( cancelled ).setStopped( true );
+    assertEquals( 1, queue.getStatus().getQueued() );
+
+    running.release();
+    assertEquals( "next", nextStarted() );
+    assertNull( started.poll( 100, TimeUnit.MILLISECONDS ) );
+  }
+
+  @Test
+  public void testMemoryEstimate() {
+    TransMeta transMeta = mock( TransMeta.class );
+    when( transMeta.nrTransHops() ).thenReturn( 3 );
+    when( transMeta.getSizeRowset() ).thenReturn( 10000 );
+    assertEquals( 30L, CarteExecutionQueue.getMemoryEstimate( transMeta ) );
+    when( transMeta.getVariable( Const.KETTLE_TRANS_MEMORY ) ).thenReturn( "512" );
+    assertEquals( 512L, CarteExecutionQueue.getMemoryEstimate( transMeta ) );
+  }
+}
@@ -0,0 +1,152 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.logging.KettleLogStore;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.logging.LoggingObjectType;
+import org.pentaho.di.core.logging.LoggingRegistry;
+import org.pentaho.di.core.logging.SimpleLoggingObject;
+import org.pentaho.di.trans.Trans;
+
+public class CarteLogStreamsTest {
+
+  private CarteLogStreams streams;
+
+  private LogChannelInterface transLog;
+  private LogChannelInterface stepLog;
+  private LogChannelInterface otherLog;
+  private Trans trans;
+
+  @BeforeClass
+  public static void setUpBeforeClass() {
+    KettleLogStore.init();
+  }
+
+  @Before
+  public void setUp() {
+    streams = new CarteLogStreams( 3 );
+    KettleLogStore.getAppender().addLoggingEventListener( streams );
+
+    String name = UUID.randomUUID().toString();
+    transLog = new LogChannel( new SimpleLoggingObject( "trans " + name, LoggingObjectType.TRANS, null ) );
+    stepLog =
+      new LogChannel( new SimpleLoggingObject( "step " + name, LoggingObjectType.STEP, LoggingRegistry
+        .getInstance().getLoggingObject( transLog.getLogChannelId() ) ) );
+    otherLog = new LogChannel( new SimpleLoggingObject( "other " + name, LoggingObjectType.TRANS, null ) );
+
+    trans = mock( Trans.class );
+    when( trans.getLogChannelId() ).thenReturn( transLog.getLogChannelId() );
+  }
+
+  @After
+  public void tearDown() {
+    KettleLogStore.getAppender().removeLoggingEventListener( streams );
+  }
+
+  @Test
+  public void testReadsTheNewLinesFromTheCursor() throws Exception {
+    transLog.logBasic( "before the stream" );
+
+    CarteLogStreams.LogChunk chunk = streams.read( trans, 0, 10, 0 );
+    assertEquals( 1, chunk.getLines().size() );
+    assertTrue( chunk.getLines().get( 0 ).contains( "before the stream" ) );
+    assertEquals( 1, chunk.getNextCursor() );
+    assertFalse( chunk.isFinished() );
+
+    stepLog.logBasic( "from the step" );
+    otherLog.logBasic( "from another transformation" );
+
+    chunk = streams.read( trans, chunk.getNextCursor(), 10, 0 );
+    assertEquals( 1, chunk.getLines().size() );
+    assertTrue( chunk.getLines().get( 0 ).contains( "from the step" ) );
+    assertEquals( 2, chunk.getNextCursor() );
+
+    chunk = streams.read( trans, chunk.getNextCursor(), 10, 0 );
+    assertTrue( chunk.getLines().isEmpty() );
+    assertEquals( 2, chunk.getNextCursor() );
+    assertEquals( 1, streams.size() );
+  }
+
+  @Test
+  public void testSkipsTheDroppedLines() throws Exception {
+    streams.read( trans, 0, 10, 0 );
+    for ( int i = 0; i < 5; i++ ) {
+      transLog.logBasic( "line " + i );
+    }
+
+    CarteLogStreams.LogChunk chunk = streams.read( trans, 0, 2, 0 );
+    assertEquals( 2, chunk.getFirstCursor() );
+    assertEquals( 2, chunk.getStartCursor() );
+    assertEquals( 4, chunk.getNextCursor() );
+    assertTrue( chunk.getLines().get( 0 ).contains( "line 2" ) );
+    assertTrue( chunk.getLines().get( 1 ).contains( "line 3" ) );
+  }
+
+  @Test
+  public void testWaitsForNewLines() throws Exception {
+    streams.read( trans, 0, 10, 0 );
+    new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep( 100 );
+        } catch ( InterruptedException e ) {
+          // ignore
+        }
+        stepLog.logBasic( "after a while" );
+      }
+    } ).start();
+
+    CarteLogStreams.LogChunk chunk = streams.read( trans, 0, 10, 10000 );
+    assertEquals( 1, chunk.getLines().size() );
+    assertTrue( chunk.getLines().get( 0 ).contains( "after a while" ) );
+  }
+
+  @Test
+  public void testFinishedTransformationDoesNotWait() throws Exception {
+    when( trans.isFinishedOrStopped() ).thenReturn( true );
+    transLog.logBasic( "last line" );
+
+    CarteLogStreams.LogChunk chunk = streams.read( trans, 0, 10, 10000 );
+    assertEquals( 1, chunk.getLines().size() );
+    assertTrue( chunk.isFinished() );
+
+    chunk = streams.read( trans, 1, 10, 10000 );
+    assertTrue( chunk.getLines().isEmpty() );
+    assertTrue( chunk.isFinished() );
+  }
+}
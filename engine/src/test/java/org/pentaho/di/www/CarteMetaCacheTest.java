@@ -0,0 +1,122 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+
+public class CarteMetaCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static class CountingLoader implements CarteMetaCache.Loader<StringBuilder> {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Override
+    public StringBuilder load() throws KettleException {
+      return new StringBuilder( "meta" + loads.incrementAndGet() );
+    }
+
+    @Override
+    public StringBuilder copy( StringBuilder meta ) {
+      return new StringBuilder( meta );
+    }
+  }
+
+  @Test
+  public void testLoadsAgainWhenTheVersionChanges() throws Exception {
+    CarteMetaCache cache = new CarteMetaCache( 10 );
+    CountingLoader loader = new CountingLoader();
+
+    assertEquals( "meta1", cache.get( "key", "1", loader ).toString() );
+    StringBuilder copy = cache.get( "key", "1", loader );
+    assertEquals( "meta1", copy.toString() );
+    // Changing a copy doesn't change the cached object
+    copy.append( "-changed" );
+    assertEquals( "meta1", cache.get( "key", "1", loader ).toString() );
+
+    assertEquals( "meta2", cache.get( "key", "2", loader ).toString() );
+    assertEquals( 2, loader.loads.get() );
+    assertEquals( 2, cache.getHits() );
+    assertEquals( 2, cache.getMisses() );
+    assertEquals( 1, cache.size() );
+  }
+
+  @Test
+  public void testNothingIsCachedWithoutAVersionOrSize() throws Exception {
+    CountingLoader loader = new CountingLoader();
+    CarteMetaCache cache = new CarteMetaCache( 10 );
+    cache.get( "key", null, loader );
+    cache.get( "key", null, loader );
+
+    CarteMetaCache disabled = new CarteMetaCache( 0 );
+    disabled.get( "key", "1", loader );
+    disabled.get( "key", "1", loader );
+
+    assertEquals( 4, loader.loads.get() );
+    assertEquals( 0, cache.size() );
+    assertEquals( 0, disabled.size() );
+  }
+
+  @Test
+  public void testDropsTheLeastRecentlyUsed() throws Exception {
+    CarteMetaCache cache = new CarteMetaCache( 2 );
+    CountingLoader loader = new CountingLoader();
+    cache.get( "first", "1", loader );
+    cache.get( "second", "1", loader );
+    // Using the first makes the second the least recently used
+    cache.get( "first", "1", loader );
+    cache.get( "third", "1", loader );
+
+    assertEquals( 2, cache.size() );
+    assertEquals( "meta1", cache.get( "first", "1", loader ).toString() );
+    assertEquals( "meta4", cache.get( "second", "1", loader ).toString() );
+  }
+
+  @Test
+  public void testFileVersionChangesWithTheContent() throws Exception {
+    File file = folder.newFile( "test.ktr" );
+    Files.write( file.toPath(), "<transformation/>".getBytes( "UTF-8" ) );
+    long lastModified = file.lastModified();
+    String version = CarteMetaCache.getFileVersion( file.getAbsolutePath() );
+    assertEquals( version, CarteMetaCache.getFileVersion( file.getAbsolutePath() ) );
+
+    // Same size and modification time, only the content is different
+    Files.write( file.toPath(), "<transformatioN/>".getBytes( "UTF-8" ) );
+    file.setLastModified( lastModified );
+    assertNotEquals( version, CarteMetaCache.getFileVersion( file.getAbsolutePath() ) );
+
+    assertNull( CarteMetaCache.getFileVersion( new File( folder.getRoot(), "missing.ktr" ).getAbsolutePath() ) );
+  }
+}
@@ -0,0 +1,138 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransTestFactory;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+
+public class CarteTransPoolTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private CarteTransPool pool = new CarteTransPool( 2, 1000L );
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  @After
+  public void tearDown() {
+    pool.clear();
+  }
+
+  private String createTransformation( String name ) throws Exception {
+    TransMeta transMeta =
+      TransTestFactory.generateTestTransformation( null, new DummyTransMeta(), "middle", idRowMeta() );
+    transMeta.setName( name );
+    File file = folder.newFile( name + ".ktr" );
+    Files.write( file.toPath(), transMeta.getXML().getBytes( Const.XML_ENCODING ) );
+    return file.getAbsolutePath();
+  }
+
+  private static RowMetaInterface idRowMeta() {
+    RowMetaInterface rowMeta = new RowMeta();
+    rowMeta.addValueMeta( new ValueMetaString( "id" ) );
+    return rowMeta;
+  }
+
+  @Test
+  public void testReusesThePreparedTransformation() throws Exception {
+    String filename = createTransformation( "pooled" );
+    for ( int i = 0; i < 3; i++ ) {
+      List<RowMetaAndData> result =
+        pool.execute( filename, TransTestFactory.INJECTOR_STEPNAME, TransTestFactory.DUMMY_STEPNAME, idRowMeta(),
+          Arrays.asList( new Object[] { "a" + i }, new Object[] { "b" + i } ) );
+      assertEquals( 2, result.size() );
+      assertEquals( "a" + i, result.get( 0 ).getString( "id", null ) );
+      assertEquals( "b" + i, result.get( 1 ).getString( "id", null ) );
+    }
+    // The requests one after the other all used the same instance
+    assertEquals( Integer.valueOf( 1 ), pool.getSizes().values().iterator().next() );
+  }
+
+  @Test
+  public void testInjectRowMetaIsTheDeclaredLayout() throws Exception {
+    String filename = createTransformation( "layout" );
+    RowMetaInterface rowMeta =
+      pool.getInjectRowMeta( filename, TransTestFactory.INJECTOR_STEPNAME, TransTestFactory.DUMMY_STEPNAME );
+    assertEquals( Arrays.asList( "id" ), Arrays.asList( rowMeta.getFieldNames() ) );
+
+    RowMetaInterface other = new RowMeta();
+    other.addValueMeta( new ValueMetaString( "name" ) );
+    try {
+      pool.execute( filename, TransTestFactory.INJECTOR_STEPNAME, TransTestFactory.DUMMY_STEPNAME, other,
+        Arrays.<Object[]>asList( new Object[] { "a" } ) );
+      fail( "The layout isn't the one of the inject step" );
+    } catch ( KettleException e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testUnknownStepFails() throws Exception {
+    String filename = createTransformation( "unknown" );
+    try {
+      pool.execute( filename, TransTestFactory.INJECTOR_STEPNAME, "missing", idRowMeta(),
+        Arrays.<Object[]>asList( new Object[] { "a" } ) );
+      fail( "The retrieve step doesn't exist" );
+    } catch ( KettleException e ) {
+      // expected
+    }
+    assertEquals( Integer.valueOf( 0 ), pool.getSizes().values().iterator().next() );
+  }
+
+  @Test
+  public void testMissingFileFails() throws Exception {
+    try {
+      pool.execute( new File( folder.getRoot(), "missing.ktr" ).getAbsolutePath(),
+        TransTestFactory.INJECTOR_STEPNAME, TransTestFactory.DUMMY_STEPNAME, idRowMeta(),
+        Arrays.<Object[]>asList( new Object[] { "a" } ) );
+      fail( "The transformation file doesn't exist" );
+    } catch ( KettleException e ) {
+      // expected
+    }
+  }
+}
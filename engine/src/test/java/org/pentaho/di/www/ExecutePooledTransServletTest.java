@@ -0,0 +1,168 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+package org.pentaho.di.www;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaInteger;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.TransTestFactory;
+import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.w3c.dom.Node;
+
+public class ExecutePooledTransServletTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private String filename;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    KettleEnvironment.init();
+  }
+
+  @After
+  public void tearDown() {
+    CarteTransPool.getInstance().clear();
+  }
+
+  private String createTransformation() throws Exception {
+    RowMetaInterface injectRowMeta = new RowMeta();
+    injectRowMeta.addValueMeta( new ValueMetaInteger( "id" ) );
+    injectRowMeta.addValueMeta( new ValueMetaString( "name" ) );
+    TransMeta transMeta =
+      TransTestFactory.generateTestTransformation( null, new DummyTransMeta(), "middle", injectRowMeta );
+    transMeta.setName( "pooled" );
+    File file = folder.newFile( "pooled.ktr" );
+    Files.write( file.toPath(), transMeta.getXML().getBytes( Const.XML_ENCODING ) );
+    return file.getAbsolutePath();
+  }
+
+  /**
+   * Executes a request with the fields in the order of the map.
+   */
+  private String execute( Map<String, String> fields, HttpServletResponse response ) throws Exception {
+    Map<String, String> parameters = new LinkedHashMap<String, String>( fields );
+    parameters.put( ExecutePooledTransServlet.PARAM_TRANS, filename );
+    parameters.put( ExecutePooledTransServlet.PARAM_INJECT, TransTestFactory.INJECTOR_STEPNAME );
+    parameters.put( ExecutePooledTransServlet.PARAM_RETRIEVE, TransTestFactory.DUMMY_STEPNAME );
+
+    HttpServletRequest request = mock( HttpServletRequest.class );
+    when( request.getContextPath() ).thenReturn( ExecutePooledTransServlet.CONTEXT_PATH );
+    when( request.getParameterNames() ).thenReturn( Collections.enumeration( parameters.keySet() ) );
+    for ( Map.Entry<String, String> parameter : parameters.entrySet() ) {
+      when( request.getParameter( parameter.getKey() ) ).thenReturn( parameter.getValue() );
+      when( request.getParameterValues( parameter.getKey() ) ).thenReturn( new String[] { parameter.getValue() } );
+    }
+    StringWriter out = new StringWriter();
+    when( response.getWriter() ).thenReturn( new PrintWriter( out ) );
+
+    new ExecutePooledTransServlet().doGet( request, response );
+    return out.toString();
+  }
+
+  private static Object[] resultRow( String xml ) throws Exception {
+    Node resultNode = XMLHandler.getSubNode( XMLHandler.loadXMLString( xml ), ExecutePooledTransServlet.XML_TAG );
+    RowMetaInterface rowMeta = new RowMeta( XMLHandler.getSubNode( resultNode, RowMeta.XML_META_TAG ) );
+    assertEquals( Arrays.asList( "id", "name" ), Arrays.asList( rowMeta.getFieldNames() ) );
+    List<Node> dataNodes = XMLHandler.getNodes( resultNode, RowMeta.XML_DATA_TAG );
+    assertEquals( 1, dataNodes.size() );
+    return rowMeta.getRow( dataNodes.get( 0 ) );
+  }
+
+  private static Map<String, String> fields( String... namesAndValues ) {
+    Map<String, String> fields = new LinkedHashMap<String, String>();
+    for ( int i = 0; i < namesAndValues.length; i += 2 ) {
+      fields.put( namesAndValues[i], namesAndValues[i + 1] );
+    }
+    return fields;
+  }
+
+  @Test
+  public void testParameterOrderDoesNotChangeTheLayout() throws Exception {
+    filename = createTransformation();
+
+    Object[] first = resultRow( execute( fields( "id", "1", "name", "first" ), mock( HttpServletResponse.class ) ) );
+    assertEquals( 1L, first[0] );
+    assertEquals( "first", first[1] );
+
+    // The same pooled instance gets the fields in the other order and then one field less
+    Object[] second = resultRow( execute( fields( "name", "second", "id", "2" ), mock( HttpServletResponse.class ) ) );
+    assertEquals( 2L, second[0] );
+    assertEquals( "second", second[1] );
+
+    Object[] third = resultRow( execute( fields( "name", "third" ), mock( HttpServletResponse.class ) ) );
+    assertNull( third[0] );
+    assertEquals( "third", third[1] );
+
+    assertEquals( Integer.valueOf( 1 ), CarteTransPool.getInstance().getSizes().values().iterator().next() );
+  }
+
+  @Test
+  public void testUnknownParameterIsRefused() throws Exception {
+    filename = createTransformation();
+    HttpServletResponse response = mock( HttpServletResponse.class );
+
+    execute( fields( "id", "1", "customer", "42" ), response );
+
+    verify( response ).setStatus( HttpServletResponse.SC_BAD_REQUEST );
+  }
+
+  @Test
+  public void testInvalidValueIsRefused() throws Exception {
+    filename = createTransformation();
+    HttpServletResponse response = mock( HttpServletResponse.class );
+
+    execute( fields( "id", "one" ), response );
+
+    verify( response ).setStatus( HttpServletResponse.SC_BAD_REQUEST );
+  }
+}
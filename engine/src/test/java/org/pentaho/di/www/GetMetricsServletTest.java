@@ -0,0 +1,124 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.www;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.RowSet;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.BaseStep;
+import org.pentaho.di.trans.step.StepMetaDataCombi;
+
+public class GetMetricsServletTest {
+  private TransformationMap mockTransformationMap;
+
+  private GetMetricsServlet getMetricsServlet;
+
+  @Before
+  public void setup() {
+    mockTransformationMap = mock( TransformationMap.class );
+    getMetricsServlet = new GetMetricsServlet( mockTransformationMap );
+  }
+
+  @Test
+  public void testStepAndHopMetrics() throws Exception {
+    CarteObjectEntry entry = new CarteObjectEntry( "load \"sales\"", "123" );
+    Trans trans = mock( Trans.class );
+    TransMeta transMeta = mock( TransMeta.class );
+    BaseStep step = mock( BaseStep.class );
+    StepMetaDataCombi combi = new StepMetaDataCombi();
+    combi.step = step;
+    RowSet rowSet = mock( RowSet.class );
+
+    when( mockTransformationMap.getTransformationObjects() ).thenReturn( Collections.singletonList( entry ) );
+    when( mockTransformationMap.getTransformation( entry ) ).thenReturn( trans );
+    when( trans.isRunning() ).thenReturn( true );
+    when( trans.getTransMeta() ).thenReturn( transMeta );
+    when( trans.getSteps() ).thenReturn( Collections.singletonList( combi ) );
+    when( trans.getRowsets() ).thenReturn( Collections.singletonList( rowSet ) );
+    when( transMeta.getSizeRowset() ).thenReturn( 10000 );
+    when( step.getStepname() ).thenReturn( "Sort" );
+    when( step.getCopy() ).thenReturn( 1 );
+    when( step.getLinesRead() ).thenReturn( 2000L );
+    when( step.getLinesWritten() ).thenReturn( 1500L );
+    when( step.getRuntime() ).thenReturn( 2000L );
+    when( step.getOutputBlockedTime() ).thenReturn( 500L );
+    when( step.rowsetInputSize() ).thenReturn( 42 );
+    when( rowSet.getOriginStepName() ).thenReturn( "Input" );
+    when( rowSet.getDestinationStepName() ).thenReturn( "Sort" );
+    when( rowSet.getDestinationStepCopy() ).thenReturn( 1 );
+    when( rowSet.size() ).thenReturn( 42 );
+
+    String metrics = getMetricsServlet.getMetrics();
+
+    String transLabels = "trans=\"load \\\"sales\\\"\",id=\"123\"";
+    String labels = transLabels + ",step=\"Sort\",copy=\"1\"";
+    assertTrue( metrics.contains( "# TYPE kettle_step_lines_read_total counter\n" ) );
+    assertTrue( metrics.contains( "kettle_trans_running{" + transLabels + "} 1\n" ) );
+    assertTrue( metrics.contains( "kettle_step_lines_read_total{" + labels + "} 2000\n" ) );
+    assertTrue( metrics.contains( "kettle_step_lines_written_total{" + labels + "} 1500\n" ) );
+    assertTrue( metrics.contains( "kettle_step_rows_per_second{" + labels + "} 1000.0\n" ) );
+    assertTrue( metrics.contains( "kettle_step_output_blocked_seconds_total{" + labels + "} 0.5\n" ) );
+    assertTrue( metrics.contains( "kettle_step_input_buffer_rows{" + labels + "} 42\n" ) );
+    assertTrue( metrics.contains( "kettle_hop_buffer_rows{" + transLabels
+      + ",from=\"Input\",from_copy=\"0\",to=\"Sort\",to_copy=\"1\"} 42\n" ) );
+    assertTrue( metrics.contains( "kettle_hop_buffer_capacity_rows{" + transLabels
+      + ",from=\"Input\",from_copy=\"0\",to=\"Sort\",to_copy=\"1\"} 10000\n" ) );
+    assertTrue( metrics.contains( "\nkettle_carte_queue_queued 0\n" ) );
+  }
+
+  @Test
+  public void testDoGetWritesTheMetrics() throws Exception {
+    HttpServletRequest mockHttpServletRequest = mock( HttpServletRequest.class );
+    HttpServletResponse mockHttpServletResponse = mock( HttpServletResponse.class );
+    StringWriter out = new StringWriter();
+
+    when( mockTransformationMap.getTransformationObjects() ).thenReturn(
+      Collections.<CarteObjectEntry>emptyList() );
+    when( mockHttpServletRequest.getContextPath() ).thenReturn( GetMetricsServlet.CONTEXT_PATH );
+    when( mockHttpServletResponse.getWriter() ).thenReturn( new PrintWriter( out ) );
+
+    getMetricsServlet.doGet( mockHttpServletRequest, mockHttpServletResponse );
+
+    assertTrue( out.toString().startsWith( "# HELP kettle_jvm_memory_used_bytes " ) );
+    assertTrue( out.toString().contains( "\nkettle_jvm_memory_max_bytes " + Runtime.getRuntime().maxMemory() + "\n" ) );
+  }
+
+  @Test
+  public void testLabelEscaping() {
+    assertEquals( "step=\"a\\\\b\\\"c\\nd\"", GetMetricsServlet.label( "step", "a\\b\"c\nd" ) );
+  }
+}
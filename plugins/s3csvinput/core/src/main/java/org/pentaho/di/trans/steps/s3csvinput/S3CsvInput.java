@@ -25,7 +25,11 @@ package org.pentaho.di.trans.steps.s3csvinput;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleFileException;
@@ -241,22 +245,28 @@ public class S3CsvInput extends BaseStep implements StepInterface {
 
       data.s3Object = null;
 
-      // If we are running in parallel we only want to grab a part of the content, not everything.
-      //
-      if ( data.parallel ) {
+      if ( data.partExecutor != null ) {
+        // Fetch the (part of the) file with concurrent ranged requests
+        //
+        data.fis = openRangedStream();
+      } else {
+        // If we are running in parallel we only want to grab a part of the content, not everything.
+        //
+        if ( data.parallel ) {
 
-        data.s3Object = new S3ObjectsProvider( data.s3Service ).getS3Object( data.s3bucket, data.filenames[data.filenr], data.bytesToSkipInFirstFile, data.bytesToSkipInFirstFile + data.blockToRead + data.maxLineSize * 2 );
+          data.s3Object = new S3ObjectsProvider( data.s3Service ).getS3Object( data.s3bucket, data.filenames[data.filenr], data.bytesToSkipInFirstFile, data.bytesToSkipInFirstFile + data.blockToRead + data.maxLineSize * 2 );
 
-      } else {
-        data.s3Object = new S3ObjectsProvider( data.s3Service ).getS3Object( data.s3bucket, data.filenames[data.filenr] );
+        } else {
+          data.s3Object = new S3ObjectsProvider( data.s3Service ).getS3Object( data.s3bucket, data.filenames[data.filenr] );
+        }
+
+        data.fis = data.s3Object.getDataInputStream();
       }
 
       if ( meta.isLazyConversionActive() ) {
         data.binaryFilename = data.filenames[data.filenr].getBytes();
       }
 
-      data.fis = data.s3Object.getDataInputStream();
-
       if ( data.parallel ) {
         if ( data.bytesToSkipInFirstFile > 0 ) {
           // Now, we need to skip the first row, until the first CR that is.
@@ -293,6 +303,30 @@ public class S3CsvInput extends BaseStep implements StepInterface {
     }
   }
 
+  /**
+   * Open the current file as a stream of parts fetched concurrently. When running in parallel only the block of this
+   * step copy is fetched (plus some room to finish the last line), like a single ranged request would.
+   */
+  private S3RangedInputStream openRangedStream() throws Exception {
+    S3ObjectsProvider provider = new S3ObjectsProvider( data.s3Service );
+    String filename = data.filenames[data.filenr];
+    long start = 0L;
+    long end;
+    if ( data.parallel ) {
+      long size = data.fileSizes.get( data.filenr );
+      start = Math.max( 0L, data.bytesToSkipInFirstFile );
+      end = Math.min( size - 1, start + data.blockToRead + data.maxLineSize * 2 );
+    } else {
+      end = provider.getS3ObjectContentLenght( data.s3bucket, filename ) - 1;
+    }
+    if ( log.isDetailed() ) {
+      logDetailed( Messages.getString( "S3CsvInput.Log.ReadingParts", filename, Long.toString( start ),
+        Long.toString( end ), Integer.toString( data.partSize ), Integer.toString( data.concurrentParts ) ) );
+    }
+    return new S3RangedInputStream( provider, data.s3bucket, filename, start, end, data.partSize,
+      data.concurrentParts, data.partExecutor );
+  }
+
   /** Read a single row of data from the file...
    *
    * @param doConversions if you want to do conversions, set to false for the header row.
@@ -552,6 +586,24 @@ public class S3CsvInput extends BaseStep implements StepInterface {
 
         data.maxLineSize = Integer.parseInt( environmentSubstitute( meta.getMaxLineSize() ) );
 
+        // Fetch the files in concurrent parts if more than one part is allowed.
+        // Older transformations don't have the option and keep reading a single stream.
+        //
+        data.partSize = Const.toInt( environmentSubstitute( meta.getPartSize() ), S3RangedInputStream.DEFAULT_PART_SIZE );
+        data.concurrentParts = Const.toInt( environmentSubstitute( meta.getConcurrentParts() ), 1 );
+        if ( data.concurrentParts > 1 ) {
+          final String threadName = getStepname() + "." + getCopy() + " S3 part reader ";
+          final AtomicInteger threadNr = new AtomicInteger( 1 );
+          data.partExecutor = Executors.newFixedThreadPool( data.concurrentParts, new ThreadFactory() {
+            @Override
+            public Thread newThread( Runnable r ) {
+              Thread thread = new Thread( r, threadName + threadNr.getAndIncrement() );
+              thread.setDaemon( true );
+              return thread;
+            }
+          } );
+        }
+
         // If the step doesn't have any previous steps, we just get the filename.
         // Otherwise, we'll grab the list of filenames later...
         //
@@ -607,6 +659,23 @@ public class S3CsvInput extends BaseStep implements StepInterface {
     return false;
   }
 
+  @Override
+  public void dispose( StepMetaInterface smi, StepDataInterface sdi ) {
+    meta = (S3CsvInputMeta) smi;
+    data = (S3CsvInputData) sdi;
+
+    try {
+      closeFile();
+    } catch ( KettleException e ) {
+      logError( e.getMessage(), e );
+    }
+    if ( data.partExecutor != null ) {
+      data.partExecutor.shutdownNow();
+      data.partExecutor = null;
+    }
+    super.dispose( smi, sdi );
+  }
+
   public void closeFile() throws KettleException {
     try {
       if ( data.fis != null ) {
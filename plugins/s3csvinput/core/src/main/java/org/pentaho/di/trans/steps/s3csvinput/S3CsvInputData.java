@@ -26,6 +26,7 @@ package org.pentaho.di.trans.steps.s3csvinput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.jets3t.service.S3Service;
 import org.jets3t.service.model.S3Bucket;
@@ -79,6 +80,10 @@ public class S3CsvInputData extends BaseStepData implements StepDataInterface {
   public S3Bucket s3bucket;
   public int maxLineSize;
   public S3Object s3Object;
+
+  public int partSize;
+  public int concurrentParts;
+  public ExecutorService partExecutor;
 
   /**
    *
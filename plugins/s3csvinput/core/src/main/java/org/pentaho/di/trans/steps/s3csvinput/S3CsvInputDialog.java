@@ -93,6 +93,9 @@ public class S3CsvInputDialog extends BaseStepDialog implements StepDialogInterf
   private TextVar      wDelimiter;
   private TextVar      wEnclosure;
   private TextVar      wMaxLineSize;
+  private TextVar      wEndpoint;
+  private TextVar      wPartSize;
+  private TextVar      wConcurrentParts;
   private Button       wLazyConversion;
   private Button       wHeaderPresent;
 
@@ -195,6 +198,26 @@ public class S3CsvInputDialog extends BaseStepDialog implements StepDialogInterf
     wSecretKey.setLayoutData( fdSecretKey );
     lastControl = wSecretKey;
 
+    // Endpoint of an S3 compatible store
+    Label wlEndpoint = new Label( shell, SWT.RIGHT );
+    wlEndpoint.setText( Messages.getString( "S3CsvInputDialog.Endpoint.Label" ) ); //$NON-NLS-1$
+    props.setLook( wlEndpoint );
+    FormData fdlEndpoint = new FormData();
+    fdlEndpoint.top = new FormAttachment( lastControl, margin );
+    fdlEndpoint.left = new FormAttachment( 0, 0 );
+    fdlEndpoint.right = new FormAttachment( middle, -margin );
+    wlEndpoint.setLayoutData( fdlEndpoint );
+    wEndpoint = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wEndpoint.setToolTipText( Messages.getString( "S3CsvInputDialog.Endpoint.Tooltip" ) ); //$NON-NLS-1$
+    props.setLook( wEndpoint );
+    wEndpoint.addModifyListener( lsMod );
+    FormData fdEndpoint = new FormData();
+    fdEndpoint.top = new FormAttachment( lastControl, margin );
+    fdEndpoint.left = new FormAttachment( middle, 0 );
+    fdEndpoint.right = new FormAttachment( 100, 0 );
+    wEndpoint.setLayoutData( fdEndpoint );
+    lastControl = wEndpoint;
+
     // Bucket name
     Label wlBucket = new Label( shell, SWT.RIGHT );
     wlBucket.setText( Messages.getString( "S3CsvInputDialog.Bucket.Label" ) ); //$NON-NLS-1$
@@ -375,6 +398,47 @@ public class S3CsvInputDialog extends BaseStepDialog implements StepDialogInterf
     wMaxLineSize.setLayoutData( fdMaxLineSize );
     lastControl = wMaxLineSize;
 
+    // Part size
+    //
+    Label wlPartSize = new Label( shell, SWT.RIGHT );
+    wlPartSize.setText( Messages.getString( "S3CsvInputDialog.PartSize.Label" ) ); //$NON-NLS-1$
+    props.setLook( wlPartSize );
+    FormData fdlPartSize = new FormData();
+    fdlPartSize.top = new FormAttachment( lastControl, margin );
+    fdlPartSize.left = new FormAttachment( 0, 0 );
+    fdlPartSize.right = new FormAttachment( middle, -margin );
+    wlPartSize.setLayoutData( fdlPartSize );
+    wPartSize = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wPartSize );
+    wPartSize.addModifyListener( lsMod );
+    FormData fdPartSize = new FormData();
+    fdPartSize.top = new FormAttachment( lastControl, margin );
+    fdPartSize.left = new FormAttachment( middle, 0 );
+    fdPartSize.right = new FormAttachment( 100, 0 );
+    wPartSize.setLayoutData( fdPartSize );
+    lastControl = wPartSize;
+
+    // Number of concurrent parts
+    //
+    Label wlConcurrentParts = new Label( shell, SWT.RIGHT );
+    wlConcurrentParts.setText( Messages.getString( "S3CsvInputDialog.ConcurrentParts.Label" ) ); //$NON-NLS-1$
+    props.setLook( wlConcurrentParts );
+    FormData fdlConcurrentParts = new FormData();
+    fdlConcurrentParts.top = new FormAttachment( lastControl, margin );
+    fdlConcurrentParts.left = new FormAttachment( 0, 0 );
+    fdlConcurrentParts.right = new FormAttachment( middle, -margin );
+    wlConcurrentParts.setLayoutData( fdlConcurrentParts );
+    wConcurrentParts = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wConcurrentParts.setToolTipText( Messages.getString( "S3CsvInputDialog.ConcurrentParts.Tooltip" ) ); //$NON-NLS-1$
+    props.setLook( wConcurrentParts );
+    wConcurrentParts.addModifyListener( lsMod );
+    FormData fdConcurrentParts = new FormData();
+    fdConcurrentParts.top = new FormAttachment( lastControl, margin );
+    fdConcurrentParts.left = new FormAttachment( middle, 0 );
+    fdConcurrentParts.right = new FormAttachment( 100, 0 );
+    wConcurrentParts.setLayoutData( fdConcurrentParts );
+    lastControl = wConcurrentParts;
+
     // performingLazyConversion?
     //
     Label wlLazyConversion = new Label( shell, SWT.RIGHT );
@@ -560,6 +624,9 @@ public class S3CsvInputDialog extends BaseStepDialog implements StepDialogInterf
     wDelimiter.addSelectionListener( lsDef );
     wEnclosure.addSelectionListener( lsDef );
     wMaxLineSize.addSelectionListener( lsDef );
+    wEndpoint.addSelectionListener( lsDef );
+    wPartSize.addSelectionListener( lsDef );
+    wConcurrentParts.addSelectionListener( lsDef );
     wRowNumField.addSelectionListener( lsDef );
 
     // Allow the insertion of tabs as separator...
@@ -681,6 +748,9 @@ public class S3CsvInputDialog extends BaseStepDialog implements StepDialogInterf
     wDelimiter.setText( Const.NVL( inputMeta.getDelimiter(), "" ) );
     wEnclosure.setText( Const.NVL( inputMeta.getEnclosure(), "" ) );
     wMaxLineSize.setText( Const.NVL( inputMeta.getMaxLineSize(), "" ) );
+    wEndpoint.setText( Const.NVL( inputMeta.getEndpoint(), "" ) );
+    wPartSize.setText( Const.NVL( inputMeta.getPartSize(), "" ) );
+    wConcurrentParts.setText( Const.NVL( inputMeta.getConcurrentParts(), "" ) );
     wLazyConversion.setSelection( inputMeta.isLazyConversionActive() );
     wHeaderPresent.setSelection( inputMeta.isHeaderPresent() );
     wRunningInParallel.setSelection( inputMeta.isRunningInParallel() );
@@ -730,6 +800,9 @@ public class S3CsvInputDialog extends BaseStepDialog implements StepDialogInterf
     inputMeta.setDelimiter( wDelimiter.getText() );
     inputMeta.setEnclosure( wEnclosure.getText() );
     inputMeta.setMaxLineSize( wMaxLineSize.getText() );
+    inputMeta.setEndpoint( wEndpoint.getText() );
+    inputMeta.setPartSize( wPartSize.getText() );
+    inputMeta.setConcurrentParts( wConcurrentParts.getText() );
     inputMeta.setLazyConversionActive( wLazyConversion.getSelection() );
     inputMeta.setHeaderPresent( wHeaderPresent.getSelection() );
     inputMeta.setRowNumField( wRowNumField.getText() );
@@ -22,9 +22,11 @@
 
 package org.pentaho.di.trans.steps.s3csvinput;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.jets3t.service.Jets3tProperties;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.impl.rest.httpclient.RestS3Service;
@@ -122,6 +124,15 @@ public class S3CsvInputMeta extends BaseStepMeta implements StepMetaInterface, I
   @Injection( name = "AWS_SECRET_KEY" )
   private String awsSecretKey;
 
+  @Injection( name = "ENDPOINT" )
+  private String endpoint;
+
+  @Injection( name = "PART_SIZE" )
+  private String partSize;
+
+  @Injection( name = "CONCURRENT_PARTS" )
+  private String concurrentParts;
+
   public S3CsvInputMeta() {
     super(); // allocate BaseStepMeta
     allocate( 0 );
@@ -146,6 +157,8 @@ public class S3CsvInputMeta extends BaseStepMeta implements StepMetaInterface, I
     headerPresent = true;
     lazyConversionActive = true;
     maxLineSize = "5000";
+    partSize = Integer.toString( S3RangedInputStream.DEFAULT_PART_SIZE );
+    concurrentParts = Integer.toString( S3RangedInputStream.DEFAULT_CONCURRENT_PARTS );
   }
 
   private void readData( Node stepnode ) throws KettleXMLException {
@@ -163,6 +176,9 @@ public class S3CsvInputMeta extends BaseStepMeta implements StepMetaInterface, I
       headerPresent = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "header" ) );
       lazyConversionActive = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "lazy_conversion" ) );
       runningInParallel = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "parallel" ) );
+      endpoint = XMLHandler.getTagValue( stepnode, "endpoint" );
+      partSize = XMLHandler.getTagValue( stepnode, "part_size" );
+      concurrentParts = XMLHandler.getTagValue( stepnode, "concurrent_parts" );
 
       Node fields = XMLHandler.getSubNode( stepnode, "fields" );
       int nrfields = XMLHandler.countNodes( fields, "field" );
@@ -212,6 +228,9 @@ public class S3CsvInputMeta extends BaseStepMeta implements StepMetaInterface, I
     retval.append( "    " ).append( XMLHandler.addTagValue( "max_line_size", maxLineSize ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "lazy_conversion", lazyConversionActive ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "parallel", runningInParallel ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "endpoint", endpoint ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "part_size", partSize ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "concurrent_parts", concurrentParts ) );
 
     retval.append( "    <fields>" ).append( Const.CR );
     for ( int i = 0; i < inputFields.length; i++ ) {
@@ -253,6 +272,9 @@ public class S3CsvInputMeta extends BaseStepMeta implements StepMetaInterface, I
       maxLineSize = rep.getStepAttributeString( id_step, "max_line_size" );
       lazyConversionActive = rep.getStepAttributeBoolean( id_step, "lazy_conversion" );
       runningInParallel = rep.getStepAttributeBoolean( id_step, "parallel" );
+      endpoint = rep.getStepAttributeString( id_step, "endpoint" );
+      partSize = rep.getStepAttributeString( id_step, "part_size" );
+      concurrentParts = rep.getStepAttributeString( id_step, "concurrent_parts" );
 
       int nrfields = rep.countNrStepAttributes( id_step, "field_name" );
 
@@ -296,6 +318,9 @@ public class S3CsvInputMeta extends BaseStepMeta implements StepMetaInterface, I
       rep.saveStepAttribute( id_transformation, id_step, "header", headerPresent );
       rep.saveStepAttribute( id_transformation, id_step, "lazy_conversion", lazyConversionActive );
       rep.saveStepAttribute( id_transformation, id_step, "parallel", runningInParallel );
+      rep.saveStepAttribute( id_transformation, id_step, "endpoint", endpoint );
+      rep.saveStepAttribute( id_transformation, id_step, "part_size", partSize );
+      rep.saveStepAttribute( id_transformation, id_step, "concurrent_parts", concurrentParts );
 
       for ( int i = 0; i < inputFields.length; i++ ) {
         TextFileInputField field = inputFields[i];
@@ -677,6 +702,51 @@ public class S3CsvInputMeta extends BaseStepMeta implements StepMetaInterface, I
     this.runningInParallel = runningInParallel;
   }
 
+  /**
+   * @return the endpoint of an S3 compatible object store, empty for Amazon S3
+   */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * @param endpoint
+   *          the endpoint of an S3 compatible object store, for example http://localhost:9000
+   */
+  public void setEndpoint( String endpoint ) {
+    this.endpoint = endpoint;
+  }
+
+  /**
+   * @return the number of bytes requested at once with a ranged GET
+   */
+  public String getPartSize() {
+    return partSize;
+  }
+
+  /**
+   * @param partSize
+   *          the number of bytes requested at once with a ranged GET
+   */
+  public void setPartSize( String partSize ) {
+    this.partSize = partSize;
+  }
+
+  /**
+   * @return the maximum number of parts requested or buffered at once, 1 or less reads the file as a single stream
+   */
+  public String getConcurrentParts() {
+    return concurrentParts;
+  }
+
+  /**
+   * @param concurrentParts
+   *          the maximum number of parts requested or buffered at once, 1 or less reads the file as a single stream
+   */
+  public void setConcurrentParts( String concurrentParts ) {
+    this.concurrentParts = concurrentParts;
+  }
+
   /**
    * @return the bucket
    */
@@ -730,7 +800,33 @@ public class S3CsvInputMeta extends BaseStepMeta implements StepMetaInterface, I
     String secretKey = Encr.decryptPasswordOptionallyEncrypted( space.environmentSubstitute( awsSecretKey ) );
     AWSCredentials awsCredentials = new AWSCredentials( accessKey, secretKey );
 
-    S3Service s3service = new RestS3Service( awsCredentials );
-    return s3service;
+    String endpointUrl = space.environmentSubstitute( endpoint );
+    if ( Utils.isEmpty( endpointUrl ) ) {
+      return new RestS3Service( awsCredentials );
+    }
+    return new RestS3Service( awsCredentials, null, null, getEndpointProperties( endpointUrl ) );
+  }
+
+  /**
+   * Point the S3 service to an S3 compatible object store. Buckets are addressed in the path of the requests since
+   * these stores usually don't resolve bucket names as host names.
+   *
+   * @param endpointUrl
+   *          a URL like http://localhost:9000 or only a host name (https is used then)
+   * @return the properties to create the S3 service with
+   */
+  static Jets3tProperties getEndpointProperties( String endpointUrl ) {
+    URI uri = URI.create( endpointUrl.contains( "://" ) ? endpointUrl : "https://" + endpointUrl );
+    boolean https = "https".equalsIgnoreCase( uri.getScheme() );
+
+    Jets3tProperties properties = new Jets3tProperties();
+    properties.setProperty( "s3service.s3-endpoint", uri.getHost() );
+    properties.setProperty( "s3service.https-only", Boolean.toString( https ) );
+    properties.setProperty( "s3service.disable-dns-buckets", "true" );
+    if ( uri.getPort() > 0 ) {
+      properties.setProperty( https ? "s3service.s3-endpoint-https-port" : "s3service.s3-endpoint-http-port",
+        Integer.toString( uri.getPort() ) );
+    }
+    return properties;
   }
 }
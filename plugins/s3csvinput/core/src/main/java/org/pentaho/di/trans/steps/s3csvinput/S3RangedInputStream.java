@@ -0,0 +1,208 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.s3csvinput;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jets3t.service.model.S3Bucket;
+import org.jets3t.service.model.S3Object;
+
+/**
+ * Reads a byte range of an S3 object as a series of parts that are fetched concurrently with ranged GET requests.<br>
+ * <br>
+ * At most <code>concurrentParts</code> parts are requested or buffered at any time, so the memory used is bounded by
+ * <code>partSize * concurrentParts</code>. The parts are handed to the reader in order: a part that arrives early
+ * waits in the buffer until the parts before it are consumed.
+ */
+public class S3RangedInputStream extends InputStream {
+
+  public static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+  public static final int DEFAULT_CONCURRENT_PARTS = 4;
+
+  /** The number of times a part is requested before giving up */
+  public static final int MAX_ATTEMPTS = 3;
+
+  private final S3ObjectsProvider provider;
+  private final S3Bucket bucket;
+  private final String objectKey;
+  private final long end;
+  private final int partSize;
+  private final int concurrentParts;
+  private final ExecutorService executor;
+
+  private final Deque<Future<byte[]>> parts = new ArrayDeque<>();
+  private long nextPartStart;
+
+  private byte[] part = new byte[0];
+  private int partPosition;
+  private boolean closed;
+
+  /**
+   * @param provider
+   *          the provider to get the parts from
+   * @param bucket
+   *          the bucket containing the object
+   * @param objectKey
+   *          the key identifying the object
+   * @param start
+   *          the first byte to read
+   * @param end
+   *          the last byte to read (inclusive), usually the content length minus one
+   * @param partSize
+   *          the number of bytes to request at once
+   * @param concurrentParts
+   *          the maximum number of parts requested or buffered at once
+   * @param executor
+   *          the executor fetching the parts
+   */
+  public S3RangedInputStream( S3ObjectsProvider provider, S3Bucket bucket, String objectKey, long start, long end,
+                              int partSize, int concurrentParts, ExecutorService executor ) {
+    this.provider = provider;
+    this.bucket = bucket;
+    this.objectKey = objectKey;
+    this.end = end;
+    this.partSize = partSize > 0 ? partSize : DEFAULT_PART_SIZE;
+    this.concurrentParts = Math.max( 1, concurrentParts );
+    this.executor = executor;
+    this.nextPartStart = Math.max( 0L, start );
+    requestParts();
+  }
+
+  private void requestParts() {
+    while ( parts.size() < concurrentParts && nextPartStart <= end ) {
+      final long partStart = nextPartStart;
+      final long partEnd = Math.min( end, partStart + partSize - 1 );
+      parts.add( executor.submit( new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws Exception {
+          return fetchPart( partStart, partEnd );
+        }
+      } ) );
+      nextPartStart = partEnd + 1;
+    }
+  }
+
+  private byte[] fetchPart( long partStart, long partEnd ) throws Exception {
+    Exception lastException = null;
+    for ( int attempt = 0; attempt < MAX_ATTEMPTS; attempt++ ) {
+      try {
+        S3Object s3Object = provider.getS3Object( bucket, objectKey, partStart, partEnd );
+        try ( InputStream in = s3Object.getDataInputStream() ) {
+          byte[] data = new byte[(int) ( partEnd - partStart + 1 )];
+          int length = 0;
+          while ( length < data.length ) {
+            int n = in.read( data, length, data.length - length );
+            if ( n < 0 ) {
+              break;
+            }
+            length += n;
+          }
+          return length == data.length ? data : Arrays.copyOf( data, length );
+        }
+      } catch ( Exception e ) {
+        lastException = e;
+      }
+    }
+    throw lastException;
+  }
+
+  /**
+   * @return false if there is nothing left to read
+   */
+  private boolean nextPart() throws IOException {
+    while ( partPosition >= part.length ) {
+      if ( closed ) {
+        throw new IOException( "Stream closed" );
+      }
+      Future<byte[]> future = parts.poll();
+      if ( future == null ) {
+        return false;
+      }
+      try {
+        part = future.get();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new IOException( e );
+      } catch ( ExecutionException e ) {
+        throw new IOException( "Unable to read a part of S3 object '" + objectKey + "'", e.getCause() );
+      }
+      partPosition = 0;
+      requestParts();
+      if ( part.length == 0 ) {
+        // The object is shorter than expected
+        cancelParts();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if ( !nextPart() ) {
+      return -1;
+    }
+    return part[partPosition++] & 0xff;
+  }
+
+  @Override
+  public int read( byte[] b, int off, int len ) throws IOException {
+    if ( len == 0 ) {
+      return 0;
+    }
+    if ( !nextPart() ) {
+      return -1;
+    }
+    int n = Math.min( len, part.length - partPosition );
+    System.arraycopy( part, partPosition, b, off, n );
+    partPosition += n;
+    return n;
+  }
+
+  @Override
+  public int available() {
+    return part.length - partPosition;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    cancelParts();
+  }
+
+  private void cancelParts() {
+    for ( Future<byte[]> future : parts ) {
+      future.cancel( true );
+    }
+    parts.clear();
+    nextPartStart = end + 1;
+  }
+}
@@ -101,6 +101,22 @@ public class S3CsvInputMetaNewInjectionTest extends BaseMetadataInjectionTest<S3
       }
     } );
 
+    check( "ENDPOINT", new StringGetter() {
+      public String get() {
+        return meta.getEndpoint();
+      }
+    } );
+    check( "PART_SIZE", new StringGetter() {
+      public String get() {
+        return meta.getPartSize();
+      }
+    } );
+    check( "CONCURRENT_PARTS", new StringGetter() {
+      public String get() {
+        return meta.getConcurrentParts();
+      }
+    } );
+
     check( "INPUT_NAME", new StringGetter() {
       public String get() {
         return meta.getInputFields()[0].getName();
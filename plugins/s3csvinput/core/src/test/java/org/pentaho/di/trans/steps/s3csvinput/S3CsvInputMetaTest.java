@@ -22,7 +22,9 @@
 package org.pentaho.di.trans.steps.s3csvinput;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
@@ -30,6 +32,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.jets3t.service.Jets3tProperties;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.junit.BeforeClass;
@@ -72,7 +75,7 @@ public class S3CsvInputMetaTest {
   public void testSerialization() throws KettleException {
     List<String> attributes = Arrays.asList( "AwsAccessKey", "AwsSecretKey", "Bucket", "Filename", "FilenameField",
       "RowNumField", "IncludingFilename", "Delimiter", "Enclosure", "HeaderPresent", "MaxLineSize",
-      "LazyConversionActive", "RunningInParallel", "InputFields" );
+      "LazyConversionActive", "RunningInParallel", "InputFields", "Endpoint", "PartSize", "ConcurrentParts" );
 
     Map<String, FieldLoadSaveValidator<?>> typeMap = new HashMap<>();
     typeMap.put( TextFileInputField[].class.getCanonicalName(),
@@ -84,6 +87,19 @@ public class S3CsvInputMetaTest {
     tester.testSerialization();
   }
 
+  @Test
+  public void testGetEndpointProperties() {
+    Jets3tProperties properties = S3CsvInputMeta.getEndpointProperties( "http://localhost:9000" );
+    assertEquals( "localhost", properties.getStringProperty( "s3service.s3-endpoint", null ) );
+    assertEquals( "9000", properties.getStringProperty( "s3service.s3-endpoint-http-port", null ) );
+    assertFalse( properties.getBoolProperty( "s3service.https-only", true ) );
+    assertTrue( properties.getBoolProperty( "s3service.disable-dns-buckets", false ) );
+
+    properties = S3CsvInputMeta.getEndpointProperties( "storage.example.com" );
+    assertEquals( "storage.example.com", properties.getStringProperty( "s3service.s3-endpoint", null ) );
+    assertTrue( properties.getBoolProperty( "s3service.https-only", false ) );
+  }
+
   @Test
   public void testGetS3Service_notEncryptedKeys() {
     S3CsvInputMeta s3CvsInput = new S3CsvInputMeta();
@@ -0,0 +1,163 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.s3csvinput;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jets3t.service.S3ServiceException;
+import org.jets3t.service.model.S3Bucket;
+import org.jets3t.service.model.S3Object;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class S3RangedInputStreamTest {
+
+  private static final S3Bucket BUCKET = new S3Bucket( "bucket" );
+  private static final String KEY = "data.csv";
+
+  private ExecutorService executor;
+  private byte[] content;
+  private S3ObjectsProvider provider;
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+  private final AtomicInteger failures = new AtomicInteger();
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool( 8 );
+    content = new byte[1000];
+    for ( int i = 0; i < content.length; i++ ) {
+      content[i] = (byte) ( i % 251 );
+    }
+
+    // A small object store answering ranged requests from the content
+    provider = mock( S3ObjectsProvider.class );
+    when( provider.getS3Object( any( S3Bucket.class ), anyString(), anyLong(), anyLong() ) ).thenAnswer(
+      new Answer<S3Object>() {
+        @Override
+        public S3Object answer( InvocationOnMock invocation ) throws Throwable {
+          requests.incrementAndGet();
+          maxRunning.set( Math.max( maxRunning.get(), running.incrementAndGet() ) );
+          try {
+            Thread.sleep( 5 );
+            if ( failures.getAndDecrement() > 0 ) {
+              throw new S3ServiceException( "Connection reset" );
+            }
+            long start = (Long) invocation.getArguments()[2];
+            long end = Math.min( content.length - 1, (Long) invocation.getArguments()[3] );
+            S3Object s3Object = new S3Object( KEY );
+            s3Object.setDataInputStream( new ByteArrayInputStream(
+              Arrays.copyOfRange( content, (int) start, (int) end + 1 ) ) );
+            return s3Object;
+          } finally {
+            running.decrementAndGet();
+          }
+        }
+      } );
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private byte[] readAll( InputStream in ) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[33];
+    int n;
+    while ( ( n = in.read( buffer ) ) >= 0 ) {
+      out.write( buffer, 0, n );
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testPartsAreReadInOrder() throws Exception {
+    InputStream in = new S3RangedInputStream( provider, BUCKET, KEY, 0, content.length - 1, 64, 4, executor );
+    assertArrayEquals( content, readAll( in ) );
+    assertEquals( 16, requests.get() );
+    assertTrue( maxRunning.get() <= 4 );
+  }
+
+  @Test
+  public void testRange() throws Exception {
+    InputStream in = new S3RangedInputStream( provider, BUCKET, KEY, 100, 349, 100, 2, executor );
+    assertArrayEquals( Arrays.copyOfRange( content, 100, 350 ), readAll( in ) );
+    assertEquals( 3, requests.get() );
+  }
+
+  @Test
+  public void testRangeBeyondEndOfObject() throws Exception {
+    InputStream in = new S3RangedInputStream( provider, BUCKET, KEY, 900, 1500, 64, 3, executor );
+    assertArrayEquals( Arrays.copyOfRange( content, 900, 1000 ), readAll( in ) );
+  }
+
+  @Test
+  public void testEmptyRange() throws Exception {
+    InputStream in = new S3RangedInputStream( provider, BUCKET, KEY, 0, -1, 64, 3, executor );
+    assertEquals( -1, in.read() );
+    assertEquals( 0, requests.get() );
+  }
+
+  @Test
+  public void testFailedRequestIsRetried() throws Exception {
+    failures.set( S3RangedInputStream.MAX_ATTEMPTS - 1 );
+    InputStream in = new S3RangedInputStream( provider, BUCKET, KEY, 0, content.length - 1, 500, 1, executor );
+    assertArrayEquals( content, readAll( in ) );
+  }
+
+  @Test
+  public void testFailingPartIsReported() throws Exception {
+    failures.set( S3RangedInputStream.MAX_ATTEMPTS );
+    InputStream in = new S3RangedInputStream( provider, BUCKET, KEY, 0, content.length - 1, 500, 1, executor );
+    try {
+      readAll( in );
+      fail( "The failing part should be reported" );
+    } catch ( IOException e ) {
+      assertTrue( e.getCause() instanceof S3ServiceException );
+    }
+  }
+}
@@ -209,6 +209,97 @@ public class GetXMLData extends BaseStep implements StepInterface {
     return true;
   }
 
+  /**
+   * Stream the file through the StAX matcher: rows are put out as soon as a loop node closes, so only one loop node is
+   * held in memory at a time.
+   */
+  private void readStreaming( FileObject file ) throws KettleException {
+    this.prevRow = buildEmptyRow(); // pre-allocate previous row
+
+    if ( data.an == null ) {
+      data.an = new ArrayList<AbstractNode>( 1 );
+      data.an.add( null );
+    }
+
+    // get encoding. By default UTF-8
+    String encoding = "UTF-8";
+    if ( !Utils.isEmpty( meta.getEncoding() ) ) {
+      encoding = meta.getEncoding();
+    }
+    InputStream is = KettleVFS.getInputStream( file );
+    try {
+      data.streamingMatcher.read( is, encoding, meta.isIgnoreComments(), new StreamingXPathMatcher.RecordListener() {
+        public boolean recordClosed( Element record ) throws KettleException {
+          return processStreamingRecord( record );
+        }
+      } );
+    } finally {
+      BaseStep.closeQuietly( is );
+    }
+    data.nodesize = 0;
+    data.nodenr = 0;
+  }
+
+  /**
+   * Put out the row for one loop node that was collected by the StAX matcher.
+   *
+   * @return false when reading should stop (limit reached or transformation stopped)
+   */
+  private boolean processStreamingRecord( Element record ) throws KettleException {
+    if ( isStopped() ) {
+      return false;
+    }
+    data.an.set( 0, (AbstractNode) record );
+    data.nodesize = 1;
+    data.nodenr = 0;
+    Object[] r = getXMLRowPutRowWithErrorhandling();
+    data.an.set( 0, null );
+    if ( data.errorInRowButContinue ) {
+      return true; // do not put out the row but continue
+    }
+    if ( !putRowOut( r ) ) {
+      data.streamingLimitReached = true;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Compile the loop XPath for streaming evaluation and verify that all field XPaths stay within the loop node.
+   *
+   * @return the matcher or null when the DOM parser has to be used
+   */
+  private StreamingXPathMatcher compileStreamingMatcher() {
+    String reason = null;
+    StreamingXPathMatcher matcher = null;
+    if ( meta.isInFields() || meta.isNamespaceAware() || meta.isValidating() || meta.isuseToken()
+        || data.prunePath != null ) {
+      reason = BaseMessages.getString( PKG, "GetXMLData.Log.StreamingXPath.UnsupportedOption" );
+    } else {
+      matcher = StreamingXPathMatcher.compile( data.PathValue );
+      if ( matcher == null ) {
+        reason = BaseMessages.getString( PKG, "GetXMLData.Log.StreamingXPath.UnsupportedLoopPath", data.PathValue );
+      }
+    }
+    for ( int i = 0; reason == null && i < data.nrInputFields; i++ ) {
+      GetXMLDataField field = meta.getInputFields()[i];
+      String xpath = environmentSubstitute( field.getXPath() );
+      if ( !StreamingXPathMatcher.isSupportedFieldPath( xpath,
+          field.getElementType() == GetXMLDataField.ELEMENT_TYPE_ATTRIBUT ) ) {
+        reason = BaseMessages.getString( PKG, "GetXMLData.Log.StreamingXPath.UnsupportedFieldPath", xpath, field
+            .getName() );
+      }
+    }
+    if ( reason != null ) {
+      logBasic( BaseMessages.getString( PKG, "GetXMLData.Log.StreamingXPath.NotSupported", reason ) );
+      return null;
+    }
+    if ( log.isDetailed() ) {
+      logDetailed( BaseMessages.getString( PKG, "GetXMLData.Log.StreamingXPath.Activated", data.PathValue ) );
+    }
+    return matcher;
+  }
+
   /**
    * Process chunk of data in streaming mode. Called only by the handler when pruning is true. Not allowed in
    * combination with meta.getIsInFields(), but could be redesigned later on.
@@ -595,6 +686,16 @@ public class GetXMLData extends BaseStep implements StepInterface {
           logDetailed( BaseMessages.getString( PKG, "GetXMLData.Log.OpeningFile", data.file.toString() ) );
         }
 
+        if ( data.streamingMatcher != null ) {
+          // rows are put out while the file is read, see processStreamingRecord()
+          readStreaming( data.file );
+          addFileToResultFilesname( data.file );
+          if ( log.isDetailed() ) {
+            logDetailed( BaseMessages.getString( PKG, "GetXMLData.Log.FileOpened", data.file.toString() ) );
+          }
+          return !data.streamingLimitReached && !isStopped();
+        }
+
         // Open the XML document
         if ( !setDocument( null, data.file, false, false ) ) {
           if ( data.stopPruning ) {
@@ -967,6 +1068,10 @@ public class GetXMLData extends BaseStep implements StepInterface {
         }
       }
 
+      if ( meta.isStreamingXPath() ) {
+        data.streamingMatcher = compileStreamingMatcher();
+      }
+
       return true;
     }
     return false;
@@ -65,6 +65,8 @@ public class GetXMLDataData extends BaseStepData implements StepDataInterface {
   public String PathValue;
   public String prunePath; // identical to meta.getPrunePath() with some conditions set at init(), null when no pruning
   public boolean stopPruning; // used for a trick to stop the reader in pruning mode
+  public StreamingXPathMatcher streamingMatcher; // set at init() when the XPaths can be evaluated while streaming
+  public boolean streamingLimitReached; // true when the row limit was reached while streaming a document
   public boolean errorInRowButContinue; // true when actual row has an error and error handling is active: means
                                         // continue (error handling in this step should be redesigned)
   public String tokenStart;
@@ -141,6 +143,8 @@ public class GetXMLDataData extends BaseStepData implements StepDataInterface {
     totalpreviousfields = 0;
     prunePath = "";
     stopPruning = false;
+    streamingMatcher = null;
+    streamingLimitReached = false;
     errorInRowButContinue = false;
     nrReadRow = 0;
   }
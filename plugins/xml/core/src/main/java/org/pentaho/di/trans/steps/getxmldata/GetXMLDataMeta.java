@@ -152,6 +152,9 @@ public class GetXMLDataMeta extends BaseStepMeta implements StepMetaInterface {
   // Given this path activates the streaming algorithm to process large files
   private String prunePath;
 
+  /** Flag : evaluate the loop and field XPaths while streaming the document (StAX) instead of building a DOM */
+  private boolean streamingXPath;
+
   /** Additional fields **/
   private String shortFileFieldName;
   private String pathFieldName;
@@ -639,6 +642,21 @@ public class GetXMLDataMeta extends BaseStepMeta implements StepMetaInterface {
     this.prunePath = prunePath;
   }
 
+  /**
+   * @return true if the loop and field XPaths are evaluated while streaming the document
+   */
+  public boolean isStreamingXPath() {
+    return streamingXPath;
+  }
+
+  /**
+   * @param streamingXPath
+   *          true to evaluate the loop and field XPaths while streaming the document
+   */
+  public void setStreamingXPath( boolean streamingXPath ) {
+    this.streamingXPath = streamingXPath;
+  }
+
   public void loadXML( Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore ) throws KettleXMLException {
     readData( stepnode );
   }
@@ -709,6 +727,7 @@ public class GetXMLDataMeta extends BaseStepMeta implements StepMetaInterface {
     retval.append( "    " ).append( XMLHandler.addTagValue( "IsAFile", IsAFile ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "XmlField", xmlField ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "prunePath", prunePath ) );
+    retval.append( "    " ).append( XMLHandler.addTagValue( "streamingXPath", streamingXPath ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "shortFileFieldName", shortFileFieldName ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "pathFieldName", pathFieldName ) );
     retval.append( "    " ).append( XMLHandler.addTagValue( "hiddenFieldName", hiddenFieldName ) );
@@ -798,6 +817,7 @@ public class GetXMLDataMeta extends BaseStepMeta implements StepMetaInterface {
 
       xmlField = XMLHandler.getTagValue( stepnode, "XmlField" );
       prunePath = XMLHandler.getTagValue( stepnode, "prunePath" );
+      streamingXPath = "Y".equalsIgnoreCase( XMLHandler.getTagValue( stepnode, "streamingXPath" ) );
 
       shortFileFieldName = XMLHandler.getTagValue( stepnode, "shortFileFieldName" );
       pathFieldName = XMLHandler.getTagValue( stepnode, "pathFieldName" );
@@ -873,6 +893,7 @@ public class GetXMLDataMeta extends BaseStepMeta implements StepMetaInterface {
     inFields = false;
     xmlField = "";
     prunePath = "";
+    streamingXPath = false;
   }
 
   public void getFields( RowMetaInterface r, String name, RowMetaInterface[] info, StepMeta nextStep,
@@ -1031,6 +1052,7 @@ public class GetXMLDataMeta extends BaseStepMeta implements StepMetaInterface {
 
       xmlField = rep.getStepAttributeString( id_step, "XmlField" );
       prunePath = rep.getStepAttributeString( id_step, "prunePath" );
+      streamingXPath = rep.getStepAttributeBoolean( id_step, "streamingXPath" );
 
       shortFileFieldName = rep.getStepAttributeString( id_step, "shortFileFieldName" );
       pathFieldName = rep.getStepAttributeString( id_step, "pathFieldName" );
@@ -1096,6 +1118,7 @@ public class GetXMLDataMeta extends BaseStepMeta implements StepMetaInterface {
 
       rep.saveStepAttribute( id_transformation, id_step, "XmlField", xmlField );
       rep.saveStepAttribute( id_transformation, id_step, "prunePath", prunePath );
+      rep.saveStepAttribute( id_transformation, id_step, "streamingXPath", streamingXPath );
       rep.saveStepAttribute( id_transformation, id_step, "shortFileFieldName", shortFileFieldName );
       rep.saveStepAttribute( id_transformation, id_step, "pathFieldName", pathFieldName );
       rep.saveStepAttribute( id_transformation, id_step, "hiddenFieldName", hiddenFieldName );
@@ -0,0 +1,454 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.getxmldata;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.util.Utils;
+
+/**
+ * Evaluates a subset of XPath while the document is being streamed with StAX.<br>
+ * <br>
+ * The loop XPath must be an absolute path over the child axis. Every step is an element name (optionally prefixed) or
+ * <code>*</code> and can carry one simple predicate: a position (<code>[2]</code>), an attribute test (
+ * <code>[@id]</code>) or an attribute comparison (<code>[@id='1']</code>). Each loop node is collected into a detached
+ * dom4j element while it is parsed and handed to a {@link RecordListener} as soon as it closes, so memory use is
+ * proportional to one record rather than to the whole document.<br>
+ * <br>
+ * Field XPaths are evaluated by dom4j on the detached record, so they must stay inside of it: relative child paths,
+ * an optional trailing attribute and the same simple predicates (plus <code>[child='value']</code>). Use
+ * {@link #isSupportedFieldPath(String, boolean)} to verify them up front.
+ */
+public class StreamingXPathMatcher {
+
+  /**
+   * Receives every loop node as soon as its end tag has been parsed.
+   */
+  public interface RecordListener {
+    /**
+     * @param record
+     *          the loop node, detached from any document
+     * @return false to stop reading the document
+     * @throws KettleException
+     */
+    boolean recordClosed( Element record ) throws KettleException;
+  }
+
+  private static final String WILDCARD = "*";
+
+  private static final String NAME = "[A-Za-z_][\\w.\\-]*(?::[A-Za-z_][\\w.\\-]*)?";
+
+  private static final Pattern STEP_PATTERN = Pattern.compile( "^(" + NAME + "|\\*)(?:\\[(.*)\\])?$" );
+
+  private static final Pattern ATTRIBUTE_STEP_PATTERN = Pattern.compile( "^@(" + NAME + "|\\*)$" );
+
+  private static final Pattern POSITION_PREDICATE = Pattern.compile( "^\\s*([1-9]\\d*)\\s*$" );
+
+  private static final Pattern VALUE_PREDICATE = Pattern.compile( "^\\s*(@?)(" + NAME
+      + ")\\s*(?:=\\s*(?:'([^']*)'|\"([^\"]*)\"))?\\s*$" );
+
+  /**
+   * One compiled location step: a name test with an optional predicate.
+   */
+  static class Step {
+    final String name;
+    final int position;
+    final String attribute;
+    final String child;
+    final String value;
+
+    Step( String name, int position, String attribute, String child, String value ) {
+      this.name = name;
+      this.position = position;
+      this.attribute = attribute;
+      this.child = child;
+      this.value = value;
+    }
+
+    boolean matches( String qualifiedName, XMLStreamReader reader, int siblingPosition ) {
+      if ( !WILDCARD.equals( name ) && !name.equals( qualifiedName ) ) {
+        return false;
+      }
+      if ( position > 0 && position != siblingPosition ) {
+        return false;
+      }
+      if ( attribute != null ) {
+        String attributeValue = getAttributeValue( reader, attribute );
+        if ( attributeValue == null || ( value != null && !value.equals( attributeValue ) ) ) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final Step[] steps;
+
+  /**
+   * Per loop level, the number of children seen so far by name (and by {@link #WILDCARD}); only used for positional
+   * predicates.
+   */
+  private final List<Map<String, int[]>> siblingCounts;
+
+  private final XMLInputFactory factory;
+
+  private StreamingXPathMatcher( Step[] steps ) {
+    this.steps = steps;
+    this.siblingCounts = new ArrayList<Map<String, int[]>>( steps.length );
+    for ( int i = 0; i < steps.length; i++ ) {
+      siblingCounts.add( new HashMap<String, int[]>() );
+    }
+    this.factory = createFactory();
+  }
+
+  /**
+   * Compile a loop XPath.
+   *
+   * @param loopXPath
+   *          the absolute loop XPath, e.g. <code>/orders/order[@type='web']</code>
+   * @return the matcher or null if the XPath uses more than the supported subset
+   */
+  public static StreamingXPathMatcher compile( String loopXPath ) {
+    if ( Utils.isEmpty( loopXPath ) ) {
+      return null;
+    }
+    String path = loopXPath.trim();
+    if ( !path.startsWith( GetXMLDataMeta.N0DE_SEPARATOR ) || path.startsWith( "//" ) ) {
+      return null;
+    }
+    List<String> segments = splitPath( path.substring( 1 ) );
+    if ( segments == null || segments.isEmpty() ) {
+      return null;
+    }
+    Step[] steps = new Step[segments.size()];
+    for ( int i = 0; i < steps.length; i++ ) {
+      steps[i] = parseStep( segments.get( i ), false );
+      if ( steps[i] == null ) {
+        return null;
+      }
+    }
+    return new StreamingXPathMatcher( steps );
+  }
+
+  /**
+   * Verify that a field XPath can be evaluated on a detached loop node.
+   *
+   * @param xpath
+   *          the (variable substituted) field XPath
+   * @param attribute
+   *          true if the field is of element type attribute, in which case the last step is read as an attribute
+   * @return true if the XPath only uses child and attribute axes with simple predicates
+   */
+  public static boolean isSupportedFieldPath( String xpath, boolean attribute ) {
+    if ( Utils.isEmpty( xpath ) ) {
+      return false;
+    }
+    String path = xpath.trim();
+    if ( path.startsWith( GetXMLDataMeta.N0DE_SEPARATOR ) ) {
+      return false;
+    }
+    List<String> segments = splitPath( path );
+    if ( segments == null || segments.isEmpty() ) {
+      return false;
+    }
+    for ( int i = 0; i < segments.size(); i++ ) {
+      String segment = segments.get( i );
+      boolean last = i == segments.size() - 1;
+      if ( last && ( attribute || segment.startsWith( GetXMLDataMeta.AT ) ) ) {
+        String name = segment.startsWith( GetXMLDataMeta.AT ) ? segment : GetXMLDataMeta.AT + segment;
+        if ( !ATTRIBUTE_STEP_PATTERN.matcher( name ).matches() ) {
+          return false;
+        }
+      } else if ( last && "text()".equals( segment ) ) {
+        continue;
+      } else if ( !".".equals( segment ) && parseStep( segment, true ) == null ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Stream the document and report every node matching the loop XPath.
+   *
+   * @param in
+   *          the document
+   * @param encoding
+   *          the encoding of the document
+   * @param ignoreComments
+   *          true to leave comments out of the records
+   * @param listener
+   *          receives the records
+   * @throws KettleException
+   *           in case the document can't be parsed or the listener fails
+   */
+  public void read( InputStream in, String encoding, boolean ignoreComments, RecordListener listener )
+    throws KettleException {
+    XMLStreamReader reader = null;
+    try {
+      reader = factory.createXMLStreamReader( in, encoding );
+      for ( Map<String, int[]> counts : siblingCounts ) {
+        counts.clear();
+      }
+
+      int depth = 0; // depth of the current element outside of a record
+      int matched = 0; // number of steps matched by the chain of open elements
+      Element record = null;
+      Element current = null;
+
+      while ( reader.hasNext() ) {
+        switch ( reader.next() ) {
+          case XMLStreamConstants.START_ELEMENT:
+            if ( record != null ) {
+              Element child = createElement( reader );
+              current.add( child );
+              current = child;
+              break;
+            }
+            depth++;
+            if ( matched == depth - 1 && depth <= steps.length ) {
+              Step step = steps[depth - 1];
+              String qualifiedName = getQualifiedName( reader );
+              int position = step.position > 0 ? nextPosition( depth - 1, step, qualifiedName ) : 0;
+              if ( step.matches( qualifiedName, reader, position ) ) {
+                matched = depth;
+                if ( matched == steps.length ) {
+                  record = createElement( reader );
+                  current = record;
+                } else {
+                  siblingCounts.get( depth ).clear();
+                }
+              }
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            if ( record != null ) {
+              if ( current != record ) {
+                current = current.getParent();
+                break;
+              }
+              Element closed = record;
+              record = null;
+              current = null;
+              matched = --depth;
+              if ( !listener.recordClosed( closed ) ) {
+                return;
+              }
+              break;
+            }
+            if ( matched == depth ) {
+              matched--;
+            }
+            depth--;
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            if ( current != null ) {
+              current.addText( reader.getText() );
+            }
+            break;
+          case XMLStreamConstants.COMMENT:
+            if ( current != null && !ignoreComments ) {
+              current.addComment( reader.getText() );
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    } catch ( XMLStreamException e ) {
+      throw new KettleException( e );
+    } finally {
+      if ( reader != null ) {
+        try {
+          reader.close();
+        } catch ( XMLStreamException e ) {
+          // Ignore close errors
+        }
+      }
+    }
+  }
+
+  int getNrSteps() {
+    return steps.length;
+  }
+
+  private int nextPosition( int level, Step step, String qualifiedName ) {
+    Map<String, int[]> counts = siblingCounts.get( level );
+    increment( counts, WILDCARD );
+    increment( counts, qualifiedName );
+    return counts.get( WILDCARD.equals( step.name ) ? WILDCARD : qualifiedName )[0];
+  }
+
+  private static void increment( Map<String, int[]> counts, String key ) {
+    int[] count = counts.get( key );
+    if ( count == null ) {
+      counts.put( key, new int[] { 1 } );
+    } else {
+      count[0]++;
+    }
+  }
+
+  /**
+   * Split a path on the node separator, ignoring separators inside of predicates and quotes.
+   *
+   * @return the segments or null if the path has empty segments (e.g. the descendant axis) or unbalanced brackets
+   */
+  static List<String> splitPath( String path ) {
+    List<String> segments = new ArrayList<String>();
+    StringBuilder segment = new StringBuilder();
+    int brackets = 0;
+    char quote = 0;
+    for ( int i = 0; i < path.length(); i++ ) {
+      char c = path.charAt( i );
+      if ( quote != 0 ) {
+        if ( c == quote ) {
+          quote = 0;
+        }
+      } else if ( c == '\'' || c == '"' ) {
+        quote = c;
+      } else if ( c == '[' ) {
+        brackets++;
+      } else if ( c == ']' ) {
+        brackets--;
+      } else if ( c == '/' && brackets == 0 ) {
+        if ( segment.length() == 0 ) {
+          return null;
+        }
+        segments.add( segment.toString().trim() );
+        segment.setLength( 0 );
+        continue;
+      }
+      segment.append( c );
+    }
+    if ( segment.length() == 0 || brackets != 0 || quote != 0 ) {
+      return null;
+    }
+    segments.add( segment.toString().trim() );
+    return segments;
+  }
+
+  static Step parseStep( String segment, boolean allowChildPredicate ) {
+    Matcher m = STEP_PATTERN.matcher( segment );
+    if ( !m.matches() ) {
+      return null;
+    }
+    String name = m.group( 1 );
+    String predicate = m.group( 2 );
+    if ( predicate == null ) {
+      return new Step( name, 0, null, null, null );
+    }
+    Matcher position = POSITION_PREDICATE.matcher( predicate );
+    if ( position.matches() ) {
+      return new Step( name, Integer.parseInt( position.group( 1 ) ), null, null, null );
+    }
+    Matcher value = VALUE_PREDICATE.matcher( predicate );
+    if ( !value.matches() ) {
+      return null;
+    }
+    String literal = value.group( 3 ) != null ? value.group( 3 ) : value.group( 4 );
+    if ( !Utils.isEmpty( value.group( 1 ) ) ) {
+      return new Step( name, 0, value.group( 2 ), null, literal );
+    }
+    // A test on a child element can only be decided once the node is complete
+    if ( !allowChildPredicate ) {
+      return null;
+    }
+    return new Step( name, 0, null, value.group( 2 ), literal );
+  }
+
+  private static String getQualifiedName( XMLStreamReader reader ) {
+    String prefix = reader.getPrefix();
+    if ( Utils.isEmpty( prefix ) ) {
+      return reader.getLocalName();
+    }
+    return prefix + ":" + reader.getLocalName();
+  }
+
+  private static String getAttributeValue( XMLStreamReader reader, String name ) {
+    for ( int i = 0; i < reader.getAttributeCount(); i++ ) {
+      String prefix = reader.getAttributePrefix( i );
+      String attributeName = reader.getAttributeLocalName( i );
+      if ( !Utils.isEmpty( prefix ) ) {
+        attributeName = prefix + ":" + attributeName;
+      }
+      if ( WILDCARD.equals( name ) || name.equals( attributeName ) ) {
+        return reader.getAttributeValue( i );
+      }
+    }
+    return null;
+  }
+
+  private static Element createElement( XMLStreamReader reader ) {
+    Element element = DocumentHelper.createElement( getQName( reader.getLocalName(), reader.getPrefix(),
+        reader.getNamespaceURI() ) );
+    for ( int i = 0; i < reader.getNamespaceCount(); i++ ) {
+      String prefix = reader.getNamespacePrefix( i );
+      element.add( Namespace.get( prefix == null ? "" : prefix, reader.getNamespaceURI( i ) ) );
+    }
+    for ( int i = 0; i < reader.getAttributeCount(); i++ ) {
+      element.addAttribute( getQName( reader.getAttributeLocalName( i ), reader.getAttributePrefix( i ), reader
+          .getAttributeNamespace( i ) ), reader.getAttributeValue( i ) );
+    }
+    return element;
+  }
+
+  private static QName getQName( String localName, String prefix, String namespaceURI ) {
+    if ( Utils.isEmpty( namespaceURI ) ) {
+      return QName.get( localName );
+    }
+    return QName.get( localName, prefix == null ? "" : prefix, namespaceURI );
+  }
+
+  private static XMLInputFactory createFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.TRUE );
+    factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+    // Ignore DTD declarations, just like IgnoreDTDEntityResolver does for the DOM parser
+    factory.setXMLResolver( new XMLResolver() {
+      public Object resolveEntity( String publicID, String systemID, String baseURI, String namespace ) {
+        return new ByteArrayInputStream( new byte[0] );
+      }
+    } );
+    return factory;
+  }
+}
@@ -173,6 +173,10 @@ public class GetXMLDataDialog extends BaseStepDialog implements StepDialogInterf
   private TextVar wPrunePath;
   private FormData fdlPrunePath, fdPrunePath;
 
+  private Label wlStreamingXPath;
+  private Button wStreamingXPath;
+  private FormData fdlStreamingXPath, fdStreamingXPath;
+
   private Label wlEncoding;
   private CCombo wEncoding;
   private FormData fdlEncoding, fdEncoding;
@@ -840,6 +844,23 @@ public class GetXMLDataDialog extends BaseStepDialog implements StepDialogInterf
     fdPrunePath.right = new FormAttachment( 100, 0 );
     wPrunePath.setLayoutData( fdPrunePath );
 
+    // Evaluate the XPaths while streaming (StAX)?
+    wlStreamingXPath = new Label( wXmlConf, SWT.RIGHT );
+    wlStreamingXPath.setText( BaseMessages.getString( PKG, "GetXMLDataDialog.StreamingXPath.Label" ) );
+    props.setLook( wlStreamingXPath );
+    fdlStreamingXPath = new FormData();
+    fdlStreamingXPath.left = new FormAttachment( 0, 0 );
+    fdlStreamingXPath.top = new FormAttachment( wPrunePath, margin );
+    fdlStreamingXPath.right = new FormAttachment( middle, -margin );
+    wlStreamingXPath.setLayoutData( fdlStreamingXPath );
+    wStreamingXPath = new Button( wXmlConf, SWT.CHECK );
+    props.setLook( wStreamingXPath );
+    wStreamingXPath.setToolTipText( BaseMessages.getString( PKG, "GetXMLDataDialog.StreamingXPath.Tooltip" ) );
+    fdStreamingXPath = new FormData();
+    fdStreamingXPath.left = new FormAttachment( middle, 0 );
+    fdStreamingXPath.top = new FormAttachment( wPrunePath, margin );
+    wStreamingXPath.setLayoutData( fdStreamingXPath );
+
     fdXmlConf = new FormData();
     fdXmlConf.left = new FormAttachment( 0, margin );
     fdXmlConf.top = new FormAttachment( 0, margin );
@@ -1351,6 +1372,8 @@ public class GetXMLDataDialog extends BaseStepDialog implements StepDialogInterf
     wPreview.setEnabled( !wXMLStreamField.getSelection() );
     wPrunePath.setEnabled( !wXMLStreamField.getSelection() );
     wlPrunePath.setEnabled( !wXMLStreamField.getSelection() );
+    wStreamingXPath.setEnabled( !wXMLStreamField.getSelection() );
+    wlStreamingXPath.setEnabled( !wXMLStreamField.getSelection() );
     wlShortFileFieldName.setEnabled( !wXMLStreamField.getSelection() );
     wShortFileFieldName.setEnabled( !wXMLStreamField.getSelection() );
     wlPathFieldName.setEnabled( !wXMLStreamField.getSelection() );
@@ -1608,6 +1631,7 @@ public class GetXMLDataDialog extends BaseStepDialog implements StepDialogInterf
     if ( in.getPrunePath() != null ) {
       wPrunePath.setText( in.getPrunePath() );
     }
+    wStreamingXPath.setSelection( in.isStreamingXPath() );
     if ( in.getLoopXPath() != null ) {
       wLoopXPath.setText( in.getLoopXPath() );
     }
@@ -1742,6 +1766,7 @@ public class GetXMLDataDialog extends BaseStepDialog implements StepDialogInterf
     // copy info to TextFileInputMeta class (input)
     in.setRowLimit( Const.toLong( wLimit.getText(), 0L ) );
     in.setPrunePath( wPrunePath.getText() );
+    in.setStreamingXPath( wStreamingXPath.getSelection() );
     in.setLoopXPath( wLoopXPath.getText() );
     in.setEncoding( wEncoding.getText() );
     in.setFilenameField( wInclFilenameField.getText() );
@@ -0,0 +1,152 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.getxmldata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.Element;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+public class StreamingXPathMatcherTest {
+
+  private static final String XML = "<orders>"
+      + "<order id=\"1\" type=\"web\"><customer>A</customer><line qty=\"2\">x</line></order>"
+      + "<!-- comment --><order id=\"2\" type=\"shop\"><customer>B</customer></order>"
+      + "<order id=\"3\" type=\"web\"><customer>C</customer><order id=\"nested\"/></order>"
+      + "</orders>";
+
+  private List<Element> readAll( String loopXPath, String xml ) throws KettleException {
+    return read( loopXPath, xml, Integer.MAX_VALUE );
+  }
+
+  private List<Element> read( String loopXPath, String xml, final int max ) throws KettleException {
+    StreamingXPathMatcher matcher = StreamingXPathMatcher.compile( loopXPath );
+    assertNotNull( matcher );
+    final List<Element> records = new ArrayList<Element>();
+    matcher.read( new ByteArrayInputStream( xml.getBytes() ), "UTF-8", true,
+        new StreamingXPathMatcher.RecordListener() {
+          public boolean recordClosed( Element record ) {
+            records.add( record );
+            return records.size() < max;
+          }
+        } );
+    return records;
+  }
+
+  @Test
+  public void testCompileSupportedLoopPaths() {
+    assertEquals( 2, StreamingXPathMatcher.compile( "/orders/order" ).getNrSteps() );
+    assertNotNull( StreamingXPathMatcher.compile( "/orders/*[@type='web']" ) );
+    assertNotNull( StreamingXPathMatcher.compile( "/orders/order[2]" ) );
+    assertNotNull( StreamingXPathMatcher.compile( "/ns:orders/ns:order[@id]" ) );
+  }
+
+  @Test
+  public void testCompileUnsupportedLoopPaths() {
+    assertNull( StreamingXPathMatcher.compile( "//order" ) );
+    assertNull( StreamingXPathMatcher.compile( "orders/order" ) );
+    assertNull( StreamingXPathMatcher.compile( "/orders//order" ) );
+    assertNull( StreamingXPathMatcher.compile( "/orders/order[customer='A']" ) );
+    assertNull( StreamingXPathMatcher.compile( "/orders/order[position() > 1]" ) );
+    assertNull( StreamingXPathMatcher.compile( "/orders/ancestor::order" ) );
+    assertNull( StreamingXPathMatcher.compile( "" ) );
+  }
+
+  @Test
+  public void testSupportedFieldPaths() {
+    assertTrue( StreamingXPathMatcher.isSupportedFieldPath( "customer", false ) );
+    assertTrue( StreamingXPathMatcher.isSupportedFieldPath( "@id", false ) );
+    assertTrue( StreamingXPathMatcher.isSupportedFieldPath( "id", true ) );
+    assertTrue( StreamingXPathMatcher.isSupportedFieldPath( "line/@qty", false ) );
+    assertTrue( StreamingXPathMatcher.isSupportedFieldPath( "line[@qty='2']/text()", false ) );
+    assertTrue( StreamingXPathMatcher.isSupportedFieldPath( "address[type='home']/city", false ) );
+    assertTrue( StreamingXPathMatcher.isSupportedFieldPath( ".", false ) );
+
+    assertFalse( StreamingXPathMatcher.isSupportedFieldPath( "../header", false ) );
+    assertFalse( StreamingXPathMatcher.isSupportedFieldPath( "/orders/header", false ) );
+    assertFalse( StreamingXPathMatcher.isSupportedFieldPath( "//customer", false ) );
+    assertFalse( StreamingXPathMatcher.isSupportedFieldPath( "parent::*/@id", false ) );
+    assertFalse( StreamingXPathMatcher.isSupportedFieldPath( "count(line)", false ) );
+    assertFalse( StreamingXPathMatcher.isSupportedFieldPath( "", false ) );
+  }
+
+  @Test
+  public void testReadChildPath() throws Exception {
+    List<Element> records = readAll( "/orders/order", XML );
+    assertEquals( 3, records.size() );
+    assertEquals( "1", records.get( 0 ).valueOf( "@id" ) );
+    assertEquals( "A", records.get( 0 ).valueOf( "customer" ) );
+    assertEquals( "2", records.get( 0 ).valueOf( "line/@qty" ) );
+    assertEquals( "B", records.get( 1 ).valueOf( "customer" ) );
+    // the nested order is part of the third record, not a record of its own
+    assertEquals( "nested", records.get( 2 ).valueOf( "order/@id" ) );
+    assertNull( records.get( 0 ).getParent() );
+  }
+
+  @Test
+  public void testReadAttributePredicate() throws Exception {
+    List<Element> records = readAll( "/orders/order[@type='web']", XML );
+    assertEquals( 2, records.size() );
+    assertEquals( "A", records.get( 0 ).valueOf( "customer" ) );
+    assertEquals( "C", records.get( 1 ).valueOf( "customer" ) );
+  }
+
+  @Test
+  public void testReadPositionPredicate() throws Exception {
+    List<Element> records = readAll( "/orders/order[2]", XML );
+    assertEquals( 1, records.size() );
+    assertEquals( "B", records.get( 0 ).valueOf( "customer" ) );
+
+    records = readAll( "/orders/*[1]/customer", XML );
+    assertEquals( 1, records.size() );
+    assertEquals( "A", records.get( 0 ).getText() );
+  }
+
+  @Test
+  public void testReadNamespaces() throws Exception {
+    String xml = "<a:root xmlns:a=\"urn:a\"><a:item a:code=\"x\">1</a:item><item>2</item></a:root>";
+    List<Element> records = readAll( "/a:root/a:item", xml );
+    assertEquals( 1, records.size() );
+    assertEquals( "1", records.get( 0 ).getText() );
+    assertEquals( "urn:a", records.get( 0 ).getNamespaceURI() );
+  }
+
+  @Test
+  public void testStopReading() throws Exception {
+    assertEquals( 1, read( "/orders/order", XML, 1 ).size() );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testMalformedDocument() throws Exception {
+    readAll( "/orders/order", "<orders><order></orders>" );
+  }
+}
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -40,13 +40,21 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Text;
+import org.pentaho.di.core.Condition;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.util.Utils;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStepMeta;
 import org.pentaho.di.trans.step.StepDialogInterface;
 import org.pentaho.di.trans.steps.cubeinput.CubeInputMeta;
+import org.pentaho.di.ui.core.dialog.ErrorDialog;
+import org.pentaho.di.ui.core.widget.ColumnInfo;
+import org.pentaho.di.ui.core.widget.ConditionEditor;
+import org.pentaho.di.ui.core.widget.TableView;
 import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
 
@@ -63,6 +71,15 @@ public class CubeInputDialog extends BaseStepDialog implements StepDialogInterfa
   private FormData fdlLimit, fdLimit;
   private Label wlAddResult;
   private Button wAddResult;
+
+  private Label wlFields;
+  private TableView wFields;
+  private Button wGetFields;
+
+  private Label wlCondition;
+  private ConditionEditor wCondition;
+  private Condition backupCondition;
+
   private CubeInputMeta input;
 
   public CubeInputDialog( Shell parent, Object in, TransMeta tr, String sname ) {
@@ -84,6 +101,7 @@ public class CubeInputDialog extends BaseStepDialog implements StepDialogInterfa
       }
     };
     changed = input.hasChanged();
+    backupCondition = input.getCondition() != null ? (Condition) input.getCondition().clone() : new Condition();
 
     FormLayout formLayout = new FormLayout();
     formLayout.marginWidth = Const.FORM_MARGIN;
@@ -177,10 +195,53 @@ public class CubeInputDialog extends BaseStepDialog implements StepDialogInterfa
     // Some buttons
     wOK = new Button( shell, SWT.PUSH );
     wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
+    wGetFields = new Button( shell, SWT.PUSH );
+    wGetFields.setText( BaseMessages.getString( PKG, "CubeInputDialog.GetFields.Button" ) );
     wCancel = new Button( shell, SWT.PUSH );
     wCancel.setText( BaseMessages.getString( PKG, "System.Button.Cancel" ) );
 
-    setButtonPositions( new Button[] { wOK, wCancel }, margin, wAddResult );
+    setButtonPositions( new Button[] { wOK, wGetFields, wCancel }, margin, null );
+
+    // The condition, at the bottom above the buttons
+    wlCondition = new Label( shell, SWT.NONE );
+    wlCondition.setText( BaseMessages.getString( PKG, "CubeInputDialog.Condition.Label" ) );
+    props.setLook( wlCondition );
+    FormData fdlCondition = new FormData();
+    fdlCondition.left = new FormAttachment( 0, 0 );
+    fdlCondition.top = new FormAttachment( 55, margin );
+    wlCondition.setLayoutData( fdlCondition );
+
+    wCondition = new ConditionEditor( shell, SWT.BORDER, backupCondition, getCubeFields( input.getFilename(), false ) );
+    FormData fdCondition = new FormData();
+    fdCondition.left = new FormAttachment( 0, 0 );
+    fdCondition.top = new FormAttachment( wlCondition, margin );
+    fdCondition.right = new FormAttachment( 100, 0 );
+    fdCondition.bottom = new FormAttachment( wOK, -2 * margin );
+    wCondition.setLayoutData( fdCondition );
+    wCondition.addModifyListener( lsMod );
+
+    // The fields to read
+    wlFields = new Label( shell, SWT.NONE );
+    wlFields.setText( BaseMessages.getString( PKG, "CubeInputDialog.Fields.Label" ) );
+    props.setLook( wlFields );
+    FormData fdlFields = new FormData();
+    fdlFields.left = new FormAttachment( 0, 0 );
+    fdlFields.top = new FormAttachment( wAddResult, margin );
+    wlFields.setLayoutData( fdlFields );
+
+    ColumnInfo[] colinf = new ColumnInfo[] {
+      new ColumnInfo( BaseMessages.getString( PKG, "CubeInputDialog.ColumnInfo.Name" ),
+        ColumnInfo.COLUMN_TYPE_TEXT, false ), };
+
+    int nrFields = input.getFieldName() == null ? 0 : input.getFieldName().length;
+    wFields = new TableView( transMeta, shell, SWT.BORDER | SWT.FULL_SELECTION | SWT.MULTI, colinf, nrFields,
+      lsMod, props );
+    FormData fdFields = new FormData();
+    fdFields.left = new FormAttachment( 0, 0 );
+    fdFields.top = new FormAttachment( wlFields, margin );
+    fdFields.right = new FormAttachment( 100, 0 );
+    fdFields.bottom = new FormAttachment( wlCondition, -margin );
+    wFields.setLayoutData( fdFields );
 
     // Add listeners
     lsCancel = new Listener() {
@@ -196,6 +257,11 @@ public class CubeInputDialog extends BaseStepDialog implements StepDialogInterfa
 
     wCancel.addListener( SWT.Selection, lsCancel );
     wOK.addListener( SWT.Selection, lsOK );
+    wGetFields.addListener( SWT.Selection, new Listener() {
+      public void handleEvent( Event e ) {
+        getFields();
+      }
+    } );
 
     wbFilename.addSelectionListener( new SelectionAdapter() {
       public void widgetSelected( SelectionEvent e ) {
@@ -255,6 +321,12 @@ public class CubeInputDialog extends BaseStepDialog implements StepDialogInterfa
     wLimit.setText( "" + input.getRowLimit() );
     wAddResult.setSelection( input.isAddResultFile() );
 
+    for ( int i = 0; input.getFieldName() != null && i < input.getFieldName().length; i++ ) {
+      wFields.table.getItem( i ).setText( 1, Const.NVL( input.getFieldName()[i], "" ) );
+    }
+    wFields.setRowNums();
+    wFields.optWidth( true );
+
     wStepname.selectAll();
     wStepname.setFocus();
   }
@@ -276,7 +348,50 @@ public class CubeInputDialog extends BaseStepDialog implements StepDialogInterfa
     input.setRowLimit( wLimit.getText() );
     input.setAddResultFile( wAddResult.getSelection() );
 
-    dispose();
+    int nrFields = wFields.nrNonEmpty();
+    input.allocate( nrFields );
+    for ( int i = 0; i < nrFields; i++ ) {
+      input.getFieldName()[i] = wFields.getNonEmpty( i ).getText( 1 );
+    }
+
+    if ( wCondition.getLevel() > 0 ) {
+      wCondition.goUp();
+    } else {
+      input.setCondition( backupCondition );
+      dispose();
+    }
+  }
+
+  private void getFields() {
+    RowMetaInterface fields = getCubeFields( wFilename.getText(), true );
+    if ( fields != null && !fields.isEmpty() ) {
+      BaseStepDialog.getFieldsFromPrevious( fields, wFields, 1, new int[] { 1 }, new int[] {}, -1, -1, null );
+    }
+  }
+
+  /**
+   * Read all the fields stored in a cube file.
+   *
+   * @param filename
+   *          the name of the cube file
+   * @param showError
+   *          show a dialog when the file can't be read, otherwise return an empty row
+   */
+  private RowMetaInterface getCubeFields( String filename, boolean showError ) {
+    CubeInputMeta meta = new CubeInputMeta();
+    meta.setDefault();
+    meta.setFilename( filename );
+    RowMetaInterface fields = new RowMeta();
+    try {
+      meta.getFields( fields, stepname, null, null, transMeta, repository, metaStore );
+    } catch ( KettleException e ) {
+      if ( showError ) {
+        new ErrorDialog( shell,
+          BaseMessages.getString( PKG, "CubeInputDialog.ErrorGettingFields.DialogTitle" ),
+          BaseMessages.getString( PKG, "CubeInputDialog.ErrorGettingFields.DialogMessage" ), e );
+      }
+    }
+    return fields;
   }
 
 }
@@ -23,6 +23,7 @@
 package org.pentaho.di.ui.trans.steps.cubeoutput;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CCombo;
 import org.eclipse.swt.events.ModifyEvent;
 import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -46,6 +47,7 @@ import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStepMeta;
 import org.pentaho.di.trans.step.StepDialogInterface;
+import org.pentaho.di.trans.steps.cubeoutput.ColumnarCubeWriter;
 import org.pentaho.di.trans.steps.cubeoutput.CubeOutputMeta;
 import org.pentaho.di.ui.core.widget.TextVar;
 import org.pentaho.di.ui.trans.step.BaseStepDialog;
@@ -65,6 +67,18 @@ public class CubeOutputDialog extends BaseStepDialog implements StepDialogInterf
   private Button wDoNotOpenNewFileInit;
   private FormData fdlDoNotOpenNewFileInit, fdDoNotOpenNewFileInit;
 
+  private Label wlColumnar;
+  private Button wColumnar;
+  private FormData fdlColumnar, fdColumnar;
+
+  private Label wlRowGroupSize;
+  private TextVar wRowGroupSize;
+  private FormData fdlRowGroupSize, fdRowGroupSize;
+
+  private Label wlCompression;
+  private CCombo wCompression;
+  private FormData fdlCompression, fdCompression;
+
   private CubeOutputMeta input;
 
   public CubeOutputDialog( Shell parent, Object in, TransMeta transMeta, String sname ) {
@@ -196,12 +210,73 @@ public class CubeOutputDialog extends BaseStepDialog implements StepDialogInterf
     };
     wAddToResult.addSelectionListener( lsSelR );
 
+    // Columnar file layout?
+    wlColumnar = new Label( shell, SWT.RIGHT );
+    wlColumnar.setText( BaseMessages.getString( PKG, "CubeOutputDialog.Columnar.Label" ) );
+    props.setLook( wlColumnar );
+    fdlColumnar = new FormData();
+    fdlColumnar.left = new FormAttachment( 0, 0 );
+    fdlColumnar.top = new FormAttachment( wAddToResult, margin );
+    fdlColumnar.right = new FormAttachment( middle, -margin );
+    wlColumnar.setLayoutData( fdlColumnar );
+    wColumnar = new Button( shell, SWT.CHECK );
+    wColumnar.setToolTipText( BaseMessages.getString( PKG, "CubeOutputDialog.Columnar.Tooltip" ) );
+    props.setLook( wColumnar );
+    fdColumnar = new FormData();
+    fdColumnar.left = new FormAttachment( middle, 0 );
+    fdColumnar.top = new FormAttachment( wAddToResult, margin );
+    fdColumnar.right = new FormAttachment( 100, 0 );
+    wColumnar.setLayoutData( fdColumnar );
+    wColumnar.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+        setColumnar();
+      }
+    } );
+
+    // Rows per row group
+    wlRowGroupSize = new Label( shell, SWT.RIGHT );
+    wlRowGroupSize.setText( BaseMessages.getString( PKG, "CubeOutputDialog.RowGroupSize.Label" ) );
+    props.setLook( wlRowGroupSize );
+    fdlRowGroupSize = new FormData();
+    fdlRowGroupSize.left = new FormAttachment( 0, 0 );
+    fdlRowGroupSize.top = new FormAttachment( wColumnar, margin );
+    fdlRowGroupSize.right = new FormAttachment( middle, -margin );
+    wlRowGroupSize.setLayoutData( fdlRowGroupSize );
+    wRowGroupSize = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wRowGroupSize );
+    wRowGroupSize.addModifyListener( lsMod );
+    fdRowGroupSize = new FormData();
+    fdRowGroupSize.left = new FormAttachment( middle, 0 );
+    fdRowGroupSize.top = new FormAttachment( wColumnar, margin );
+    fdRowGroupSize.right = new FormAttachment( 100, 0 );
+    wRowGroupSize.setLayoutData( fdRowGroupSize );
+
+    // Compression of the columns
+    wlCompression = new Label( shell, SWT.RIGHT );
+    wlCompression.setText( BaseMessages.getString( PKG, "CubeOutputDialog.Compression.Label" ) );
+    props.setLook( wlCompression );
+    fdlCompression = new FormData();
+    fdlCompression.left = new FormAttachment( 0, 0 );
+    fdlCompression.top = new FormAttachment( wRowGroupSize, margin );
+    fdlCompression.right = new FormAttachment( middle, -margin );
+    wlCompression.setLayoutData( fdlCompression );
+    wCompression = new CCombo( shell, SWT.BORDER | SWT.READ_ONLY );
+    wCompression.setItems( ColumnarCubeWriter.COMPRESSION_CODES );
+    props.setLook( wCompression );
+    wCompression.addModifyListener( lsMod );
+    fdCompression = new FormData();
+    fdCompression.left = new FormAttachment( middle, 0 );
+    fdCompression.top = new FormAttachment( wRowGroupSize, margin );
+    fdCompression.right = new FormAttachment( 100, 0 );
+    wCompression.setLayoutData( fdCompression );
+
     wOK = new Button( shell, SWT.PUSH );
     wOK.setText( BaseMessages.getString( PKG, "System.Button.OK" ) );
     wCancel = new Button( shell, SWT.PUSH );
     wCancel.setText( BaseMessages.getString( PKG, "System.Button.Cancel" ) );
 
-    setButtonPositions( new Button[] { wOK, wCancel }, margin, wAddToResult );
+    setButtonPositions( new Button[] { wOK, wCancel }, margin, wCompression );
 
     // Add listeners
     lsOK = new Listener() {
@@ -275,11 +350,25 @@ public class CubeOutputDialog extends BaseStepDialog implements StepDialogInterf
     }
     wDoNotOpenNewFileInit.setSelection( input.isDoNotOpenNewFileInit() );
     wAddToResult.setSelection( input.isAddToResultFiles() );
+    wColumnar.setSelection( input.isColumnar() );
+    if ( input.getRowGroupSize() != null ) {
+      wRowGroupSize.setText( input.getRowGroupSize() );
+    }
+    wCompression.setText( Const.NVL( input.getCompression(), ColumnarCubeWriter.COMPRESSION_DEFLATE ) );
+    setColumnar();
 
     wStepname.selectAll();
     wStepname.setFocus();
   }
 
+  private void setColumnar() {
+    boolean columnar = wColumnar.getSelection();
+    wlRowGroupSize.setEnabled( columnar );
+    wRowGroupSize.setEnabled( columnar );
+    wlCompression.setEnabled( columnar );
+    wCompression.setEnabled( columnar );
+  }
+
   private void cancel() {
     stepname = null;
     input.setChanged( changed );
@@ -296,6 +385,9 @@ public class CubeOutputDialog extends BaseStepDialog implements StepDialogInterf
     input.setAddToResultFiles( wAddToResult.getSelection() );
     input.setDoNotOpenNewFileInit( wDoNotOpenNewFileInit.getSelection() );
     input.setFilename( wFilename.getText() );
+    input.setColumnar( wColumnar.getSelection() );
+    input.setRowGroupSize( wRowGroupSize.getText() );
+    input.setCompression( wCompression.getText() );
 
     dispose();
   }
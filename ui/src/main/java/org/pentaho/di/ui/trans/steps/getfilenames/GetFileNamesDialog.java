@@ -173,6 +173,10 @@ public class GetFileNamesDialog extends BaseStepDialog implements StepDialogInte
   private Text wLimit;
   private FormData fdlLimit, fdLimit;
 
+  private Label wlStreamFiles;
+  private Button wStreamFiles;
+  private FormData fdlStreamFiles, fdStreamFiles;
+
   private Label wlInclRownum;
   private Button wInclRownum;
   private FormData fdlInclRownum, fdRownum;
@@ -692,6 +696,28 @@ public class GetFileNamesDialog extends BaseStepDialog implements StepDialogInte
     fdLimit.right = new FormAttachment( 100, 0 );
     wLimit.setLayoutData( fdLimit );
 
+    wlStreamFiles = new Label( wFilterComp, SWT.RIGHT );
+    wlStreamFiles.setText( BaseMessages.getString( PKG, "GetFileNamesDialog.StreamFiles.Label" ) );
+    props.setLook( wlStreamFiles );
+    fdlStreamFiles = new FormData();
+    fdlStreamFiles.left = new FormAttachment( 0, 0 );
+    fdlStreamFiles.top = new FormAttachment( wLimit, margin );
+    fdlStreamFiles.right = new FormAttachment( middle, -margin );
+    wlStreamFiles.setLayoutData( fdlStreamFiles );
+    wStreamFiles = new Button( wFilterComp, SWT.CHECK );
+    props.setLook( wStreamFiles );
+    wStreamFiles.setToolTipText( BaseMessages.getString( PKG, "GetFileNamesDialog.StreamFiles.Tooltip" ) );
+    fdStreamFiles = new FormData();
+    fdStreamFiles.left = new FormAttachment( middle, 0 );
+    fdStreamFiles.top = new FormAttachment( wLimit, margin );
+    wStreamFiles.setLayoutData( fdStreamFiles );
+    wStreamFiles.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent selectionEvent ) {
+        input.setChanged();
+      }
+    } );
+
     // ///////////////////////////////
     // START OF AddFileResult GROUP //
     // ///////////////////////////////
@@ -710,7 +736,7 @@ public class GetFileNamesDialog extends BaseStepDialog implements StepDialogInte
     props.setLook( wlAddResult );
     fdlAddResult = new FormData();
     fdlAddResult.left = new FormAttachment( 0, 0 );
-    fdlAddResult.top = new FormAttachment( wLimit, margin );
+    fdlAddResult.top = new FormAttachment( wStreamFiles, margin );
     fdlAddResult.right = new FormAttachment( middle, -margin );
     wlAddResult.setLayoutData( fdlAddResult );
     wAddResult = new Button( wAddFileResult, SWT.CHECK );
@@ -718,7 +744,7 @@ public class GetFileNamesDialog extends BaseStepDialog implements StepDialogInte
     wAddResult.setToolTipText( BaseMessages.getString( PKG, "GetFileNamesDialog.AddResult.Tooltip" ) );
     fdAddResult = new FormData();
     fdAddResult.left = new FormAttachment( middle, 0 );
-    fdAddResult.top = new FormAttachment( wLimit, margin );
+    fdAddResult.top = new FormAttachment( wStreamFiles, margin );
     wAddResult.setLayoutData( fdAddResult );
     wAddResult.addSelectionListener( new SelectionAdapter() {
       @Override
@@ -729,7 +755,7 @@ public class GetFileNamesDialog extends BaseStepDialog implements StepDialogInte
 
     fdAddFileResult = new FormData();
     fdAddFileResult.left = new FormAttachment( 0, margin );
-    fdAddFileResult.top = new FormAttachment( wLimit, margin );
+    fdAddFileResult.top = new FormAttachment( wStreamFiles, margin );
     fdAddFileResult.right = new FormAttachment( 100, -margin );
     wAddFileResult.setLayoutData( fdAddFileResult );
 
@@ -1029,6 +1055,7 @@ public class GetFileNamesDialog extends BaseStepDialog implements StepDialogInte
         wExcludeWildcardField.setText( in.getDynamicExcludeWildcardField() );
       }
       wLimit.setText( "" + in.getRowLimit() );
+      wStreamFiles.setSelection( in.isStreamFiles() );
       wIncludeSubFolder.setSelection( in.isDynamicIncludeSubFolders() );
     }
 
@@ -1072,6 +1099,7 @@ public class GetFileNamesDialog extends BaseStepDialog implements StepDialogInte
     in.setFileField( wFileField.getSelection() );
     in.setRowNumberField( wInclRownumField.getText() );
     in.setRowLimit( Const.toLong( wLimit.getText(), 0L ) );
+    in.setStreamFiles( wStreamFiles.getSelection() );
     in.setDynamicIncludeSubFolders( wIncludeSubFolder.getSelection() );
     in.setdoNotFailIfNoFile( wdoNotFailIfNoFile.getSelection() );
   }
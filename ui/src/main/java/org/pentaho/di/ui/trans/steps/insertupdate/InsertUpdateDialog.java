@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -110,6 +110,10 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
   private Button wUpdateBypassed;
   private FormData fdlUpdateBypassed, fdUpdateBypassed;
 
+  private Label wlBatchUpsert;
+  private Button wBatchUpsert;
+  private FormData fdlBatchUpsert, fdBatchUpsert;
+
   private Button wGetLU;
   private FormData fdGetLU;
   private Listener lsGetLU;
@@ -289,12 +293,36 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
     fdUpdateBypassed.right = new FormAttachment( 100, 0 );
     wUpdateBypassed.setLayoutData( fdUpdateBypassed );
 
+    // BatchUpsert line
+    wlBatchUpsert = new Label( shell, SWT.RIGHT );
+    wlBatchUpsert.setText( BaseMessages.getString( PKG, "InsertUpdateDialog.BatchUpsert.Label" ) );
+    wlBatchUpsert.setToolTipText( BaseMessages.getString( PKG, "InsertUpdateDialog.BatchUpsert.Tooltip" ) );
+    props.setLook( wlBatchUpsert );
+    fdlBatchUpsert = new FormData();
+    fdlBatchUpsert.left = new FormAttachment( 0, 0 );
+    fdlBatchUpsert.top = new FormAttachment( wUpdateBypassed, margin );
+    fdlBatchUpsert.right = new FormAttachment( middle, -margin );
+    wlBatchUpsert.setLayoutData( fdlBatchUpsert );
+    wBatchUpsert = new Button( shell, SWT.CHECK );
+    wBatchUpsert.setToolTipText( BaseMessages.getString( PKG, "InsertUpdateDialog.BatchUpsert.Tooltip" ) );
+    props.setLook( wBatchUpsert );
+    fdBatchUpsert = new FormData();
+    fdBatchUpsert.left = new FormAttachment( middle, 0 );
+    fdBatchUpsert.top = new FormAttachment( wUpdateBypassed, margin );
+    fdBatchUpsert.right = new FormAttachment( 100, 0 );
+    wBatchUpsert.setLayoutData( fdBatchUpsert );
+    wBatchUpsert.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+      }
+    } );
+
     wlKey = new Label( shell, SWT.NONE );
     wlKey.setText( BaseMessages.getString( PKG, "InsertUpdateDialog.Keys.Label" ) );
     props.setLook( wlKey );
     fdlKey = new FormData();
     fdlKey.left = new FormAttachment( 0, 0 );
-    fdlKey.top = new FormAttachment( wUpdateBypassed, margin );
+    fdlKey.top = new FormAttachment( wBatchUpsert, margin );
     wlKey.setLayoutData( fdlKey );
 
     int nrKeyCols = 4;
@@ -663,6 +691,7 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 
     wCommit.setText( input.getCommitSizeVar() );
     wUpdateBypassed.setSelection( input.isUpdateBypassed() );
+    wBatchUpsert.setSelection( input.isBatchUpsert() );
 
     if ( input.getKeyStream() != null ) {
       for ( int i = 0; i < input.getKeyStream().length; i++ ) {
@@ -735,6 +764,7 @@ public class InsertUpdateDialog extends BaseStepDialog implements StepDialogInte
 
     inf.setCommitSize( wCommit.getText() );
     inf.setUpdateBypassed( wUpdateBypassed.getSelection() );
+    inf.setBatchUpsert( wBatchUpsert.getSelection() );
 
     if ( log.isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "InsertUpdateDialog.Log.FoundKeys", nrkeys + "" ) );
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -114,6 +114,14 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
   private TextVar wDelimiter;
   private FormData fdlDelimiter, fdDelimiter;
 
+  private Label wlCopyFormat;
+  private CCombo wCopyFormat;
+  private FormData fdlCopyFormat, fdCopyFormat;
+
+  private Label wlBufferSize;
+  private TextVar wBufferSize;
+  private FormData fdlBufferSize, fdBufferSize;
+
   private Label wlDbNameOverride;
   private TextVar wDbNameOverride;
   private FormData fdlDbNameOverride, fdDbNameOverride;
@@ -299,13 +307,61 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     fdDbNameOverride.right = new FormAttachment( 100, 0 );
     wDbNameOverride.setLayoutData( fdDbNameOverride );
 
+    // Copy format line
+    wlCopyFormat = new Label( shell, SWT.RIGHT );
+    wlCopyFormat.setText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.CopyFormat.Label" ) );
+    wlCopyFormat.setToolTipText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.CopyFormat.Tooltip" ) );
+    props.setLook( wlCopyFormat );
+    fdlCopyFormat = new FormData();
+    fdlCopyFormat.left = new FormAttachment( 0, 0 );
+    fdlCopyFormat.top = new FormAttachment( wDbNameOverride, margin );
+    fdlCopyFormat.right = new FormAttachment( middle, -margin );
+    wlCopyFormat.setLayoutData( fdlCopyFormat );
+    wCopyFormat = new CCombo( shell, SWT.SINGLE | SWT.READ_ONLY | SWT.BORDER );
+    wCopyFormat.add( BaseMessages.getString( PKG, "PGBulkLoaderDialog.CsvFormat.Label" ) );
+    wCopyFormat.add( BaseMessages.getString( PKG, "PGBulkLoaderDialog.BinaryFormat.Label" ) );
+    wCopyFormat.select( 0 );
+    wCopyFormat.setToolTipText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.CopyFormat.Tooltip" ) );
+    props.setLook( wCopyFormat );
+    wCopyFormat.addModifyListener( lsMod );
+    wCopyFormat.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        setCopyFormatFlags();
+      }
+    } );
+    fdCopyFormat = new FormData();
+    fdCopyFormat.left = new FormAttachment( middle, 0 );
+    fdCopyFormat.top = new FormAttachment( wDbNameOverride, margin );
+    fdCopyFormat.right = new FormAttachment( 100, 0 );
+    wCopyFormat.setLayoutData( fdCopyFormat );
+
+    // Buffer size line
+    wlBufferSize = new Label( shell, SWT.RIGHT );
+    wlBufferSize.setText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.BufferSize.Label" ) );
+    wlBufferSize.setToolTipText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.BufferSize.Tooltip" ) );
+    props.setLook( wlBufferSize );
+    fdlBufferSize = new FormData();
+    fdlBufferSize.left = new FormAttachment( 0, 0 );
+    fdlBufferSize.top = new FormAttachment( wCopyFormat, margin );
+    fdlBufferSize.right = new FormAttachment( middle, -margin );
+    wlBufferSize.setLayoutData( fdlBufferSize );
+    wBufferSize = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wBufferSize.setToolTipText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.BufferSize.Tooltip" ) );
+    props.setLook( wBufferSize );
+    wBufferSize.addModifyListener( lsMod );
+    fdBufferSize = new FormData();
+    fdBufferSize.left = new FormAttachment( middle, 0 );
+    fdBufferSize.top = new FormAttachment( wCopyFormat, margin );
+    fdBufferSize.right = new FormAttachment( 100, 0 );
+    wBufferSize.setLayoutData( fdBufferSize );
+
     // Enclosure line
     wlEnclosure = new Label( shell, SWT.RIGHT );
     wlEnclosure.setText( BaseMessages.getString( PKG, "PGBulkLoaderDialog.Enclosure.Label" ) );
     props.setLook( wlEnclosure );
     fdlEnclosure = new FormData();
     fdlEnclosure.left = new FormAttachment( 0, 0 );
-    fdlEnclosure.top = new FormAttachment( wDbNameOverride, margin );
+    fdlEnclosure.top = new FormAttachment( wBufferSize, margin );
     fdlEnclosure.right = new FormAttachment( middle, -margin );
     wlEnclosure.setLayoutData( fdlEnclosure );
     wEnclosure = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
@@ -313,7 +369,7 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     wEnclosure.addModifyListener( lsMod );
     fdEnclosure = new FormData();
     fdEnclosure.left = new FormAttachment( middle, 0 );
-    fdEnclosure.top = new FormAttachment( wDbNameOverride, margin );
+    fdEnclosure.top = new FormAttachment( wBufferSize, margin );
     fdEnclosure.right = new FormAttachment( 100, 0 );
     wEnclosure.setLayoutData( fdEnclosure );
 
@@ -493,6 +549,7 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     wDbNameOverride.addSelectionListener( lsDef );
     wEnclosure.addSelectionListener( lsDef );
     wDelimiter.addSelectionListener( lsDef );
+    wBufferSize.addSelectionListener( lsDef );
     wStopOnError.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
@@ -576,6 +633,11 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
       wEnclosure.setText( input.getEnclosure() );
     }
     wStopOnError.setSelection( input.isStopOnError() );
+    wCopyFormat.select( input.isBinaryFormat() ? 1 : 0 );
+    if ( input.getBufferSize() != null ) {
+      wBufferSize.setText( input.getBufferSize() );
+    }
+    setCopyFormatFlags();
     if ( input.getDbNameOverride() != null ) {
       wDbNameOverride.setText( input.getDbNameOverride() );
     }
@@ -597,6 +659,17 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     wStepname.setFocus();
   }
 
+  /**
+   * The enclosure and delimiter are only used by the CSV format.
+   */
+  private void setCopyFormatFlags() {
+    boolean csv = wCopyFormat.getSelectionIndex() != 1;
+    wlEnclosure.setEnabled( csv );
+    wEnclosure.setEnabled( csv );
+    wlDelimiter.setEnabled( csv );
+    wDelimiter.setEnabled( csv );
+  }
+
   protected void setComboBoxes() {
     // Something was changed in the row.
     //
@@ -769,6 +842,9 @@ public class PGBulkLoaderDialog extends BaseStepDialog implements StepDialogInte
     inf.setDelimiter( wDelimiter.getText() );
     inf.setEnclosure( wEnclosure.getText() );
     inf.setStopOnError( wStopOnError.getSelection() );
+    inf.setCopyFormat( wCopyFormat.getSelectionIndex() == 1
+      ? PGBulkLoaderMeta.FORMAT_BINARY : PGBulkLoaderMeta.FORMAT_CSV );
+    inf.setBufferSize( wBufferSize.getText() );
 
     /*
      * /* Set the loadaction
@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -94,6 +94,22 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
   private TextVar wLimit;
   private FormData fdlLimit, fdLimit;
 
+  private Label wlSplitField;
+  private TextVar wSplitField;
+  private FormData fdlSplitField, fdSplitField;
+
+  private Label wlSplitBoundaries;
+  private TextVar wSplitBoundaries;
+  private FormData fdlSplitBoundaries, fdSplitBoundaries;
+
+  private Label wlIncrementalField;
+  private TextVar wIncrementalField;
+  private FormData fdlIncrementalField, fdIncrementalField;
+
+  private Label wlWatermarkName;
+  private TextVar wWatermarkName;
+  private FormData fdlWatermarkName, fdWatermarkName;
+
   private Label wlEachRow;
   private Button wEachRow;
   private FormData fdlEachRow, fdEachRow;
@@ -184,6 +200,86 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 
     setButtonPositions( new Button[] { wOK, wPreview, wCancel }, margin, null );
 
+    // Watermark name ...
+    wlWatermarkName = new Label( shell, SWT.RIGHT );
+    wlWatermarkName.setText( BaseMessages.getString( PKG, "TableInputDialog.WatermarkName" ) );
+    wlWatermarkName.setToolTipText( BaseMessages.getString( PKG, "TableInputDialog.WatermarkName.Tooltip" ) );
+    props.setLook( wlWatermarkName );
+    fdlWatermarkName = new FormData();
+    fdlWatermarkName.left = new FormAttachment( 0, 0 );
+    fdlWatermarkName.right = new FormAttachment( middle, -margin );
+    fdlWatermarkName.bottom = new FormAttachment( wOK, -2 * margin );
+    wlWatermarkName.setLayoutData( fdlWatermarkName );
+    wWatermarkName = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wWatermarkName.setToolTipText( BaseMessages.getString( PKG, "TableInputDialog.WatermarkName.Tooltip" ) );
+    props.setLook( wWatermarkName );
+    wWatermarkName.addModifyListener( lsMod );
+    fdWatermarkName = new FormData();
+    fdWatermarkName.left = new FormAttachment( middle, 0 );
+    fdWatermarkName.right = new FormAttachment( 100, 0 );
+    fdWatermarkName.bottom = new FormAttachment( wOK, -2 * margin );
+    wWatermarkName.setLayoutData( fdWatermarkName );
+
+    // Incremental field ...
+    wlIncrementalField = new Label( shell, SWT.RIGHT );
+    wlIncrementalField.setText( BaseMessages.getString( PKG, "TableInputDialog.IncrementalField" ) );
+    wlIncrementalField.setToolTipText( BaseMessages.getString( PKG, "TableInputDialog.IncrementalField.Tooltip" ) );
+    props.setLook( wlIncrementalField );
+    fdlIncrementalField = new FormData();
+    fdlIncrementalField.left = new FormAttachment( 0, 0 );
+    fdlIncrementalField.right = new FormAttachment( middle, -margin );
+    fdlIncrementalField.bottom = new FormAttachment( wWatermarkName, -margin );
+    wlIncrementalField.setLayoutData( fdlIncrementalField );
+    wIncrementalField = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wIncrementalField.setToolTipText( BaseMessages.getString( PKG, "TableInputDialog.IncrementalField.Tooltip" ) );
+    props.setLook( wIncrementalField );
+    wIncrementalField.addModifyListener( lsMod );
+    fdIncrementalField = new FormData();
+    fdIncrementalField.left = new FormAttachment( middle, 0 );
+    fdIncrementalField.right = new FormAttachment( 100, 0 );
+    fdIncrementalField.bottom = new FormAttachment( wWatermarkName, -margin );
+    wIncrementalField.setLayoutData( fdIncrementalField );
+
+    // Split boundaries ...
+    wlSplitBoundaries = new Label( shell, SWT.RIGHT );
+    wlSplitBoundaries.setText( BaseMessages.getString( PKG, "TableInputDialog.SplitBoundaries" ) );
+    wlSplitBoundaries.setToolTipText( BaseMessages.getString( PKG, "TableInputDialog.SplitBoundaries.Tooltip" ) );
+    props.setLook( wlSplitBoundaries );
+    fdlSplitBoundaries = new FormData();
+    fdlSplitBoundaries.left = new FormAttachment( 0, 0 );
+    fdlSplitBoundaries.right = new FormAttachment( middle, -margin );
+    fdlSplitBoundaries.bottom = new FormAttachment( wIncrementalField, -margin );
+    wlSplitBoundaries.setLayoutData( fdlSplitBoundaries );
+    wSplitBoundaries = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wSplitBoundaries.setToolTipText( BaseMessages.getString( PKG, "TableInputDialog.SplitBoundaries.Tooltip" ) );
+    props.setLook( wSplitBoundaries );
+    wSplitBoundaries.addModifyListener( lsMod );
+    fdSplitBoundaries = new FormData();
+    fdSplitBoundaries.left = new FormAttachment( middle, 0 );
+    fdSplitBoundaries.right = new FormAttachment( 100, 0 );
+    fdSplitBoundaries.bottom = new FormAttachment( wIncrementalField, -margin );
+    wSplitBoundaries.setLayoutData( fdSplitBoundaries );
+
+    // Split field ...
+    wlSplitField = new Label( shell, SWT.RIGHT );
+    wlSplitField.setText( BaseMessages.getString( PKG, "TableInputDialog.SplitField" ) );
+    wlSplitField.setToolTipText( BaseMessages.getString( PKG, "TableInputDialog.SplitField.Tooltip" ) );
+    props.setLook( wlSplitField );
+    fdlSplitField = new FormData();
+    fdlSplitField.left = new FormAttachment( 0, 0 );
+    fdlSplitField.right = new FormAttachment( middle, -margin );
+    fdlSplitField.bottom = new FormAttachment( wSplitBoundaries, -margin );
+    wlSplitField.setLayoutData( fdlSplitField );
+    wSplitField = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wSplitField.setToolTipText( BaseMessages.getString( PKG, "TableInputDialog.SplitField.Tooltip" ) );
+    props.setLook( wSplitField );
+    wSplitField.addModifyListener( lsMod );
+    fdSplitField = new FormData();
+    fdSplitField.left = new FormAttachment( middle, 0 );
+    fdSplitField.right = new FormAttachment( 100, 0 );
+    fdSplitField.bottom = new FormAttachment( wSplitBoundaries, -margin );
+    wSplitField.setLayoutData( fdSplitField );
+
     // Limit input ...
     wlLimit = new Label( shell, SWT.RIGHT );
     wlLimit.setText( BaseMessages.getString( PKG, "TableInputDialog.LimitSize" ) );
@@ -191,7 +287,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
     fdlLimit = new FormData();
     fdlLimit.left = new FormAttachment( 0, 0 );
     fdlLimit.right = new FormAttachment( middle, -margin );
-    fdlLimit.bottom = new FormAttachment( wOK, -2 * margin );
+    fdlLimit.bottom = new FormAttachment( wSplitField, -margin );
     wlLimit.setLayoutData( fdlLimit );
     wLimit = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
     props.setLook( wLimit );
@@ -199,7 +295,7 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
     fdLimit = new FormData();
     fdLimit.left = new FormAttachment( middle, 0 );
     fdLimit.right = new FormAttachment( 100, 0 );
-    fdLimit.bottom = new FormAttachment( wOK, -2 * margin );
+    fdLimit.bottom = new FormAttachment( wSplitField, -margin );
     wLimit.setLayoutData( fdLimit );
 
     // Execute for each row?
@@ -416,6 +512,10 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
 
     wStepname.addSelectionListener( lsDef );
     wLimit.addSelectionListener( lsDef );
+    wSplitField.addSelectionListener( lsDef );
+    wSplitBoundaries.addSelectionListener( lsDef );
+    wIncrementalField.addSelectionListener( lsDef );
+    wWatermarkName.addSelectionListener( lsDef );
 
     // Detect X or ALT-F4 or something that kills this window...
     shell.addShellListener( new ShellAdapter() {
@@ -473,6 +573,10 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
       wConnection.setText( input.getDatabaseMeta().getName() );
     }
     wLimit.setText( Const.NVL( input.getRowLimit(), "" ) );
+    wSplitField.setText( Const.NVL( input.getSplitField(), "" ) );
+    wSplitBoundaries.setText( Const.NVL( input.getSplitBoundaries(), "" ) );
+    wIncrementalField.setText( Const.NVL( input.getIncrementalField(), "" ) );
+    wWatermarkName.setText( Const.NVL( input.getWatermarkName(), "" ) );
 
     StreamInterface infoStream = input.getStepIOMeta().getInfoStreams().get( 0 );
     if ( infoStream.getStepMeta() != null ) {
@@ -518,6 +622,10 @@ public class TableInputDialog extends BaseStepDialog implements StepDialogInterf
     meta.setSQL( preview && !Utils.isEmpty( wSQL.getSelectionText() ) ? wSQL.getSelectionText() : wSQL.getText() );
     meta.setDatabaseMeta( transMeta.findDatabase( wConnection.getText() ) );
     meta.setRowLimit( wLimit.getText() );
+    meta.setSplitField( wSplitField.getText() );
+    meta.setSplitBoundaries( wSplitBoundaries.getText() );
+    meta.setIncrementalField( wIncrementalField.getText() );
+    meta.setWatermarkName( wWatermarkName.getText() );
     StreamInterface infoStream = input.getStepIOMeta().getInfoStreams().get( 0 );
     infoStream.setStepMeta( transMeta.findStep( wDatefrom.getText() ) );
     meta.setExecuteEachInputRow( wEachRow.getSelection() );
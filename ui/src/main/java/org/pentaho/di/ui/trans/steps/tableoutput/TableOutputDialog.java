@@ -134,6 +134,18 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
   private Button wBatch;
   private FormData fdlBatch, fdBatch;
 
+  private Label wlPendingBatches;
+  private TextVar wPendingBatches;
+  private FormData fdlPendingBatches, fdPendingBatches;
+
+  private Label wlParallelConnections;
+  private TextVar wParallelConnections;
+  private FormData fdlParallelConnections, fdParallelConnections;
+
+  private Label wlRoutingField;
+  private ComboVar wRoutingField;
+  private FormData fdlRoutingField, fdRoutingField;
+
   private Label wlUsePart;
   private Button wUsePart;
   private FormData fdlUsePart, fdUsePart;
@@ -564,20 +576,90 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
       }
     } );
 
+    // Batches executed in the background
+    wlPendingBatches = new Label( wMainComp, SWT.RIGHT );
+    wlPendingBatches.setText( BaseMessages.getString( PKG, "TableOutputDialog.PendingBatches.Label" ) );
+    wlPendingBatches.setToolTipText( BaseMessages.getString( PKG, "TableOutputDialog.PendingBatches.Tooltip" ) );
+    props.setLook( wlPendingBatches );
+    fdlPendingBatches = new FormData();
+    fdlPendingBatches.left = new FormAttachment( 0, 0 );
+    fdlPendingBatches.top = new FormAttachment( wBatch, margin );
+    fdlPendingBatches.right = new FormAttachment( middle, -margin );
+    wlPendingBatches.setLayoutData( fdlPendingBatches );
+    wPendingBatches = new TextVar( transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wPendingBatches );
+    wPendingBatches.addModifyListener( lsMod );
+    fdPendingBatches = new FormData();
+    fdPendingBatches.left = new FormAttachment( middle, 0 );
+    fdPendingBatches.top = new FormAttachment( wBatch, margin );
+    fdPendingBatches.right = new FormAttachment( 100, 0 );
+    wPendingBatches.setLayoutData( fdPendingBatches );
+
+    // Number of connections
+    wlParallelConnections = new Label( wMainComp, SWT.RIGHT );
+    wlParallelConnections.setText( BaseMessages.getString( PKG, "TableOutputDialog.ParallelConnections.Label" ) );
+    wlParallelConnections.setToolTipText( BaseMessages.getString(
+      PKG, "TableOutputDialog.ParallelConnections.Tooltip" ) );
+    props.setLook( wlParallelConnections );
+    fdlParallelConnections = new FormData();
+    fdlParallelConnections.left = new FormAttachment( 0, 0 );
+    fdlParallelConnections.top = new FormAttachment( wPendingBatches, margin );
+    fdlParallelConnections.right = new FormAttachment( middle, -margin );
+    wlParallelConnections.setLayoutData( fdlParallelConnections );
+    wParallelConnections = new TextVar( transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wParallelConnections );
+    wParallelConnections.addModifyListener( lsMod );
+    fdParallelConnections = new FormData();
+    fdParallelConnections.left = new FormAttachment( middle, 0 );
+    fdParallelConnections.top = new FormAttachment( wPendingBatches, margin );
+    fdParallelConnections.right = new FormAttachment( 100, 0 );
+    wParallelConnections.setLayoutData( fdParallelConnections );
+
+    // Route rows by field
+    wlRoutingField = new Label( wMainComp, SWT.RIGHT );
+    wlRoutingField.setText( BaseMessages.getString( PKG, "TableOutputDialog.RoutingField.Label" ) );
+    wlRoutingField.setToolTipText( BaseMessages.getString( PKG, "TableOutputDialog.RoutingField.Tooltip" ) );
+    props.setLook( wlRoutingField );
+    fdlRoutingField = new FormData();
+    fdlRoutingField.left = new FormAttachment( 0, 0 );
+    fdlRoutingField.top = new FormAttachment( wParallelConnections, margin );
+    fdlRoutingField.right = new FormAttachment( middle, -margin );
+    wlRoutingField.setLayoutData( fdlRoutingField );
+    wRoutingField = new ComboVar( transMeta, wMainComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    props.setLook( wRoutingField );
+    wRoutingField.addModifyListener( lsMod );
+    fdRoutingField = new FormData();
+    fdRoutingField.left = new FormAttachment( middle, 0 );
+    fdRoutingField.top = new FormAttachment( wParallelConnections, margin );
+    fdRoutingField.right = new FormAttachment( 100, 0 );
+    wRoutingField.setLayoutData( fdRoutingField );
+    wRoutingField.addFocusListener( new FocusListener() {
+      public void focusLost( org.eclipse.swt.events.FocusEvent e ) {
+      }
+
+      public void focusGained( org.eclipse.swt.events.FocusEvent e ) {
+        Cursor busy = new Cursor( shell.getDisplay(), SWT.CURSOR_WAIT );
+        shell.setCursor( busy );
+        getFields();
+        shell.setCursor( null );
+        busy.dispose();
+      }
+    } );
+
     // NameInField
     wlNameInField = new Label( wMainComp, SWT.RIGHT );
     wlNameInField.setText( BaseMessages.getString( PKG, "TableOutputDialog.NameInField.Label" ) );
     props.setLook( wlNameInField );
     fdlNameInField = new FormData();
     fdlNameInField.left = new FormAttachment( 0, 0 );
-    fdlNameInField.top = new FormAttachment( wBatch, margin * 5 );
+    fdlNameInField.top = new FormAttachment( wRoutingField, margin * 5 );
     fdlNameInField.right = new FormAttachment( middle, -margin );
     wlNameInField.setLayoutData( fdlNameInField );
     wNameInField = new Button( wMainComp, SWT.CHECK );
     props.setLook( wNameInField );
     fdNameInField = new FormData();
     fdNameInField.left = new FormAttachment( middle, 0 );
-    fdNameInField.top = new FormAttachment( wBatch, margin * 5 );
+    fdNameInField.top = new FormAttachment( wRoutingField, margin * 5 );
     fdNameInField.right = new FormAttachment( 100, 0 );
     wNameInField.setLayoutData( fdNameInField );
     wNameInField.addSelectionListener( new SelectionAdapter() {
@@ -848,6 +930,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
 
     wStepname.addSelectionListener( lsDef );
     wCommit.addSelectionListener( lsDef );
+    wPendingBatches.addSelectionListener( lsDef );
+    wParallelConnections.addSelectionListener( lsDef );
+    wRoutingField.addSelectionListener( lsDef );
     wSchema.addSelectionListener( lsDef );
     wTable.addSelectionListener( lsDef );
     wPartField.addSelectionListener( lsDef );
@@ -894,10 +979,12 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
       try {
         String field = wNameField.getText();
         String partfield = wPartField.getText();
+        String routingfield = wRoutingField.getText();
         RowMetaInterface r = transMeta.getPrevStepFields( stepname );
         if ( r != null ) {
           wNameField.setItems( r.getFieldNames() );
           wPartField.setItems( r.getFieldNames() );
+          wRoutingField.setItems( r.getFieldNames() );
         }
         if ( field != null ) {
           wNameField.setText( field );
@@ -905,6 +992,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
         if ( partfield != null ) {
           wPartField.setText( partfield );
         }
+        if ( routingfield != null ) {
+          wRoutingField.setText( routingfield );
+        }
       } catch ( KettleException ke ) {
         new ErrorDialog(
           shell, BaseMessages.getString( PKG, "TableOutputDialog.FailedToGetFields.DialogTitle" ), BaseMessages
@@ -1195,6 +1285,12 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
 
     wlBatch.setEnabled( enableBatch );
     wBatch.setEnabled( enableBatch );
+    wlPendingBatches.setEnabled( useBatch );
+    wPendingBatches.setEnabled( useBatch );
+    wlParallelConnections.setEnabled( useBatch );
+    wParallelConnections.setEnabled( useBatch );
+    wlRoutingField.setEnabled( useBatch );
+    wRoutingField.setEnabled( useBatch );
 
     boolean specifyFields = wSpecifyFields.getSelection();
     wFields.setEnabled( specifyFields );
@@ -1243,6 +1339,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     wBatch.setSelection( input.useBatchUpdate() );
 
     wCommit.setText( input.getCommitSize() );
+    wPendingBatches.setText( Const.NVL( input.getPendingBatches(), "" ) );
+    wParallelConnections.setText( Const.NVL( input.getParallelConnections(), "" ) );
+    wRoutingField.setText( Const.NVL( input.getRoutingField(), "" ) );
 
     wUsePart.setSelection( input.isPartitioningEnabled() );
     wPartDaily.setSelection( input.isPartitioningDaily() );
@@ -1294,6 +1393,9 @@ public class TableOutputDialog extends BaseStepDialog implements StepDialogInter
     info.setTruncateTable( wTruncate.getSelection() );
     info.setIgnoreErrors( wIgnore.getSelection() );
     info.setUseBatchUpdate( wBatch.getSelection() );
+    info.setPendingBatches( wPendingBatches.getText() );
+    info.setParallelConnections( wParallelConnections.getText() );
+    info.setRoutingField( wRoutingField.getText() );
     info.setPartitioningEnabled( wUsePart.getSelection() );
     info.setPartitioningField( wPartField.getText() );
     info.setPartitioningDaily( wPartDaily.getSelection() );
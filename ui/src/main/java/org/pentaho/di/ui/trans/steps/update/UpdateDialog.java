@@ -2,7 +2,7 @@
  *
  * Pentaho Data Integration
  *
- * Copyright (C) 2002-2017 by Hitachi Vantara : http://www.pentaho.com
+ * Copyright (C) 2002-2018 by Hitachi Vantara : http://www.pentaho.com
  *
  *******************************************************************************
  *
@@ -129,6 +129,10 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
   private Button wSkipLookup;
   private FormData fdlSkipLookup, fdSkipLookup;
 
+  private Label wlUpdateChangedOnly;
+  private Button wUpdateChangedOnly;
+  private FormData fdlUpdateChangedOnly, fdUpdateChangedOnly;
+
   /**
    * List of ColumnInfo that should have the field names of the selected database table
    */
@@ -322,12 +326,34 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
       }
     } );
 
+    wlUpdateChangedOnly = new Label( shell, SWT.RIGHT );
+    wlUpdateChangedOnly.setText( BaseMessages.getString( PKG, "UpdateDialog.UpdateChangedOnly.Label" ) );
+    props.setLook( wlUpdateChangedOnly );
+    fdlUpdateChangedOnly = new FormData();
+    fdlUpdateChangedOnly.left = new FormAttachment( 0, 0 );
+    fdlUpdateChangedOnly.top = new FormAttachment( wSkipLookup, margin );
+    fdlUpdateChangedOnly.right = new FormAttachment( middle, -margin );
+    wlUpdateChangedOnly.setLayoutData( fdlUpdateChangedOnly );
+    wUpdateChangedOnly = new Button( shell, SWT.CHECK );
+    wUpdateChangedOnly.setToolTipText( BaseMessages.getString( PKG, "UpdateDialog.UpdateChangedOnly.Tooltip" ) );
+    props.setLook( wUpdateChangedOnly );
+    fdUpdateChangedOnly = new FormData();
+    fdUpdateChangedOnly.left = new FormAttachment( middle, 0 );
+    fdUpdateChangedOnly.top = new FormAttachment( wSkipLookup, margin );
+    fdUpdateChangedOnly.right = new FormAttachment( 100, 0 );
+    wUpdateChangedOnly.setLayoutData( fdUpdateChangedOnly );
+    wUpdateChangedOnly.addSelectionListener( new SelectionAdapter() {
+      public void widgetSelected( SelectionEvent e ) {
+        input.setChanged();
+      }
+    } );
+
     wlErrorIgnored = new Label( shell, SWT.RIGHT );
     wlErrorIgnored.setText( BaseMessages.getString( PKG, "UpdateDialog.ErrorIgnored.Label" ) );
     props.setLook( wlErrorIgnored );
     fdlErrorIgnored = new FormData();
     fdlErrorIgnored.left = new FormAttachment( 0, 0 );
-    fdlErrorIgnored.top = new FormAttachment( wSkipLookup, margin );
+    fdlErrorIgnored.top = new FormAttachment( wUpdateChangedOnly, margin );
     fdlErrorIgnored.right = new FormAttachment( middle, -margin );
     wlErrorIgnored.setLayoutData( fdlErrorIgnored );
 
@@ -336,7 +362,7 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
     wErrorIgnored.setToolTipText( BaseMessages.getString( PKG, "UpdateDialog.ErrorIgnored.ToolTip" ) );
     fdErrorIgnored = new FormData();
     fdErrorIgnored.left = new FormAttachment( middle, 0 );
-    fdErrorIgnored.top = new FormAttachment( wSkipLookup, margin );
+    fdErrorIgnored.top = new FormAttachment( wUpdateChangedOnly, margin );
     wErrorIgnored.setLayoutData( fdErrorIgnored );
     wErrorIgnored.addSelectionListener( new SelectionAdapter() {
       public void widgetSelected( SelectionEvent e ) {
@@ -350,14 +376,14 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
     props.setLook( wlIgnoreFlagField );
     fdlIgnoreFlagField = new FormData();
     fdlIgnoreFlagField.left = new FormAttachment( wErrorIgnored, margin );
-    fdlIgnoreFlagField.top = new FormAttachment( wSkipLookup, margin );
+    fdlIgnoreFlagField.top = new FormAttachment( wUpdateChangedOnly, margin );
     wlIgnoreFlagField.setLayoutData( fdlIgnoreFlagField );
     wIgnoreFlagField = new Text( shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
     props.setLook( wIgnoreFlagField );
     wIgnoreFlagField.addModifyListener( lsMod );
     fdIgnoreFlagField = new FormData();
     fdIgnoreFlagField.left = new FormAttachment( wlIgnoreFlagField, margin );
-    fdIgnoreFlagField.top = new FormAttachment( wSkipLookup, margin );
+    fdIgnoreFlagField.top = new FormAttachment( wUpdateChangedOnly, margin );
     fdIgnoreFlagField.right = new FormAttachment( 100, 0 );
     wIgnoreFlagField.setLayoutData( fdIgnoreFlagField );
 
@@ -573,6 +599,8 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
     wlErrorIgnored.setEnabled( !wSkipLookup.getSelection() );
     wlIgnoreFlagField.setEnabled( !wSkipLookup.getSelection() && wErrorIgnored.getSelection() );
     wIgnoreFlagField.setEnabled( !wSkipLookup.getSelection() && wErrorIgnored.getSelection() );
+    wlUpdateChangedOnly.setEnabled( wSkipLookup.getSelection() );
+    wUpdateChangedOnly.setEnabled( wSkipLookup.getSelection() );
 
   }
 
@@ -678,6 +706,7 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
     wCommit.setText( input.getCommitSizeVar() );
     wBatch.setSelection( input.useBatchUpdate() );
     wSkipLookup.setSelection( input.isSkipLookup() );
+    wUpdateChangedOnly.setSelection( input.isUpdateChangedOnly() );
     wErrorIgnored.setSelection( input.isErrorIgnored() );
     if ( input.getIgnoreFlagField() != null ) {
       wIgnoreFlagField.setText( input.getIgnoreFlagField() );
@@ -752,6 +781,7 @@ public class UpdateDialog extends BaseStepDialog implements StepDialogInterface
     inf.setCommitSize(  wCommit.getText() );
     inf.setUseBatchUpdate( wBatch.getSelection() );
     inf.setSkipLookup( wSkipLookup.getSelection() );
+    inf.setUpdateChangedOnly( wUpdateChangedOnly.getSelection() );
 
     if ( log.isDebug() ) {
       logDebug( BaseMessages.getString( PKG, "UpdateDialog.Log.FoundKeys", nrkeys + "" ) );